@@ -0,0 +1,62 @@
+package org.yesworkflow.cli;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yesworkflow.db.YesWorkflowDB;
+
+/** Measures the first run of a command in a fresh JVM, which includes loading and
+ *  initializing every class and subsystem the command uses but not the start of the
+ *  JVM itself.  Each fork runs the command once.  With <code>database</code> set to
+ *  <code>eager</code> the in-memory database and its jOOQ context are created before
+ *  the command runs, as the CLI did before they were created on first use; with
+ *  <code>lazy</code> the CLI creates them only if the command needs them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+    @Param({"noop", "extract", "graph"})
+    public String command;
+
+    @Param({"lazy", "eager"})
+    public String database;
+
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+    @Benchmark
+    public ExitCode firstRun() throws Exception {
+
+        String[] args = { command, "src/main/resources/example.py" };
+
+        YesWorkflowCLI cli;
+        if (database.equals("eager")) {
+            YesWorkflowDB ywdb = YesWorkflowDB.createInstance();
+            ywdb.jooq();
+            cli = new YesWorkflowCLI(ywdb, discard, discard);
+        } else {
+            cli = new YesWorkflowCLI(discard, discard);
+        }
+
+        ExitCode exitCode = cli.runForArgs(args);
+        if (exitCode != ExitCode.SUCCESS) {
+            throw new IllegalStateException("yw " + String.join(" ", args) + " exited with " + exitCode);
+        }
+        return exitCode;
+    }
+}
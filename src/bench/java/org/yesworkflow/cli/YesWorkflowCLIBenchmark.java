@@ -0,0 +1,107 @@
+package org.yesworkflow.cli;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yesworkflow.Language;
+import org.yesworkflow.bench.WorkloadGenerator;
+import org.yesworkflow.config.YWConfiguration;
+import org.yesworkflow.db.YesWorkflowDB;
+
+/** Measures complete runs of the <code>extract</code>, <code>model</code> and
+ *  <code>graph</code> commands through {@link YesWorkflowCLI#runForArgs(String[])},
+ *  each with a fresh in-memory database and an empty configuration, on the example
+ *  scripts in the repository and on a synthetic script of <code>syntheticBlocks</code>
+ *  program blocks from {@link WorkloadGenerator}.  Graphs are rendered in the
+ *  combined view, which all of the scripts support.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 20)
+@Fork(1)
+public class YesWorkflowCLIBenchmark {
+
+    private static final String SYNTHETIC = "synthetic";
+
+    @Param({"src/main/resources/example.py",
+            "instances/small/inst_s.py",
+            "instances/medium/inst_m.py",
+            "instances/large/inst_l.py",
+            SYNTHETIC})
+    public String source;
+
+    @Param({"extract", "model", "graph"})
+    public String command;
+
+    @Param({"1000"})
+    public int syntheticBlocks;
+
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    private Path syntheticDirectory;
+    private String[] args;
+    private YesWorkflowDB ywdb;
+
+    @Setup
+    public void createArguments() throws Exception {
+        String sourcePath = source;
+        if (source.equals(SYNTHETIC)) {
+            syntheticDirectory = Files.createTempDirectory("yw-bench");
+            sourcePath = new WorkloadGenerator().configure("blocks", syntheticBlocks)
+                                                .configure("depth", 2)
+                                                .configure("fanin", 2)
+                                                .configure("fanout", 2)
+                                                .configure("uritemplate", "file:run/<block>/out_<port>_{sample}.csv")
+                                                .writeSources(syntheticDirectory)
+                                                .get(0)
+                                                .toString();
+        }
+        args = new String[] { "-c", "graph.view=combined", command, sourcePath };
+    }
+
+    @TearDown
+    public void deleteSyntheticScript() throws Exception {
+        if (syntheticDirectory != null) {
+            Files.deleteIfExists(syntheticDirectory.resolve(WorkloadGenerator.scriptFileName(Language.PYTHON)));
+            Files.deleteIfExists(syntheticDirectory);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createDatabase() throws Exception {
+        ywdb = YesWorkflowDB.createInMemoryDB();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeDatabase() throws SQLException {
+        ywdb.close();
+    }
+
+    @Benchmark
+    public ExitCode runForArgs() throws Exception {
+        ExitCode exitCode = new YesWorkflowCLI(ywdb, discard, discard).config(new YWConfiguration())
+                                                                      .runForArgs(args);
+        if (exitCode != ExitCode.SUCCESS) {
+            throw new IllegalStateException("yw " + String.join(" ", args) + " exited with " + exitCode);
+        }
+        return exitCode;
+    }
+}
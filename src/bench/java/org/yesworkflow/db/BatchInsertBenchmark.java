@@ -0,0 +1,80 @@
+package org.yesworkflow.db;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares ingesting source lines, comments and annotations one row at a time
+ *  through {@link YesWorkflowDB} with ingesting them through a {@link BatchInserter},
+ *  for the in-memory H2 and SQLite databases.  Each invocation writes one
+ *  synthetic source of <code>lineCount</code> lines into a fresh database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BatchInsertBenchmark {
+
+    @Param({"h2", "sqlite"})
+    public String database;
+
+    @Param({"10000", "100000"})
+    public int lineCount;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    private YesWorkflowDB ywdb;
+    private Long sourceId;
+
+    @Setup(Level.Invocation)
+    public void createDatabase() throws Exception {
+        ywdb = database.equals("sqlite") ? YesWorkflowSQLiteDB.createInMemoryDB()
+                                         : YesWorkflowH2DB.createInMemoryDB();
+        sourceId = ywdb.insertSource("benchmark.py");
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeDatabase() throws SQLException {
+        ywdb.close();
+    }
+
+    @Benchmark
+    public long perRow() throws SQLException {
+        long lastId = 0;
+        for (long line = 1; line <= lineCount; ++line) {
+            ywdb.insertSourceLine(sourceId, line, "# @in x" + line);
+            Long commentId = ywdb.insertComment(sourceId, line, 1L, "@in x" + line);
+            lastId = ywdb.insertAnnotation(null, commentId, 1L, "IN", "@in", "x" + line, null);
+        }
+        return lastId;
+    }
+
+    @Benchmark
+    public long batched() throws SQLException {
+        long lastId = 0;
+        try (BatchInserter inserter = new BatchInserter(ywdb, batchSize)) {
+            for (long line = 1; line <= lineCount; ++line) {
+                inserter.insertSourceLine(sourceId, line, "# @in x" + line);
+                Long commentId = inserter.insertComment(sourceId, line, 1L, "@in x" + line);
+                lastId = inserter.insertAnnotation(null, commentId, 1L, "IN", "@in", "x" + line, null);
+            }
+        }
+        return lastId;
+    }
+}
@@ -0,0 +1,90 @@
+package org.yesworkflow.db;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yesworkflow.cli.ExitCode;
+import org.yesworkflow.cli.YesWorkflowCLI;
+import org.yesworkflow.config.YWConfiguration;
+
+/** Compares the YW stores selectable with <code>db.store</code> on complete runs of
+ *  the <code>extract</code> command, writing the extract facts, and of the
+ *  <code>graph</code> command.  Each invocation gets a fresh, empty store, created
+ *  outside the measured time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StoreBenchmark {
+
+    @Param({"h2", "sqlite", "memory"})
+    public String store;
+
+    @Param({"extract", "graph"})
+    public String command;
+
+    @Param({"instances/large/inst_l.py"})
+    public String source;
+
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    private Path factsFile;
+    private String[] args;
+    private YWStore ywdb;
+
+    @Setup
+    public void createArguments() throws Exception {
+        factsFile = Files.createTempFile("yw-bench", ".P");
+        args = new String[] { "-c", "extract.factsfile=" + factsFile, command, source };
+    }
+
+    @TearDown
+    public void deleteFactsFile() throws Exception {
+        Files.deleteIfExists(factsFile);
+    }
+
+    @Setup(Level.Invocation)
+    public void createStore() throws Exception {
+        if (store.equals("h2")) {
+            ywdb = YesWorkflowH2DB.createInMemoryDB();
+        } else if (store.equals("sqlite")) {
+            ywdb = YesWorkflowSQLiteDB.createInMemoryDB();
+        } else {
+            ywdb = new YWMemoryStore();
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStore() throws SQLException {
+        ywdb.close();
+    }
+
+    @Benchmark
+    public ExitCode runForArgs() throws Exception {
+        ExitCode exitCode = new YesWorkflowCLI(ywdb, discard, discard).config(new YWConfiguration())
+                                                                      .runForArgs(args);
+        if (exitCode != ExitCode.SUCCESS) {
+            throw new IllegalStateException("yw " + String.join(" ", args) + " exited with " + exitCode);
+        }
+        return exitCode;
+    }
+}
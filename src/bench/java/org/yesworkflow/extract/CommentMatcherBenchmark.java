@@ -0,0 +1,101 @@
+package org.yesworkflow.extract;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yesworkflow.Language;
+import org.yesworkflow.LanguageModel;
+
+/** Compares lexing comments with the compiled comment-delimiter automaton
+ *  ({@link CommentMatcher}) against the per-character string matching it replaced
+ *  ({@link ReferenceCommentMatcher}), for synthetic sources in several languages.
+ *  Each source mixes code lines, single-line comments, YW annotations and delimited
+ *  comments spanning several lines, using the delimiters of the language.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CommentMatcherBenchmark {
+
+    @Param({"BASH", "PYTHON", "MATLAB", "SAS"})
+    public Language language;
+
+    @Param({"20000"})
+    public int lineCount;
+
+    private LanguageModel languageModel;
+    private String source;
+
+    @Setup
+    public void createSource() {
+        languageModel = new LanguageModel(language);
+        source = syntheticSource(languageModel, lineCount);
+    }
+
+    @Benchmark
+    public ExtractedSource compiledAutomaton() throws Exception {
+        return new CommentMatcher(languageModel).lexComments(new BufferedReader(new StringReader(source)));
+    }
+
+    @Benchmark
+    public ExtractedSource stringBuffer() throws Exception {
+        return new ReferenceCommentMatcher(languageModel).lexComments(new BufferedReader(new StringReader(source)));
+    }
+
+    static String syntheticSource(LanguageModel languageModel, int lineCount) {
+
+        List<String> singles = languageModel.getSingleCommentDelimiters();
+        Map<String,String> pairs = languageModel.getPairedCommentDelimiters();
+        String single = singles.isEmpty() ? null : singles.get(0);
+        String pairStart = null;
+        for (String start : pairs.keySet()) {
+            if (pairStart == null || start.length() > pairStart.length()) pairStart = start;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; line < lineCount; ++line) {
+            switch (line % 10) {
+                case 0:
+                    if (single != null) {
+                        text.append(single).append(" @begin step").append(line).append(" @desc stage ").append(line);
+                        break;
+                    }
+                case 3:
+                    if (single != null) {
+                        text.append("    ").append(single).append(" @in input_").append(line).append(" @uri file:{dir}/in.csv");
+                        break;
+                    }
+                case 6:
+                    if (pairStart != null) {
+                        text.append(pairStart).append(" @out result_").append(line).append(" @as r").append(line).append('\n');
+                        text.append("   a comment spanning lines, with \"quotes\" and 'ticks'\n");
+                        text.append(pairs.get(pairStart));
+                        line += 2;
+                        break;
+                    }
+                default:
+                    text.append("    value_").append(line).append(" = compute(data[").append(line)
+                        .append("], \"text\", 3 * 4 / 2)");
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
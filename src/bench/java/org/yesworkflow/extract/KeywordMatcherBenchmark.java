@@ -0,0 +1,90 @@
+package org.yesworkflow.extract;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yesworkflow.Language;
+import org.yesworkflow.LanguageModel;
+import org.yesworkflow.YWKeywords;
+
+/** Measures the search for YW keywords: splitting the comments of a synthetic
+ *  source into annotations with {@link KeywordMatcher} or into annotation spans
+ *  with {@link AnnotationTokenizer}, and testing the raw bytes of the whole
+ *  source with {@link MarkupPrefilter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class KeywordMatcherBenchmark {
+
+    @Param({"20000"})
+    public int lineCount;
+
+    private KeywordMatcher keywordMatcher;
+    private AnnotationTokenizer annotationTokenizer;
+    private MarkupPrefilter markupPrefilter;
+    private List<String> comments;
+    private byte[] sourceBytes;
+
+    @Setup
+    public void createComments() throws Exception {
+        YWKeywords keywords = new YWKeywords();
+        keywordMatcher = new KeywordMatcher(keywords.getKeywords());
+        annotationTokenizer = new AnnotationTokenizer(keywords);
+        markupPrefilter = new MarkupPrefilter(keywords.getKeywords(), StandardCharsets.UTF_8);
+        LanguageModel python = new LanguageModel(Language.PYTHON);
+        String source = CommentMatcherBenchmark.syntheticSource(python, lineCount);
+        sourceBytes = source.replace('@', '$').getBytes(StandardCharsets.UTF_8);
+        ExtractedSource extractedSource = new CommentMatcher(python).lexComments(source.getBytes(StandardCharsets.UTF_8),
+                                                                                  StandardCharsets.UTF_8);
+        comments = new ArrayList<String>(extractedSource.getCommentCount());
+        for (int i = 0; i < extractedSource.getCommentCount(); ++i) {
+            comments.add(extractedSource.getCommentText(i));
+        }
+    }
+
+    @Benchmark
+    public int findCommentsOnLine() {
+        int annotationCount = 0;
+        for (String comment : comments) {
+            annotationCount += DefaultExtractor.findCommentsOnLine(comment, keywordMatcher).size();
+        }
+        return annotationCount;
+    }
+
+    /** Splits the comments into spans and looks up the tags, the part of
+     *  parsing annotations that allocates nothing. */
+    @Benchmark
+    public int tokenizeAnnotations() {
+        int taggedCount = 0;
+        for (String comment : comments) {
+            int spanCount = annotationTokenizer.tokenize(comment);
+            for (int span = 0; span < spanCount; ++span) {
+                if (annotationTokenizer.tag(span) != null) ++taggedCount;
+            }
+        }
+        return taggedCount;
+    }
+
+    /** Scans a source without keywords, the case in which the whole file is read. */
+    @Benchmark
+    public boolean prefilterWithoutMarkup() {
+        return markupPrefilter.mayContainMarkup(sourceBytes);
+    }
+}
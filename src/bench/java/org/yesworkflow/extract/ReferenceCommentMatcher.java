@@ -0,0 +1,214 @@
+package org.yesworkflow.extract;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.yesworkflow.LanguageModel;
+
+/** Comment matcher that compares a growing buffer of characters with the comment
+ *  delimiter strings of a language model for every character read, as
+ *  {@link CommentMatcher} did before the delimiters were compiled into a
+ *  {@link org.yesworkflow.DelimiterAutomaton DelimiterAutomaton}.  Kept as the
+ *  baseline for {@link CommentMatcherBenchmark}.
+ */
+public class ReferenceCommentMatcher {
+
+    static final String EOL = System.getProperty("line.separator");
+
+    private LanguageModel languageModel;
+    private SourceSink sink;
+    private State currentState;
+    private String commentStartToken;
+    private String lastFullMatch;
+    private boolean lastFullMatchWasSingle;
+    private StringBuffer buffer = new StringBuffer();
+
+    public ReferenceCommentMatcher(LanguageModel languageModel) {
+        this.languageModel = languageModel;
+    }
+
+    public ExtractedSource lexComments(BufferedReader reader) throws IOException, SQLException {
+        ExtractedSource extractedSource = new ExtractedSource();
+        matchComments(reader, extractedSource);
+        return extractedSource;
+    }
+
+    private void matchComments(BufferedReader reader, SourceSink sink) throws IOException, SQLException {
+
+        String lineText;
+        Long lineNumber = 1L;
+        lastFullMatch = null;
+        this.sink = sink;
+        this.currentState = State.IN_CODE;
+        this.commentStartToken = null;
+        this.buffer = new StringBuffer();
+        
+        while ((lineText = reader.readLine()) != null) {
+            sink.sourceLine(lineNumber, lineText.toCharArray(), 0, lineText.length());
+            StringBuffer commentText = new StringBuffer();
+            Long rankInLine = 1L;
+            for (int i = 0; i < lineText.length(); ++i) {
+                int c = lineText.charAt(i);
+                String newCommentChars = processNextChar((char)c);
+                commentText.append(newCommentChars);
+                if (newCommentChars.equals(EOL)) {
+                    rankInLine = insertTrimmedComment(lineNumber, rankInLine, commentText.toString());
+                    commentText = new StringBuffer();          
+                }
+            }
+            commentText.append(processNextChar('\n'));
+            insertTrimmedComment(lineNumber++, rankInLine, commentText.toString());
+        }
+    }
+        
+    /** Helper method for passing non-blank comments to the current sink 
+     * @throws SQLException */
+    private Long insertTrimmedComment(Long lineNumber, Long rankInLine, String commentText) throws SQLException {
+        String trimmedCommentText = commentText.toString().trim();
+        if (trimmedCommentText.length() > 0) {
+            sink.comment(lineNumber, rankInLine++, trimmedCommentText);
+        }
+        return rankInLine;
+    }
+    
+    /** Enumeration defining the three states of the comment-matching finite state machine */
+    private enum State {
+        IN_CODE,
+        IN_PREFIX,
+        IN_SINGLE_LINE_COMMENT,
+        IN_MULTI_LINE_COMMENT,
+    }
+    
+    /** Updates the state of the comment-matching finite state machine. */
+    @SuppressWarnings("incomplete-switch")
+    private String processNextChar(int c) {
+        
+        String newCommentCharacters = "";
+        State nextState = currentState;
+        buffer.append((char)c);
+        
+        switch(currentState) {
+        
+        case IN_CODE:
+            
+            lastFullMatch = null;
+            
+            switch(languageModel.commentStartMatches(buffer.toString())) {
+                
+                case FULL_MATCH_SINGLE:
+                    nextState = State.IN_SINGLE_LINE_COMMENT;
+                    buffer.setLength(0);
+                    break;
+                
+                case FULL_MATCH_PAIRED:
+                    nextState = State.IN_MULTI_LINE_COMMENT;
+                    commentStartToken = buffer.toString();
+                    buffer.setLength(0);
+                    break;
+
+                case PREFIX_MATCH:
+                    nextState = State.IN_PREFIX;
+                    break;
+
+                case FULL_MATCH_SINGLE_PREFIX_MATCH_PAIRED:
+                    lastFullMatch = buffer.toString();
+                    lastFullMatchWasSingle = true;
+                    nextState = State.IN_PREFIX;
+                    break;                    
+
+                case FULL_MATCH_PAIRED_PREFIX_MATCH_SINGLE:
+                    lastFullMatch = buffer.toString();
+                    lastFullMatchWasSingle = false;
+                    nextState = State.IN_PREFIX;
+                    break;                    
+                    
+                default:
+                    nextState = State.IN_CODE;
+                    buffer.setLength(0);
+            }
+            
+            break;
+
+        case IN_PREFIX:
+            
+            switch(languageModel.commentStartMatches(buffer.toString())) {
+                
+                case FULL_MATCH_SINGLE:
+                    nextState = State.IN_SINGLE_LINE_COMMENT;
+                    buffer.setLength(0);
+                    break;
+                
+                case FULL_MATCH_PAIRED:
+                    nextState = State.IN_MULTI_LINE_COMMENT;
+                    commentStartToken = buffer.toString();
+                    buffer.setLength(0);
+                    break;
+
+                case NO_MATCH:
+                    if (lastFullMatch == null) {
+                        nextState = State.IN_CODE;                    
+                    } else {
+                        commentStartToken = lastFullMatch;
+                        nextState = (lastFullMatchWasSingle) ? 
+                                State.IN_SINGLE_LINE_COMMENT :
+                                State.IN_MULTI_LINE_COMMENT;
+                    }
+                    buffer.setLength(0);
+                    buffer.append((char)c);
+                    break;
+                    
+                case PREFIX_MATCH:
+                    nextState = State.IN_PREFIX;
+                    break;
+
+                case FULL_MATCH_SINGLE_PREFIX_MATCH_PAIRED:
+                case FULL_MATCH_PAIRED_PREFIX_MATCH_SINGLE:
+                    lastFullMatch = buffer.toString();
+                    nextState = State.IN_PREFIX;
+                    break;
+                    
+                default:
+                    nextState = State.IN_CODE;
+                    buffer.setLength(0);
+            }
+            
+            break;
+            
+            
+        case IN_SINGLE_LINE_COMMENT:
+            
+            if (c == '\r' || c == '\n') {
+                nextState = State.IN_CODE;
+                newCommentCharacters = EOL;
+            } else {
+                newCommentCharacters = buffer.toString();
+            }
+            buffer.setLength(0);
+
+            break;
+            
+        case IN_MULTI_LINE_COMMENT:
+            
+            switch(languageModel.commentEndMatches(buffer.toString(), commentStartToken)) {
+            
+                case NO_MATCH:
+                    newCommentCharacters = buffer.toString();
+                    buffer.setLength(0);
+                    break;
+                
+                case FULL_MATCH_PAIRED:
+                    nextState = State.IN_CODE;
+                    newCommentCharacters = EOL;
+                    buffer.setLength(0);
+                    break;
+            }
+            
+            break;
+        }
+        
+        currentState = nextState;
+        
+        return newCommentCharacters;
+    }
+}
@@ -0,0 +1,73 @@
+package org.yesworkflow.graph;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.model.DefaultModeler;
+import org.yesworkflow.model.Model;
+
+/** Measures rendering the model of a script as a Graphviz graph with
+ *  {@link DotGrapher}, and thus {@link DotBuilder}, in each of the graph views.
+ *  The script is extracted and modeled once per trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DotGrapherBenchmark {
+
+    @Param({"src/main/resources/example.py",
+            "examples/simulate_data_collection/simulate_data_collection.py",
+            "instances/small/inst_s.py",
+            "instances/medium/inst_m.py",
+            "instances/large/inst_l.py"})
+    public String source;
+
+    @Param({"process", "data", "combined"})
+    public String view;
+
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    private YesWorkflowDB ywdb;
+    private Model model;
+
+    @Setup
+    public void buildModel() throws Exception {
+        ywdb = YesWorkflowDB.createInMemoryDB();
+        model = new DefaultModeler(ywdb, discard, discard)
+                    .annotations(new DefaultExtractor(ywdb, discard, discard).configure("sources", source)
+                                                                             .extract()
+                                                                             .getAnnotations())
+                    .model()
+                    .getModel();
+    }
+
+    @TearDown
+    public void closeDatabase() throws Exception {
+        ywdb.close();
+    }
+
+    @Benchmark
+    public String graph() throws Exception {
+        return new DotGrapher(discard, discard).configure("view", view)
+                                               .model(model)
+                                               .graph()
+                                               .toString();
+    }
+}
@@ -0,0 +1,99 @@
+package org.yesworkflow.lineage;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yesworkflow.Language;
+import org.yesworkflow.bench.WorkloadGenerator;
+import org.yesworkflow.db.YWMemoryStore;
+import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.model.DefaultModeler;
+import org.yesworkflow.model.Model;
+
+/** Measures compiling a {@link LineageGraph} and answering lineage queries with it,
+ *  on scripts from {@link WorkloadGenerator} whose blocks each read two and write two
+ *  data items.  A script with 40000 blocks yields a graph of about 100000 nodes.  The
+ *  script is extracted and modeled once per trial, and the queries start from the
+ *  first and last nodes of the graph, whose closures span most of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LineageGraphBenchmark {
+
+    @Param({"1000", "10000", "40000"})
+    public int blocks;
+
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    private Path directory;
+    private Model model;
+    private LineageGraph graph;
+    private int first;
+    private int last;
+
+    @Setup
+    public void buildModel() throws Exception {
+        directory = Files.createTempDirectory("yw-bench");
+        Path script = new WorkloadGenerator().configure("blocks", blocks)
+                                             .configure("fanin", 2)
+                                             .configure("fanout", 2)
+                                             .writeSources(directory)
+                                             .get(0);
+        YWMemoryStore ywdb = new YWMemoryStore();
+        model = new DefaultModeler(ywdb, discard, discard)
+                    .annotations(new DefaultExtractor(ywdb, discard, discard).configure("sources", script.toString())
+                                                                             .extract()
+                                                                             .getAnnotations())
+                    .model()
+                    .getModel();
+        ywdb.close();
+        graph = LineageGraph.compile(model);
+        first = 0;
+        last = graph.nodeCount() - 1;
+    }
+
+    @TearDown
+    public void deleteScript() throws Exception {
+        Files.deleteIfExists(directory.resolve(WorkloadGenerator.scriptFileName(Language.PYTHON)));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public LineageGraph compile() {
+        return LineageGraph.compile(model);
+    }
+
+    @Benchmark
+    public BitSet upstream() {
+        return graph.upstream(last);
+    }
+
+    @Benchmark
+    public BitSet downstream() {
+        return graph.downstream(first);
+    }
+
+    @Benchmark
+    public int[] shortestPath() {
+        return graph.shortestPath(first, last);
+    }
+}
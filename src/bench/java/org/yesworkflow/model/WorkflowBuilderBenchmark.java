@@ -0,0 +1,76 @@
+package org.yesworkflow.model;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.extract.DefaultExtractor;
+
+/** Measures building the workflow model from the annotations of a script with
+ *  {@link DefaultModeler}, which assembles each program block with a
+ *  {@link WorkflowBuilder}, and deriving the model facts from the model.  Each
+ *  invocation models the annotations extracted into a fresh database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 20)
+@Fork(1)
+public class WorkflowBuilderBenchmark {
+
+    @Param({"src/main/resources/example.py",
+            "instances/small/inst_s.py",
+            "instances/medium/inst_m.py",
+            "instances/large/inst_l.py"})
+    public String source;
+
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    private YesWorkflowDB ywdb;
+    private List<Annotation> annotations;
+
+    @Setup(Level.Invocation)
+    public void extractAnnotations() throws Exception {
+        ywdb = YesWorkflowDB.createInMemoryDB();
+        annotations = new DefaultExtractor(ywdb, discard, discard).configure("sources", source)
+                                                                  .extract()
+                                                                  .getAnnotations();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeDatabase() throws SQLException {
+        ywdb.close();
+    }
+
+    @Benchmark
+    public Model model() throws Exception {
+        return new DefaultModeler(ywdb, discard, discard).annotations(annotations)
+                                                         .model()
+                                                         .getModel();
+    }
+
+    @Benchmark
+    public Map<String, String> modelFacts() throws Exception {
+        return new DefaultModeler(ywdb, discard, discard).annotations(annotations)
+                                                         .model()
+                                                         .getFacts();
+    }
+}
@@ -0,0 +1,78 @@
+package org.yesworkflow.model;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yesworkflow.Language;
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.bench.WorkloadGenerator;
+import org.yesworkflow.db.YWMemoryStore;
+import org.yesworkflow.extract.DefaultExtractor;
+
+/** Measures how building the workflow model scales with the number of ports, on
+ *  scripts from {@link WorkloadGenerator} whose blocks each read two and write two
+ *  data items, so that a script has about <code>ports</code> ports.  The script is
+ *  extracted once per trial into a {@link YWMemoryStore}, leaving the time measured
+ *  to {@link DefaultModeler} and its {@link WorkflowBuilder}s.  The time per port
+ *  should stay roughly constant as the number of ports grows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class WorkflowBuilderScalingBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int ports;
+
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    private Path directory;
+    private YWMemoryStore ywdb;
+    private List<Annotation> annotations;
+
+    @Setup
+    public void extractAnnotations() throws Exception {
+        directory = Files.createTempDirectory("yw-bench");
+        Path script = new WorkloadGenerator().configure("blocks", ports / 4)
+                                             .configure("fanin", 2)
+                                             .configure("fanout", 2)
+                                             .writeSources(directory)
+                                             .get(0);
+        ywdb = new YWMemoryStore();
+        annotations = new DefaultExtractor(ywdb, discard, discard).configure("sources", script.toString())
+                                                                  .extract()
+                                                                  .getAnnotations();
+    }
+
+    @TearDown
+    public void deleteScript() throws Exception {
+        ywdb.close();
+        Files.deleteIfExists(directory.resolve(WorkloadGenerator.scriptFileName(Language.PYTHON)));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Model model() throws Exception {
+        return new DefaultModeler(ywdb, discard, discard).annotations(annotations)
+                                                         .model()
+                                                         .getModel();
+    }
+}
@@ -0,0 +1,74 @@
+package org.yesworkflow.recon;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.model.DefaultModeler;
+import org.yesworkflow.model.Model;
+import org.yesworkflow.query.QueryEngine;
+
+/** Measures reconstructing the resources of a run with {@link ReconFacts}:
+ *  matching the URI templates of the model against the files in the run
+ *  directory and exporting the resulting facts.  The script is extracted and
+ *  modeled once per trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ReconFactsBenchmark {
+
+    @Param({"examples/simulate_data_collection"})
+    public String runDirectory;
+
+    @Param({"simulate_data_collection.py"})
+    public String script;
+
+    @Param({"SWIPL", "CSV"})
+    public QueryEngine queryEngine;
+
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+    private YesWorkflowDB ywdb;
+    private Run run;
+
+    @Setup
+    public void buildModel() throws Exception {
+        ywdb = YesWorkflowDB.createInMemoryDB();
+        Model model = new DefaultModeler(ywdb, discard, discard)
+                          .annotations(new DefaultExtractor(ywdb, discard, discard)
+                                           .configure("sources", runDirectory + "/" + script)
+                                           .extract()
+                                           .getAnnotations())
+                          .model()
+                          .getModel();
+        run = new Run(model, runDirectory);
+    }
+
+    @TearDown
+    public void closeDatabase() throws Exception {
+        ywdb.close();
+    }
+
+    @Benchmark
+    public Map<String, String> reconFacts() throws Exception {
+        return new ReconFacts(queryEngine, run, new FileResourceFinder()).build().facts();
+    }
+}
@@ -0,0 +1,385 @@
+package org.yesworkflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.yesworkflow.LanguageModel.MatchExtent;
+
+/**
+ * Table-driven finite automaton recognizing the comments delimited by the
+ * comment-delimiter strings of a {@link LanguageModel}.
+ *
+ * <p>The automaton is compiled from a language model by exploring every
+ * configuration reachable by the character-at-a-time comment matcher that
+ * compares a growing buffer of characters with the delimiter strings. Characters
+ * are first mapped to character classes (one class for each character occurring
+ * in a delimiter, one each for carriage return and line feed, and one for all
+ * other characters), and each state of the automaton then has one transition
+ * per character class.  Running the automaton thus requires two array lookups
+ * per character and no intermediate strings.</p>
+ *
+ * <p>Each transition carries an action telling the caller which characters, if
+ * any, to append to the text of the current comment: none, the last
+ * {@code n} characters read (including the current one), or an end of line
+ * signalling the end of the comment.  The characters to append are always the
+ * most recent ones read, although they may include characters from the previous
+ * line, so callers retain the last {@link #getMaxEmitLength()} characters.</p>
+ *
+ * <p>Instances are immutable and may be shared between threads.</p>
+ */
+public class DelimiterAutomaton {
+
+    /** Action value indicating that the current comment ends at this character. */
+    public static final int END_OF_COMMENT = -1;
+
+    /** Action value indicating that no characters are added to the current comment. */
+    public static final int NO_CHARACTERS = 0;
+
+    private static final int ASCII_SIZE = 128;
+
+    /** character class of each ASCII character */
+    private final int[] asciiClass = new int[ASCII_SIZE];
+
+    /** sorted non-ASCII delimiter characters and their character classes */
+    private final char[] otherCharacters;
+    private final int[] otherClasses;
+
+    /** class of characters that do not occur in any delimiter */
+    private final int defaultClass;
+    private final int classCount;
+
+    /** next state for each state and character class, indexed by state * classCount + class */
+    private final int[] nextState;
+
+    /** action for each state and character class, indexed as for nextState */
+    private final int[] action;
+
+    /** initial states for each value of the carried-over flag, and the flag in each state */
+    private final int initialStateSingle;
+    private final int initialStatePaired;
+    private final boolean[] lastFullMatchWasSingle;
+
+    private final int maxEmitLength;
+
+    /** Compiles the automaton for the comment delimiters of the given language model.
+     * @param languageModel The language model defining the comment delimiters.
+     */
+    public DelimiterAutomaton(LanguageModel languageModel) {
+
+        // collect the characters used in delimiters, one character class for each
+        Set<Character> delimiterCharacters = new LinkedHashSet<Character>();
+        delimiterCharacters.add('\n');
+        delimiterCharacters.add('\r');
+        for (String delimiter : languageModel.getSingleCommentDelimiters()) addCharacters(delimiter, delimiterCharacters);
+        for (Map.Entry<String, String> pair : languageModel.getPairedCommentDelimiters().entrySet()) {
+            addCharacters(pair.getKey(), delimiterCharacters);
+            addCharacters(pair.getValue(), delimiterCharacters);
+        }
+
+        List<Character> representatives = new ArrayList<Character>(delimiterCharacters);
+        defaultClass = representatives.size();
+        char other = 'a';
+        while (delimiterCharacters.contains(other)) other++;
+        representatives.add(other);
+        classCount = representatives.size();
+
+        Arrays.fill(asciiClass, defaultClass);
+        List<Character> nonAscii = new ArrayList<Character>();
+        for (int i = 0; i < defaultClass; ++i) {
+            char c = representatives.get(i);
+            if (c < ASCII_SIZE) asciiClass[c] = i;
+            else nonAscii.add(c);
+        }
+        otherCharacters = new char[nonAscii.size()];
+        for (int i = 0; i < otherCharacters.length; ++i) otherCharacters[i] = nonAscii.get(i);
+        Arrays.sort(otherCharacters);
+        otherClasses = new int[otherCharacters.length];
+        for (int i = 0; i < otherCharacters.length; ++i) otherClasses[i] = representatives.indexOf(otherCharacters[i]);
+
+        // explore the configurations reachable from the two possible initial configurations
+        Map<Configuration, Integer> stateForConfiguration = new HashMap<Configuration, Integer>();
+        List<Configuration> configurations = new ArrayList<Configuration>();
+        initialStatePaired = addState(Configuration.initial(false), stateForConfiguration, configurations);
+        initialStateSingle = addState(Configuration.initial(true), stateForConfiguration, configurations);
+
+        List<Integer> transitions = new ArrayList<Integer>();
+        List<Integer> actions = new ArrayList<Integer>();
+        int longestEmit = 1;
+        for (int state = 0; state < configurations.size(); ++state) {
+            for (int characterClass = 0; characterClass < classCount; ++characterClass) {
+                Configuration next = configurations.get(state).copy();
+                int emitted = next.step(languageModel, representatives.get(characterClass));
+                transitions.add(addState(next, stateForConfiguration, configurations));
+                actions.add(emitted);
+                longestEmit = Math.max(longestEmit, emitted);
+            }
+        }
+
+        nextState = toArray(transitions);
+        action = toArray(actions);
+        maxEmitLength = longestEmit;
+        lastFullMatchWasSingle = new boolean[configurations.size()];
+        for (int state = 0; state < configurations.size(); ++state) {
+            lastFullMatchWasSingle[state] = configurations.get(state).lastFullMatchWasSingle;
+        }
+    }
+
+    private static void addCharacters(String delimiter, Set<Character> characters) {
+        for (int i = 0; i < delimiter.length(); ++i) characters.add(delimiter.charAt(i));
+    }
+
+    private static int addState(Configuration configuration, Map<Configuration, Integer> stateForConfiguration,
+                                List<Configuration> configurations) {
+        Integer state = stateForConfiguration.get(configuration);
+        if (state == null) {
+            state = configurations.size();
+            stateForConfiguration.put(configuration, state);
+            configurations.add(configuration);
+        }
+        return state;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; ++i) array[i] = values.get(i);
+        return array;
+    }
+
+    /** Returns the state in which to start matching a new source.
+     * @param lastFullMatchWasSingle Whether the last comment start delimiter fully matched
+     *        before the start of the source was a single-line delimiter.  Carried over
+     *        from the end of the previous source, or false if there is none.
+     * @return The initial state.
+     */
+    public int initialState(boolean lastFullMatchWasSingle) {
+        return lastFullMatchWasSingle ? initialStateSingle : initialStatePaired;
+    }
+
+    /** Returns the value to pass to {@link #initialState(boolean)} when matching of a
+     *  following source starts after this source ends in the given state. */
+    public boolean lastFullMatchWasSingle(int state) {
+        return lastFullMatchWasSingle[state];
+    }
+
+    /** Returns the character class of the given character. */
+    public int characterClass(char c) {
+        if (c < ASCII_SIZE) return asciiClass[c];
+        int i = Arrays.binarySearch(otherCharacters, c);
+        return (i < 0) ? defaultClass : otherClasses[i];
+    }
+
+    /** Returns the index into the transition tables for the given state and character.
+     *  Pass the result to {@link #next(int)} and {@link #action(int)}. */
+    public int transition(int state, char c) {
+        return state * classCount + characterClass(c);
+    }
+
+    public int next(int transition) {
+        return nextState[transition];
+    }
+
+    public int action(int transition) {
+        return action[transition];
+    }
+
+    /** Returns the greatest number of characters any transition asks to be appended. */
+    public int getMaxEmitLength() {
+        return maxEmitLength;
+    }
+
+    public int getStateCount() {
+        return lastFullMatchWasSingle.length;
+    }
+
+    /** The phases of the character-at-a-time comment matcher. */
+    private enum Phase {
+        IN_CODE,
+        IN_PREFIX,
+        IN_SINGLE_LINE_COMMENT,
+        IN_MULTI_LINE_COMMENT,
+    }
+
+    /** A configuration of the character-at-a-time comment matcher, i.e. its phase and
+     *  buffer together with the delimiters it remembers.  Fields that cannot affect
+     *  later behavior in the current phase are cleared so that equivalent
+     *  configurations compile to the same state. */
+    private static class Configuration {
+
+        Phase phase;
+        String buffer;
+        String commentStartToken;
+        String lastFullMatch;
+        boolean lastFullMatchWasSingle;
+
+        static Configuration initial(boolean lastFullMatchWasSingle) {
+            Configuration configuration = new Configuration();
+            configuration.phase = Phase.IN_CODE;
+            configuration.buffer = "";
+            configuration.lastFullMatchWasSingle = lastFullMatchWasSingle;
+            return configuration;
+        }
+
+        Configuration copy() {
+            Configuration copy = new Configuration();
+            copy.phase = phase;
+            copy.buffer = buffer;
+            copy.commentStartToken = commentStartToken;
+            copy.lastFullMatch = lastFullMatch;
+            copy.lastFullMatchWasSingle = lastFullMatchWasSingle;
+            return copy;
+        }
+
+        /** Advances the matcher by one character and returns the action for the transition. */
+        @SuppressWarnings("incomplete-switch")
+        int step(LanguageModel languageModel, char c) {
+
+            int emitted = NO_CHARACTERS;
+            Phase nextPhase = phase;
+            buffer = buffer + c;
+
+            switch(phase) {
+
+            case IN_CODE:
+
+                lastFullMatch = null;
+
+                switch(languageModel.commentStartMatches(buffer)) {
+
+                    case FULL_MATCH_SINGLE:
+                        nextPhase = Phase.IN_SINGLE_LINE_COMMENT;
+                        buffer = "";
+                        break;
+
+                    case FULL_MATCH_PAIRED:
+                        nextPhase = Phase.IN_MULTI_LINE_COMMENT;
+                        commentStartToken = buffer;
+                        buffer = "";
+                        break;
+
+                    case PREFIX_MATCH:
+                        nextPhase = Phase.IN_PREFIX;
+                        break;
+
+                    case FULL_MATCH_SINGLE_PREFIX_MATCH_PAIRED:
+                        lastFullMatch = buffer;
+                        lastFullMatchWasSingle = true;
+                        nextPhase = Phase.IN_PREFIX;
+                        break;
+
+                    case FULL_MATCH_PAIRED_PREFIX_MATCH_SINGLE:
+                        lastFullMatch = buffer;
+                        lastFullMatchWasSingle = false;
+                        nextPhase = Phase.IN_PREFIX;
+                        break;
+
+                    default:
+                        nextPhase = Phase.IN_CODE;
+                        buffer = "";
+                }
+
+                break;
+
+            case IN_PREFIX:
+
+                switch(languageModel.commentStartMatches(buffer)) {
+
+                    case FULL_MATCH_SINGLE:
+                        nextPhase = Phase.IN_SINGLE_LINE_COMMENT;
+                        buffer = "";
+                        break;
+
+                    case FULL_MATCH_PAIRED:
+                        nextPhase = Phase.IN_MULTI_LINE_COMMENT;
+                        commentStartToken = buffer;
+                        buffer = "";
+                        break;
+
+                    case NO_MATCH:
+                        if (lastFullMatch == null) {
+                            nextPhase = Phase.IN_CODE;
+                        } else {
+                            commentStartToken = lastFullMatch;
+                            nextPhase = (lastFullMatchWasSingle) ?
+                                    Phase.IN_SINGLE_LINE_COMMENT :
+                                    Phase.IN_MULTI_LINE_COMMENT;
+                        }
+                        buffer = String.valueOf(c);
+                        break;
+
+                    case PREFIX_MATCH:
+                        nextPhase = Phase.IN_PREFIX;
+                        break;
+
+                    case FULL_MATCH_SINGLE_PREFIX_MATCH_PAIRED:
+                    case FULL_MATCH_PAIRED_PREFIX_MATCH_SINGLE:
+                        lastFullMatch = buffer;
+                        nextPhase = Phase.IN_PREFIX;
+                        break;
+
+                    default:
+                        nextPhase = Phase.IN_CODE;
+                        buffer = "";
+                }
+
+                break;
+
+            case IN_SINGLE_LINE_COMMENT:
+
+                if (c == '\r' || c == '\n') {
+                    nextPhase = Phase.IN_CODE;
+                    emitted = END_OF_COMMENT;
+                } else {
+                    emitted = buffer.length();
+                }
+                buffer = "";
+
+                break;
+
+            case IN_MULTI_LINE_COMMENT:
+
+                // a start token without an end delimiter (possible only for single-line delimiters
+                // that are also prefixes of paired ones) never ends the comment
+                MatchExtent endMatch = languageModel.getPairedCommentDelimiters().containsKey(commentStartToken) ?
+                        languageModel.commentEndMatches(buffer, commentStartToken) : MatchExtent.NO_MATCH;
+                if (endMatch == MatchExtent.NO_MATCH) {
+                    emitted = buffer.length();
+                    buffer = "";
+                } else if (endMatch == MatchExtent.FULL_MATCH_PAIRED) {
+                    nextPhase = Phase.IN_CODE;
+                    emitted = END_OF_COMMENT;
+                    buffer = "";
+                }
+
+                break;
+            }
+
+            phase = nextPhase;
+            if (phase != Phase.IN_PREFIX) lastFullMatch = null;
+            if (phase != Phase.IN_MULTI_LINE_COMMENT) commentStartToken = null;
+
+            return emitted;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Configuration)) return false;
+            Configuration other = (Configuration) o;
+            return phase == other.phase &&
+                   buffer.equals(other.buffer) &&
+                   Objects.equals(commentStartToken, other.commentStartToken) &&
+                   Objects.equals(lastFullMatch, other.lastFullMatch) &&
+                   lastFullMatchWasSingle == other.lastFullMatchWasSingle;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(phase, buffer, commentStartToken, lastFullMatch, lastFullMatchWasSingle);
+        }
+    }
+}
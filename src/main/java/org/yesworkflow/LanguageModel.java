@@ -1,6 +1,7 @@
 package org.yesworkflow;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -20,7 +21,8 @@ import java.util.HashMap;
  * 
  * <p>Provides methods for comparing potential comment delimiter strings 
  * with those defined for the language.  These methods determine if there is 
- * a partial or full match with any of them.
+ * a partial or full match with any of them, and compiles the delimiters into a
+ * {@link DelimiterAutomaton} for matching comments in source code.</p>
  */
 public class LanguageModel {
 
@@ -33,6 +35,16 @@ public class LanguageModel {
     /** Backing for collection of paired comment delimiters. */
     private Map<String,String> pairedCommentDelimiters = new LinkedHashMap<String,String>();
     
+    /** Automaton compiled from the delimiters of this model, or null if not yet compiled. */
+    private volatile DelimiterAutomaton delimiterAutomaton = null;
+
+    /** True while the delimiters of this model are the standard ones for its language. */
+    private boolean hasStandardDelimiters = false;
+
+    /** Automata compiled from the standard delimiters of each language. */
+    private static final Map<Language,DelimiterAutomaton> standardAutomata = 
+            new EnumMap<Language,DelimiterAutomaton>(Language.class);
+
     /** Mapping from recognized source file extensions to programming languages.*/
     private static Map<String,Language> languageForExtension;
     static {
@@ -70,6 +82,17 @@ public class LanguageModel {
         return language;
     }
 
+    /** Utility method for determining if the extension of the provided file name
+     * is one from which {@link #languageForFileName(String) languageForFileName()}
+     * infers a language.
+     * @param fileName The name of the file.
+     * @return True if the extension of the file is recognized.
+     */
+    public static boolean hasRecognizedExtension(String fileName) {
+        int i = fileName.lastIndexOf(".");
+        return i != -1 && languageForExtension.containsKey(fileName.substring(i+1).toLowerCase());
+    }
+
     /** Constructor for models of languages not explicitly supported by 
      *  YesWorkflow. Comment delimiter strings can be assigned using 
      *  the {@link #singleDelimiter(String) delimiter()} and 
@@ -77,6 +100,7 @@ public class LanguageModel {
      */    
     public LanguageModel() {
         this.language = Language.GENERIC;
+        hasStandardDelimiters = true;
     }
     
     /** Constructor that builds a model for the given language.
@@ -85,6 +109,7 @@ public class LanguageModel {
     public LanguageModel(Language language) {
         this.language = language;
         assignCommentDelimiters();
+        hasStandardDelimiters = (language != null);
     }
             
     /** Constructor that builds a model for the language inferred
@@ -131,6 +156,7 @@ public class LanguageModel {
      */
     public void singleDelimiter(String start) {
         singleCommentDelimiters.add(start);
+        delimitersChanged();
     }
 
     /** Adds a pair of comment-delimiting strings to the model.
@@ -139,6 +165,43 @@ public class LanguageModel {
      */
     public void delimiterPair(String start, String end) {
         pairedCommentDelimiters.put(start, end);
+        delimitersChanged();
+    }
+
+    private void delimitersChanged() {
+        hasStandardDelimiters = false;
+        delimiterAutomaton = null;
+    }
+
+    /** Provides the automaton recognizing comments delimited as defined by this model.
+     *  The automaton for the standard delimiters of a language is compiled once and
+     *  shared by all models of that language; the automaton for a model with other
+     *  delimiters is compiled when first requested after the delimiters change.
+     *  @return The compiled comment-delimiter automaton.
+     */
+    public DelimiterAutomaton getDelimiterAutomaton() {
+        DelimiterAutomaton automaton = delimiterAutomaton;
+        if (automaton == null) {
+            synchronized(this) {
+                if (delimiterAutomaton == null) {
+                    delimiterAutomaton = hasStandardDelimiters ? 
+                            standardAutomaton(this) : new DelimiterAutomaton(this);
+                }
+                automaton = delimiterAutomaton;
+            }
+        }
+        return automaton;
+    }
+
+    private static DelimiterAutomaton standardAutomaton(LanguageModel model) {
+        synchronized(standardAutomata) {
+            DelimiterAutomaton automaton = standardAutomata.get(model.language);
+            if (automaton == null) {
+                automaton = new DelimiterAutomaton(model);
+                standardAutomata.put(model.language, automaton);
+            }
+            return automaton;
+        }
     }
     
     /** Enumeration of match conditions returned from comment delimiter matching methods.
@@ -10,6 +10,10 @@ public abstract class AliasableAnnotation extends Annotation {
         super(id, sourceId, lineNumber, comment, tag);
     }
 
+    public AliasableAnnotation(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Tag tag) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, tag);
+    }
+
 	public AliasableAnnotation qualifyWith(Qualification qualification) throws Exception {
 		
 		if (qualification instanceof As) {
@@ -1,6 +1,7 @@
 package org.yesworkflow.annotations;
 
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.StringTokenizer;
 import java.util.function.Function;
 
@@ -43,6 +44,30 @@ public abstract class Annotation {
         }
     }
 
+    /** Constructs an annotation from a comment already split into its keyword and value,
+     *  as by {@link org.yesworkflow.extract.AnnotationTokenizer AnnotationTokenizer}.
+     */
+    public Annotation(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Tag tag) throws YWMarkupException {
+
+        this.id = id;
+        this.sourceId = sourceId;
+        this.lineNumber = lineNumber;
+        this.comment = comment;
+        this.tag = tag;
+        this.keyword = keyword;
+
+        String tagName = tag.name();
+        if (keyword.length() != tagName.length() + 1 || keyword.charAt(0) != '@' ||
+            !keyword.regionMatches(true, 1, tagName, 0, tagName.length())) {
+            throw new YWMarkupException("Wrong keyword for @" + tagName.toLowerCase() + " annotation: " + keyword);
+        }
+
+        if (value == null) {
+            throw new YWMarkupException("No argument provided to " + keyword + " keyword on line " + lineNumber);
+        }
+        this.value = value;
+    }
+
     public Annotation qualifyWith(Qualification qualification) throws Exception {
         if (qualification instanceof Desc) {
             this.description = (Desc) qualification;
@@ -66,4 +91,25 @@ public abstract class Annotation {
         return provFactory.newActivity(qualifierMethod.apply(this.value().trim()), this.descriptionClean());
     }
 
+    /** Annotations are equal if they are of the same class and were parsed from the same
+     *  comment at the same place, so that an annotation recreated from the columns of an
+     *  {@link org.yesworkflow.extract.AnnotationStore AnnotationStore} equals the one stored. */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other == null || other.getClass() != getClass()) return false;
+        Annotation annotation = (Annotation) other;
+        return Objects.equals(id, annotation.id) &&
+               Objects.equals(sourceId, annotation.sourceId) &&
+               Objects.equals(lineNumber, annotation.lineNumber) &&
+               Objects.equals(keyword, annotation.keyword) &&
+               Objects.equals(value, annotation.value) &&
+               Objects.equals(comment, annotation.comment);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, sourceId, lineNumber);
+    }
+
 }
@@ -13,6 +13,10 @@ public class As extends Qualification {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.AS, primaryAnnotation);
     }
 
+    public As(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Annotation primaryAnnotation) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, YWKeywords.Tag.AS, primaryAnnotation);
+    }
+
     @Override
     public StatementOrBundle getProvenanceInfo(ProvFactory provFactory, Function<String, QualifiedName> qualifierMethod) {
         return provFactory.newAlternateOf(qualifierMethod.apply(this.value().trim()),
@@ -7,5 +7,9 @@ public class Begin extends Delimiter {
     public Begin(Long id, Long sourceId, Long lineNumber, String comment) throws Exception {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.BEGIN);
     }
+
+    public Begin(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, YWKeywords.Tag.BEGIN);
+    }
 }
 
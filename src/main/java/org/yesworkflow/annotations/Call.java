@@ -17,6 +17,10 @@ public class Call extends Annotation {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.CALL);
     }
 
+    public Call(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, YWKeywords.Tag.CALL);
+    }
+
     @Override
     public String toString() {
 
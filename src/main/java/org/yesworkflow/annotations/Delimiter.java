@@ -7,6 +7,10 @@ public abstract class Delimiter extends Annotation {
     public Delimiter(Long id, Long sourceId, Long lineNumber, String comment, Tag tag) throws Exception {
     	super(id, sourceId, lineNumber, comment, tag);    	
     }
+
+    public Delimiter(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Tag tag) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, tag);
+    }
     
     @Override
     public String toString() {
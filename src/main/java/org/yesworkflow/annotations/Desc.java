@@ -18,6 +18,14 @@ public class Desc extends Qualification {
         primaryAnnotation.qualifyWith(this);
     }
 
+    /** Constructs a description from a comment already split into its keyword and
+     *  the description text following it, the tokens of which are separated by single spaces.
+     */
+    public Desc(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String description, Annotation primaryAnnotation) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, description, YWKeywords.Tag.DESC, primaryAnnotation);
+        primaryAnnotation.qualifyWith(this);
+    }
+
     public String description() {
         return value;
     }
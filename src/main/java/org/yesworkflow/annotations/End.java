@@ -13,6 +13,10 @@ public class End extends Delimiter {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.END);
     }
 
+    public End(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, YWKeywords.Tag.END);
+    }
+
     @Override
     public StatementOrBundle getProvenanceInfo(ProvFactory provFactory, Function<String, QualifiedName> qualifierMethod) {
         return null;
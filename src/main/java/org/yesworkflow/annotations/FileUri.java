@@ -12,6 +12,10 @@ public class FileUri extends UriAnnotation {
     public FileUri(Long id, Long sourceId, Long lineNumber, String comment, Annotation primaryAnnotation) throws Exception {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.FILE, primaryAnnotation);
     }
+
+    public FileUri(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Annotation primaryAnnotation) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, YWKeywords.Tag.FILE, primaryAnnotation);
+    }
     
     public String toString() {
         return value;
@@ -14,6 +14,10 @@ public abstract class Flow extends AliasableAnnotation {
     public Flow(Long id, Long sourceId, Long lineNumber, String comment, Tag tag) throws Exception {
     	super(id, sourceId, lineNumber, comment, tag);    	
     }
+
+    public Flow(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Tag tag) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, tag);
+    }
 	
     @Override
     public Flow qualifyWith(Qualification qualification) throws Exception {
@@ -13,4 +13,12 @@ public class In extends Flow {
         super(id, sourceId, lineNumber, comment, tag);
     }
 
+    public In(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, YWKeywords.Tag.IN);
+    }
+
+    public In(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Tag tag) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, tag);
+    }
+
 }
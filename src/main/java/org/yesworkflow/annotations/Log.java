@@ -4,6 +4,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 import org.openprovenance.prov.model.ProvFactory;
 import org.openprovenance.prov.model.QualifiedName;
@@ -27,6 +28,17 @@ public class Log extends Qualification {
         identifyTemplateVariables();
     }
 
+    /** Constructs a log annotation from a comment already split into its keyword and
+     *  the template following it, the tokens of which are separated by single spaces.
+     *  The variables of the template are numbered with IDs taken from <code>variableIds</code>.
+     */
+    public Log(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String template,
+               Out primaryAnnotation, LongSupplier variableIds) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, template, YWKeywords.Tag.LOG, primaryAnnotation);
+        entryTemplate = new LogEntryTemplate(value, variableIds);
+        identifyTemplateVariables();
+    }
+
     private String buildTemplateString(StringTokenizer commentTokens) {
         StringBuilder templateBuilder = new StringBuilder();
         while (commentTokens.hasMoreTokens()) {
@@ -18,6 +18,14 @@ public class Out extends Flow {
         super(id, sourceId, lineNumber, comment, tag);
     }    
 
+    public Out(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, YWKeywords.Tag.OUT);
+    }
+
+    public Out(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Tag tag) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, tag);
+    }
+
     @Override
     public Flow qualifyWith(Qualification qualification) throws Exception {
         
@@ -7,4 +7,8 @@ public class Param extends In {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.PARAM);
     }
 
+    public Param(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, YWKeywords.Tag.PARAM);
+    }
+
 }
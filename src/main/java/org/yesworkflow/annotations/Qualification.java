@@ -17,4 +17,16 @@ public class Qualification extends Annotation {
         this.primaryAnnotation = primaryAnnotation;
         primaryAnnotation.qualifyWith(this);
 	}
+
+    public Qualification(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Tag tag, Annotation primaryAnnotation) throws Exception {
+
+        super(id, sourceId, lineNumber, comment, keyword, value, tag);
+
+        if (primaryAnnotation == null) {
+            throw new Exception("Qualification annotation found before primary annotation.");
+        }
+
+        this.primaryAnnotation = primaryAnnotation;
+        primaryAnnotation.qualifyWith(this);
+    }
 }
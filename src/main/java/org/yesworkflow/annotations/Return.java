@@ -7,4 +7,8 @@ public class Return extends Out {
         super(id, sourceId, lineNumber, comment, YWKeywords.Tag.RETURN);
     }
 
+    public Return(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, YWKeywords.Tag.RETURN);
+    }
+
 }
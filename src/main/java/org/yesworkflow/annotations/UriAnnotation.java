@@ -17,6 +17,14 @@ public class UriAnnotation extends Qualification {
     protected UriAnnotation(Long id, Long sourceId, Long lineNumber,String comment, Tag tag, Annotation primaryAnnotation) throws Exception {
         super(id, sourceId, lineNumber,comment, tag, primaryAnnotation);
     }
+
+    public UriAnnotation(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Annotation primaryAnnotation) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, YWKeywords.Tag.URI, primaryAnnotation);
+    }
+
+    protected UriAnnotation(Long id, Long sourceId, Long lineNumber, String comment, String keyword, String value, Tag tag, Annotation primaryAnnotation) throws Exception {
+        super(id, sourceId, lineNumber, comment, keyword, value, tag, primaryAnnotation);
+    }
     
     public String toString() {
         return value;
@@ -0,0 +1,429 @@
+package org.yesworkflow.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.yesworkflow.Language;
+import org.yesworkflow.LanguageModel;
+import org.yesworkflow.config.Configurable;
+import org.yesworkflow.exceptions.YWToolUsageException;
+
+/** Class for generating synthetic YW-annotated scripts, and run directories
+ *  matching them, of any size and shape, for stress-testing extraction,
+ *  modeling, graphing and reconstruction.  The same configuration always
+ *  generates the same files.
+ *
+ *  <p>The script is a top-level workflow named <code>workload</code> holding
+ *  <code>blocks</code> program blocks.  The blocks form stacks of
+ *  <code>depth</code> blocks, each block of a stack nested in the one before it
+ *  and declaring the same ports as the innermost block, which does the work.
+ *  The innermost block of each stack reads <code>fanin</code> data items,
+ *  chosen at random from those written by earlier stacks, and writes
+ *  <code>fanout</code> new ones.  Data read but written by no stack become inputs
+ *  of the workflow, and data written but read by no stack become its outputs.</p>
+ *
+ *  <p>If <code>uritemplate</code> is set, each output of an innermost block carries
+ *  a <code>@uri</code> made from the template by replacing <code>&lt;block&gt;</code>
+ *  with the name of the block and <code>&lt;port&gt;</code> with the index of the
+ *  port, e.g. <code>file:run/&lt;block&gt;/out_&lt;port&gt;_{sample}.csv</code>.  If
+ *  <code>logtemplate</code> is set, each innermost block also writes the
+ *  <code>run_log</code> output to <code>logfile</code>, with a <code>@log</code>
+ *  made from the template in the same way.</p>
+ *
+ *  <p>{@link #writeRun(Path)} creates <code>samples</code> files for each
+ *  <code>@uri</code> and <code>samples</code> entries in the log file for each
+ *  <code>@log</code>, giving every URI and log variable of the n-th file or entry
+ *  the value n.</p>
+ *
+ *  <p>Annotations are written in single-line comments of the language if it has
+ *  them, and in delimited comments otherwise.  {@link Language#GENERIC} has no
+ *  comment delimiters, so generic scripts use '#' and must be extracted with
+ *  <code>extract.comment=#</code>.</p>
+ */
+public class WorkloadGenerator implements Configurable {
+
+    private static final Pattern URI_VARIABLE = Pattern.compile("\\{[^}]*\\}");
+    private static final String LOG_DATA = "run_log";
+
+    private List<Language> languages = Arrays.asList(Language.PYTHON);
+    private int blockCount = 100;
+    private int depth = 1;
+    private int fanIn = 1;
+    private int fanOut = 1;
+    private int sampleCount = 1;
+    private long seed = 1;
+    private String uriTemplate = null;
+    private String logTemplate = null;
+    private String logFile = "run/run_log.txt";
+
+    private List<Stack> stacks = null;
+
+    @Override
+    public WorkloadGenerator configure(Map<String, Object> config) throws Exception {
+        if (config != null) {
+            for (Map.Entry<String, Object> entry : config.entrySet()) {
+                configure(entry.getKey(), entry.getValue());
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public WorkloadGenerator configure(String key, Object value) throws Exception {
+        if (key.equalsIgnoreCase("language")) {
+            if (value.toString().trim().equalsIgnoreCase("all")) {
+                languages = Arrays.asList(Language.values());
+            } else {
+                languages = new ArrayList<Language>();
+                for (String language : value.toString().split(",")) {
+                    languages.add(toLanguage(language.trim()));
+                }
+            }
+        } else if (key.equalsIgnoreCase("blocks")) {
+            blockCount = parsePositiveInteger(key, value);
+        } else if (key.equalsIgnoreCase("depth")) {
+            depth = parsePositiveInteger(key, value);
+        } else if (key.equalsIgnoreCase("fanin")) {
+            fanIn = parsePositiveInteger(key, value);
+        } else if (key.equalsIgnoreCase("fanout")) {
+            fanOut = parsePositiveInteger(key, value);
+        } else if (key.equalsIgnoreCase("samples")) {
+            sampleCount = parsePositiveInteger(key, value);
+        } else if (key.equalsIgnoreCase("seed")) {
+            try {
+                seed = (value instanceof Number) ? ((Number) value).longValue() : Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new YWToolUsageException("Value of " + key + " must be an integer: " + value);
+            }
+        } else if (key.equalsIgnoreCase("uritemplate")) {
+            uriTemplate = (String) value;
+        } else if (key.equalsIgnoreCase("logtemplate")) {
+            logTemplate = (String) value;
+        } else if (key.equalsIgnoreCase("logfile")) {
+            logFile = (String) value;
+        } else {
+            throw new YWToolUsageException("Unrecognized workload setting: " + key);
+        }
+
+        stacks = null;
+        return this;
+    }
+
+    private static Language toLanguage(String language) throws YWToolUsageException {
+        try {
+            return Language.toLanguage(language);
+        } catch (Exception e) {
+            throw new YWToolUsageException("Unrecognized language: " + language);
+        }
+    }
+
+    private static int parsePositiveInteger(String key, Object value) throws YWToolUsageException {
+        int n;
+        try {
+            n = (value instanceof Number) ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new YWToolUsageException("Value of " + key + " must be an integer: " + value);
+        }
+        if (n < 1) {
+            throw new YWToolUsageException("Value of " + key + " must be at least 1: " + value);
+        }
+        return n;
+    }
+
+    /** @return The languages sources are generated in. */
+    public List<Language> getLanguages() {
+        return Collections.unmodifiableList(languages);
+    }
+
+    /** Returns the name of the script file generated for a language.
+     * @param language The language of the script.
+     * @return The file name, with an extension from which YW infers the language.
+     */
+    public static String scriptFileName(Language language) {
+        switch (language) {
+            case BASH:      return "workload.sh";
+            case C:         return "workload.c";
+            case CPLUSPLUS: return "workload.cpp";
+            case JAVA:      return "workload.java";
+            case MATLAB:    return "workload.m";
+            case PYTHON:    return "workload.py";
+            case R:         return "workload.R";
+            case SAS:       return "workload.sas";
+            default:        return "workload.txt";
+        }
+    }
+
+    /** Generates the annotated script in the given language.
+     * @param language The language of the script.
+     * @return The text of the script.
+     */
+    public String script(Language language) {
+
+        ScriptWriter script = new ScriptWriter(language);
+        List<Stack> stacks = stacks();
+
+        Set<String> written = new HashSet<String>();
+        Set<String> read = new HashSet<String>();
+        for (Stack stack : stacks) {
+            written.addAll(stack.outputs);
+            read.addAll(stack.inputs);
+        }
+        Set<String> workflowInputs = new LinkedHashSet<String>();
+        Set<String> workflowOutputs = new LinkedHashSet<String>();
+        for (Stack stack : stacks) {
+            for (String input : stack.inputs) {
+                if (!written.contains(input)) workflowInputs.add(input);
+            }
+            for (String output : stack.outputs) {
+                if (!read.contains(output)) workflowOutputs.add(output);
+            }
+        }
+
+        script.annotation(0, "@begin workload @desc Synthetic workflow of " + blockCount + " program blocks");
+        for (String input : workflowInputs) script.annotation(0, "@in " + input);
+        for (String output : workflowOutputs) script.annotation(0, "@out " + output);
+        if (logTemplate != null) script.annotation(0, "@out " + LOG_DATA);
+
+        for (Stack stack : stacks) {
+            for (int level = 0; level < stack.blocks.size(); ++level) {
+                String block = stack.blocks.get(level);
+                boolean innermost = (level == stack.blocks.size() - 1);
+                int indent = level + 1;
+                script.annotation(indent, "@begin " + block);
+                for (String input : stack.inputs) script.annotation(indent, "@in " + input);
+                for (int port = 0; port < stack.outputs.size(); ++port) {
+                    String output = stack.outputs.get(port);
+                    if (innermost && uriTemplate != null) {
+                        script.annotation(indent, "@out " + output + " @uri " + expand(uriTemplate, block, port));
+                    } else {
+                        script.annotation(indent, "@out " + output);
+                    }
+                }
+                if (logTemplate != null) {
+                    if (innermost) {
+                        script.annotation(indent, "@out " + LOG_DATA + " @uri file:" + logFile +
+                                                  " @log " + expand(logTemplate, block, 0));
+                    } else {
+                        script.annotation(indent, "@out " + LOG_DATA);
+                    }
+                }
+            }
+            String innermostBlock = stack.blocks.get(stack.blocks.size() - 1);
+            script.code(stack.blocks.size() + 1, String.join(", ", stack.outputs) + " = " +
+                                                 innermostBlock + "(" + String.join(", ", stack.inputs) + ")");
+            for (int level = stack.blocks.size() - 1; level >= 0; --level) {
+                script.annotation(level + 1, "@end " + stack.blocks.get(level));
+            }
+        }
+
+        script.annotation(0, "@end workload");
+        return script.toString();
+    }
+
+    /** Writes the script in each configured language to a directory.
+     * @param directory The directory, created if needed.
+     * @return The paths of the scripts written.
+     * @throws IOException If an error occurs writing the scripts.
+     */
+    public List<Path> writeSources(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> sources = new ArrayList<Path>();
+        for (Language language : languages) {
+            Path source = directory.resolve(scriptFileName(language));
+            Files.write(source, script(language).getBytes(StandardCharsets.UTF_8));
+            sources.add(source);
+        }
+        return sources;
+    }
+
+    /** Writes the files that a run of the script would have produced: <code>samples</code>
+     *  files for each <code>@uri</code>, and the log file with <code>samples</code> entries
+     *  for each <code>@log</code>.  URIs are resolved against the base directory of the run.
+     * @param runDirectoryBase The base directory of the run, created if needed.
+     * @return The number of files written.
+     * @throws IOException If an error occurs writing the files.
+     */
+    public int writeRun(Path runDirectoryBase) throws IOException {
+
+        Files.createDirectories(runDirectoryBase);
+        int fileCount = 0;
+        StringBuilder log = new StringBuilder();
+
+        for (Stack stack : stacks()) {
+            String block = stack.blocks.get(stack.blocks.size() - 1);
+            for (int sample = 1; sample <= sampleCount; ++sample) {
+                if (uriTemplate != null) {
+                    for (int port = 0; port < stack.outputs.size(); ++port) {
+                        String uri = assignVariables(expand(uriTemplate, block, port), sample);
+                        Path file = runDirectoryBase.resolve(uriPath(uri));
+                        if (file.getParent() != null) Files.createDirectories(file.getParent());
+                        Files.write(file, (stack.outputs.get(port) + " " + sample + "\n").getBytes(StandardCharsets.UTF_8));
+                        fileCount++;
+                    }
+                }
+                if (logTemplate != null) {
+                    log.append(assignVariables(expand(logTemplate, block, 0), sample)).append('\n');
+                }
+            }
+        }
+
+        if (logTemplate != null) {
+            Path file = runDirectoryBase.resolve(logFile);
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            Files.write(file, log.toString().getBytes(StandardCharsets.UTF_8));
+            fileCount++;
+        }
+
+        return fileCount;
+    }
+
+    private static String expand(String template, String block, int port) {
+        return template.replace("<block>", block).replace("<port>", String.valueOf(port));
+    }
+
+    private static String assignVariables(String template, int sample) {
+        return URI_VARIABLE.matcher(template).replaceAll(Matcher.quoteReplacement(String.valueOf(sample)));
+    }
+
+    private static String uriPath(String uri) {
+        return uri.startsWith("file:") ? uri.substring("file:".length()) : uri;
+    }
+
+    /** Lays out the blocks in stacks and connects them, once per configuration. */
+    private List<Stack> stacks() {
+
+        if (stacks != null) return stacks;
+
+        Random random = new Random(seed);
+        List<String> written = new ArrayList<String>();
+        int inputCount = 0;
+        stacks = new ArrayList<Stack>();
+
+        for (int first = 1; first <= blockCount; first += depth) {
+
+            Stack stack = new Stack();
+            int stackIndex = stacks.size() + 1;
+            for (int block = first; block < first + depth && block <= blockCount; ++block) {
+                stack.blocks.add("step_" + block);
+            }
+
+            Set<String> inputs = new LinkedHashSet<String>();
+            int writtenInputCount = Math.min(fanIn, written.size());
+            while (inputs.size() < writtenInputCount) {
+                inputs.add(written.get(random.nextInt(written.size())));
+            }
+            while (inputs.size() < fanIn) {
+                inputs.add("input_" + (++inputCount));
+            }
+            stack.inputs.addAll(inputs);
+
+            for (int port = 1; port <= fanOut; ++port) {
+                stack.outputs.add("data_" + stackIndex + "_" + port);
+            }
+            written.addAll(stack.outputs);
+            stacks.add(stack);
+        }
+
+        return stacks;
+    }
+
+    /** Blocks nested one in another, and the data read and written by the innermost. */
+    private static class Stack {
+        final List<String> blocks = new ArrayList<String>();
+        final List<String> inputs = new ArrayList<String>();
+        final List<String> outputs = new ArrayList<String>();
+    }
+
+    /** Writes annotations in the comments of a language, and code lines. */
+    private static class ScriptWriter {
+
+        private final StringBuilder text = new StringBuilder();
+        private final String commentStart;
+        private final String commentEnd;
+        private final String statementEnd;
+
+        ScriptWriter(Language language) {
+            LanguageModel languageModel = new LanguageModel(language);
+            List<String> singles = languageModel.getSingleCommentDelimiters();
+            String start = (language == Language.GENERIC) ? "#" : null;
+            String end = "";
+            if (start == null && !singles.isEmpty()) {
+                start = singles.get(0);
+            } else if (start == null) {
+                for (Map.Entry<String, String> pair : languageModel.getPairedCommentDelimiters().entrySet()) {
+                    if (start == null || pair.getKey().length() > start.length()) {
+                        start = pair.getKey();
+                        end = " " + pair.getValue();
+                    }
+                }
+            }
+            commentStart = start;
+            commentEnd = end;
+            statementEnd = (language == Language.C || language == Language.CPLUSPLUS || language == Language.JAVA ||
+                            language == Language.MATLAB || language == Language.SAS) ? ";" : "";
+        }
+
+        void annotation(int indent, String annotation) {
+            indent(indent);
+            text.append(commentStart).append(' ').append(annotation).append(commentEnd).append('\n');
+        }
+
+        void code(int indent, String code) {
+            indent(indent);
+            text.append(code).append(statementEnd).append('\n');
+        }
+
+        private void indent(int indent) {
+            for (int i = 0; i < indent; ++i) text.append("    ");
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    /** Generates sources and a run directory from the command line.
+     *  Usage: <code>WorkloadGenerator directory [setting=value ...]</code>,
+     *  e.g. <code>WorkloadGenerator /tmp/workload language=all blocks=10000 depth=3
+     *  fanin=2 fanout=4 samples=10 uritemplate=file:run/&lt;block&gt;/{sample}_&lt;port&gt;.csv</code>.
+     * @param args The output directory followed by settings.
+     * @throws Exception If a setting is invalid or the files cannot be written.
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length == 0) {
+            System.err.println("Usage: WorkloadGenerator directory [setting=value ...]");
+            System.err.println("Settings: language, blocks, depth, fanin, fanout, samples, seed, " +
+                               "uritemplate, logtemplate, logfile");
+            System.exit(1);
+        }
+
+        WorkloadGenerator generator = new WorkloadGenerator();
+        for (int i = 1; i < args.length; ++i) {
+            int equals = args[i].indexOf('=');
+            if (equals < 0) throw new YWToolUsageException("Setting must have the form name=value: " + args[i]);
+            generator.configure(args[i].substring(0, equals), args[i].substring(equals + 1));
+        }
+
+        Path directory = Paths.get(args[0]);
+        for (Path source : generator.writeSources(directory)) {
+            System.out.println("Wrote " + source);
+        }
+        System.out.println("Wrote " + generator.writeRun(directory) + " run files under " + directory);
+    }
+}
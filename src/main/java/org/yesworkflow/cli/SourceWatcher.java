@@ -0,0 +1,140 @@
+package org.yesworkflow.cli;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/** Class that watches directories for files being created, modified or deleted
+ *  using a {@link WatchService}.  A directory may be watched together with its
+ *  subdirectories to a given depth, including those created while it is watched.  Changes arriving within <code>debounce</code>
+ *  milliseconds of one another are collected into a single burst, so that an editor
+ *  writing a file in several steps, or saving several files at once, is reported
+ *  as one change.
+ */
+class SourceWatcher implements AutoCloseable {
+
+    private final WatchService watchService;
+    private final long debounceMillis;
+    private final Map<WatchKey,Path> watchedDirectories = new HashMap<WatchKey,Path>();
+    private final Map<Path,Integer> subdirectoryDepths = new HashMap<Path,Integer>();
+
+    SourceWatcher(long debounceMillis) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.debounceMillis = debounceMillis;
+    }
+
+    /** Starts watching a directory.  Directories already watched are ignored.
+     * @param directory The directory to watch.
+     */
+    void watch(Path directory) throws IOException {
+        watchTree(directory, 0);
+    }
+
+    /** Starts watching a directory and its subdirectories to the given depth, and
+     *  watches the subdirectories created within that depth as they appear.
+     * @param directory The directory to watch.
+     * @param depth The depth of the subdirectories to watch, Integer.MAX_VALUE for any depth.
+     */
+    void watchTree(Path directory, int depth) throws IOException {
+
+        Path absoluteDirectory = directory.toAbsolutePath().normalize();
+        Integer watchedDepth = subdirectoryDepths.get(absoluteDirectory);
+        if (watchedDepth != null && watchedDepth >= depth) return;
+
+        if (watchedDepth == null) {
+            WatchKey key = absoluteDirectory.register(watchService,
+                                                      StandardWatchEventKinds.ENTRY_CREATE,
+                                                      StandardWatchEventKinds.ENTRY_MODIFY,
+                                                      StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, absoluteDirectory);
+        }
+        subdirectoryDepths.put(absoluteDirectory, depth);
+
+        if (depth > 0) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(absoluteDirectory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        watchTree(entry, subdirectoryDepth(depth));
+                    }
+                }
+            }
+        }
+    }
+
+    private static int subdirectoryDepth(int depth) {
+        return (depth == Integer.MAX_VALUE) ? depth : depth - 1;
+    }
+
+    /** Waits for the next burst of changes in the watched directories.
+     * @return The absolute paths of the files changed, including the path of a
+     *         watched directory if some of its changes were lost.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    Set<Path> awaitChanges() throws InterruptedException {
+
+        Set<Path> changes = new LinkedHashSet<Path>();
+
+        try {
+            WatchKey key = watchService.take();
+            while (key != null) {
+                collectChanges(key, changes);
+                key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedException("Watch service was closed");
+        }
+
+        return changes;
+    }
+
+    private void collectChanges(WatchKey key, Set<Path> changes) {
+
+        Path directory = watchedDirectories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost, so report the directory itself as changed
+                changes.add(directory);
+            } else {
+                Path changed = directory.resolve((Path) event.context());
+                changes.add(changed);
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) watchCreatedDirectory(directory, changed);
+            }
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+            subdirectoryDepths.remove(directory);
+        }
+    }
+
+    private void watchCreatedDirectory(Path directory, Path created) {
+        int depth = subdirectoryDepths.get(directory);
+        if (depth > 0 && Files.isDirectory(created, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                watchTree(created, subdirectoryDepth(depth));
+            } catch (IOException e) {
+                // the directory was deleted again before it could be watched
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -6,7 +6,10 @@ public enum YWCommand {
     EXTRACT,
     MODEL,
     GRAPH,
-    RECON;
+    RECON,
+    LINEAGE,
+    WATCH,
+    SERVE;
     
     public static YWCommand toYWCommand(Object ywc) throws Exception {
                 
@@ -19,6 +22,9 @@ public enum YWCommand {
             if (ywcstring.equalsIgnoreCase("model")) return YWCommand.MODEL;
             if (ywcstring.equalsIgnoreCase("graph")) return YWCommand.GRAPH;
             if (ywcstring.equalsIgnoreCase("recon")) return YWCommand.RECON;
+            if (ywcstring.equalsIgnoreCase("lineage")) return YWCommand.LINEAGE;
+            if (ywcstring.equalsIgnoreCase("watch")) return YWCommand.WATCH;
+            if (ywcstring.equalsIgnoreCase("serve")) return YWCommand.SERVE;
         }
         
         throw new Exception("Unrecognized YW command: " + ywc);
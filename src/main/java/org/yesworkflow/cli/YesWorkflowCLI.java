@@ -3,20 +3,33 @@ package org.yesworkflow.cli;
 import static java.util.Arrays.asList;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.yesworkflow.VersionInfo;
 import org.yesworkflow.annotations.Annotation;
 import org.yesworkflow.config.YWConfiguration;
+import org.yesworkflow.db.YWMemoryStore;
+import org.yesworkflow.db.YWStore;
 import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.db.YesWorkflowSQLiteDB;
 import org.yesworkflow.exceptions.YWMarkupException;
 import org.yesworkflow.exceptions.YWToolUsageException;
 import org.yesworkflow.extract.DefaultExtractor;
 import org.yesworkflow.extract.Extractor;
 import org.yesworkflow.graph.DotGrapher;
 import org.yesworkflow.graph.Grapher;
+import org.yesworkflow.lineage.DefaultLineageTracer;
+import org.yesworkflow.lineage.LineageTracer;
 import org.yesworkflow.model.DefaultModeler;
 import org.yesworkflow.model.Model;
 import org.yesworkflow.model.Modeler;
@@ -52,16 +65,27 @@ import joptsimple.OptionSet;
  * using the {@link #extractor(Extractor) extractor()}, {@link #modeler(Modeler) modeler()},
  * and {@link #grapher(Grapher) grapher()} methods before calling 
  * {@link #runForArgs(String[]) runForArgs()}.  A 
- * {@link #YesWorkflowCLI(YesWorkflowDB, PrintStream, PrintStream) non-default constructor} allows 
+ * {@link #YesWorkflowCLI(YWStore, PrintStream, PrintStream) non-default constructor} allows 
  * the output streams used by YesWorkflow to be assigned.</p>
  */
-public class YesWorkflowCLI {
+public class YesWorkflowCLI implements AutoCloseable {
 
     public static final String EOL = System.getProperty("line.separator");
     private static final String PROPERTY_FILE_NAME = "yw.properties";
     private static final String YAML_FILE_NAME = "yw.yaml";
+    private static final long DEFAULT_WATCH_DEBOUNCE = 100;
 
-    private final YesWorkflowDB ywdb;
+    /** settings holding paths of files read, resolved against an assigned working directory */
+    private static final List<String> INPUT_PATH_SETTINGS = asList("extract.ignorefile", "recon.rundir");
+
+    /** settings holding paths of files written, resolved against an assigned working directory
+     *  and confined to an assigned output directory */
+    private static final List<String> OUTPUT_PATH_SETTINGS = asList(
+            "extract.cache", "extract.factsfile", "extract.listfile", "extract.provenancefile",
+            "extract.skeletonfile", "model.factsfile", "graph.dotfile", "lineage.file", "recon.factsfile");
+
+    private YWStore ywdb;
+    private boolean createdDatabase = false;
     private final PrintStream errStream;
     private final PrintStream outStream;    
     public VersionInfo versionInfo;
@@ -69,10 +93,14 @@ public class YesWorkflowCLI {
     private Extractor extractor = null;
     private Modeler modeler = null;
     private Grapher grapher = null;
+    private LineageTracer lineageTracer = null;
     private List<Annotation> annotations;
     private Model model = null;
     private YWConfiguration config = null;
     private Reconstructor reconstructor;
+    private Path workingDirectory = null;
+    private Path outputDirectory = null;
+    private SourceWatcher sourceWatcher = null;
     
     /** Method invoked first when the YesWorkflow CLI is run from the 
      * command line. Creates an instance of {@link YesWorkflowCLI},
@@ -117,28 +145,90 @@ public class YesWorkflowCLI {
      * @throws Exception If errors occur creating the YW database.
      */
     public YesWorkflowCLI() throws Exception {
-        this(YesWorkflowDB.createInstance(), System.out, System.err);
+        this(System.out, System.err);
+    }
+
+    /** 
+     * Constructor that injects custom output streams and leaves the
+     * YW store to be created when a command first needs it, so that
+     * commands not using the store do not pay for starting a database.
+     * The kind of store created is selected by the <code>db.store</code>
+     * setting.
+     * @param outStream The PrintStream to use instead of System.out.
+     * @param errStream The PrintStream to use instead of System.err.
+     */
+    public YesWorkflowCLI(PrintStream outStream, PrintStream errStream) {
+        this(null, outStream, errStream);
     }
 
     /** 
      * Constructor that injects custom output streams. Used when 
      * YesWorkflow should use the streams provided as parameters instead 
      * of System.out and System.err.
-     * @param ywdb The YesWorkflowDB instance to use.
+     * @param ywdb The YW store to use.
      * @param outStream The PrintStream to use instead of System.out.
      * @param errStream The PrintStream to use instead of System.err.
      */
-      public YesWorkflowCLI(YesWorkflowDB ywdb, PrintStream outStream, PrintStream errStream) {
+      public YesWorkflowCLI(YWStore ywdb, PrintStream outStream, PrintStream errStream) {
         this.ywdb = ywdb;
         this.outStream = outStream;
         this.errStream = errStream;
     }
       
+    /** 
+     * Closes the YW store if this instance created it.  Stores passed
+     * to the {@link #YesWorkflowCLI(YWStore, PrintStream, PrintStream)
+     * non-default constructor} are left open.
+     * @throws SQLException If the store cannot be closed.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (createdDatabase) {
+            ywdb.close();
+            ywdb = null;
+            createdDatabase = false;
+        }
+    }
+
     public YesWorkflowCLI config(YWConfiguration config) {
         this.config = config;
         return this;
     }
+
+    /** Method used to assign the directory in which the configuration files are looked
+     * up and against which relative source and output file paths are resolved, for use
+     * when the command runs on behalf of a process with a different working directory.
+     * Sources cannot be read from standard input when a working directory is assigned.
+     * @param workingDirectory The working directory of the process requesting the command.
+     * @return This instance.
+     */
+    public YesWorkflowCLI workingDirectory(Path workingDirectory) {
+        this.workingDirectory = workingDirectory;
+        return this;
+    }
     
+    /** Method used to assign the directory that files written by the command must be in,
+     * for use when the command runs on behalf of a process that may not be trusted to
+     * choose where files are written.  Output file settings resolving to a path outside the
+     * directory, once symbolic links are followed, are usage errors.
+     * @param outputDirectory The directory output files must be in.
+     * @return This instance.
+     */
+    public YesWorkflowCLI outputDirectory(Path outputDirectory) {
+        this.outputDirectory = outputDirectory.toAbsolutePath().normalize();
+        return this;
+    }
+
+    /** Method used to inject the {@link SourceWatcher} used by the watch command,
+     * which closes it when the watch ends.
+     * @param sourceWatcher The SourceWatcher to use.
+     * @return This instance.
+     */
+    YesWorkflowCLI sourceWatcher(SourceWatcher sourceWatcher) {
+        this.sourceWatcher = sourceWatcher;
+        return this;
+    }
+
     /** Method used to inject the 
      * {@link org.yesworkflow.extract.Extractor Extractor} to be used.
      * @param extractor A configured {@link org.yesworkflow.extract.Extractor Extractor} to use.
@@ -169,6 +259,16 @@ public class YesWorkflowCLI {
         return this;
     }
 
+    /** Method used to inject the 
+     * {@link org.yesworkflow.lineage.LineageTracer LineageTracer} to be used.
+     * @param lineageTracer A configured {@link org.yesworkflow.lineage.LineageTracer LineageTracer} to use.
+     * @return This instance.
+     */
+    public YesWorkflowCLI lineageTracer(LineageTracer lineageTracer) {
+        this.lineageTracer = lineageTracer;
+        return this;
+    }
+
     /** 
      * Method that parses the provided command line arguments and executes the 
      * sequence of YesWorkflow operations requested by them.
@@ -186,14 +286,7 @@ public class YesWorkflowCLI {
         
         try {
 
-            OptionParser parser = createOptionsParser();
-
-            // parse the command line arguments and options
-            try {
-                options = parser.parse(args);
-            } catch (OptionException exception) {
-                throw new YWToolUsageException(exception.getMessage());
-            }
+            OptionParser parser = parseOptions(args);
 
             // print detailed software version info and exit if requested
             if (options.has("v")) {
@@ -213,47 +306,9 @@ public class YesWorkflowCLI {
                 errStream.println(YW_CLI_EXAMPLES_HELP);
                 return ExitCode.SUCCESS;
             }
-            
-            // load the configuration files if a configuration has not been assigned programmatically
-            if (config == null) {
-                
-                if (new File(YAML_FILE_NAME).exists()) {
-                    config = YWConfiguration.fromYamlFile(YAML_FILE_NAME);
-                } else {
-                    config = new YWConfiguration();
-                }
-                
-                if (new File(PROPERTY_FILE_NAME).exists()) {
-                    config.applyPropertyFile(PROPERTY_FILE_NAME);
-                }
-            }
-            
-            // apply command-line overrides of config file
-            config.applyOptions(options.valuesOf("c"));
-
-            // make sure at least one non-option argument was given
-            List<?> nonOptionArguments = options.nonOptionArguments();            
-            if (options.nonOptionArguments().size() == 0) {
-                throw new YWToolUsageException("Command must be first non-option argument to YesWorkflow");
-            }            
-
-            // extract YesWorkflow command from first non-option argument
-            YWCommand command = null;
-            try {
-                command = YWCommand.toYWCommand((String) nonOptionArguments.get(0));
-            } catch(Exception e) {
-                throw new YWToolUsageException("Unrecognized YW command: " + nonOptionArguments.get(0));
-            }
 
-            // extract source file paths from remaining non-option arguments
-            if (nonOptionArguments.size() > 1) {
-                List<String> sourceFiles = new LinkedList<String>();
-                for (int i = 1; i < nonOptionArguments.size(); ++i) {
-                    sourceFiles.add((String) nonOptionArguments.get(i));
-                }
-                config.set("extract.sources", sourceFiles);
-            }
-            
+            YWCommand command = configureCommand();
+
             String queryEngine = config.getStringValue("query.engine");
             if (queryEngine != null) {
                 if (config.get("extract.queryengine") == null) config.set("extract.queryengine", queryEngine);
@@ -287,6 +342,20 @@ public class YesWorkflowCLI {
                     model();
                     recon();
                     return ExitCode.SUCCESS;
+
+                case LINEAGE:
+                    extract();
+                    model();
+                    lineage();
+                    return ExitCode.SUCCESS;
+
+                case WATCH:
+                    watch();
+                    return ExitCode.SUCCESS;
+
+                case SERVE:
+                    serve();
+                    return ExitCode.SUCCESS;
             }
             
         } catch (YWToolUsageException e) {
@@ -300,6 +369,84 @@ public class YesWorkflowCLI {
         return ExitCode.SUCCESS;
     }
     
+    /**
+     * Method that parses the provided command line arguments and loads the configuration
+     * as {@link #runForArgs(String[]) runForArgs()} does, without executing the requested
+     * command, so that a {@link YesWorkflowServer} can reject a request before responding.
+     * @param args The command line arguments to check.
+     * @throws YWToolUsageException if the arguments or configuration are invalid.
+     * @throws Exception if a configuration file cannot be read.
+     */
+    void checkArgs(String[] args) throws Exception {
+        parseOptions(args);
+        if (!options.has("v") && !options.has("h")) {
+            configureCommand();
+        }
+    }
+
+    private OptionParser parseOptions(String[] args) throws Exception {
+        OptionParser parser = createOptionsParser();
+        try {
+            options = parser.parse(args);
+        } catch (OptionException exception) {
+            throw new YWToolUsageException(exception.getMessage());
+        }
+        return parser;
+    }
+
+    /** Loads the configuration, applies the command line options and arguments to it,
+     *  and returns the command named by the first non-option argument. */
+    private YWCommand configureCommand() throws Exception {
+
+        // load the configuration files if a configuration has not been assigned programmatically
+        if (config == null) {
+
+            String yamlFile = localPath(YAML_FILE_NAME);
+            if (new File(yamlFile).exists()) {
+                config = YWConfiguration.fromYamlFile(yamlFile);
+            } else {
+                config = new YWConfiguration();
+            }
+
+            String propertyFile = localPath(PROPERTY_FILE_NAME);
+            if (new File(propertyFile).exists()) {
+                config.applyPropertyFile(propertyFile);
+            }
+        }
+
+        // apply command-line overrides of config file
+        config.applyOptions(options.valuesOf("c"));
+
+        // make sure at least one non-option argument was given
+        List<?> nonOptionArguments = options.nonOptionArguments();
+        if (options.nonOptionArguments().size() == 0) {
+            throw new YWToolUsageException("Command must be first non-option argument to YesWorkflow");
+        }
+
+        // extract YesWorkflow command from first non-option argument
+        YWCommand command = null;
+        try {
+            command = YWCommand.toYWCommand((String) nonOptionArguments.get(0));
+        } catch(Exception e) {
+            throw new YWToolUsageException("Unrecognized YW command: " + nonOptionArguments.get(0));
+        }
+
+        // extract source file paths from remaining non-option arguments
+        if (nonOptionArguments.size() > 1) {
+            List<String> sourceFiles = new LinkedList<String>();
+            for (int i = 1; i < nonOptionArguments.size(); ++i) {
+                sourceFiles.add((String) nonOptionArguments.get(i));
+            }
+            config.set("extract.sources", sourceFiles);
+        }
+
+        if (workingDirectory != null || outputDirectory != null) {
+            resolvePathSettings(command);
+        }
+
+        return command;
+    }
+
     private void printMarkupErrors(String message) {
         errStream.println("******************* YESWORKFLOW MARKUP ERRORS **************************");
         errStream.print(message);
@@ -308,10 +455,14 @@ public class YesWorkflowCLI {
     }
 
     private void printToolUsageErrors(String message) {
-        errStream.println();
-        errStream.println("ERROR: " + message);
-        errStream.println();
-        errStream.println("Use the -h option to display help for the YW command-line interface.");
+        printToolUsageErrors(errStream, message);
+    }
+
+    static void printToolUsageErrors(PrintStream stream, String message) {
+        stream.println();
+        stream.println("ERROR: " + message);
+        stream.println();
+        stream.println("Use the -h option to display help for the YW command-line interface.");
     }
     
     public static final String YW_CLI_USAGE_HELP = 
@@ -326,28 +477,49 @@ public class YesWorkflowCLI {
         "recon                      Reconstructs a run from persisted data products and log files."              + EOL +
         "                             Implicitly performs *extract* and *model* commands first."                 + EOL +
         "graph                      Graphically renders workflow model of script. Implicitly performs"           + EOL +
-        "                             *extract* and *model* commands first."                                     + EOL;
+        "                             *extract* and *model* commands first."                                     + EOL +
+        "lineage                    Lists the program blocks and data upstream or downstream of a"               + EOL +
+        "                             program block or data, or on a path between two. Implicitly"               + EOL +
+        "                             performs *extract* and *model* commands first."                            + EOL +
+        "watch                      Performs the *graph* command, then again each time the source"               + EOL +
+        "                             file(s) change, re-extracting only the changed files."                     + EOL +
+        "serve                      Keeps YesWorkflow running and performs commands sent to it by"               + EOL +
+        "                             org.yesworkflow.cli.YesWorkflowClient, which takes the same arguments."    + EOL;
 
     public static final String YW_CLI_CONFIG_HELP = 
         "Configuration Name         Value"                                                                       + EOL +
         "------------------         -----"                                                                       + EOL +
+        "db.store                   Storage of extracted rows: h2, sqlite or memory (default h2)"                + EOL +
+        ""                                                                                                       + EOL +
+        "extract.batchsize          Number of rows written to the database per batch (default 1000)"             + EOL +
+        "extract.cache              SQLite file caching comments lexed from unchanged source files"              + EOL +
         "extract.comment            Single-line comment delimiter in source files"                               + EOL +
+        "extract.encoding           Character encoding of source files (default is the platform encoding)"       + EOL +
         "extract.factsfile          File for storing prolog facts about scripts"                                 + EOL +
         "extract.provenancefile     File for storing provenance information about scripts (no extension)"        + EOL +
-        "extract.provenanceformat   Format of provenance information: PROVN, TURTLE, XML, RDFXML, TRIG, JSON,"   + EOL +
-        "                             PDF, SVG, DOT, PNG, JPEG"                                                  + EOL +
+        "extract.provenanceformat   Comma-separated formats of provenance information: PROVN, TURTLE, XML,"      + EOL +
+        "                             RDFXML, TRIG, NTRIPLES, JSON, PDF, SVG, DOT, PNG, JPEG (default TURTLE)"   + EOL +
         "extract.provenancens       Namespace for provenance information about scripts"                          + EOL +
         "extract.provenanceprefix   Namespace prefix for provenance information about scripts"                   + EOL +
+        "extract.ignorefile         File of glob patterns for files and directories to skip in extract.sources"  + EOL +
         "extract.language           Language used in source files"                                               + EOL +
         "extract.listfile           File for storing flat list of extracted YW markup"                           + EOL +
+        "extract.parallelism        Number of worker threads lexing source files (default 1)"                    + EOL +
+        "extract.prefilter          Skip source files containing no YW keywords: on or off (default off)"        + EOL +
         "extract.skeletonfile       File for storing YW-markup skeleton of source files"                         + EOL +
-        "extract.sources            List of source files to analyze"                                             + EOL +
+        "extract.sourcelines        Storage of source lines: none, offsets or full (default full)"               + EOL +
+        "extract.sources            List of source files, directories or glob patterns to analyze"               + EOL +
         ""                                                                                                       + EOL +
         "model.factsfile            File for storing prolog facts describing model"                              + EOL +
         "model.workflow             Name of top-level workflow in model"                                         + EOL +
         ""                                                                                                       + EOL +
         "recon.factsfile            File for storing reconstructed facts about a run"                            + EOL +
         ""                                                                                                       + EOL +
+        "lineage.file               File for storing result of lineage query (default is standard output)"       + EOL +
+        "lineage.node               Qualified name of program block or data the lineage query starts from"       + EOL +
+        "lineage.query              Lineage query: UPSTREAM, DOWNSTREAM or PATH (default UPSTREAM)"              + EOL +
+        "lineage.target             Qualified name of program block or data a PATH query ends at"                + EOL +
+        ""                                                                                                       + EOL +
         "graph.datalabel            Info to display in data nodes: NAME, URI, or BOTH"                           + EOL +
         "graph.dotcomments          Include comments in dot file (ON or OFF)"                                    + EOL +
         "graph.dotfile              Name of GraphViz DOT file to write graph to"                                 + EOL +
@@ -360,7 +532,14 @@ public class YesWorkflowCLI {
         "graph.title                Graph title (defaults to workflow name)"                                     + EOL +
         "graph.titleposition        Where to place graph title: TOP, BOTTOM, or HIDE"                            + EOL +
         "graph.view                 Workflow view to render: PROCESS, DATA or COMBINED"                          + EOL +
-        "graph.workflowbox          SHOW or HIDE box around nodes internal to workflow"                          + EOL;
+        "graph.workflowbox          SHOW or HIDE box around nodes internal to workflow"                          + EOL +
+        ""                                                                                                       + EOL +
+        "watch.debounce             Milliseconds without further changes before rebuilding (default 100)"        + EOL +
+        "watch.limit                Number of rebuilds after which watching stops (default unlimited)"           + EOL +
+        ""                                                                                                       + EOL +
+        "serve.outputdir            Directory files written by served commands must be in (default is current)"  + EOL +
+        "serve.port                 Loopback port the server listens on (default 7411)"                          + EOL +
+        "serve.threads              Number of commands the server performs at once (default is CPU count)"       + EOL;
     
     public static final String YW_CLI_EXAMPLES_HELP = 
         "Examples"                                                                                               + EOL +
@@ -368,6 +547,8 @@ public class YesWorkflowCLI {
         "$ yw extract myscript -c extract.comment='#' -c extract.listing=comments.txt"                           + EOL +
         "$ yw graph myscript.py -config graph.view=combined -config graph.datalabel=uri"                         + EOL +
         "$ yw graph scriptA.py scriptB.py > wf.gv; dot -Tpdf wf.gv -o wf.pdf; open wf.pdf"                       + EOL +
+        "$ yw watch myscript.py -c graph.dotfile=wf.gv -c model.factsfile=model.P"                               + EOL +
+        "$ yw lineage myscript.py -c lineage.node='myscript[result]' -c lineage.query=upstream"                  + EOL +
         "$ yw extract myscript.py -c extract.provenancefile=myscript -c extract.provenanceformat=turtle -c " +
           "extract.provenancens=http://yesworkflow.org/ -c extract.provenanceprefix=yw"                          + EOL;
         
@@ -390,10 +571,27 @@ public class YesWorkflowCLI {
         return parser;
     }
 
+    private YWStore ywdb() throws Exception {
+        if (ywdb == null) {
+            String store = config.getStringValue("db.store");
+            if (store == null || store.trim().equalsIgnoreCase("h2")) {
+                ywdb = YesWorkflowDB.createInstance();
+            } else if (store.trim().equalsIgnoreCase("sqlite")) {
+                ywdb = YesWorkflowSQLiteDB.createInMemoryDB();
+            } else if (store.trim().equalsIgnoreCase("memory")) {
+                ywdb = new YWMemoryStore();
+            } else {
+                throw new YWToolUsageException("Value of db.store must be h2, sqlite or memory: " + store);
+            }
+            createdDatabase = true;
+        }
+        return ywdb;
+    }
+
     private void extract() throws Exception {
     	
         if (extractor == null) {
-            extractor =  new DefaultExtractor(this.ywdb, this.outStream, this.errStream);
+            extractor =  new DefaultExtractor(ywdb(), this.outStream, this.errStream);
         }
 
         annotations = extractor.configure(config.getSection("extract"))
@@ -408,7 +606,7 @@ public class YesWorkflowCLI {
         }
         
         if (modeler == null) {
-            modeler = new DefaultModeler(this.ywdb, this.outStream, this.errStream);
+            modeler = new DefaultModeler(ywdb(), this.outStream, this.errStream);
          }
 
         model =  modeler.configure(config.getSection("model"))
@@ -428,6 +626,17 @@ public class YesWorkflowCLI {
                .graph();
     }
 
+    private void lineage() throws Exception {
+
+        if (lineageTracer == null) {
+            lineageTracer = new DefaultLineageTracer(this.outStream, this.errStream);
+        }
+
+        lineageTracer.configure(config.getSection("lineage"))
+                     .model(model)
+                     .trace();
+    }
+
     private void recon() throws Exception {
 
         if (reconstructor == null) {
@@ -442,4 +651,226 @@ public class YesWorkflowCLI {
                      .recon();
     }
 
+    /** Performs the graph command, then waits for the source files to change and
+     *  performs it again, until <code>watch.limit</code> rebuilds have been done or
+     *  the thread is interrupted.  The YW database and the extractor are kept between
+     *  rebuilds, and the extractor lexes only the source files that changed.  Errors
+     *  in a rebuild are reported without ending the watch.
+     */
+    private void watch() throws Exception {
+
+        long debounce = watchSetting("watch.debounce", DEFAULT_WATCH_DEBOUNCE);
+        long limit = watchSetting("watch.limit", Long.MAX_VALUE);
+
+        if (extractor == null) {
+            extractor = new DefaultExtractor(ywdb(), this.outStream, this.errStream);
+        }
+        if (!(extractor instanceof DefaultExtractor)) {
+            throw new YWToolUsageException("The watch command requires the default extractor");
+        }
+        DefaultExtractor defaultExtractor = ((DefaultExtractor) extractor).retainLexedSources(true);
+
+        try (SourceWatcher watcher = (sourceWatcher != null) ? sourceWatcher : new SourceWatcher(debounce)) {
+
+            Set<Path> sources = rebuild(defaultExtractor, watcher);
+            errStream.println("Watching " + sources.size() + " source files for changes.");
+
+            for (long rebuilds = 0; rebuilds < limit; ++rebuilds) {
+
+                Set<Path> changes;
+                do {
+                    changes = watcher.awaitChanges();
+                } while (!affectsSources(changes, sources, defaultExtractor));
+
+                defaultExtractor.forgetLexedSources(changes);
+                sources = rebuild(defaultExtractor, watcher);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Clears the YW database and performs the graph command with a new modeler and
+     *  grapher, then watches the directories searched for source files, with their
+     *  subdirectories, and the directories of the source files found.  Errors in the
+     *  sources are reported rather than thrown, so that the watch goes on until they are fixed.
+     *  @return The absolute paths of the source files.
+     */
+    private Set<Path> rebuild(DefaultExtractor defaultExtractor, SourceWatcher watcher) throws Exception {
+
+        long start = System.nanoTime();
+        boolean rebuilt = false;
+
+        try {
+            ywdb().clear();
+            grapher = new DotGrapher(this.outStream, this.errStream);
+            modeler = new DefaultModeler(ywdb(), this.outStream, this.errStream);
+            extract();
+            model();
+            graph();
+            rebuilt = true;
+        } catch (YWMarkupException e) {
+            printMarkupErrors(e.getMessage());
+        } catch (YWToolUsageException e) {
+            printToolUsageErrors(e.getMessage());
+        } catch (Exception e) {
+            errStream.println("ERROR: " + e.getMessage());
+        }
+
+        for (Map.Entry<Path,Integer> directory : defaultExtractor.findSourceDirectories().entrySet()) {
+            watcher.watchTree(directory.getKey(), directory.getValue());
+        }
+        Set<Path> sources = absolutePaths(defaultExtractor.findSourceFiles());
+        for (Path source : sources) {
+            watcher.watch(source.getParent());
+        }
+
+        if (rebuilt) {
+            errStream.println("Rebuilt graph from " + sources.size() + " source files (" +
+                              defaultExtractor.getLexedSourceCount() + " lexed) in " +
+                              (System.nanoTime() - start) / 1000000 + " ms.");
+        }
+        return sources;
+    }
+
+    /** Determines whether a burst of changes touches the source files, including
+     *  by creating or deleting files matched by <code>extract.sources</code>. */
+    private boolean affectsSources(Set<Path> changes, Set<Path> sources, DefaultExtractor defaultExtractor) throws Exception {
+        Set<Path> currentSources = absolutePaths(defaultExtractor.findSourceFiles());
+        if (!currentSources.equals(sources)) return true;
+        for (Path change : changes) {
+            if (sources.contains(change)) return true;
+            // a watched directory is itself reported when some of its changes were lost
+            for (Path source : sources) {
+                if (source.getParent().equals(change)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<Path> absolutePaths(List<String> paths) {
+        Set<Path> absolutePaths = new HashSet<Path>();
+        for (String path : paths) {
+            absolutePaths.add(Paths.get(path).toAbsolutePath().normalize());
+        }
+        return absolutePaths;
+    }
+
+    private long watchSetting(String name, long defaultValue) throws YWToolUsageException {
+        String value = config.getStringValue(name);
+        if (value == null) return defaultValue;
+        try {
+            long setting = Long.parseLong(value.trim());
+            if (setting >= 0) return setting;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new YWToolUsageException("Value of " + name + " must be a non-negative integer: " + value);
+    }
+
+    /** Starts a {@link YesWorkflowServer} performing commands sent by {@link YesWorkflowClient}
+     *  and serves requests until the thread is interrupted. */
+    private void serve() throws Exception {
+
+        int port = (int) serveSetting("serve.port", YesWorkflowServer.DEFAULT_PORT, 0, 65535);
+        int threads = (int) serveSetting("serve.threads", Runtime.getRuntime().availableProcessors(), 1, 1024);
+
+        String outputDirectory = config.getStringValue("serve.outputdir");
+        if (outputDirectory == null || outputDirectory.trim().isEmpty()) outputDirectory = ".";
+        if (!new File(outputDirectory.trim()).isDirectory()) {
+            throw new YWToolUsageException("Value of serve.outputdir must be a directory: " + outputDirectory);
+        }
+
+        YesWorkflowServer server = new YesWorkflowServer(port, threads, Paths.get(outputDirectory.trim()), versionInfo).start();
+        errStream.println("YesWorkflow server listening on port " + server.getPort() + ".");
+
+        try {
+            Thread.sleep(Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private long serveSetting(String name, long defaultValue, long minimum, long maximum) throws YWToolUsageException {
+        String value = config.getStringValue(name);
+        if (value == null) return defaultValue;
+        try {
+            long setting = Long.parseLong(value.trim());
+            if (setting >= minimum && setting <= maximum) return setting;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new YWToolUsageException("Value of " + name + " must be an integer from " + minimum + " to " + maximum + ": " + value);
+    }
+
+    private String localPath(String path) {
+        return (workingDirectory == null) ? path : workingDirectory.resolve(path).toString();
+    }
+
+    /** Returns the path with symbolic links followed: the real path of its nearest existing
+     *  ancestor followed by the segments of the path that do not exist yet. */
+    private static Path realPath(Path absolutePath) throws YWToolUsageException {
+        Path existing = absolutePath;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) return absolutePath;
+        try {
+            return existing.toRealPath().resolve(existing.relativize(absolutePath));
+        } catch (IOException e) {
+            throw new YWToolUsageException("Path could not be resolved: " + absolutePath);
+        }
+    }
+
+    /** Resolves the relative source paths and output file paths in the configuration
+     *  against the assigned working directory.  Commands that extract must be given
+     *  sources, as the extractor would otherwise read the standard input of this process.
+     *  The serve and watch commands run until stopped and are refused, as they would hold
+     *  a thread of the server that assigned the directories indefinitely. */
+    private void resolvePathSettings(YWCommand command) throws YWToolUsageException {
+
+        if (command == YWCommand.SERVE || command == YWCommand.WATCH) {
+            throw new YWToolUsageException("Command " + command.name().toLowerCase() +
+                                           " cannot be run by a YesWorkflow server");
+        }
+
+        Object sources = config.get("extract.sources");
+        List<String> resolvedSources = new LinkedList<String>();
+        if (sources != null) {
+            List<?> sourceList = (sources instanceof List) ? (List<?>) sources : asList(sources.toString().split("\\s"));
+            for (Object source : sourceList) {
+                String sourcePath = source.toString().trim();
+                if (sourcePath.isEmpty()) continue;
+                if (sourcePath.equals("-")) {
+                    throw new YWToolUsageException("Sources cannot be read from standard input when run by a YesWorkflow server");
+                }
+                resolvedSources.add(localPath(sourcePath));
+            }
+            config.set("extract.sources", resolvedSources);
+        }
+        if (resolvedSources.isEmpty() && command != YWCommand.NOOP) {
+            throw new YWToolUsageException("Sources must be given when run by a YesWorkflow server");
+        }
+
+        for (String setting : INPUT_PATH_SETTINGS) {
+            String path = config.getStringValue(setting);
+            if (path != null && !path.trim().isEmpty()) {
+                config.set(setting, localPath(path.trim()));
+            }
+        }
+
+        for (String setting : OUTPUT_PATH_SETTINGS) {
+            String path = config.getStringValue(setting);
+            if (path == null || path.trim().isEmpty() || path.trim().equals("-")) continue;
+            Path outputPath = Paths.get(localPath(path.trim())).toAbsolutePath().normalize();
+            if (outputDirectory != null && !realPath(outputPath).startsWith(realPath(outputDirectory))) {
+                throw new YWToolUsageException("Value of " + setting + " must be a path in the server output directory " +
+                                               outputDirectory + ": " + path);
+            }
+            config.set(setting, outputPath.toString());
+        }
+    }
 }
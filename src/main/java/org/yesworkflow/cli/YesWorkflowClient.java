@@ -0,0 +1,108 @@
+package org.yesworkflow.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** Class that runs YW commands in a {@link YesWorkflowServer} rather than in a new JVM.
+ *  The static {@link #main(String[]) main()} method takes the same arguments as
+ *  {@link YesWorkflowCLI#main(String[]) YesWorkflowCLI.main()}, sends them to the
+ *  server on the port given by the <code>yw.serve.port</code> system property or the
+ *  <code>YW_SERVE_PORT</code> environment variable, copies the output of the command
+ *  to System.out and System.err as it arrives, and exits with the exit code of the
+ *  command.  Source files are not read from standard input when run this way.
+ */
+public class YesWorkflowClient {
+
+    private final int port;
+
+    public YesWorkflowClient(int port) {
+        this.port = port;
+    }
+
+    public static void main(String[] args) {
+
+        int exitCode;
+
+        try {
+            YesWorkflowClient client = new YesWorkflowClient(serverPort());
+            exitCode = client.run(Paths.get("").toAbsolutePath(), args, System.out, System.err);
+        } catch (ConnectException e) {
+            System.err.println("ERROR: No YesWorkflow server is listening on port " + serverPort() + ".  Start one with 'yw serve'.");
+            exitCode = ExitCode.UNCAUGHT_ERROR.value();
+        } catch (Exception e) {
+            e.printStackTrace();
+            exitCode = ExitCode.UNCAUGHT_ERROR.value();
+        }
+
+        System.exit(exitCode);
+    }
+
+    private static int serverPort() {
+        String port = System.getProperty("yw.serve.port", System.getenv("YW_SERVE_PORT"));
+        return (port == null) ? YesWorkflowServer.DEFAULT_PORT : Integer.parseInt(port.trim());
+    }
+
+    /** Runs a YW command in the server.
+     * @param workingDirectory The directory against which the server resolves relative paths.
+     * @param args The command line arguments.
+     * @param outStream The stream to copy the output of the command to.
+     * @param errStream The stream to copy the error output of the command to.
+     * @return The exit code of the command, or that of a usage error if the server rejected the arguments.
+     * @throws IOException If the server cannot be reached or the response ends early.
+     */
+    public int run(Path workingDirectory, String[] args, OutputStream outStream, OutputStream errStream) throws IOException {
+
+        URL url = new URL("http", "127.0.0.1", port, YesWorkflowServer.RUN_PATH);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+
+        try (DataOutputStream request = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            request.writeUTF(workingDirectory.toString());
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+        }
+
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_BAD_REQUEST && connection.getErrorStream() != null) {
+            String usageError = new String(connection.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+            PrintStream errPrintStream = new PrintStream(errStream, true, StandardCharsets.UTF_8.name());
+            YesWorkflowCLI.printToolUsageErrors(errPrintStream, usageError);
+            errPrintStream.flush();
+            return ExitCode.CLI_USAGE_ERROR.value();
+        }
+
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("YesWorkflow server rejected request: " + connection.getResponseCode());
+        }
+
+        try (DataInputStream response = new DataInputStream(new BufferedInputStream(connection.getInputStream()))) {
+            byte[] buffer = new byte[8192];
+            while (true) {
+                byte kind = response.readByte();
+                if (kind == YesWorkflowServer.EXIT_FRAME) return response.readInt();
+                OutputStream stream = (kind == YesWorkflowServer.STDOUT_FRAME) ? outStream : errStream;
+                int remaining = response.readInt();
+                while (remaining > 0) {
+                    int count = response.read(buffer, 0, Math.min(buffer.length, remaining));
+                    if (count == -1) throw new IOException("Response from YesWorkflow server ended early");
+                    stream.write(buffer, 0, count);
+                    remaining -= count;
+                }
+                stream.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.yesworkflow.cli;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.yesworkflow.VersionInfo;
+import org.yesworkflow.exceptions.YWToolUsageException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/** Class that keeps YesWorkflow loaded in a running JVM and performs YW commands
+ *  sent to it over HTTP on the loopback interface, so that repeated invocations
+ *  avoid JVM startup, class loading and JIT warm-up.  Commands are sent by
+ *  {@link YesWorkflowClient}.
+ *
+ *  <p>Each request is a POST to {@value #RUN_PATH} whose body gives the working
+ *  directory of the client and the command line arguments, as written by
+ *  {@link java.io.DataOutputStream#writeUTF(String) writeUTF()} following the
+ *  number of arguments.  The request is run by a new {@link YesWorkflowCLI}, which
+ *  creates its own in-memory YesWorkflowDB if the command needs one, and relative
+ *  paths are resolved against the working directory of the client.  A request whose
+ *  arguments are not valid, including one giving no sources or asking for sources to be
+ *  read from standard input, is answered with status 400 and the usage error as the
+ *  body before anything is run, as is one setting an output file outside the output
+ *  directory of the server.  Requests carrying an Origin header or a Host header not
+ *  naming the loopback address are refused with status 403, so that web pages cannot
+ *  send commands.  Otherwise the response streams what the command
+ *  writes to its output and error streams as frames, each a stream byte
+ *  ({@value #STDOUT_FRAME} or {@value #STDERR_FRAME}) and the length of the bytes
+ *  following it, ending with an {@value #EXIT_FRAME} byte and the exit code.
+ *  Requests are run concurrently by a fixed number of threads.</p>
+ */
+public class YesWorkflowServer {
+
+    public static final int DEFAULT_PORT = 7411;
+    public static final String RUN_PATH = "/run";
+
+    static final byte EXIT_FRAME = 0;
+    static final byte STDOUT_FRAME = 1;
+    static final byte STDERR_FRAME = 2;
+
+    private static final PrintStream NULL_STREAM = new PrintStream(OutputStream.nullOutputStream());
+
+    private final int port;
+    private final int threads;
+    private final Path outputDirectory;
+    private final VersionInfo versionInfo;
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    /** Constructs a server for the given port writing output files in the current directory.
+     * @param port The port to listen on, or 0 for any free port.
+     * @param threads The number of requests run at once.
+     * @param versionInfo The version information reported by the -v and -h options.
+     */
+    public YesWorkflowServer(int port, int threads, VersionInfo versionInfo) {
+        this(port, threads, Paths.get(""), versionInfo);
+    }
+
+    /** Constructs a server for the given port.
+     * @param port The port to listen on, or 0 for any free port.
+     * @param threads The number of requests run at once.
+     * @param outputDirectory The directory that files written by requests must be in.
+     * @param versionInfo The version information reported by the -v and -h options.
+     */
+    public YesWorkflowServer(int port, int threads, Path outputDirectory, VersionInfo versionInfo) {
+        this.port = port;
+        this.threads = threads;
+        this.outputDirectory = outputDirectory.toAbsolutePath().normalize();
+        this.versionInfo = versionInfo;
+    }
+
+    /** Starts accepting requests.
+     * @return This instance.
+     * @throws IOException If the port cannot be bound.
+     */
+    public YesWorkflowServer start() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        httpServer.setExecutor(executor);
+        httpServer.createContext(RUN_PATH, new RunHandler());
+        httpServer.start();
+        return this;
+    }
+
+    /** @return The port the server is listening on. */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /** Stops accepting requests and waits up to the given time for running ones to finish.
+     * @param timeoutMillis Milliseconds to wait for running requests.
+     */
+    public void stop(long timeoutMillis) throws InterruptedException {
+        httpServer.stop(0);
+        executor.shutdown();
+        executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private class RunHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+
+            try {
+
+                if (!isLocalRequest(exchange)) {
+                    exchange.sendResponseHeaders(403, -1);
+                    return;
+                }
+
+                if (!exchange.getRequestMethod().equals("POST")) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+
+                Path workingDirectory;
+                String[] args;
+                try {
+                    DataInputStream request = new DataInputStream(exchange.getRequestBody());
+                    workingDirectory = Paths.get(request.readUTF());
+                    args = new String[request.readInt()];
+                    for (int i = 0; i < args.length; ++i) {
+                        args[i] = request.readUTF();
+                    }
+                } catch (IOException e) {
+                    exchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+
+                String usageError = check(workingDirectory, args);
+                if (usageError != null) {
+                    byte[] message = usageError.getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(400, message.length);
+                    exchange.getResponseBody().write(message);
+                    return;
+                }
+
+                exchange.sendResponseHeaders(200, 0);
+                DataOutputStream response = new DataOutputStream(exchange.getResponseBody());
+                PrintStream outStream = new PrintStream(new BufferedOutputStream(new FrameOutputStream(response, STDOUT_FRAME)), true);
+                PrintStream errStream = new PrintStream(new BufferedOutputStream(new FrameOutputStream(response, STDERR_FRAME)), true);
+
+                ExitCode exitCode = run(workingDirectory, args, outStream, errStream);
+
+                outStream.flush();
+                errStream.flush();
+                synchronized (response) {
+                    response.writeByte(EXIT_FRAME);
+                    response.writeInt(exitCode.value());
+                    response.flush();
+                }
+
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /** Determines whether a request was sent by a local client rather than by a web page.
+     *  Browsers name the origin of the page in cross-origin requests, and a Host header
+     *  naming another host marks a page whose host name was rebound to the loopback address. */
+    private boolean isLocalRequest(HttpExchange exchange) {
+        if (exchange.getRequestHeaders().containsKey("Origin")) return false;
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null) return false;
+        String suffix = ":" + getPort();
+        return host.equals("127.0.0.1" + suffix) || host.equals("localhost" + suffix) || host.equals("[::1]" + suffix);
+    }
+
+    /** @return The usage error the arguments of a request would cause, or null if they would cause none. */
+    private String check(Path workingDirectory, String[] args) {
+        try (YesWorkflowCLI cli = new YesWorkflowCLI(NULL_STREAM, NULL_STREAM)) {
+            cli.workingDirectory(workingDirectory).outputDirectory(outputDirectory).checkArgs(args);
+        } catch (YWToolUsageException e) {
+            return e.getMessage();
+        } catch (Exception e) {
+            // reported when the request is run
+        }
+        return null;
+    }
+
+    private ExitCode run(Path workingDirectory, String[] args, PrintStream outStream, PrintStream errStream) {
+        try (YesWorkflowCLI cli = new YesWorkflowCLI(outStream, errStream)) {
+            cli.workingDirectory(workingDirectory).outputDirectory(outputDirectory).setVersionInfo(versionInfo);
+            return cli.runForArgs(args);
+        } catch (Exception e) {
+            e.printStackTrace(errStream);
+            return ExitCode.UNCAUGHT_ERROR;
+        }
+    }
+
+    /** Stream writing each block of bytes as a frame of the given kind.  The output and
+     *  error streams of a request share the response, which is locked while a frame is written. */
+    private static class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream response;
+        private final byte kind;
+
+        FrameOutputStream(DataOutputStream response, byte kind) {
+            this.response = response;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            synchronized (response) {
+                response.writeByte(kind);
+                response.writeInt(len);
+                response.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (response) {
+                response.flush();
+            }
+        }
+    }
+}
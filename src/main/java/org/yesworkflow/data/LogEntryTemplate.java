@@ -4,16 +4,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.function.LongSupplier;
 import java.util.regex.Pattern;
 
 public class LogEntryTemplate {
 
-    private static Long nextVariableId = 1L;
-    
-    public static void resetIds() {
-        nextVariableId = 1L;
-    }
-    
     public final String template;
     public final String reducedTemplate;       // Fully reduced, directly matchable representation of the template
 	public final TemplateVariable[] variables; // Array of template variables in order of their first appearnce
@@ -21,11 +16,24 @@ public class LogEntryTemplate {
 	public final String[] fragments;           // Array of strings representing non-variable portions of the template path
 	
 	/**
-	 * Creates a new MatchableTemplate object.
+	 * Creates a new MatchableTemplate object with variables numbered from 1.
 	 * 
 	 * @param template	A string representation of the full template to construct.
 	 */
 	public LogEntryTemplate(String template) {
+	    this(template, new LongSupplier() {
+	        private long nextVariableId = 1L;
+	        public long getAsLong() { return nextVariableId++; }
+	    });
+	}
+
+	/**
+	 * Creates a new MatchableTemplate object.
+	 * 
+	 * @param template	A string representation of the full template to construct.
+	 * @param variableIds	Source of the IDs assigned to the variables named in the template.
+	 */
+	public LogEntryTemplate(String template, LongSupplier variableIds) {
 
 	    this.template = template;
 	    
@@ -41,7 +49,7 @@ public class LogEntryTemplate {
 		    TemplateVariable templateVariable = templateVariableForName.get(name);
 		    if (!name.isEmpty()) {
     		    if (templateVariable == null) {
-    		        templateVariable = new TemplateVariable(nextVariableId++, name);
+    		        templateVariable = new TemplateVariable(variableIds.getAsLong(), name);
     		        templateVariableForName.put(name, templateVariable);
     		    }
 		    }
@@ -6,6 +6,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.function.LongSupplier;
 import java.util.regex.Pattern;
 
 import org.yesworkflow.util.FileIO;
@@ -27,12 +28,6 @@ import org.yesworkflow.util.FileIO;
  */
 public class UriTemplate extends UriBase {
 
-    private static Long nextUriVariableId = 1L;
-    
-    public static void resetIds() {
-        nextUriVariableId = 1L;
-    }
-    
 	///////////////////////////////////////////////////////////////////
 	////                    private data fields                    ////
 
@@ -46,11 +41,24 @@ public class UriTemplate extends UriBase {
 	////                     public constructors                   ////
 
 	/**
-	 * Creates a new MatchableUriTemplate object.
+	 * Creates a new MatchableUriTemplate object with variables numbered from 1.
 	 * 
 	 * @param template	A string representation of the full URI template to construct.
 	 */
 	public UriTemplate(String template) {
+	    this(template, new LongSupplier() {
+	        private long nextUriVariableId = 1L;
+	        public long getAsLong() { return nextUriVariableId++; }
+	    });
+	}
+
+	/**
+	 * Creates a new MatchableUriTemplate object.
+	 * 
+	 * @param template	A string representation of the full URI template to construct.
+	 * @param variableIds	Source of the IDs assigned to the variables named in the template.
+	 */
+	public UriTemplate(String template, LongSupplier variableIds) {
 
 		super(template, true);
 
@@ -66,7 +74,7 @@ public class UriTemplate extends UriBase {
 		    TemplateVariable uriVariable = uriVariableForName.get(name);
 		    if (!name.isEmpty()) {
     		    if (uriVariable == null) {
-    		        uriVariable = new TemplateVariable(nextUriVariableId++, name);
+    		        uriVariable = new TemplateVariable(variableIds.getAsLong(), name);
     		        uriVariableForName.put(name, uriVariable);
     		    }
 		    }
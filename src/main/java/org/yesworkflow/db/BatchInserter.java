@@ -0,0 +1,195 @@
+package org.yesworkflow.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+
+import static org.yesworkflow.db.Column.*;
+
+/** Class for inserting source lines, comments and annotations into a YesWorkflow
+ *  database in batches.  Each table is written through a single cached prepared
+ *  statement, and rows are sent to the database as JDBC batches of up to
+ *  <code>batchSize</code> rows, each batch in its own transaction.
+ *
+ *  <p>Rather than asking the database for the key of each new row, IDs are
+ *  assigned on the client side from blocks of <code>batchSize</code> IDs.  Each
+ *  block starts after the largest ID present in the table when the block is
+ *  reserved, so the rows receive the same IDs they would have been given by
+ *  the per-row inserts in {@link YesWorkflowDB}.  Rows must not be inserted into
+ *  these tables by other means while rows written here are still pending; call
+ *  {@link #flush()} first.</p>
+ */
+public class BatchInserter implements RowInserter {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final YesWorkflowDB ywdb;
+    private final int batchSize;
+    private final TableInserter sourceLines;
+    private final TableInserter comments;
+    private final TableInserter annotations;
+
+    /** Constructs a BatchInserter writing to the given YesWorkflow database.
+     * @param ywdb The YesWorkflow database.
+     * @param batchSize The maximum number of rows sent to the database per batch.
+     */
+    public BatchInserter(YesWorkflowDB ywdb, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        this.ywdb = ywdb;
+        this.batchSize = batchSize;
+        this.sourceLines = new TableInserter(Table.SOURCE_LINE, ID, SOURCE_ID, LINE_NUMBER, LINE_TEXT,
+                                             LINE_OFFSET, LINE_LENGTH);
+        this.comments = new TableInserter(Table.COMMENT, ID, SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT);
+        this.annotations = new TableInserter(Table.ANNOTATION, ID, QUALIFIES, COMMENT_ID, RANK_IN_COMMENT,
+                                             TAG, KEYWORD, VALUE, DESCRIPTION);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public Long insertSourceLine(Long sourceId, Long lineNumber, String lineText) throws SQLException {
+        return sourceLines.insert(sourceId, lineNumber, lineText, null, null);
+    }
+
+    /** Inserts a source line recorded by where it is stored in the source file rather than by its text.
+     * @param sourceId Unique ID of the source file.
+     * @param lineNumber Number of the line in the source file.
+     * @param lineOffset Byte offset of the line in the source file.
+     * @param lineLength Length of the line in bytes, excluding its terminator.
+     * @return The ID assigned to the source line.
+     * @throws SQLException If an error occurs inserting rows into the YW database.
+     */
+    @Override
+    public Long insertSourceLineOffset(Long sourceId, Long lineNumber, long lineOffset, long lineLength) throws SQLException {
+        return sourceLines.insert(sourceId, lineNumber, null, lineOffset, lineLength);
+    }
+
+    @Override
+    public Long insertComment(Long sourceId, Long lineNumber,
+                              Long rankInLine, String commentText) throws SQLException {
+        return comments.insert(sourceId, lineNumber, rankInLine, commentText);
+    }
+
+    @Override
+    public Long insertAnnotation(Long qualifiedAnnotationId, long commentId,
+                                 long rankInComment, String tag, String keyword,
+                                 String value, String description) throws SQLException {
+        return annotations.insert(qualifiedAnnotationId, commentId, rankInComment,
+                                  tag, keyword, value, description);
+    }
+
+    /** Sends all pending rows to the database.  Tables are written in the order
+     *  required by their foreign keys, so an annotation may refer to a comment
+     *  inserted through the same BatchInserter.
+     * @throws SQLException If an error occurs inserting rows into the YW database.
+     */
+    @Override
+    public void flush() throws SQLException {
+
+        if (sourceLines.pendingRows == 0 && comments.pendingRows == 0 && annotations.pendingRows == 0) return;
+
+        Connection connection = ywdb.connection;
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) connection.setAutoCommit(false);
+        try {
+            sourceLines.executeBatch();
+            comments.executeBatch();
+            annotations.executeBatch();
+            if (autoCommit) connection.commit();
+        } catch (SQLException e) {
+            if (autoCommit) connection.rollback();
+            throw e;
+        } finally {
+            if (autoCommit) connection.setAutoCommit(true);
+        }
+    }
+
+    /** Flushes pending rows and releases the cached prepared statements. */
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+        } finally {
+            sourceLines.close();
+            comments.close();
+            annotations.close();
+        }
+    }
+
+    /** Prepared insert statement, pending batch and block of IDs for one table. */
+    private class TableInserter {
+
+        private final org.jooq.Table<?> table;
+        private final String sql;
+        private PreparedStatement insert = null;
+        private int pendingRows = 0;
+        private long nextId = 0;
+        private long lastIdInBlock = -1;
+
+        TableInserter(org.jooq.Table<?> table, Field<?>... columns) {
+
+            this.table = table;
+
+            StringBuilder columnList = new StringBuilder();
+            StringBuilder parameterList = new StringBuilder();
+            for (Field<?> column : columns) {
+                if (columnList.length() > 0) {
+                    columnList.append(", ");
+                    parameterList.append(", ");
+                }
+                columnList.append(ywdb.jooq().render(column));
+                parameterList.append('?');
+            }
+
+            this.sql = "INSERT INTO " + ywdb.jooq().render(table) + " (" + columnList + ") VALUES (" + parameterList + ")";
+        }
+
+        Long insert(Object... values) throws SQLException {
+
+            if (nextId > lastIdInBlock) reserveIdBlock();
+            if (insert == null) insert = ywdb.connection.prepareStatement(sql);
+
+            long id = nextId++;
+            insert.setLong(1, id);
+            for (int i = 0; i < values.length; ++i) {
+                insert.setObject(i + 2, values[i]);
+            }
+            insert.addBatch();
+
+            if (++pendingRows == batchSize) flush();
+
+            return id;
+        }
+
+        /** Reserves the next block of IDs, starting after the largest ID in the table
+         *  once all pending rows have been written. */
+        private void reserveIdBlock() throws SQLException {
+            flush();
+            Record maxIdRecord = ywdb.jooq().select(DSL.max(ID)).from(table).fetchOne();
+            Object maxId = maxIdRecord.getValue(0);
+            long firstFreeId = (maxId == null) ? 1 : ((Number)maxId).longValue() + 1;
+            nextId = Math.max(nextId, firstFreeId);
+            lastIdInBlock = nextId + batchSize - 1;
+        }
+
+        void executeBatch() throws SQLException {
+            if (pendingRows > 0) {
+                insert.executeBatch();
+                pendingRows = 0;
+            }
+        }
+
+        void close() throws SQLException {
+            if (insert != null) {
+                insert.close();
+                insert = null;
+            }
+        }
+    }
+}
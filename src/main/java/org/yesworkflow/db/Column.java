@@ -7,20 +7,32 @@ import org.jooq.Field;
 @SuppressWarnings("rawtypes")
 public class Column {
 
+    public static Field ALIAS               = field("alias");
     public static Field BEGIN_ANNOTATION_ID = field("begin_annotation");
     public static Field COMMENT_ID          = field("comment");
     public static Field COMMENT_TEXT        = field("comment_text");
+    public static Field DATA_ID             = field("data");
     public static Field DESCRIPTION         = field("description");
     public static Field END_ANNOTATION_ID   = field("end_annotation");
     public static Field ID                  = field("id");
     public static Field IN_PROGRAM_BLOCK    = field("in_program_block");
     public static Field IS_WORKFLOW         = field("is_workflow");
     public static Field IS_FUNCTION         = field("is_function");
+    public static Field IS_INFLOW           = field("is_inflow");
+    public static Field IS_INPORT           = field("is_inport");
+    public static Field IS_OUTFLOW          = field("is_outflow");
+    public static Field IS_OUTPORT          = field("is_outport");
+    public static Field IN_PORT_ID          = field("in_port");
     public static Field KEYWORD             = field("keyword");
     public static Field LINE_TEXT           = field("line_text");
+    public static Field LINE_OFFSET         = field("line_offset");
+    public static Field LINE_LENGTH         = field("line_length");
     public static Field LINE_NUMBER         = field("line_number");
     public static Field NAME                = field("name");
+    public static Field ON_PROGRAM_BLOCK    = field("on_program_block");
+    public static Field OUT_PORT_ID         = field("out_port");
     public static Field PATH                = field("path");
+    public static Field PORT_ANNOTATION_ID  = field("port_annotation");
     public static Field PROGRAM_ID          = field("in_program_block");
     public static Field QUALIFIED_NAME      = field("qualified_name");
     public static Field QUALIFIES           = field("qualifies");
@@ -28,6 +40,7 @@ public class Column {
     public static Field RANK_IN_COMMENT     = field("rank_in_comment");
     public static Field SOURCE_ID           = field("source");
     public static Field TAG                 = field("tag");
+    public static Field URI_TEMPLATE        = field("uri_template");
     public static Field VALUE               = field("value");
     
     public static class DATA {
@@ -44,6 +57,8 @@ public class Column {
         public static Field SOURCE_ID       = field("source_line.source");
         public static Field LINE_NUMBER     = field("source_line.line_number");
         public static Field LINE_TEXT       = field("source_line.line_text");
+        public static Field LINE_OFFSET     = field("source_line.line_offset");
+        public static Field LINE_LENGTH     = field("source_line.line_length");
     }
 
     public static class COMMENT {
@@ -0,0 +1,175 @@
+package org.yesworkflow.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+
+import static org.yesworkflow.db.Column.*;
+
+/** Class for writing the program blocks, data, ports and channels of a model to a
+ *  YesWorkflow database.  Each table is written through a single prepared statement
+ *  to which every row is added as part of one JDBC batch, and the batches of all
+ *  four tables are executed in one transaction when the inserter is closed.
+ */
+public class ModelBatchInserter implements ModelInserter {
+
+    private final YesWorkflowDB ywdb;
+    private final TableBatch programBlocks;
+    private final TableBatch data;
+    private final TableBatch ports;
+    private final TableBatch channels;
+
+    /** Constructs a ModelBatchInserter writing to the given YesWorkflow database, and
+     *  reads the first free ID of each table written.
+     * @param ywdb The YesWorkflow database.
+     * @throws SQLException If an error occurs querying the YW database.
+     */
+    public ModelBatchInserter(YesWorkflowDB ywdb) throws SQLException {
+        this.ywdb = ywdb;
+        this.programBlocks = new TableBatch(Table.PROGRAM_BLOCK, ID, IN_PROGRAM_BLOCK, BEGIN_ANNOTATION_ID,
+                                            END_ANNOTATION_ID, NAME, QUALIFIED_NAME, IS_WORKFLOW, IS_FUNCTION);
+        this.data = new TableBatch(Table.DATA, ID, IN_PROGRAM_BLOCK, NAME, QUALIFIED_NAME);
+        this.ports = new TableBatch(Table.PORT, ID, PORT_ANNOTATION_ID, ON_PROGRAM_BLOCK, DATA_ID, NAME,
+                                    QUALIFIED_NAME, ALIAS, URI_TEMPLATE, IS_INPORT, IS_OUTPORT);
+        this.channels = new TableBatch(Table.CHANNEL, ID, OUT_PORT_ID, IN_PORT_ID, DATA_ID, IS_INFLOW, IS_OUTFLOW);
+    }
+
+    @Override
+    public long firstProgramBlockId() {
+        return programBlocks.firstFreeId;
+    }
+
+    @Override
+    public long firstDataId() {
+        return data.firstFreeId;
+    }
+
+    @Override
+    public long firstPortId() {
+        return ports.firstFreeId;
+    }
+
+    @Override
+    public long firstChannelId() {
+        return channels.firstFreeId;
+    }
+
+    @Override
+    public void insertProgramBlock(long id, Long inProgramBlockId, Long beginAnnotationId, Long endAnnotationId,
+                                   String name, String qualifiedName,
+                                   boolean isWorkflow, boolean isFunction) throws SQLException {
+        programBlocks.add(id, inProgramBlockId, beginAnnotationId, endAnnotationId, name, qualifiedName,
+                          flag(isWorkflow), flag(isFunction));
+    }
+
+    @Override
+    public void insertData(long id, Long inProgramBlockId, String name, String qualifiedName) throws SQLException {
+        data.add(id, inProgramBlockId, name, qualifiedName);
+    }
+
+    @Override
+    public void insertPort(long id, Long portAnnotationId, long programBlockId, long dataId,
+                           String name, String qualifiedName, String alias, String uriTemplate,
+                           boolean isInport, boolean isOutport) throws SQLException {
+        ports.add(id, portAnnotationId, programBlockId, dataId, name, qualifiedName, alias, uriTemplate,
+                  flag(isInport), flag(isOutport));
+    }
+
+    @Override
+    public void insertChannel(long id, long outPortId, long inPortId, long dataId,
+                              boolean isInflow, boolean isOutflow) throws SQLException {
+        channels.add(id, outPortId, inPortId, dataId, flag(isInflow), flag(isOutflow));
+    }
+
+    private static Integer flag(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    /** Executes the batches of all four tables in one transaction, in the order
+     *  required by their foreign keys, and releases the prepared statements.
+     * @throws SQLException If an error occurs inserting rows into the YW database.
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (programBlocks.pendingRows == 0 && data.pendingRows == 0 &&
+                ports.pendingRows == 0 && channels.pendingRows == 0) return;
+
+            Connection connection = ywdb.connection;
+            boolean autoCommit = connection.getAutoCommit();
+            if (autoCommit) connection.setAutoCommit(false);
+            try {
+                programBlocks.executeBatch();
+                data.executeBatch();
+                ports.executeBatch();
+                channels.executeBatch();
+                if (autoCommit) connection.commit();
+            } catch (SQLException e) {
+                if (autoCommit) connection.rollback();
+                throw e;
+            } finally {
+                if (autoCommit) connection.setAutoCommit(true);
+            }
+        } finally {
+            programBlocks.close();
+            data.close();
+            ports.close();
+            channels.close();
+        }
+    }
+
+    /** Prepared insert statement and pending batch for one table. */
+    private class TableBatch {
+
+        private final String sql;
+        private final long firstFreeId;
+        private PreparedStatement insert = null;
+        private int pendingRows = 0;
+
+        TableBatch(org.jooq.Table<?> table, Field<?>... columns) throws SQLException {
+
+            StringBuilder columnList = new StringBuilder();
+            StringBuilder parameterList = new StringBuilder();
+            for (Field<?> column : columns) {
+                if (columnList.length() > 0) {
+                    columnList.append(", ");
+                    parameterList.append(", ");
+                }
+                columnList.append(ywdb.jooq().render(column));
+                parameterList.append('?');
+            }
+            this.sql = "INSERT INTO " + ywdb.jooq().render(table) + " (" + columnList + ") VALUES (" + parameterList + ")";
+
+            Record maxIdRecord = ywdb.jooq().select(DSL.max(ID)).from(table).fetchOne();
+            Object maxId = maxIdRecord.getValue(0);
+            this.firstFreeId = (maxId == null) ? 1 : ((Number)maxId).longValue() + 1;
+        }
+
+        void add(Object... values) throws SQLException {
+            if (insert == null) insert = ywdb.connection.prepareStatement(sql);
+            for (int i = 0; i < values.length; ++i) {
+                insert.setObject(i + 1, values[i]);
+            }
+            insert.addBatch();
+            pendingRows++;
+        }
+
+        void executeBatch() throws SQLException {
+            if (pendingRows > 0) {
+                insert.executeBatch();
+                pendingRows = 0;
+            }
+        }
+
+        void close() throws SQLException {
+            if (insert != null) {
+                insert.close();
+                insert = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.yesworkflow.db;
+
+import java.sql.SQLException;
+
+/** Interface for writing the program blocks, data, ports and channels of a model
+ *  to a {@link YWStore}.  Rows are held back until {@link #close()}, which writes
+ *  all of them together, in a single transaction if the store has transactions.
+ *
+ *  <p>The caller assigns the IDs of the rows.  The IDs inserted into each table
+ *  must be ascending and start no lower than the first free ID reported for the
+ *  table when the inserter was created, and rows must only refer to rows of
+ *  other tables already present or inserted through the same inserter.</p>
+ */
+public interface ModelInserter extends AutoCloseable {
+
+    /** @return The first ID not yet assigned to a program block. */
+    long firstProgramBlockId();
+
+    /** @return The first ID not yet assigned to a data row. */
+    long firstDataId();
+
+    /** @return The first ID not yet assigned to a port. */
+    long firstPortId();
+
+    /** @return The first ID not yet assigned to a channel. */
+    long firstChannelId();
+
+    void insertProgramBlock(long id, Long inProgramBlockId, Long beginAnnotationId, Long endAnnotationId,
+                            String name, String qualifiedName,
+                            boolean isWorkflow, boolean isFunction) throws SQLException;
+
+    void insertData(long id, Long inProgramBlockId, String name, String qualifiedName) throws SQLException;
+
+    /** Inserts a port of a program block.
+     * @param id Unique ID of the port.
+     * @param portAnnotationId ID of the annotation declaring the port.
+     * @param programBlockId ID of the program block the port is on.
+     * @param dataId ID of the data flowing through the port.
+     * @param name Name of the port.
+     * @param qualifiedName Name of the port qualified by that of its program block.
+     * @param alias Alias of the port, or null if it has none.
+     * @param uriTemplate URI template of the port, or null if it has none.
+     * @param isInport Whether data flows into the program block through the port.
+     * @param isOutport Whether data flows out of the program block through the port.
+     * @throws SQLException If an error occurs inserting rows into the YW store.
+     */
+    void insertPort(long id, Long portAnnotationId, long programBlockId, long dataId,
+                    String name, String qualifiedName, String alias, String uriTemplate,
+                    boolean isInport, boolean isOutport) throws SQLException;
+
+    void insertChannel(long id, long outPortId, long inPortId, long dataId,
+                       boolean isInflow, boolean isOutflow) throws SQLException;
+
+    /** Writes all rows held back and releases any resources held by the inserter. */
+    @Override
+    void close() throws SQLException;
+}
@@ -0,0 +1,36 @@
+package org.yesworkflow.db;
+
+import java.sql.SQLException;
+
+/** Interface for writing the source lines, comments and annotations of an
+ *  extraction to a {@link YWStore}.  Rows may be held back until {@link #flush()}
+ *  or {@link #close()} is called, but each insert returns the ID the row will have.
+ */
+public interface RowInserter extends AutoCloseable {
+
+    Long insertSourceLine(Long sourceId, Long lineNumber, String lineText) throws SQLException;
+
+    /** Inserts a source line recorded by where it is stored in the source file rather than by its text.
+     * @param sourceId Unique ID of the source file.
+     * @param lineNumber Number of the line in the source file.
+     * @param lineOffset Byte offset of the line in the source file.
+     * @param lineLength Length of the line in bytes, excluding its terminator.
+     * @return The ID assigned to the source line.
+     * @throws SQLException If an error occurs inserting rows into the YW store.
+     */
+    Long insertSourceLineOffset(Long sourceId, Long lineNumber, long lineOffset, long lineLength) throws SQLException;
+
+    Long insertComment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws SQLException;
+
+    Long insertAnnotation(Long qualifiedAnnotationId, long commentId, long rankInComment, String tag,
+                          String keyword, String value, String description) throws SQLException;
+
+    /** Writes all rows held back so far.
+     * @throws SQLException If an error occurs inserting rows into the YW store.
+     */
+    void flush() throws SQLException;
+
+    /** Flushes held-back rows and releases any resources held by the inserter. */
+    @Override
+    void close() throws SQLException;
+}
@@ -0,0 +1,315 @@
+package org.yesworkflow.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Class implementing {@link YWStore} with plain arrays in memory rather than a
+ *  database.  Source files, source lines and comments are kept in one primitive
+ *  array per column, with the row of each ID at index ID - 1.  Rows that
+ *  extraction and modeling never read back, namely annotations, program blocks,
+ *  data, ports and channels, are only counted to assign their IDs.  Rows are written immediately,
+ *  so the inserters returned hold nothing back.
+ *
+ *  <p>Selected with <code>db.store=memory</code>, for runs that only graph the
+ *  model or export facts and so never query the tables.  Instances are not
+ *  thread-safe.</p>
+ */
+public class YWMemoryStore implements YWStore {
+
+    private final List<String> sourcePaths = new ArrayList<String>();
+
+    private int sourceLineCount;
+    private long[] lineSourceIds;
+    private long[] lineNumbers;
+    private String[] lineTexts;
+    private long[] lineOffsets;
+    /** length of each line stored by location, or -1 for lines stored as text */
+    private int[] lineLengths;
+    /** rows of the source lines in order of source ID and line number, or null if not yet sorted */
+    private int[] linesInSourceOrder;
+
+    private int commentCount;
+    private long[] commentSourceIds;
+    private long[] commentLineNumbers;
+    private long[] commentRanks;
+    private String[] commentTexts;
+
+    private long annotationCount;
+    private long programBlockCount;
+    private long dataCount;
+    private long portCount;
+    private long channelCount;
+
+    private final RowInserter inserter = new MemoryRowInserter();
+
+    public YWMemoryStore() {
+        clear();
+    }
+
+    @Override
+    public Long insertSource(String path) {
+        sourcePaths.add(path);
+        return (long) sourcePaths.size();
+    }
+
+    @Override
+    public Map<Long,String> getSourcePaths() {
+        Map<Long,String> paths = new LinkedHashMap<Long,String>();
+        for (int i = 0; i < sourcePaths.size(); ++i) {
+            paths.put(i + 1L, sourcePaths.get(i));
+        }
+        return paths;
+    }
+
+    @Override
+    public SourceLine getSourceLine(Long sourceId, Long lineNumber) {
+
+        if (linesInSourceOrder == null) {
+            linesInSourceOrder = sortedRows(lineSourceIds, lineNumbers, null, sourceLineCount);
+        }
+
+        int low = 0;
+        int high = sourceLineCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int row = linesInSourceOrder[middle];
+            int order = compare(lineSourceIds[row], lineNumbers[row], sourceId, lineNumber);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                String path = sourcePaths.get((int) lineSourceIds[row] - 1);
+                return (lineLengths[row] < 0) ? new SourceLine(lineTexts[row], null, null, path)
+                                                : new SourceLine(null, lineOffsets[row], (long) lineLengths[row], path);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public RowInserter rowInserter(int batchSize) {
+        return inserter;
+    }
+
+    @Override
+    public void readComments(CommentHandler handler) throws Exception {
+        for (int row = 0; row < commentCount; ++row) {
+            handleComment(row, handler);
+        }
+    }
+
+    @Override
+    public void readCommentsInSourceOrder(int fetchSize, CommentHandler handler) throws Exception {
+        for (int row : sortedRows(commentSourceIds, commentLineNumbers, commentRanks, commentCount)) {
+            handleComment(row, handler);
+        }
+    }
+
+    private void handleComment(int row, CommentHandler handler) throws Exception {
+        handler.comment(row + 1, commentSourceIds[row], commentLineNumbers[row], commentRanks[row], commentTexts[row]);
+    }
+
+    @Override
+    public long getAnnotationCount() {
+        return annotationCount;
+    }
+
+    @Override
+    public Long getLastAnnotationId() {
+        return (annotationCount == 0) ? null : annotationCount;
+    }
+
+    @Override
+    public ModelInserter modelInserter() {
+        return new MemoryModelInserter();
+    }
+
+    @Override
+    public void clear() {
+
+        sourcePaths.clear();
+
+        sourceLineCount = 0;
+        lineSourceIds = new long[64];
+        lineNumbers = new long[64];
+        lineTexts = new String[64];
+        lineOffsets = new long[64];
+        lineLengths = new int[64];
+        linesInSourceOrder = null;
+
+        commentCount = 0;
+        commentSourceIds = new long[64];
+        commentLineNumbers = new long[64];
+        commentRanks = new long[64];
+        commentTexts = new String[64];
+
+        annotationCount = 0;
+        programBlockCount = 0;
+        dataCount = 0;
+        portCount = 0;
+        channelCount = 0;
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    /** Returns the rows ordered by the given columns, reusing the insertion order when
+     *  it is already sorted, as it is unless sources were extracted out of order. */
+    private static int[] sortedRows(long[] first, long[] second, long[] third, int count) {
+
+        int[] order = new int[count];
+        boolean sorted = true;
+        for (int row = 0; row < count; ++row) {
+            order[row] = row;
+            if (sorted && row > 0 && compareRows(first, second, third, row - 1, row) > 0) sorted = false;
+        }
+        if (sorted) return order;
+
+        Integer[] rows = new Integer[count];
+        for (int row = 0; row < count; ++row) {
+            rows[row] = row;
+        }
+        Arrays.sort(rows, (a, b) -> compareRows(first, second, third, a, b));
+        for (int i = 0; i < count; ++i) {
+            order[i] = rows[i];
+        }
+        return order;
+    }
+
+    private static int compareRows(long[] first, long[] second, long[] third, int a, int b) {
+        int order = compare(first[a], second[a], first[b], second[b]);
+        if (order == 0 && third != null) order = Long.compare(third[a], third[b]);
+        return order;
+    }
+
+    private static int compare(long firstA, long secondA, long firstB, long secondB) {
+        int order = Long.compare(firstA, firstB);
+        return (order != 0) ? order : Long.compare(secondA, secondB);
+    }
+
+    private class MemoryRowInserter implements RowInserter {
+
+        @Override
+        public Long insertSourceLine(Long sourceId, Long lineNumber, String lineText) {
+            int row = addSourceLine(sourceId, lineNumber);
+            lineTexts[row] = lineText;
+            return row + 1L;
+        }
+
+        @Override
+        public Long insertSourceLineOffset(Long sourceId, Long lineNumber, long lineOffset, long lineLength) {
+            int row = addSourceLine(sourceId, lineNumber);
+            lineOffsets[row] = lineOffset;
+            lineLengths[row] = (int) lineLength;
+            return row + 1L;
+        }
+
+        private int addSourceLine(Long sourceId, Long lineNumber) {
+            if (sourceLineCount == lineSourceIds.length) {
+                int capacity = sourceLineCount * 2;
+                lineSourceIds = Arrays.copyOf(lineSourceIds, capacity);
+                lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+                lineTexts = Arrays.copyOf(lineTexts, capacity);
+                lineOffsets = Arrays.copyOf(lineOffsets, capacity);
+                lineLengths = Arrays.copyOf(lineLengths, capacity);
+            }
+            int row = sourceLineCount++;
+            lineSourceIds[row] = sourceId;
+            lineNumbers[row] = lineNumber;
+            lineTexts[row] = null;
+            lineLengths[row] = -1;
+            linesInSourceOrder = null;
+            return row;
+        }
+
+        @Override
+        public Long insertComment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) {
+            if (commentCount == commentSourceIds.length) {
+                int capacity = commentCount * 2;
+                commentSourceIds = Arrays.copyOf(commentSourceIds, capacity);
+                commentLineNumbers = Arrays.copyOf(commentLineNumbers, capacity);
+                commentRanks = Arrays.copyOf(commentRanks, capacity);
+                commentTexts = Arrays.copyOf(commentTexts, capacity);
+            }
+            int row = commentCount++;
+            commentSourceIds[row] = sourceId;
+            commentLineNumbers[row] = lineNumber;
+            commentRanks[row] = rankInLine;
+            commentTexts[row] = commentText;
+            return row + 1L;
+        }
+
+        @Override
+        public Long insertAnnotation(Long qualifiedAnnotationId, long commentId, long rankInComment, String tag,
+                                     String keyword, String value, String description) {
+            return ++annotationCount;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Inserter recording only the largest ID inserted into each table of the model. */
+    private class MemoryModelInserter implements ModelInserter {
+
+        @Override
+        public long firstProgramBlockId() {
+            return programBlockCount + 1;
+        }
+
+        @Override
+        public long firstDataId() {
+            return dataCount + 1;
+        }
+
+        @Override
+        public long firstPortId() {
+            return portCount + 1;
+        }
+
+        @Override
+        public long firstChannelId() {
+            return channelCount + 1;
+        }
+
+        @Override
+        public void insertProgramBlock(long id, Long inProgramBlockId, Long beginAnnotationId, Long endAnnotationId,
+                                       String name, String qualifiedName, boolean isWorkflow, boolean isFunction) {
+            programBlockCount = id;
+        }
+
+        @Override
+        public void insertData(long id, Long inProgramBlockId, String name, String qualifiedName) {
+            dataCount = id;
+        }
+
+        @Override
+        public void insertPort(long id, Long portAnnotationId, long programBlockId, long dataId, String name,
+                               String qualifiedName, String alias, String uriTemplate,
+                               boolean isInport, boolean isOutport) {
+            portCount = id;
+        }
+
+        @Override
+        public void insertChannel(long id, long outPortId, long inPortId, long dataId,
+                                  boolean isInflow, boolean isOutflow) {
+            channelCount = id;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.yesworkflow.db;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/** Interface to the storage written by extraction and modeling: source files,
+ *  their lines and comments, annotations, and the program blocks, data, ports and
+ *  channels of the model.  IDs are
+ *  assigned to the rows of each table in order of insertion starting at 1, so
+ *  every implementation gives the same IDs for the same inserts.
+ *
+ *  <p>{@link YesWorkflowDB} stores the rows in a relational database that can
+ *  also be queried directly.  {@link YWMemoryStore} keeps only what extraction
+ *  reads back in plain in-memory arrays.</p>
+ */
+public interface YWStore extends AutoCloseable {
+
+    Long insertSource(String path) throws SQLException;
+
+    /** @return The path of each source file by source ID, in order of ID.
+     *          The path is null for sources read from a stream. */
+    Map<Long,String> getSourcePaths() throws SQLException;
+
+    /** Returns a stored source line.
+     * @param sourceId Unique ID of the source file.
+     * @param lineNumber Number of the line in the source file.
+     * @return The line, or null if it was not recorded.
+     * @throws SQLException If an error occurs querying the YW store.
+     */
+    SourceLine getSourceLine(Long sourceId, Long lineNumber) throws SQLException;
+
+    /** Creates an inserter for source lines, comments and annotations.
+     * @param batchSize The maximum number of rows the inserter may hold back.
+     * @return The new inserter.
+     */
+    RowInserter rowInserter(int batchSize);
+
+    /** Passes each stored comment to the given handler in order of ID.
+     * @param handler The handler to pass the comments to.
+     * @throws Exception If the store cannot be read or the handler throws an exception.
+     */
+    void readComments(CommentHandler handler) throws Exception;
+
+    /** Passes each stored comment to the given handler in order of source ID,
+     *  line number and rank in line.
+     * @param fetchSize The maximum number of comments read from the store at a time.
+     * @param handler The handler to pass the comments to.
+     * @throws Exception If the store cannot be read or the handler throws an exception.
+     */
+    void readCommentsInSourceOrder(int fetchSize, CommentHandler handler) throws Exception;
+
+    long getAnnotationCount() throws SQLException;
+
+    /** @return The largest annotation ID assigned, or null if there are no annotations. */
+    Long getLastAnnotationId() throws SQLException;
+
+    /** Creates an inserter for the program blocks, data, ports and channels of a model.
+     * @return The new inserter.
+     * @throws SQLException If an error occurs querying the YW store.
+     */
+    ModelInserter modelInserter() throws SQLException;
+
+    /** Deletes everything stored and restarts the IDs of each table at 1.
+     * @throws Exception If the store cannot be cleared.
+     */
+    void clear() throws Exception;
+
+    @Override
+    void close() throws SQLException;
+
+    /** Interface for receiving the comments read from a YW store. */
+    interface CommentHandler {
+        void comment(long id, long sourceId, long lineNumber, long rankInLine, String commentText) throws Exception;
+    }
+
+    /** A source line as stored, either as its text or as its location in the source file. */
+    final class SourceLine {
+
+        /** text of the line, or null if stored by location */
+        public final String text;
+        /** byte offset and length of the line in the source file, or null if stored as text */
+        public final Long offset;
+        public final Long length;
+        /** path of the source file, or null if read from a stream */
+        public final String path;
+
+        public SourceLine(String text, Long offset, Long length, String path) {
+            this.text = text;
+            this.offset = offset;
+            this.length = length;
+            this.path = path;
+        }
+    }
+}
@@ -5,27 +5,38 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.LogManager;
 
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.Record;
+import org.jooq.Result;
 import org.yesworkflow.util.FileIO;
 import org.yesworkflow.db.Table;
 
+import static org.jooq.impl.DSL.max;
 import static org.yesworkflow.db.Column.*;
 
 @SuppressWarnings("unchecked")
-public abstract class YesWorkflowDB {
+public abstract class YesWorkflowDB implements YWStore {
 
     static {
         // disable display of jOOQ logo
         LogManager.getLogManager().reset();
     }
 
+    /** statements of the table creation scripts read so far, by script path */
+    private static final Map<String,String[]> SCHEMA_STATEMENTS = new ConcurrentHashMap<String,String[]>();
+
     protected Connection connection;
     protected Statement statement;
-    protected DSLContext jooq;
+    private volatile DSLContext jooq;
         
     public static YesWorkflowDB createInstance() throws Exception {
         return createInMemoryDB();
@@ -53,15 +64,47 @@ public abstract class YesWorkflowDB {
         this.statement = connection.createStatement();
     }
 
+    @Override
     public void close() throws SQLException {
         statement.close();
         connection.close();
     }
     
+    /** Deletes every row of the YW tables and restarts their ID sequences, returning
+     *  the database to the state it was in when created.  Lets one connection serve
+     *  repeated extractions by a long-running process.
+     * @throws Exception If the tables cannot be cleared.
+     */
+    @Override
+    public abstract void clear() throws Exception;
+
+    /** Creates the YW tables using the statements of the given script.  The statements of
+     *  each script are read from the classpath and split apart once per JVM, and are then
+     *  sent to the database as a single batch for every database created.
+     * @param createTablesScriptPath The classpath location of the script.
+     * @return The number of statements executed.
+     */
     protected int createDBTables(String createTablesScriptPath) throws Exception {
-        String sqlScript = FileIO.readTextFileOnClasspath(createTablesScriptPath);
-        int statementCount = executeSqlScript(sqlScript);
-        return statementCount;
+        String[] sqlStatements = SCHEMA_STATEMENTS.get(createTablesScriptPath);
+        if (sqlStatements == null) {
+            sqlStatements = splitSqlScript(FileIO.readTextFileOnClasspath(createTablesScriptPath));
+            SCHEMA_STATEMENTS.put(createTablesScriptPath, sqlStatements);
+        }
+        for (String sqlStatement : sqlStatements) {
+            statement.addBatch(sqlStatement);
+        }
+        statement.executeBatch();
+        return sqlStatements.length;
+    }
+
+    private static String[] splitSqlScript(String sqlScript) {
+        List<String> sqlStatements = new ArrayList<String>();
+        for (String sqlStatement : sqlScript.split(";")) {
+            if (sqlStatement.trim().length() > 0) {
+                sqlStatements.add(sqlStatement);
+            }
+        }
+        return sqlStatements.toArray(new String[sqlStatements.size()]);
     }
     
     public int executeSqlScript(String sqlScript) 
@@ -79,19 +122,36 @@ public abstract class YesWorkflowDB {
         return statementCount;
     }
 
+    /** Returns the jOOQ context for the connection, creating it on first use so that
+     *  jOOQ is initialized only when a query or insert is built through it.
+     * @return The jOOQ context.
+     */
     public DSLContext jooq() {
-        return jooq;
+        DSLContext context = jooq;
+        if (context == null) {
+            synchronized (this) {
+                context = jooq;
+                if (context == null) {
+                    jooq = context = createDSLContext();
+                }
+            }
+        }
+        return context;
     }
 
+    /** @return A new jOOQ context for the connection, in the SQL dialect of the database. */
+    protected abstract DSLContext createDSLContext();
+
     public long getGeneratedId() throws SQLException {
         ResultSet resultSet = statement.getGeneratedKeys();
         resultSet.next();
         return resultSet.getLong(1);
     }
     
+    @Override
     public Long insertSource(String path) throws SQLException {
 
-       jooq.insertInto(Table.SOURCE)
+       jooq().insertInto(Table.SOURCE)
            .set(PATH, path)
            .execute();
         
@@ -100,7 +160,7 @@ public abstract class YesWorkflowDB {
 
     public Long insertSourceLine(Long sourceId, Long lineNumber, String lineText) throws SQLException {
 
-        jooq.insertInto(Table.SOURCE_LINE)
+        jooq().insertInto(Table.SOURCE_LINE)
             .set(SOURCE_ID, sourceId)
             .set(LINE_NUMBER, lineNumber)
             .set(LINE_TEXT, lineText)
@@ -112,7 +172,7 @@ public abstract class YesWorkflowDB {
     public Long insertComment(Long sourceId, Long lineNumber, 
                               Long rankInLine, String commentText) throws SQLException {
 
-        jooq.insertInto(Table.COMMENT)
+        jooq().insertInto(Table.COMMENT)
             .set(SOURCE_ID, sourceId)
             .set(LINE_NUMBER, lineNumber)
             .set(RANK_IN_LINE, rankInLine)
@@ -126,7 +186,7 @@ public abstract class YesWorkflowDB {
                                  long rankInComment, String tag, String keyword, 
                                  String value, String description) throws SQLException {
 
-        jooq.insertInto(Table.ANNOTATION)
+        jooq().insertInto(Table.ANNOTATION)
             .set(QUALIFIES, qualifiedAnnotationId)
             .set(COMMENT_ID, commentId)
             .set(RANK_IN_COMMENT, rankInComment)
@@ -139,20 +199,11 @@ public abstract class YesWorkflowDB {
         return getGeneratedId();
     }
 
-    public Long insertDefaultProgramBlock(Long inProgramBlockId) throws SQLException {
-
-        jooq.insertInto(Table.PROGRAM_BLOCK)
-            .set(IN_PROGRAM_BLOCK, inProgramBlockId)
-            .execute();
-
-        return getGeneratedId();
-    }
-
     public Long insertProgramBlock(Long inProgramBlockId, Long beginAnnotationId, Long endAnnotationId,
                               String name, String qualifiedName, 
                               boolean isWorkflow, boolean isFunction) throws SQLException {
 
-        jooq.insertInto(Table.PROGRAM_BLOCK)
+        jooq().insertInto(Table.PROGRAM_BLOCK)
             .set(IN_PROGRAM_BLOCK, inProgramBlockId)
             .set(BEGIN_ANNOTATION_ID, beginAnnotationId)
             .set(END_ANNOTATION_ID, endAnnotationId)
@@ -165,47 +216,106 @@ public abstract class YesWorkflowDB {
         return getGeneratedId();
     }
 
-    public void updateProgramBlock(long id, Long beginAnnotationId, Long endAnnotationId,
-                              String name, String qualifiedName, 
-                              boolean isWorkflow, boolean isFunction) {
+    public Long insertPort(String name, String qualifiedName, Long programId) throws SQLException {
 
-        jooq.update(Table.PROGRAM_BLOCK)
-            .set(BEGIN_ANNOTATION_ID, beginAnnotationId)
-            .set(END_ANNOTATION_ID, endAnnotationId)
+        jooq().insertInto(Table.DATA)
             .set(NAME, name)
             .set(QUALIFIED_NAME, qualifiedName)
-            .set(IS_WORKFLOW, isWorkflow)
-            .set(IS_FUNCTION, isFunction)
-            .where(ID.equal(id))            
+            .set(PROGRAM_ID, programId)
             .execute();
+        
+        return getGeneratedId();
     }
 
-    public Long insertData(String name, String qualifiedName, Long inProgramBlockId) throws SQLException {
 
-        jooq.insertInto(Table.DATA)
-            .set(IN_PROGRAM_BLOCK, inProgramBlockId)
-            .set(NAME, name)
-            .set(QUALIFIED_NAME, qualifiedName)
-            .execute();
-        
-        return getGeneratedId();
+    @Override
+    public Map<Long,String> getSourcePaths() throws SQLException {
+        Map<Long,String> sourcePaths = new LinkedHashMap<Long,String>();
+        Result<Record> rows = jooq().select(ID, PATH).from(Table.SOURCE).orderBy(ID).fetch();
+        for (Record record : rows) {
+            sourcePaths.put(getLongValue(record, ID), (String) record.getValue(PATH));
+        }
+        return sourcePaths;
     }
-    
-    public Long insertPort(String name, String qualifiedName, Long programId) throws SQLException {
 
-        jooq.insertInto(Table.DATA)
-            .set(NAME, name)
-            .set(QUALIFIED_NAME, qualifiedName)
-            .set(PROGRAM_ID, programId)
-            .execute();
-        
-        return getGeneratedId();
+    @Override
+    public SourceLine getSourceLine(Long sourceId, Long lineNumber) throws SQLException {
+
+        Record line = jooq().select(SOURCE_LINE.LINE_TEXT, SOURCE_LINE.LINE_OFFSET,
+                                    SOURCE_LINE.LINE_LENGTH, SOURCE.PATH)
+                            .from(Table.SOURCE_LINE)
+                            .join(Table.SOURCE).on(SOURCE_LINE.SOURCE_ID.equal(SOURCE.ID))
+                            .where(SOURCE_LINE.SOURCE_ID.equal(sourceId))
+                            .and(SOURCE_LINE.LINE_NUMBER.equal(lineNumber))
+                            .fetchOne();
+
+        if (line == null) return null;
+
+        Object offset = line.getValue(SOURCE_LINE.LINE_OFFSET);
+        Object length = line.getValue(SOURCE_LINE.LINE_LENGTH);
+        return new SourceLine((String) line.getValue(SOURCE_LINE.LINE_TEXT),
+                              (offset == null) ? null : ((Number) offset).longValue(),
+                              (length == null) ? null : ((Number) length).longValue(),
+                              (String) line.getValue(SOURCE.PATH));
+    }
+
+    @Override
+    public RowInserter rowInserter(int batchSize) {
+        return new BatchInserter(this, batchSize);
+    }
+
+    @Override
+    public ModelInserter modelInserter() throws SQLException {
+        return new ModelBatchInserter(this);
+    }
+
+    @Override
+    public void readComments(CommentHandler handler) throws Exception {
+        Result<Record> rows = jooq().select(ID, SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+                                    .from(Table.COMMENT)
+                                    .orderBy(ID)
+                                    .fetch();
+        for (Record row : rows) {
+            handleComment(row, handler);
+        }
+    }
+
+    /** Reads the comments through a lazy cursor, so the comment table is never held
+     *  in memory as a whole. */
+    @Override
+    public void readCommentsInSourceOrder(int fetchSize, CommentHandler handler) throws Exception {
+        Cursor<Record> rows = jooq().select(ID, SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+                                    .from(Table.COMMENT)
+                                    .orderBy(SOURCE_ID, LINE_NUMBER, RANK_IN_LINE)
+                                    .fetchSize(fetchSize)
+                                    .fetchLazy();
+        try {
+            for (Record row : rows) {
+                handleComment(row, handler);
+            }
+        } finally {
+            rows.close();
+        }
+    }
+
+    private void handleComment(Record row, CommentHandler handler) throws Exception {
+        handler.comment(getLongValue(row, ID), getLongValue(row, SOURCE_ID), getLongValue(row, LINE_NUMBER),
+                        getLongValue(row, RANK_IN_LINE), (String) row.getValue(COMMENT_TEXT));
+    }
+
+    @Override
+    public long getAnnotationCount() throws SQLException {
+        return getRowCount(Table.ANNOTATION);
+    }
+
+    @Override
+    public Long getLastAnnotationId() throws SQLException {
+        return getLong(jooq().select(max(ID)).from(Table.ANNOTATION).fetchOne().getValue(0));
     }
 
-    
     public int getRowCount(org.jooq.Table<?> T) throws SQLException {
         
-        return (int)jooq.selectCount()
+        return (int)jooq().selectCount()
                         .from(T)
                         .fetchOne()
                         .getValue(0);
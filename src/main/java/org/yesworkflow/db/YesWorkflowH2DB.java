@@ -4,6 +4,7 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 import org.jooq.conf.RenderNameStyle;
 import org.jooq.conf.Settings;
@@ -16,16 +17,25 @@ public class YesWorkflowH2DB extends YesWorkflowDB {
 
     public YesWorkflowH2DB(Connection connection) throws SQLException {
         super(connection);
-        
+    }
+
+    @Override
+    protected DSLContext createDSLContext() {
         // Note the disabling of quotes around schema/table/column names to avoid bug in H2.
         // See http://stackoverflow.com/questions/25975401/jooq-error-with-alias-and-quotes
-        this.jooq = DSL.using(
+        return DSL.using(
                 this.connection, 
                 SQLDialect.H2, 
                 new Settings().withRenderNameStyle(RenderNameStyle.AS_IS)
         );
     }
     
+    @Override
+    public void clear() throws Exception {
+        statement.execute("DROP ALL OBJECTS");
+        createDBTables(CREATE_TABLES_SCRIPT);
+    }
+
     public static YesWorkflowDB createInMemoryDB() throws Exception {
         YesWorkflowDB ywdb = new YesWorkflowH2DB(DriverManager.getConnection(IN_MEMORY_DB_URL));
         ywdb.createDBTables(CREATE_TABLES_SCRIPT);
@@ -7,6 +7,7 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 import org.jooq.impl.DSL;
 
@@ -17,9 +18,24 @@ public class YesWorkflowSQLiteDB extends YesWorkflowDB {
 
     public YesWorkflowSQLiteDB(Connection connection) throws SQLException {
         super(connection);
-        this.jooq = DSL.using(this.connection, SQLDialect.SQLITE);
+    }
+
+    @Override
+    protected DSLContext createDSLContext() {
+        return DSL.using(this.connection, SQLDialect.SQLITE);
     }
     
+    @Override
+    public void clear() throws Exception {
+        // rows referring to others are deleted first, and INTEGER PRIMARY KEY columns
+        // restart at 1 once their tables are empty
+        for (org.jooq.Table<?> table : new org.jooq.Table<?>[] {
+                Table.URI_VARIABLE_VALUE, Table.RESOURCE, Table.URI_VARIABLE, Table.CHANNEL, Table.PORT,
+                Table.DATA, Table.PROGRAM_BLOCK, Table.ANNOTATION, Table.COMMENT, Table.SOURCE_LINE, Table.SOURCE }) {
+            jooq().deleteFrom(table).execute();
+        }
+    }
+
     public static YesWorkflowDB createInMemoryDB() throws Exception {
         YesWorkflowDB ywdb = new YesWorkflowSQLiteDB(DriverManager.getConnection(IN_MEMORY_DB_URL));
         ywdb.createDBTables(CREATE_TABLES_SCRIPT);
@@ -49,7 +65,7 @@ public class YesWorkflowSQLiteDB extends YesWorkflowDB {
     }
     
     public Long getLong(Object value) {
-        if (value instanceof Long) {
+        if (value == null || value instanceof Long) {
             return (Long)value;
         } else return Long.valueOf((Integer)value);
     }
@@ -0,0 +1,239 @@
+package org.yesworkflow.extract;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.LongSupplier;
+
+import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.As;
+import org.yesworkflow.annotations.Begin;
+import org.yesworkflow.annotations.Call;
+import org.yesworkflow.annotations.Desc;
+import org.yesworkflow.annotations.End;
+import org.yesworkflow.annotations.FileUri;
+import org.yesworkflow.annotations.In;
+import org.yesworkflow.annotations.Log;
+import org.yesworkflow.annotations.Out;
+import org.yesworkflow.annotations.Param;
+import org.yesworkflow.annotations.Qualification;
+import org.yesworkflow.annotations.Return;
+import org.yesworkflow.annotations.UriAnnotation;
+
+/** Class holding the annotations parsed from a set of sources in compact
+ *  columns rather than as {@link Annotation} objects: IDs, source IDs and line
+ *  numbers as primitive longs, tags as bytes, and keywords, values and comment
+ *  texts as codes into a dictionary holding each distinct string once.
+ *
+ *  <p>The annotations are read back through {@link List} views that create
+ *  {@link Annotation} objects on access.  A primary annotation is always created
+ *  together with the qualifications following it, so each one returned has its
+ *  qualifications attached, and the objects for the primary annotation last
+ *  accessed are reused while its qualifications are read.  Objects returned by
+ *  the views are otherwise not retained by the store, and accessing the same
+ *  annotation again may yield a new object, equal to the first and to the one
+ *  added.  The
+ *  exception are primary annotations qualified by {@link Log} annotations, which
+ *  are kept as parsed because the variables of their log templates are numbered
+ *  when the templates are created.</p>
+ */
+public class AnnotationStore {
+
+    private static final Tag[] TAGS = Tag.values();
+
+    private int size = 0;
+    private long[] ids = new long[16];
+    private long[] sourceIds = new long[16];
+    private long[] lineNumbers = new long[16];
+    private byte[] tags = new byte[16];
+    private int[] keywords = new int[16];
+    private int[] values = new int[16];
+    private int[] comments = new int[16];
+
+    /** row of each primary annotation, in order */
+    private int primaryCount = 0;
+    private int[] primaryRows = new int[16];
+
+    private long nextLogVariableId = 1L;
+
+    /** distinct strings, and the code of each */
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String,Integer> stringCodes = new HashMap<String,Integer>();
+
+    /** annotations of the groups containing Log annotations, by row of the primary annotation */
+    private final Map<Integer,List<Annotation>> retainedGroups = new HashMap<Integer,List<Annotation>>();
+    private List<Annotation> lastGroupAdded = null;
+
+    /** annotations most recently created by the views, and the row of the first of them */
+    private Annotation[] cachedGroup = null;
+    private int cachedGroupRow = -1;
+
+    private final List<Annotation> annotationView = new AnnotationView(false);
+    private final List<Annotation> primaryAnnotationView = new AnnotationView(true);
+
+    /** Appends an annotation to the store.  Qualifications must follow the primary
+     *  annotation they qualify and any other qualifications of it.
+     *  @param annotation The annotation to store.
+     */
+    public void add(Annotation annotation) {
+
+        if (size == ids.length) grow();
+
+        if (annotation instanceof Qualification) {
+            if (primaryCount == 0 || ids[primaryRows[primaryCount - 1]] != ((Qualification) annotation).primaryAnnotation.id) {
+                throw new IllegalArgumentException("Qualification does not follow its primary annotation: " + annotation.comment);
+            }
+            lastGroupAdded.add(annotation);
+            if (annotation instanceof Log) {
+                retainedGroups.put(primaryRows[primaryCount - 1], lastGroupAdded);
+            }
+        } else {
+            if (primaryCount == primaryRows.length) primaryRows = Arrays.copyOf(primaryRows, primaryCount * 2);
+            primaryRows[primaryCount++] = size;
+            lastGroupAdded = new ArrayList<Annotation>(4);
+            lastGroupAdded.add(annotation);
+        }
+
+        ids[size] = annotation.id;
+        sourceIds[size] = annotation.sourceId;
+        lineNumbers[size] = annotation.lineNumber;
+        tags[size] = (byte) annotation.tag.ordinal();
+        keywords[size] = encode(annotation.keyword);
+        values[size] = encode(annotation.value());
+        comments[size] = encode(annotation.comment);
+        size++;
+        cachedGroup = null;
+        cachedGroupRow = -1;
+    }
+
+    /** @return A view of all stored annotations in the order they were added. */
+    public List<Annotation> annotations() {
+        return annotationView;
+    }
+
+    /** @return A view of the stored primary annotations in the order they were added. */
+    public List<Annotation> primaryAnnotations() {
+        return primaryAnnotationView;
+    }
+
+    /** @return The ID of the next log template variable created for an annotation in this store. */
+    public long nextLogVariableId() {
+        return nextLogVariableId++;
+    }
+
+    /** @return The number of distinct keywords, values and comments held in the dictionary. */
+    public int distinctStringCount() {
+        return strings.size();
+    }
+
+    /** Creates an annotation of the given tag.
+     *  @param primaryAnnotation The annotation qualified if the tag is that of a qualification.
+     *  @param logVariableIds Source of the IDs of the variables of a log template.
+     *  @return The new annotation.
+     */
+    static Annotation newAnnotation(Tag tag, Long id, Long sourceId, Long lineNumber, String comment,
+                                    String keyword, String value, Annotation primaryAnnotation,
+                                    LongSupplier logVariableIds) throws Exception {
+        switch (tag) {
+            case BEGIN:  return new Begin(id, sourceId, lineNumber, comment, keyword, value);
+            case CALL:   return new Call(id, sourceId, lineNumber, comment, keyword, value);
+            case DESC:   return new Desc(id, sourceId, lineNumber, comment, keyword, value, primaryAnnotation);
+            case END:    return new End(id, sourceId, lineNumber, comment, keyword, value);
+            case FILE:   return new FileUri(id, sourceId, lineNumber, comment, keyword, value, primaryAnnotation);
+            case IN:     return new In(id, sourceId, lineNumber, comment, keyword, value);
+            case LOG:    return new Log(id, sourceId, lineNumber, comment, keyword, value, (Out) primaryAnnotation, logVariableIds);
+            case OUT:    return new Out(id, sourceId, lineNumber, comment, keyword, value);
+            case AS:     return new As(id, sourceId, lineNumber, comment, keyword, value, primaryAnnotation);
+            case PARAM:  return new Param(id, sourceId, lineNumber, comment, keyword, value);
+            case RETURN: return new Return(id, sourceId, lineNumber, comment, keyword, value);
+            case URI:    return new UriAnnotation(id, sourceId, lineNumber, comment, keyword, value, primaryAnnotation);
+        }
+        throw new IllegalArgumentException("Unrecognized tag: " + tag);
+    }
+
+    private void grow() {
+        int capacity = size * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        sourceIds = Arrays.copyOf(sourceIds, capacity);
+        lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+        tags = Arrays.copyOf(tags, capacity);
+        keywords = Arrays.copyOf(keywords, capacity);
+        values = Arrays.copyOf(values, capacity);
+        comments = Arrays.copyOf(comments, capacity);
+    }
+
+    private int encode(String s) {
+        if (s == null) return -1;
+        Integer code = stringCodes.get(s);
+        if (code == null) {
+            code = strings.size();
+            strings.add(s);
+            stringCodes.put(s, code);
+        }
+        return code;
+    }
+
+    private String decode(int code) {
+        return (code == -1) ? null : strings.get(code);
+    }
+
+    /** Returns the annotations of the group starting with the primary annotation at the given row. */
+    private Annotation[] group(int primaryIndex) {
+
+        int start = primaryRows[primaryIndex];
+        if (start == cachedGroupRow) return cachedGroup;
+
+        List<Annotation> retained = retainedGroups.get(start);
+        if (retained != null) {
+            cachedGroup = retained.toArray(new Annotation[retained.size()]);
+        } else {
+            int end = (primaryIndex + 1 < primaryCount) ? primaryRows[primaryIndex + 1] : size;
+            cachedGroup = new Annotation[end - start];
+            try {
+                for (int row = start; row < end; ++row) {
+                    cachedGroup[row - start] = newAnnotation(TAGS[tags[row]], ids[row], sourceIds[row], lineNumbers[row],
+                                                             decode(comments[row]), decode(keywords[row]), decode(values[row]),
+                                                             cachedGroup[0], this::nextLogVariableId);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("Stored annotation could not be recreated: " + decode(comments[start]), e);
+            }
+        }
+
+        cachedGroupRow = start;
+        return cachedGroup;
+    }
+
+    /** Returns the index in primaryRows of the primary annotation for the given row. */
+    private int primaryIndexForRow(int row) {
+        int i = Arrays.binarySearch(primaryRows, 0, primaryCount, row);
+        return (i >= 0) ? i : -i - 2;
+    }
+
+    private class AnnotationView extends AbstractList<Annotation> implements RandomAccess {
+
+        private final boolean primaryOnly;
+
+        AnnotationView(boolean primaryOnly) {
+            this.primaryOnly = primaryOnly;
+        }
+
+        @Override
+        public Annotation get(int index) {
+            if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("Index: " + index);
+            if (primaryOnly) return group(index)[0];
+            int primaryIndex = primaryIndexForRow(index);
+            return group(primaryIndex)[index - primaryRows[primaryIndex]];
+        }
+
+        @Override
+        public int size() {
+            return primaryOnly ? primaryCount : size;
+        }
+    }
+}
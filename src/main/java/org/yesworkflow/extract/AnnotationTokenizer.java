@@ -0,0 +1,197 @@
+package org.yesworkflow.extract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.yesworkflow.YWKeywords;
+import org.yesworkflow.YWKeywords.Tag;
+
+/** Class that splits the text of a comment into the annotations it contains in
+ *  a single pass, without allocating.  Each annotation is recorded as a span of
+ *  the comment text, running from the start of a YW keyword to the start of the
+ *  next one (or the end of the comment) with trailing whitespace excluded, as
+ *  returned by {@link DefaultExtractor#findCommentsOnLine(String, KeywordMatcher)
+ *  findCommentsOnLine()}.  The same pass locates the keyword, the first argument
+ *  and the remaining text of each span, and looks up the tag of the keyword.
+ *
+ *  <p>Spans are held in arrays reused from one comment to the next, so strings
+ *  are created only when the text of a span, its keyword, value or description
+ *  is requested.  Tokens are delimited as by {@link java.util.StringTokenizer},
+ *  and the strings returned equal the ones the annotation classes derive from
+ *  the span text.  Instances are not thread-safe.</p>
+ */
+public class AnnotationTokenizer {
+
+    /** characters separating the tokens of an annotation */
+    private static final String DELIMITERS = " \t\n\r\f";
+
+    private final KeywordMatcher keywordMatcher;
+    private final String[] keywords;
+    private final Tag[] tags;
+
+    private CharSequence text;
+    private int spanCount;
+    private int[] spanStart = new int[4];
+    private int[] spanEnd = new int[4];
+    private int[] keywordEnd = new int[4];
+    private int[] valueStart = new int[4];
+    private int[] valueEnd = new int[4];
+    private int[] keywordIndex = new int[4];
+
+    /** Constructs an instance recognizing the keywords in the given mapping.
+     *  @param keywordMapping The YW keywords and the tags they stand for.
+     */
+    public AnnotationTokenizer(YWKeywords keywordMapping) {
+        List<String> keywordList = new ArrayList<String>(keywordMapping.getKeywords());
+        keywords = keywordList.toArray(new String[keywordList.size()]);
+        tags = new Tag[keywords.length];
+        for (int i = 0; i < keywords.length; ++i) {
+            tags[i] = keywordMapping.getTag(keywords[i]);
+        }
+        keywordMatcher = new KeywordMatcher(keywordList);
+    }
+
+    /** Splits a comment into annotation spans, replacing the spans of the previous comment.
+     *  @param comment The text of the comment.
+     *  @return The number of annotations found in the comment.
+     */
+    public int tokenize(CharSequence comment) {
+
+        text = comment;
+        spanCount = 0;
+
+        int start = keywordMatcher.nextKeywordStart(comment, 0);
+        while (start != -1) {
+            int keywordLength = keywordMatcher.keywordLengthAt(comment, start);
+            int nextStart = keywordMatcher.nextKeywordStart(comment, start + keywordLength);
+            int end = (nextStart == -1) ? comment.length() : nextStart;
+            while (end > start && comment.charAt(end - 1) <= ' ') --end;
+            addSpan(start, end);
+            start = nextStart;
+        }
+
+        return spanCount;
+    }
+
+    private void addSpan(int start, int end) {
+
+        if (spanCount == spanStart.length) {
+            int capacity = spanCount * 2;
+            spanStart = Arrays.copyOf(spanStart, capacity);
+            spanEnd = Arrays.copyOf(spanEnd, capacity);
+            keywordEnd = Arrays.copyOf(keywordEnd, capacity);
+            valueStart = Arrays.copyOf(valueStart, capacity);
+            valueEnd = Arrays.copyOf(valueEnd, capacity);
+            keywordIndex = Arrays.copyOf(keywordIndex, capacity);
+        }
+
+        // the keyword is the first token, which may extend past the keyword matched
+        int i = start;
+        while (i < end && !isDelimiter(text.charAt(i))) ++i;
+        int tokenEnd = i;
+
+        // the value is the second token, if any
+        while (i < end && isDelimiter(text.charAt(i))) ++i;
+        int secondStart = i;
+        while (i < end && !isDelimiter(text.charAt(i))) ++i;
+
+        spanStart[spanCount] = start;
+        spanEnd[spanCount] = end;
+        keywordEnd[spanCount] = tokenEnd;
+        valueStart[spanCount] = (secondStart < end) ? secondStart : -1;
+        valueEnd[spanCount] = i;
+        keywordIndex[spanCount] = keywordMatcher.keywordIndex(text, start, tokenEnd);
+        spanCount++;
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c <= ' ' && DELIMITERS.indexOf(c) != -1;
+    }
+
+    public int spanCount() {
+        return spanCount;
+    }
+
+    /** @return The offset of the given span in the comment text. */
+    public int offset(int span) {
+        return spanStart[span];
+    }
+
+    /** @return The length of the given span. */
+    public int length(int span) {
+        return spanEnd[span] - spanStart[span];
+    }
+
+    /** @return The tag of the keyword starting the given span, or null if the
+     *          first token of the span is longer than the keyword matched. */
+    public Tag tag(int span) {
+        return (keywordIndex[span] == -1) ? null : tags[keywordIndex[span]];
+    }
+
+    /** @return The text of the given span. */
+    public String text(int span) {
+        return substring(spanStart[span], spanEnd[span]);
+    }
+
+    /** @return The first token of the given span, shared with the keyword mapping
+     *          when spelled exactly as the keyword is defined. */
+    public String keyword(int span) {
+        int start = spanStart[span];
+        int end = keywordEnd[span];
+        if (keywordIndex[span] != -1) {
+            String keyword = keywords[keywordIndex[span]];
+            if (regionEquals(keyword, start, end)) return keyword;
+        }
+        return substring(start, end);
+    }
+
+    /** @return The second token of the given span, or null if it has only one token. */
+    public String value(int span) {
+        return (valueStart[span] == -1) ? null : substring(valueStart[span], valueEnd[span]);
+    }
+
+    /** @return The tokens of the given span following the keyword, separated by single
+     *          spaces, or null if it has only one token. */
+    public String description(int span) {
+
+        int start = valueStart[span];
+        int end = spanEnd[span];
+        if (start == -1) return null;
+
+        // tokens separated by single spaces already are the description
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == ' ' ? isDelimiter(text.charAt(i + 1)) : isDelimiter(c)) break;
+            ++i;
+        }
+        if (i == end) return substring(start, end);
+
+        StringBuilder description = new StringBuilder(end - start).append(text, start, i);
+        boolean separated = false;
+        for (; i < end; ++i) {
+            char c = text.charAt(i);
+            if (isDelimiter(c)) {
+                separated = true;
+            } else {
+                if (separated) description.append(' ');
+                description.append(c);
+                separated = false;
+            }
+        }
+        return description.toString();
+    }
+
+    private boolean regionEquals(String s, int start, int end) {
+        if (s.length() != end - start) return false;
+        for (int i = 0; i < s.length(); ++i) {
+            if (s.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private String substring(int start, int end) {
+        return text.subSequence(start, end).toString();
+    }
+}
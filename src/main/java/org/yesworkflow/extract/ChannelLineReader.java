@@ -0,0 +1,230 @@
+package org.yesworkflow.extract;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/** Class for reading the lines of a source file from a byte channel in large blocks.
+ *  Bytes are decoded with an explicit charset into a character buffer, and each line
+ *  is exposed as a slice of that buffer rather than as a String.  Lines are terminated
+ *  as by {@link java.io.BufferedReader#readLine()}: by a line feed, a carriage return,
+ *  or a carriage return followed by a line feed.  Malformed and unmappable input is
+ *  replaced as by {@link java.io.InputStreamReader}.
+ *
+ *  <p>When asked to, the reader also tracks the byte offset and byte length of each
+ *  line by re-measuring the encoded length of the characters it returns.  Offsets
+ *  are exact for well-formed input in charsets that do not consume a byte order mark;
+ *  input that had to be replaced while decoding may shift the offsets that follow.</p>
+ */
+class ChannelLineReader implements LineSource {
+
+    static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /** large enough for any complete character sequence, so that a full byte buffer always decodes */
+    private static final int MIN_BYTE_BUFFER_SIZE = 16;
+
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes;
+    private char[] chars;
+
+    /** end of the decoded characters in chars */
+    private int limit = 0;
+
+    /** start of the first character not yet returned in a line */
+    private int next = 0;
+
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private boolean skipLF = false;
+    private boolean inputDone = false;
+    private boolean decodeDone = false;
+    private boolean eof = false;
+
+    private final boolean trackByteOffsets;
+    private final boolean utf8;
+    private final CharsetEncoder encoder;
+    private long nextByteOffset = 0;
+    private long lineByteOffset = -1;
+    private int lineByteLength = -1;
+
+    ChannelLineReader(ReadableByteChannel channel, Charset charset) {
+        this(channel, charset, DEFAULT_BLOCK_SIZE, false);
+    }
+
+    ChannelLineReader(ReadableByteChannel channel, Charset charset, boolean trackByteOffsets) {
+        this(channel, charset, DEFAULT_BLOCK_SIZE, trackByteOffsets);
+    }
+
+    ChannelLineReader(ReadableByteChannel channel, Charset charset, int blockSize) {
+        this(channel, charset, blockSize, false);
+    }
+
+    ChannelLineReader(ReadableByteChannel channel, Charset charset, int blockSize, boolean trackByteOffsets) {
+        this.channel = channel;
+        this.trackByteOffsets = trackByteOffsets;
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        this.encoder = charset.canEncode() ? charset.newEncoder()
+                                                    .onMalformedInput(CodingErrorAction.REPLACE)
+                                                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                                           : null;
+        this.decoder = charset.newDecoder()
+                              .onMalformedInput(CodingErrorAction.REPLACE)
+                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(Math.max(blockSize, MIN_BYTE_BUFFER_SIZE));
+        this.bytes.flip();
+        this.chars = new char[Math.max(blockSize, 2)];
+    }
+
+    @Override
+    public boolean nextLine() throws IOException {
+
+        // skip the line feed completing a carriage return that ended the previous line
+        if (skipLF) {
+            if (next == limit) fillFrom(next);
+            if (next < limit && chars[next] == '\n') {
+                if (trackByteOffsets) nextByteOffset += encodedLength(next, next + 1);
+                next++;
+            }
+            skipLF = false;
+        }
+
+        int scan = next;
+        for (;;) {
+
+            while (scan < limit) {
+                char c = chars[scan];
+                if (c == '\n' || c == '\r') {
+                    lineStart = next;
+                    lineEnd = scan;
+                    next = scan + 1;
+                    if (c == '\r') {
+                        if (next < limit) {
+                            if (chars[next] == '\n') next++;
+                        } else {
+                            skipLF = true;
+                        }
+                    }
+                    if (trackByteOffsets) measureLine(next);
+                    return true;
+                }
+                scan++;
+            }
+
+            if (eof) {
+                if (next < limit) {
+                    lineStart = next;
+                    lineEnd = limit;
+                    next = limit;
+                    if (trackByteOffsets) measureLine(next);
+                    return true;
+                }
+                return false;
+            }
+
+            scan -= next;
+            fillFrom(next);
+        }
+    }
+
+    /** Moves the characters from the given offset to the start of the buffer, growing
+     *  the buffer if they fill it, and decodes more of the input after them. */
+    private void fillFrom(int start) throws IOException {
+
+        if (start > 0) {
+            System.arraycopy(chars, start, chars, 0, limit - start);
+            limit -= start;
+            next -= start;
+        }
+        if (chars.length - limit < 2) {
+            char[] larger = new char[chars.length * 2];
+            System.arraycopy(chars, 0, larger, 0, limit);
+            chars = larger;
+        }
+
+        CharBuffer out = CharBuffer.wrap(chars, limit, chars.length - limit);
+        while (out.position() == limit && !eof) {
+            if (!decodeDone) {
+                if (decoder.decode(bytes, out, inputDone).isOverflow()) break;
+                if (!inputDone) {
+                    bytes.compact();
+                    if (channel.read(bytes) == -1) inputDone = true;
+                    bytes.flip();
+                    continue;
+                }
+                decodeDone = true;
+            }
+            if (decoder.flush(out).isOverflow()) break;
+            eof = true;
+        }
+        limit = out.position();
+    }
+
+    /** Records the byte offset and length of the current line, and advances the
+     *  offset of the next line past the current line and the given end of its terminator. */
+    private void measureLine(int terminatorEnd) throws IOException {
+        lineByteOffset = nextByteOffset;
+        lineByteLength = encodedLength(lineStart, lineEnd);
+        nextByteOffset += lineByteLength + encodedLength(lineEnd, terminatorEnd);
+    }
+
+    /** Returns the number of bytes the given characters occupy when encoded. */
+    private int encodedLength(int from, int to) throws IOException {
+
+        if (from == to) return 0;
+
+        if (utf8) {
+            int length = 0;
+            for (int i = from; i < to; ++i) {
+                char c = chars[i];
+                if (c < 0x80) {
+                    length += 1;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(chars[i + 1])) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+
+        if (encoder == null) return to - from;
+        if (encoder.maxBytesPerChar() == 1.0f) return to - from;
+        encoder.reset();
+        return encoder.encode(CharBuffer.wrap(chars, from, to - from)).remaining();
+    }
+
+    @Override
+    public long lineByteOffset() {
+        return lineByteOffset;
+    }
+
+    @Override
+    public int lineByteLength() {
+        return lineByteLength;
+    }
+
+    @Override
+    public char[] lineChars() {
+        return chars;
+    }
+
+    @Override
+    public int lineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public int lineEnd() {
+        return lineEnd;
+    }
+}
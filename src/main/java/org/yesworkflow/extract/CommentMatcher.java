@@ -1,39 +1,73 @@
 package org.yesworkflow.extract;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.sql.SQLException;
 
+import org.yesworkflow.DelimiterAutomaton;
 import org.yesworkflow.LanguageModel;
-import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.db.BatchInserter;
+import org.yesworkflow.db.RowInserter;
+import org.yesworkflow.db.YWStore;
 
 /** Class for matching and retrieving comments from source code implemented
- *  in a particular programming language.  Uses a simple finite state machine
- *  and the comment delimiter strings defined for the language to identify
- *  the portions of the source code that are contained in comments.
+ *  in a particular programming language.  Runs the finite state machine compiled
+ *  from the comment delimiter strings defined for the language (see
+ *  {@link org.yesworkflow.DelimiterAutomaton DelimiterAutomaton}) over the characters
+ *  of each line to identify the portions of the source code that are contained in comments.
  */
 public class CommentMatcher {
 
     static final String EOL = System.getProperty("line.separator");
     
-    private YesWorkflowDB ywdb;
+    private YWStore ywdb;
     private LanguageModel languageModel;
-    private State currentState;
-    private String commentStartToken;
-    private String lastFullMatch;
-    private boolean lastFullMatchWasSingle;
-    private StringBuffer buffer = new StringBuffer();
+    private SourceLineStorage sourceLineStorage = SourceLineStorage.FULL;
+    private SourceSink sink;
+    private DelimiterAutomaton automaton;
+    private int state;
+    private boolean lastFullMatchWasSingle = false;
+    private char[] recentChars;
+    private int recentCharsMask;
+    private int charsRead;
+    private StringBuilder commentText = new StringBuilder();
     
     /**
      * Constructs a CommentMatcher for the given programming language model.
      * @param ywdb The YesWorkflow database.
      * @param languageModel The programming language model for the source code to be analyzed.
      */
-    public CommentMatcher(YesWorkflowDB ywdb, LanguageModel languageModel) {
+    public CommentMatcher(YWStore ywdb, LanguageModel languageModel) {
         this.ywdb = ywdb;
         this.languageModel = languageModel;
     }
+
+    /**
+     * Constructs a CommentMatcher that does not write to a YesWorkflow database.
+     * Sources are lexed with {@link #lexComments(ReadableByteChannel, Charset) lexComments()},
+     * which is safe to call from worker threads.
+     * @param languageModel The programming language model for the source code to be analyzed.
+     */
+    public CommentMatcher(LanguageModel languageModel) {
+        this(null, languageModel);
+    }
+
+    /**
+     * Sets how the lines of the sources read by this CommentMatcher are recorded.
+     * Sources read from a {@link java.io.BufferedReader BufferedReader} have no byte
+     * offsets, so their line text is recorded when offsets are requested.
+     * @param sourceLineStorage The source line storage mode, FULL by default.
+     * @return This CommentMatcher.
+     */
+    public CommentMatcher sourceLineStorage(SourceLineStorage sourceLineStorage) {
+        this.sourceLineStorage = sourceLineStorage;
+        return this;
+    }
     
     /** Extracts the contents of all comments found in the source code provided via
      *  a {@link java.io.BufferedReader BufferedReader}
@@ -46,185 +80,252 @@ public class CommentMatcher {
      * @throws SQLException If an error occurs inserting comments into the YW database.
      */
     public void extractComments(Long sourceId, BufferedReader reader) throws IOException, SQLException {
+        try (RowInserter inserter = ywdb.rowInserter(BatchInserter.DEFAULT_BATCH_SIZE)) {
+            extractComments(sourceId, reader, inserter);
+        }
+    }
 
-        String lineText;
-        Long lineNumber = 1L;
-        lastFullMatch = null;
-        this.currentState = State.IN_CODE;
-        this.commentStartToken = null;
-        this.buffer = new StringBuffer();
-        
+    /** Extracts the contents of all comments found in the source code provided via
+     *  a {@link java.io.BufferedReader BufferedReader}, writing the source lines and
+     *  comments to the YW database through the given {@link RowInserter}.  Rows
+     *  still pending in the RowInserter on return are written when it is flushed.
+     * 
+     * @param sourceId Unique ID of the source file.
+     * @param reader The BufferedReader used to read the source file.
+     * @param inserter The RowInserter used to write source lines and comments.
+     * @throws IOException If an error occurs reading the source file.
+     * @throws SQLException If an error occurs inserting comments into the YW database.
+     */
+    public void extractComments(Long sourceId, BufferedReader reader, RowInserter inserter) throws IOException, SQLException {
         if (sourceId == null) sourceId = ywdb.insertSource(null);
+        matchComments(new ReaderLineSource(reader), new DatabaseSink(inserter, sourceId));
+    }
+
+    /** Extracts the contents of all comments found in the source code read from a
+     *  byte channel, writing the source lines and comments to the YW database through
+     *  the given {@link RowInserter}.  The channel is read in large blocks and decoded
+     *  with the given charset, and comments are matched directly in the decoded characters.
+     * 
+     * @param sourceId Unique ID of the source file.
+     * @param channel The channel from which the source file is read.
+     * @param charset The character encoding of the source file.
+     * @param inserter The RowInserter used to write source lines and comments.
+     * @throws IOException If an error occurs reading the source file.
+     * @throws SQLException If an error occurs inserting comments into the YW database.
+     */
+    public void extractComments(Long sourceId, ReadableByteChannel channel, Charset charset, 
+                                RowInserter inserter) throws IOException, SQLException {
+        if (sourceId == null) sourceId = ywdb.insertSource(null);
+        matchComments(channelLineReader(channel, charset), new DatabaseSink(inserter, sourceId));
+    }
+
+    /** Extracts the contents of all comments found in the source code provided via
+     *  a {@link java.io.BufferedReader BufferedReader} without touching the YesWorkflow
+     *  database.  The returned {@link ExtractedSource} holds the source lines and comments
+     *  in the order {@link #extractComments(Long, BufferedReader) extractComments()}
+     *  would have inserted them.
+     *
+     * @param reader The BufferedReader used to read the source file.
+     * @return The source lines and comments found in the source.
+     * @throws IOException If an error occurs reading the source file.
+     */
+    public ExtractedSource lexComments(BufferedReader reader) throws IOException {
+        return lexComments(new ReaderLineSource(reader));
+    }
+
+    /** Extracts the contents of all comments found in the source code read from a
+     *  byte channel without touching the YesWorkflow database.
+     *
+     * @param channel The channel from which the source file is read.
+     * @param charset The character encoding of the source file.
+     * @return The source lines and comments found in the source.
+     * @throws IOException If an error occurs reading the source file.
+     */
+    public ExtractedSource lexComments(ReadableByteChannel channel, Charset charset) throws IOException {
+        return lexComments(channelLineReader(channel, charset));
+    }
+
+    /** Extracts the contents of all comments found in source code already read into
+     *  memory without touching the YesWorkflow database.
+     *
+     * @param contents The bytes of the source file.
+     * @param charset The character encoding of the source file.
+     * @return The source lines and comments found in the source.
+     * @throws IOException If an error occurs decoding the source file.
+     */
+    public ExtractedSource lexComments(byte[] contents, Charset charset) throws IOException {
+        try (ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(contents))) {
+            return lexComments(channel, charset);
+        }
+    }
+
+    private ChannelLineReader channelLineReader(ReadableByteChannel channel, Charset charset) {
+        return new ChannelLineReader(channel, charset, sourceLineStorage == SourceLineStorage.OFFSETS);
+    }
+
+    private ExtractedSource lexComments(LineSource lines) throws IOException {
+        ExtractedSource extractedSource = new ExtractedSource();
+        try {
+            matchComments(lines, extractedSource);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unexpected database access while lexing source", e);
+        }
+        return extractedSource;
+    }
+
+    private void matchComments(LineSource lines, SourceSink sink) throws IOException, SQLException {
+
+        Long lineNumber = 1L;
+        this.sink = sink;
+        this.automaton = languageModel.getDelimiterAutomaton();
+        this.state = automaton.initialState(lastFullMatchWasSingle);
+        this.recentChars = new char[Integer.highestOneBit(automaton.getMaxEmitLength() * 2 - 1)];
+        this.recentCharsMask = recentChars.length - 1;
+        this.charsRead = 0;
         
-        while ((lineText = reader.readLine()) != null) {
-            ywdb.insertSourceLine(sourceId, lineNumber, lineText);
-            StringBuffer commentText = new StringBuffer();
-            Long rankInLine = 1L;
-            for (int i = 0; i < lineText.length(); ++i) {
-                int c = lineText.charAt(i);
-                String newCommentChars = processNextChar((char)c);
-                commentText.append(newCommentChars);
-                if (newCommentChars.equals(EOL)) {
-                    rankInLine = insertTrimmedComment(sourceId, lineNumber, rankInLine, commentText.toString());
-                    commentText = new StringBuffer();          
+        while (lines.nextLine()) {
+            recordSourceLine(lineNumber, lines);
+            matchLine(lineNumber++, lines.lineChars(), lines.lineStart(), lines.lineEnd());
+        }
+
+        lastFullMatchWasSingle = automaton.lastFullMatchWasSingle(state);
+    }
+
+    private void recordSourceLine(Long lineNumber, LineSource lines) throws SQLException {
+        switch (sourceLineStorage) {
+            case NONE:
+                break;
+            case OFFSETS:
+                if (lines.lineByteOffset() >= 0) {
+                    sink.sourceLineOffset(lineNumber, lines.lineByteOffset(), lines.lineByteLength());
+                } else {
+                    // lines from sources not tracking byte offsets are stored in full
+                    sink.sourceLine(lineNumber, lines.lineChars(), lines.lineStart(), lines.lineEnd());
                 }
+                break;
+            case FULL:
+                sink.sourceLine(lineNumber, lines.lineChars(), lines.lineStart(), lines.lineEnd());
+                break;
+        }
+    }
+
+    /** Runs the comment-matching state machine over one line of source code held in
+     *  a slice of a character array, followed by the end of the line, and passes the
+     *  non-blank comments found to the current sink. */
+    private void matchLine(Long lineNumber, char[] chars, int start, int end) throws SQLException {
+        commentText.setLength(0);
+        Long rankInLine = 1L;
+        for (int i = start; i < end; ++i) {
+            if (processNextChar(chars[i]) == DelimiterAutomaton.END_OF_COMMENT) {
+                rankInLine = insertTrimmedComment(lineNumber, rankInLine);
+                commentText.setLength(0);
             }
-            commentText.append(processNextChar('\n'));
-            insertTrimmedComment(sourceId, lineNumber++, rankInLine, commentText.toString());
         }
+        processNextChar('\n');
+        insertTrimmedComment(lineNumber, rankInLine);
     }
         
     public void extractComments(String code) throws IOException, SQLException {
         extractComments(null, new BufferedReader(new StringReader(code)));
     }
         
-    /** Helper method for inserting non-blank comments in YesWorkflow DB 
+    /** Helper method for passing the current comment text, if not blank, to the current sink 
      * @throws SQLException */
-    private Long insertTrimmedComment(Long sourceId, Long lineNumber, Long rankInLine, String commentText) throws SQLException {
-        String trimmedCommentText = commentText.toString().trim();
-        if (trimmedCommentText.length() > 0) {
-            ywdb.insertComment(sourceId, lineNumber, rankInLine++, trimmedCommentText);
+    private Long insertTrimmedComment(Long lineNumber, Long rankInLine) throws SQLException {
+        int start = 0;
+        int end = commentText.length();
+        while (start < end && commentText.charAt(start) <= ' ') start++;
+        while (end > start && commentText.charAt(end - 1) <= ' ') end--;
+        if (start < end) {
+            sink.comment(lineNumber, rankInLine++, commentText.substring(start, end));
         }
         return rankInLine;
     }
     
-    /** Enumeration defining the three states of the comment-matching finite state machine */
-    private enum State {
-        IN_CODE,
-        IN_PREFIX,
-        IN_SINGLE_LINE_COMMENT,
-        IN_MULTI_LINE_COMMENT,
+    /** Line source reading lines of text with {@link BufferedReader#readLine()}. */
+    private static class ReaderLineSource implements LineSource {
+
+        private final BufferedReader reader;
+        private char[] chars = new char[256];
+        private int length;
+
+        ReaderLineSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean nextLine() throws IOException {
+            String lineText = reader.readLine();
+            if (lineText == null) return false;
+            length = lineText.length();
+            if (chars.length < length) chars = new char[Math.max(length, chars.length * 2)];
+            lineText.getChars(0, length, chars, 0);
+            return true;
+        }
+
+        @Override
+        public char[] lineChars() {
+            return chars;
+        }
+
+        @Override
+        public int lineStart() {
+            return 0;
+        }
+
+        @Override
+        public int lineEnd() {
+            return length;
+        }
     }
-    
-    /** Updates the state of the comment-matching finite state machine. */
-    @SuppressWarnings("incomplete-switch")
-    private String processNextChar(int c) {
-        
-        String newCommentCharacters = "";
-        State nextState = currentState;
-        buffer.append((char)c);
+
+    /** Sink that writes source lines and comments to the YesWorkflow DB. */
+    private static class DatabaseSink implements SourceSink {
+
+        private final RowInserter inserter;
+        private final Long sourceId;
         
-        switch(currentState) {
+        DatabaseSink(RowInserter inserter, Long sourceId) {
+            this.inserter = inserter;
+            this.sourceId = sourceId;
+        }
         
-        case IN_CODE:
-            
-            lastFullMatch = null;
-            
-            switch(languageModel.commentStartMatches(buffer.toString())) {
-                
-                case FULL_MATCH_SINGLE:
-                    nextState = State.IN_SINGLE_LINE_COMMENT;
-                    buffer.setLength(0);
-                    break;
-                
-                case FULL_MATCH_PAIRED:
-                    nextState = State.IN_MULTI_LINE_COMMENT;
-                    commentStartToken = buffer.toString();
-                    buffer.setLength(0);
-                    break;
-
-                case PREFIX_MATCH:
-                    nextState = State.IN_PREFIX;
-                    break;
-
-                case FULL_MATCH_SINGLE_PREFIX_MATCH_PAIRED:
-                    lastFullMatch = buffer.toString();
-                    lastFullMatchWasSingle = true;
-                    nextState = State.IN_PREFIX;
-                    break;                    
-
-                case FULL_MATCH_PAIRED_PREFIX_MATCH_SINGLE:
-                    lastFullMatch = buffer.toString();
-                    lastFullMatchWasSingle = false;
-                    nextState = State.IN_PREFIX;
-                    break;                    
-                    
-                default:
-                    nextState = State.IN_CODE;
-                    buffer.setLength(0);
-            }
-            
-            break;
-
-        case IN_PREFIX:
-            
-            switch(languageModel.commentStartMatches(buffer.toString())) {
-                
-                case FULL_MATCH_SINGLE:
-                    nextState = State.IN_SINGLE_LINE_COMMENT;
-                    buffer.setLength(0);
-                    break;
-                
-                case FULL_MATCH_PAIRED:
-                    nextState = State.IN_MULTI_LINE_COMMENT;
-                    commentStartToken = buffer.toString();
-                    buffer.setLength(0);
-                    break;
-
-                case NO_MATCH:
-                    if (lastFullMatch == null) {
-                        nextState = State.IN_CODE;                    
-                    } else {
-                        commentStartToken = lastFullMatch;
-                        nextState = (lastFullMatchWasSingle) ? 
-                                State.IN_SINGLE_LINE_COMMENT :
-                                State.IN_MULTI_LINE_COMMENT;
-                    }
-                    buffer.setLength(0);
-                    buffer.append((char)c);
-                    break;
-                    
-                case PREFIX_MATCH:
-                    nextState = State.IN_PREFIX;
-                    break;
-
-                case FULL_MATCH_SINGLE_PREFIX_MATCH_PAIRED:
-                case FULL_MATCH_PAIRED_PREFIX_MATCH_SINGLE:
-                    lastFullMatch = buffer.toString();
-                    nextState = State.IN_PREFIX;
-                    break;
-                    
-                default:
-                    nextState = State.IN_CODE;
-                    buffer.setLength(0);
-            }
-            
-            break;
-            
-            
-        case IN_SINGLE_LINE_COMMENT:
-            
-            if (c == '\r' || c == '\n') {
-                nextState = State.IN_CODE;
-                newCommentCharacters = EOL;
-            } else {
-                newCommentCharacters = buffer.toString();
-            }
-            buffer.setLength(0);
-
-            break;
-            
-        case IN_MULTI_LINE_COMMENT:
-            
-            switch(languageModel.commentEndMatches(buffer.toString(), commentStartToken)) {
-            
-                case NO_MATCH:
-                    newCommentCharacters = buffer.toString();
-                    buffer.setLength(0);
-                    break;
-                
-                case FULL_MATCH_PAIRED:
-                    nextState = State.IN_CODE;
-                    newCommentCharacters = EOL;
-                    buffer.setLength(0);
-                    break;
+        @Override
+        public void sourceLine(Long lineNumber, char[] chars, int start, int end) throws SQLException {
+            inserter.insertSourceLine(sourceId, lineNumber, new String(chars, start, end - start));
+        }
+
+        @Override
+        public void sourceLineOffset(Long lineNumber, long byteOffset, int byteLength) throws SQLException {
+            inserter.insertSourceLineOffset(sourceId, lineNumber, byteOffset, byteLength);
+        }
+
+        @Override
+        public void comment(Long lineNumber, Long rankInLine, String commentText) throws SQLException {
+            inserter.insertComment(sourceId, lineNumber, rankInLine, commentText);
+        }
+    }
+    
+    /** Advances the comment-matching state machine by one character, appending to
+     *  the current comment text the characters the transition assigns to comments.
+     *  @return The action of the transition taken.
+     */
+    private int processNextChar(char c) {
+
+        recentChars[charsRead++ & recentCharsMask] = c;
+
+        int transition = automaton.transition(state, c);
+        int action = automaton.action(transition);
+        state = automaton.next(transition);
+
+        if (action == 1) {
+            commentText.append(c);
+        } else if (action > 1) {
+            for (int i = charsRead - action; i < charsRead; ++i) {
+                commentText.append(recentChars[i & recentCharsMask]);
             }
-            
-            break;
         }
         
-        currentState = nextState;
-        
-        return newCommentCharacters;
+        return action;
     }
 }
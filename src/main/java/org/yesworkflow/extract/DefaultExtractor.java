@@ -1,19 +1,35 @@
 package org.yesworkflow.extract;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
-import org.jooq.Record;
-import org.jooq.Result;
 import org.yesworkflow.Language;
 import org.yesworkflow.LanguageModel;
 import org.yesworkflow.YWKeywords;
@@ -21,33 +37,31 @@ import org.yesworkflow.YWKeywords.Tag;
 import org.yesworkflow.annotations.*;
 import org.yesworkflow.annotations.util.AnnotationBlock;
 import org.yesworkflow.config.YWConfiguration;
-import org.yesworkflow.db.Table;
-import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.db.BatchInserter;
+import org.yesworkflow.db.RowInserter;
+import org.yesworkflow.db.YWStore;
+import org.yesworkflow.exceptions.YWMarkupException;
 import org.yesworkflow.exceptions.YWToolUsageException;
 import org.yesworkflow.query.QueryEngine;
 
-import static org.yesworkflow.db.Table.*;
-import static org.yesworkflow.db.Column.*;
-
 public class DefaultExtractor implements Extractor {
 
     static private Language DEFAULT_LANGUAGE = Language.GENERIC;
     static private QueryEngine DEFAULT_QUERY_ENGINE = QueryEngine.SWIPL;
 
-    private YesWorkflowDB ywdb;
+    private YWStore ywdb;
     private LanguageModel globalLanguageModel = null;
     private Language lastLanguage = null;
     private QueryEngine queryEngine = DEFAULT_QUERY_ENGINE;
     private BufferedReader sourceReader = null;
     private List<String> sourcePaths;
-    private List<Annotation> allAnnotations;
-    private List<Annotation> primaryAnnotations;
+    private AnnotationStore annotationStore;
     private YWKeywords keywordMapping;
-    private KeywordMatcher keywordMatcher;
+    private AnnotationTokenizer annotationTokenizer;
     private String commentListingPath;
     private String factsFile = null;
     private String provenanceFile = null;
-    private String provenanceFormat = "turtle";
+    private List<String> provenanceFormats = Collections.singletonList("turtle");
     private String provenanceNamespace = "http://yesworkflow.org/";
     private String provenancePrefix = "yw";
     private String skeletonFile = null;
@@ -56,19 +70,33 @@ public class DefaultExtractor implements Extractor {
     private String extractProvenance = null;
     private PrintStream stdoutStream = null;
     private PrintStream stderrStream = null;
+    private int parallelism = 1;
+    private int batchSize = BatchInserter.DEFAULT_BATCH_SIZE;
+    private Charset encoding = Charset.defaultCharset();
+    private String cacheFile = null;
+    private String ignoreFile = null;
+    private SourceLineStorage sourceLineStorage = SourceLineStorage.FULL;
+    private ExtractionCache extractionCache = null;
+    private boolean prefilter = false;
+    private MarkupPrefilter markupPrefilter = null;
+    private int skippedSourceCount = 0;
+    private Map<Path,RetainedSource> retainedSources = null;
+    private Map<Path,RetainedSource> previouslyRetainedSources = null;
+    private final AtomicInteger lexedSourceCount = new AtomicInteger();
+    private List<Consumer<? super Annotation>> annotationListeners = new ArrayList<Consumer<? super Annotation>>();
 
     private Long nextAnnotationId = 1L;
 
-    public DefaultExtractor(YesWorkflowDB ywdb) {
+    public DefaultExtractor(YWStore ywdb) {
         this(ywdb, System.out, System.err);
     }
 
-    public DefaultExtractor(YesWorkflowDB ywdb, PrintStream stdoutStream, PrintStream stderrStream) {
+    public DefaultExtractor(YWStore ywdb, PrintStream stdoutStream, PrintStream stderrStream) {
         this.ywdb = ywdb;
         this.stdoutStream = stdoutStream;
         this.stderrStream = stderrStream;
         this.keywordMapping = new YWKeywords();
-        this.keywordMatcher = new KeywordMatcher(keywordMapping.getKeywords());
+        this.annotationTokenizer = new AnnotationTokenizer(keywordMapping);
     }
 
     @Override
@@ -112,7 +140,21 @@ public class DefaultExtractor implements Extractor {
         } else if (key.equalsIgnoreCase("provenanceFile")) {
             provenanceFile = (String) value;
         } else if (key.equalsIgnoreCase("provenanceFormat")) {
-            provenanceFormat = (String) value;
+            provenanceFormats = new ArrayList<String>();
+            if (value instanceof List) {
+                for (Object format : (List<?>) value) {
+                    provenanceFormats.add(format.toString().trim());
+                }
+            } else {
+                for (String token : value.toString().split("[\\s,]")) {
+                    if (!token.trim().isEmpty()) {
+                        provenanceFormats.add(token.trim());
+                    }
+                }
+            }
+            if (provenanceFormats.isEmpty()) {
+                throw new YWToolUsageException("Value of extract.provenanceformat must be one or more formats: " + value);
+            }
         } else if (key.equalsIgnoreCase("provenancens")) {
             provenanceNamespace = (String) value;
         } else if (key.equalsIgnoreCase("provenanceprefix")) {
@@ -121,11 +163,132 @@ public class DefaultExtractor implements Extractor {
             skeletonFile = (String) value;
         } else if (key.equalsIgnoreCase("queryengine")) {
             queryEngine = QueryEngine.toQueryEngine((String) value);
+        } else if (key.equalsIgnoreCase("parallelism")) {
+            parallelism = parsePositiveInteger(key, value);
+        } else if (key.equalsIgnoreCase("batchsize")) {
+            batchSize = parsePositiveInteger(key, value);
+        } else if (key.equalsIgnoreCase("encoding")) {
+            encoding = parseCharset(key, value);
+        } else if (key.equalsIgnoreCase("cache")) {
+            cacheFile = (String) value;
+        } else if (key.equalsIgnoreCase("ignorefile")) {
+            ignoreFile = (String) value;
+        } else if (key.equalsIgnoreCase("sourcelines")) {
+            sourceLineStorage = SourceLineStorage.toSourceLineStorage(value);
+        } else if (key.equalsIgnoreCase("prefilter")) {
+            prefilter = parseSwitch(key, value);
         }
 
         return this;
     }
 
+    private static int parsePositiveInteger(String key, Object value) throws YWToolUsageException {
+        int n;
+        try {
+            n = (value instanceof Number) ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new YWToolUsageException("Value of extract." + key + " must be an integer: " + value);
+        }
+        if (n < 1) {
+            throw new YWToolUsageException("Value of extract." + key + " must be at least 1: " + value);
+        }
+        return n;
+    }
+
+    private static boolean parseSwitch(String key, Object value) throws YWToolUsageException {
+        if (value instanceof Boolean) return (Boolean) value;
+        String switchString = value.toString().trim();
+        if (switchString.equalsIgnoreCase("on") || switchString.equalsIgnoreCase("true")) return true;
+        if (switchString.equalsIgnoreCase("off") || switchString.equalsIgnoreCase("false")) return false;
+        throw new YWToolUsageException("Value of extract." + key + " must be on or off: " + value);
+    }
+
+    private static Charset parseCharset(String key, Object value) throws YWToolUsageException {
+        if (value instanceof Charset) return (Charset) value;
+        try {
+            return Charset.forName(value.toString().trim());
+        } catch (IllegalArgumentException e) {
+            throw new YWToolUsageException("Value of extract." + key + " must be a supported character encoding: " + value);
+        }
+    }
+
+    /** Registers a listener to be called with each primary annotation, in the order of
+     *  {@link #getAnnotations()}, as it is parsed from the comments during {@link #extract()}.
+     *  Each annotation is passed once the qualifications following it have been parsed
+     *  and attached to it.  Lets consumers process annotations while they stream from
+     *  the comment table.
+     * @param listener The listener.
+     * @return This DefaultExtractor.
+     */
+    public DefaultExtractor addAnnotationListener(Consumer<? super Annotation> listener) {
+        annotationListeners.add(listener);
+        return this;
+    }
+
+    /** @return The number of source files skipped by the prefilter in the last call to
+     *  {@link #extract()} because they contain no YW keywords. */
+    public int getSkippedSourceCount() {
+        return skippedSourceCount;
+    }
+
+    /** Keeps the source lines and comments lexed from each source file in memory,
+     *  so that later calls to {@link #extract()} lex again only the files whose size
+     *  or modification time have changed, or that were passed to
+     *  {@link #forgetLexedSources(Collection)}.  Used by long-running processes that
+     *  extract the same sources repeatedly.
+     * @param retain Whether lexed sources are kept.
+     * @return This DefaultExtractor.
+     */
+    public DefaultExtractor retainLexedSources(boolean retain) {
+        retainedSources = retain ? new ConcurrentHashMap<Path,RetainedSource>() : null;
+        return this;
+    }
+
+    /** Discards the lexed source files retained for the given paths, so that the
+     *  next call to {@link #extract()} lexes them again.
+     * @param paths Paths of the source files to lex again.
+     * @return This DefaultExtractor.
+     */
+    public DefaultExtractor forgetLexedSources(Collection<Path> paths) {
+        if (retainedSources != null) {
+            for (Path path : paths) {
+                retainedSources.remove(path.toAbsolutePath().normalize());
+            }
+        }
+        return this;
+    }
+
+    /** @return The number of source files lexed in the last call to {@link #extract()},
+     *  not counting those taken from memory or from the extraction cache. */
+    public int getLexedSourceCount() {
+        return lexedSourceCount.get();
+    }
+
+    /** Finds the source files named by the configured <code>sources</code> and
+     *  <code>ignorefile</code> settings.
+     * @return The paths of the source files in the order they are extracted.
+     * @throws Exception If a source path cannot be searched.
+     */
+    public List<String> findSourceFiles() throws Exception {
+        return sourcePathsEmptyOrDash(sourcePaths) ? new ArrayList<String>()
+                                                   : sourceFinder(null).findPaths(sourcePaths);
+    }
+
+    /** Finds the directories searched for the source files named by the configured
+     *  <code>sources</code> setting, so that files created in them can be found.
+     * @return Each directory mapped to the depth of the subdirectories searched below
+     *         it, Integer.MAX_VALUE if they are searched at any depth.
+     */
+    public Map<Path,Integer> findSourceDirectories() {
+        return sourcePathsEmptyOrDash(sourcePaths) ? new HashMap<Path,Integer>()
+                                                   : SourceFinder.searchedDirectories(sourcePaths);
+    }
+
+    /** @return A SourceLineFetcher for the text of the source lines extracted into the YW database. */
+    public SourceLineFetcher getSourceLines() {
+        return new SourceLineFetcher(ywdb, encoding);
+    }
+
     @Override
     public Language getLanguage() {
         return lastLanguage;
@@ -133,7 +296,7 @@ public class DefaultExtractor implements Extractor {
 
     @Override
     public List<Annotation> getAnnotations() {
-        return primaryAnnotations;
+        return (annotationStore == null) ? null : annotationStore.primaryAnnotations();
     }
 
     @Override
@@ -141,7 +304,7 @@ public class DefaultExtractor implements Extractor {
 
         if (skeleton == null) {
             SkeletonBuilder sb = new SkeletonBuilder(getSkeletonCommentDelimiter() + " ");
-            for (Annotation annotation : allAnnotations) {
+            for (Annotation annotation : annotationStore.annotations()) {
                 sb.add(annotation);
             }
             sb.end();
@@ -154,29 +317,57 @@ public class DefaultExtractor implements Extractor {
     @Override
     public Map<String, String> getFacts() throws IOException {
         if (extractFacts == null) {
-            extractFacts = new ExtractFacts(ywdb, this.queryEngine, allAnnotations).build().facts();
+            extractFacts = new ExtractFacts(ywdb, this.queryEngine, annotationStore.annotations()).build().facts();
         }
         return extractFacts;
     }
 
     @Override
-    public void getProvenance() throws YWToolUsageException {
+    public void getProvenance() throws YWToolUsageException, InterruptedException {
         if (extractProvenance == null) {
-            List<AnnotationBlock> abs = AnnotationBlockBuilder.build(allAnnotations).get();
+            List<AnnotationBlock> abs = AnnotationBlockBuilder.build(annotationStore.annotations()).get();
             ExtractProvenance ep = new ExtractProvenance(abs,
-                    provenanceFile, provenanceFormat, provenanceNamespace, provenancePrefix);
-            ep.saveFile();
+                    provenanceFile, provenanceFormats, provenanceNamespace, provenancePrefix);
+            for (String error : ep.saveFiles()) {
+                stderrStream.println("WARNING: " + error);
+            }
         }
     }
 
     @Override
     public DefaultExtractor extract() throws Exception {
-        extractCommentsFromSources();
-        writeCommentListing();
-        extractAnnotations();
+        skippedSourceCount = 0;
+        lexedSourceCount.set(0);
+        skeleton = null;
+        extractFacts = null;
+        extractProvenance = null;
+        if (retainedSources != null) {
+            previouslyRetainedSources = retainedSources;
+            retainedSources = new ConcurrentHashMap<Path,RetainedSource>();
+        }
+        markupPrefilter = prefilter ? new MarkupPrefilter(keywordMapping.getKeywords(), encoding) : null;
+        try (RowInserter inserter = ywdb.rowInserter(batchSize)) {
+            if (cacheFile != null) {
+                try (ExtractionCache cache = new ExtractionCache(Paths.get(cacheFile))) {
+                    extractionCache = cache;
+                    extractCommentsFromSources(inserter);
+                } finally {
+                    extractionCache = null;
+                }
+            } else {
+                extractCommentsFromSources(inserter);
+            }
+            inserter.flush();
+            writeCommentListing();
+            extractAnnotations(inserter);
+        }
         writeSkeletonFile();
 
-        if (ywdb.getRowCount(ANNOTATION) == 0) {
+        if (markupPrefilter != null) {
+            stderrStream.println("Prefilter skipped " + skippedSourceCount + " source files without YW keywords.");
+        }
+
+        if (ywdb.getAnnotationCount() == 0) {
             stderrStream.println("WARNING: No YW comments found in source code.");
         }
 
@@ -191,30 +382,188 @@ public class DefaultExtractor implements Extractor {
         return this;
     }
 
-    private void extractCommentsFromSources() throws IOException, YWToolUsageException, SQLException {
+    private void extractCommentsFromSources(RowInserter inserter) throws Exception {
 
         // read source code from reader if provided
         if (sourceReader != null) {
 
-            extractLinesCommentsFromReader(null, sourceReader, globalLanguageModel);
+            extractLinesCommentsFromReader(null, sourceReader, globalLanguageModel, inserter);
 
             // otherwise read source code from stdin if source path is empty or just a dash
         } else if (sourcePathsEmptyOrDash(sourcePaths)) {
 
-            Reader reader = new InputStreamReader(System.in);
-            extractLinesCommentsFromReader(null, new BufferedReader(reader), globalLanguageModel);
+            // stdin cannot be read again, so offsets are not recorded for it
+            ReadableByteChannel stdin = Channels.newChannel(System.in);
+            SourceLineStorage stdinLineStorage = (sourceLineStorage == SourceLineStorage.OFFSETS) ?
+                                                 SourceLineStorage.FULL : sourceLineStorage;
+            extractLinesCommentsFromChannel(null, stdin, globalLanguageModel, stdinLineStorage, inserter);
+
+            // else find and lex the source files concurrently if more than one worker was requested
+        } else if (parallelism > 1) {
 
-            // else read source code from each file in the list of source paths
+            extractCommentsFromSourcesInParallel(inserter);
+
+            // else read source code from each file found from the list of source paths
         } else {
 
-            for (String path : sourcePaths) {
-                Long sourceId = ywdb.insertSource(path);
+            for (String path : sourceFinder(null).findPaths(sourcePaths)) {
                 LanguageModel languageModel = languageModelForSourceFile(path);
-                extractLinesCommentsFromReader(sourceId, fileReaderForPath(path), languageModel);
+                if (extractionCache != null || markupPrefilter != null || retainedSources != null) {
+                    if (languageModel == null) languageModel = new LanguageModel(DEFAULT_LANGUAGE);
+                    lastLanguage = languageModel.getLanguage();
+                    insertSource(path, lexSourceFile(path, languageModel), inserter);
+                } else {
+                    Long sourceId = ywdb.insertSource(path);
+                    lexedSourceCount.incrementAndGet();
+                    try (ReadableByteChannel channel = channelForPath(path)) {
+                        extractLinesCommentsFromChannel(sourceId, channel, languageModel, sourceLineStorage, inserter);
+                    }
+                }
             }
         }
     }
 
+    /** Finds the source files on a pool of walker threads, lexes them on a pool of
+     *  worker threads, and inserts the results into the YW database in the order in
+     *  which {@link SourceFinder} delivers the files.  Sources, source lines and
+     *  comments thus receive the same IDs they would have been given had the files
+     *  been extracted one at a time.  At most twice as many files as there are workers
+     *  are lexed ahead of the file being inserted, so that the lexed contents waiting
+     *  to be inserted do not grow with the size of the tree walked.
+     */
+    private void extractCommentsFromSourcesInParallel(RowInserter inserter) throws Exception {
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        ExecutorService walkers = Executors.newFixedThreadPool(parallelism);
+
+        try {
+
+            sourceFinder(walkers).find(sourcePaths,
+                path -> workers.submit(() -> lexSourceFile(path, languageModelOrDefault(path))),
+                (path, extraction) -> {
+                    ExtractedSource extractedSource = awaitExtraction(extraction);
+                    lastLanguage = languageModelOrDefault(path).getLanguage();
+                    insertSource(path, extractedSource, inserter);
+                });
+
+        } finally {
+            walkers.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    /** Inserts a lexed source file into the YW database, or counts it as skipped
+     *  if the prefilter found no YW keywords in it. */
+    private void insertSource(String path, ExtractedSource extractedSource, RowInserter inserter) throws SQLException {
+        if (extractedSource == null) {
+            skippedSourceCount++;
+            return;
+        }
+        Long sourceId = ywdb.insertSource(path);
+        extractedSource.insertInto(inserter, sourceId);
+    }
+
+    private SourceFinder sourceFinder(ExecutorService walkers) throws YWToolUsageException {
+        SourceFinder sourceFinder = new SourceFinder(walkers, parallelism * 2);
+        if (ignoreFile != null) sourceFinder.ignoreFile(ignoreFile);
+        return sourceFinder;
+    }
+
+    private LanguageModel languageModelOrDefault(String path) {
+        LanguageModel languageModel = languageModelForSourceFile(path);
+        return (languageModel != null) ? languageModel : new LanguageModel(DEFAULT_LANGUAGE);
+    }
+
+    /** Lexes a source file, or takes its source lines and comments from memory or
+     *  from the extraction cache if either is in use and the file is unchanged.
+     *  Returns null if the prefilter is in use and finds no YW keywords in the file. */
+    private ExtractedSource lexSourceFile(String path, LanguageModel languageModel)
+            throws IOException, YWToolUsageException, SQLException {
+
+        if (retainedSources == null) {
+            return lexOrFetchSourceFile(path, languageModel);
+        }
+
+        Path sourcePath = existingSourcePath(path);
+        Path key = sourcePath.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(sourcePath, BasicFileAttributes.class);
+        String lexerKey = lexerKey(languageModel);
+
+        RetainedSource retained = previouslyRetainedSources.get(key);
+        if (retained == null || !retained.matches(attributes, lexerKey)) {
+            retained = new RetainedSource(attributes, lexerKey, lexOrFetchSourceFile(path, languageModel));
+        }
+        retainedSources.put(key, retained);
+        return retained.extractedSource;
+    }
+
+    private String lexerKey(LanguageModel languageModel) {
+        String lexerKey = ExtractionCache.lexerKey(languageModel, encoding, sourceLineStorage);
+        return (markupPrefilter != null) ? lexerKey + "|prefilter" : lexerKey;
+    }
+
+    private ExtractedSource lexOrFetchSourceFile(String path, LanguageModel languageModel)
+            throws IOException, YWToolUsageException, SQLException {
+
+        CommentMatcher commentMatcher = new CommentMatcher(languageModel).sourceLineStorage(sourceLineStorage);
+        ExtractionCache.Lexer lexer = contents -> {
+            lexedSourceCount.incrementAndGet();
+            return (markupPrefilter == null || markupPrefilter.mayContainMarkup(contents)) ?
+                commentMatcher.lexComments(contents, encoding) : null;
+        };
+
+        if (extractionCache != null) {
+            return extractionCache.extract(existingSourcePath(path), lexerKey(languageModel), lexer);
+        }
+
+        if (markupPrefilter != null) {
+            return lexer.lex(readSourceFile(path));
+        }
+
+        lexedSourceCount.incrementAndGet();
+        try (ReadableByteChannel channel = channelForPath(path)) {
+            return commentMatcher.lexComments(channel, encoding);
+        }
+    }
+
+    /** A lexed source file kept in memory, with the file attributes and lexer settings it was lexed with. */
+    private static final class RetainedSource {
+
+        final long size;
+        final long modified;
+        final String lexerKey;
+        final ExtractedSource extractedSource;
+
+        RetainedSource(BasicFileAttributes attributes, String lexerKey, ExtractedSource extractedSource) {
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime().toMillis();
+            this.lexerKey = lexerKey;
+            this.extractedSource = extractedSource;
+        }
+
+        boolean matches(BasicFileAttributes attributes, String lexerKey) {
+            return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis()
+                                             && this.lexerKey.equals(lexerKey);
+        }
+    }
+
+    private ExtractedSource awaitExtraction(Future<ExtractedSource> extraction)
+            throws IOException, YWToolUsageException, SQLException {
+        try {
+            return extraction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting comments from sources", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof YWToolUsageException) throw (YWToolUsageException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
     private boolean sourcePathsEmptyOrDash(List<String> sourcePaths) {
         return sourcePaths == null ||
                 sourcePaths.size() == 0 ||
@@ -235,26 +584,54 @@ public class DefaultExtractor implements Extractor {
         return languageModel;
     }
 
-    private void extractLinesCommentsFromReader(Long sourceId, BufferedReader reader, LanguageModel languageModel) throws IOException, SQLException {
+    private void extractLinesCommentsFromReader(Long sourceId, BufferedReader reader, LanguageModel languageModel,
+                                                RowInserter inserter) throws IOException, SQLException {
         if (languageModel == null) languageModel = new LanguageModel(DEFAULT_LANGUAGE);
         lastLanguage = languageModel.getLanguage();
-        CommentMatcher commentMatcher = new CommentMatcher(ywdb, languageModel);
-        commentMatcher.extractComments(sourceId, reader);
+        CommentMatcher commentMatcher = new CommentMatcher(ywdb, languageModel).sourceLineStorage(sourceLineStorage);
+        commentMatcher.extractComments(sourceId, reader, inserter);
     }
 
-    private BufferedReader fileReaderForPath(String path) throws YWToolUsageException {
+    private void extractLinesCommentsFromChannel(Long sourceId, ReadableByteChannel channel, LanguageModel languageModel,
+                                                 SourceLineStorage storage, RowInserter inserter)
+                                                 throws IOException, SQLException {
+        if (languageModel == null) languageModel = new LanguageModel(DEFAULT_LANGUAGE);
+        lastLanguage = languageModel.getLanguage();
+        CommentMatcher commentMatcher = new CommentMatcher(ywdb, languageModel).sourceLineStorage(storage);
+        commentMatcher.extractComments(sourceId, channel, encoding, inserter);
+    }
+
+    private ReadableByteChannel channelForPath(String path) throws YWToolUsageException {
 
-        BufferedReader reader = null;
         try {
-            reader = new BufferedReader(new FileReader(path));
-        } catch (FileNotFoundException e) {
+            return FileChannel.open(existingSourcePath(path), StandardOpenOption.READ);
+        } catch (IOException e) {
             throw new YWToolUsageException("Input file not found: " + path);
         }
+    }
 
-        return reader;
+    private byte[] readSourceFile(String path) throws YWToolUsageException {
+
+        try {
+            return Files.readAllBytes(existingSourcePath(path));
+        } catch (IOException e) {
+            throw new YWToolUsageException("Input file not found: " + path);
+        }
     }
 
-    private void writeCommentListing() throws IOException {
+    private Path existingSourcePath(String path) throws YWToolUsageException {
+
+        try {
+            Path sourcePath = Paths.get(path);
+            if (Files.isRegularFile(sourcePath)) return sourcePath;
+        } catch (InvalidPathException e) {
+            // reported as a missing file below
+        }
+
+        throw new YWToolUsageException("Input file not found: " + path);
+    }
+
+    private void writeCommentListing() throws Exception {
         if (commentListingPath != null) {
             writeTextToFileOrStdout(commentListingPath, DefaultExtractor.commentsAsString(ywdb));
         }
@@ -294,129 +671,97 @@ public class DefaultExtractor implements Extractor {
         }
     }
 
-    @SuppressWarnings({"unchecked"})
-    private void extractAnnotations() throws Exception {
+    /** Parses the annotations in the comments stored in the YW store.  Comments are
+     *  read at most <code>batchSize</code> at a time, so the comment table is never
+     *  held in memory as a whole.
+     */
+    private void extractAnnotations(RowInserter inserter) throws Exception {
 
-        allAnnotations = new LinkedList<Annotation>();
-        primaryAnnotations = new LinkedList<Annotation>();
-        Annotation primaryAnnotation = null;
+        annotationStore = new AnnotationStore();
 
-        Result<Record> rows = ywdb.jooq().select(ID, SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
-                .from(Table.COMMENT)
-                .orderBy(SOURCE_ID, LINE_NUMBER, RANK_IN_LINE)
-                .fetch();
+        // continue the numbering of any annotations already in the store
+        Long lastAnnotationId = ywdb.getLastAnnotationId();
+        nextAnnotationId = (lastAnnotationId == null) ? 1L : lastAnnotationId + 1;
 
-        for (Record comment : rows) {
+        AnnotationParser parser = new AnnotationParser(inserter);
+        ywdb.readCommentsInSourceOrder(batchSize, parser);
+        parser.finish();
+    }
 
-            Long sourceId = ywdb.getLongValue(comment, SOURCE_ID);
-            Long lineNumber = ywdb.getLongValue(comment, LINE_NUMBER);
-            String commentText = (String) comment.getValue(COMMENT_TEXT);
-            List<String> annotationStrings = findCommentsOnLine(commentText, keywordMatcher);
-            Long rankInComment = 1L;
-            for (String annotationString : annotationStrings) {
+    private void notifyAnnotationListeners(Annotation annotation) {
+        for (Consumer<? super Annotation> listener : annotationListeners) {
+            listener.accept(annotation);
+        }
+    }
 
-                Tag tag = KeywordMatcher.extractInitialKeyword(annotationString, keywordMapping);
+    private class AnnotationParser implements YWStore.CommentHandler {
 
-                Annotation annotation = null;
-                Long id = nextAnnotationId++;
-                switch (tag) {
-
-                    case BEGIN:
-                        annotation = new Begin(id, sourceId, lineNumber, annotationString);
-                        break;
-                    case CALL:
-                        annotation = new Call(id, sourceId, lineNumber, annotationString);
-                        break;
-                    case DESC:
-                        annotation = new Desc(id, sourceId, lineNumber, annotationString, primaryAnnotation);
-                        break;
-                    case END:
-                        annotation = new End(id, sourceId, lineNumber, annotationString);
-                        break;
-                    case FILE:
-                        annotation = new FileUri(id, sourceId, lineNumber, annotationString, primaryAnnotation);
-                        break;
-                    case IN:
-                        annotation = new In(id, sourceId, lineNumber, annotationString);
-                        break;
-                    case LOG:
-                        if (!(primaryAnnotation instanceof Out))
-                            continue;
-                        annotation = new Log(id, sourceId, lineNumber, annotationString, (Out) primaryAnnotation);
-                        break;
-                    case OUT:
-                        annotation = new Out(id, sourceId, lineNumber, annotationString);
-                        break;
-                    case AS:
-                        annotation = new As(id, sourceId, lineNumber, annotationString, primaryAnnotation);
-                        break;
-                    case PARAM:
-                        annotation = new Param(id, sourceId, lineNumber, annotationString);
-                        break;
-                    case RETURN:
-                        annotation = new Return(id, sourceId, lineNumber, annotationString);
-                        break;
-                    case URI:
-                        annotation = new UriAnnotation(id, sourceId, lineNumber, annotationString, primaryAnnotation);
-                        break;
+        private final RowInserter inserter;
+        private Annotation primaryAnnotation = null;
+
+        AnnotationParser(RowInserter inserter) {
+            this.inserter = inserter;
+        }
+
+        @Override
+        public void comment(long commentId, long sourceId, long lineNumber, long rankInLine,
+                            String commentText) throws Exception {
+
+            int annotationCount = annotationTokenizer.tokenize(commentText);
+            Long rankInComment = 1L;
+            for (int span = 0; span < annotationCount; ++span) {
+
+                Tag tag = annotationTokenizer.tag(span);
+                if (tag == null) {
+                    throw new YWMarkupException("Unrecognized keyword " + annotationTokenizer.keyword(span) +
+                                                " on line " + lineNumber);
                 }
 
-                allAnnotations.add(annotation);
+                Long id = nextAnnotationId++;
+                if (tag == Tag.LOG && !(primaryAnnotation instanceof Out)) continue;
+
+                // create strings only for the fields the annotation keeps
+                String annotationString = annotationTokenizer.text(span);
+                String keyword = annotationTokenizer.keyword(span);
+                String value = (tag == Tag.DESC || tag == Tag.LOG) ? annotationTokenizer.description(span)
+                                                                   : annotationTokenizer.value(span);
+                Annotation annotation = AnnotationStore.newAnnotation(tag, id, sourceId, lineNumber, annotationString,
+                                                                      keyword, value, primaryAnnotation,
+                                                                      annotationStore::nextLogVariableId);
+                annotationStore.add(annotation);
 
                 Long qualifiedAnnotationId = null;
                 if (annotation instanceof Qualification) {
                     qualifiedAnnotationId = primaryAnnotation.id;
                 } else {
+                    if (primaryAnnotation != null) notifyAnnotationListeners(primaryAnnotation);
                     primaryAnnotation = annotation;
-                    primaryAnnotations.add(annotation);
                 }
 
-                ywdb.insertAnnotation(qualifiedAnnotationId, ywdb.getLongValue(comment, ID), rankInComment++,
+                inserter.insertAnnotation(qualifiedAnnotationId, commentId, rankInComment++,
                         tag.toString(), annotation.keyword, annotation.value(),
                         annotation.description());
 
             }
         }
+
+        void finish() {
+            if (primaryAnnotation != null) notifyAnnotationListeners(primaryAnnotation);
+        }
     }
 
     public static List<String> findCommentsOnLine(String line, KeywordMatcher keywordMatcher) {
 
-        List<String> comments = new LinkedList<String>();
-        StringBuilder buffer = new StringBuilder();
-        StringBuilder currentComment = new StringBuilder();
-
-        for (int i = 0; i < line.length(); ++i) {
-
-            char c = line.charAt(i);
-            buffer.append(c);
-
-            switch (keywordMatcher.matchesKeyword(buffer.toString())) {
-
-                case NO_MATCH:
-
-                    if (currentComment.length() > 0) currentComment.append(buffer);
-                    buffer.setLength(0);
-                    break;
-
-                case FULL_MATCH:
+        List<String> comments = new ArrayList<String>();
 
-                    if (currentComment.length() > 0) {
-                        comments.add(currentComment.toString().trim());
-                        currentComment.setLength(0);
-                    }
-                    currentComment.append(buffer);
-                    buffer.setLength(0);
-                    break;
-
-                default:
-
-                    break;
-            }
-        }
-
-        if (currentComment.length() > 0) {
-            currentComment.append(buffer);
-            comments.add(currentComment.toString().trim());
+        // each comment runs from the start of a keyword to the start of the next one
+        int start = keywordMatcher.nextKeywordStart(line, 0);
+        while (start != -1) {
+            int keywordEnd = start + keywordMatcher.keywordLengthAt(line, start);
+            int nextStart = keywordMatcher.nextKeywordStart(line, keywordEnd);
+            int end = (nextStart == -1) ? line.length() : nextStart;
+            comments.add(line.substring(start, end).trim());
+            start = nextStart;
         }
 
         return comments;
@@ -460,17 +805,12 @@ public class DefaultExtractor implements Extractor {
         return "#";
     }
 
-    @SuppressWarnings("unchecked")
-    public static String commentsAsString(YesWorkflowDB ywdb) throws IOException {
-        StringBuffer comments = new StringBuffer();
-        Result<Record> rows = ywdb.jooq().select(ID, SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
-                .from(Table.COMMENT)
-                .orderBy(ID, LINE_NUMBER, RANK_IN_LINE)
-                .fetch();
-        for (Record row : rows) {
-            comments.append(row.getValue(COMMENT_TEXT));
+    public static String commentsAsString(YWStore ywdb) throws Exception {
+        StringBuilder comments = new StringBuilder();
+        ywdb.readComments((id, sourceId, lineNumber, rankInLine, commentText) -> {
+            comments.append(commentText);
             comments.append(CommentMatcher.EOL);
-        }
+        });
         return comments.toString();
     }
 }
@@ -1,32 +1,27 @@
 package org.yesworkflow.extract;
 
-import static org.yesworkflow.db.Column.ID;
-import static org.yesworkflow.db.Column.PATH;
-
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.jooq.Record;
-import org.jooq.Result;
 import org.yesworkflow.annotations.Annotation;
 import org.yesworkflow.annotations.Qualification;
-import org.yesworkflow.db.Table;
-import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.db.YWStore;
 import org.yesworkflow.query.DataExportBuilder;
 import org.yesworkflow.query.QueryEngine;
 
 public class ExtractFacts {
 
-    private YesWorkflowDB ywdb;
+    private YWStore ywdb;
     private final List<Annotation> annotations;
     private Map<String,String> facts = new LinkedHashMap<String,String>();
     private DataExportBuilder sourceFileFacts;
     private DataExportBuilder annotationFacts;
     private DataExportBuilder qualificationFacts;
 
-    public ExtractFacts(YesWorkflowDB ywdb, QueryEngine queryEngine, List<Annotation> annotations) throws IOException {
+    public ExtractFacts(YWStore ywdb, QueryEngine queryEngine, List<Annotation> annotations) throws IOException {
         
         this.ywdb = ywdb;
         this.annotations = annotations;
@@ -52,18 +47,19 @@ public class ExtractFacts {
         return facts;
     }
 
-    @SuppressWarnings("unchecked")
     private void buildSourceFileFacts() throws IOException {
         
-        Result<Record> results = ywdb.jooq().select(ID, PATH)
-                                     .from(Table.SOURCE)
-                                     .fetch();
+        Map<Long,String> sourcePaths;
+        try {
+            sourcePaths = ywdb.getSourcePaths();
+        } catch (SQLException e) {
+            throw new IOException("Error reading source files from YW store", e);
+        }
         
-        for (Record record : results) {
-            long id = ywdb.getLongValue(record, ID);
-            String path = (String)record.getValue(PATH);
+        for (Map.Entry<Long,String> source : sourcePaths.entrySet()) {
+            String path = source.getValue();
             if (path == null) path = "";
-            sourceFileFacts.addRow(id, path);
+            sourceFileFacts.addRow(source.getKey(), path);
         }
     }
     
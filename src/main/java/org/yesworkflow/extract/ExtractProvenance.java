@@ -1,7 +1,6 @@
 package org.yesworkflow.extract;
 
 import org.openprovenance.prov.interop.Formats;
-import org.openprovenance.prov.interop.InteropException;
 import org.openprovenance.prov.interop.InteropFramework;
 import org.openprovenance.prov.model.*;
 import org.openprovenance.prov.xml.InternationalizedString;
@@ -11,7 +10,15 @@ import org.yesworkflow.annotations.util.AnnotationLine;
 import org.yesworkflow.exceptions.YWToolUsageException;
 import org.openprovenance.prov.vanilla.Type;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 class ExtractProvenance {
 
@@ -20,23 +27,52 @@ class ExtractProvenance {
 
 
     private final Namespace namespace;
+    private final String namespaceUri;
     private final List<AnnotationBlock> blocks;
-    private final String file;
-    private final String fileExtension;
-    private final Formats.ProvFormat fileFormat;
-
-    ExtractProvenance(List<AnnotationBlock> blocks, String file, String format, String namespace, String prefix) throws YWToolUsageException {
-        List<String> allowedFormats = Arrays.asList("PROVN", "TURTLE", "XML", "RDFXML", "TRIG", "JSON", "PDF", "SVG", "DOT", "PNG", "JPEG");
-        if (!allowedFormats.contains(format.toUpperCase())) {
-            throw new YWToolUsageException("Invalid provenance output format '" + format.toUpperCase() + "'");
+    private final List<Output> outputs = new ArrayList<>();
+
+    /**
+     * A requested format and the file it is written to. Text formats are written as the statements are
+     * produced, all others by serializing the PROV document.
+     */
+    private static class Output {
+        final String format;
+        final String path;
+        final Formats.ProvFormat fileFormat;
+        final StreamingProvWriter.Syntax streamingSyntax;
+
+        Output(String format, String path, Formats.ProvFormat fileFormat, StreamingProvWriter.Syntax streamingSyntax) {
+            this.format = format;
+            this.path = path;
+            this.fileFormat = fileFormat;
+            this.streamingSyntax = streamingSyntax;
         }
+    }
+
+    ExtractProvenance(List<AnnotationBlock> blocks, String file, List<String> formats, String namespace, String prefix) throws YWToolUsageException {
+        List<String> allowedFormats = Arrays.asList("PROVN", "TURTLE", "XML", "RDFXML", "TRIG", "NTRIPLES", "JSON", "PDF", "SVG", "DOT", "PNG", "JPEG");
+        Map<String, String> formatsByPath = new HashMap<>();
+        for (String format : new LinkedHashSet<>(formats)) {
+            if (!allowedFormats.contains(format.toUpperCase())) {
+                throw new YWToolUsageException("Invalid provenance output format '" + format.toUpperCase() + "'");
+            }
+
+            StreamingProvWriter.Syntax streamingSyntax = StreamingProvWriter.Syntax.forFormat(format);
+            Formats.ProvFormat fileFormat = (streamingSyntax == null) ? Formats.ProvFormat.valueOf(format.toUpperCase()) : null;
+            String extension = (streamingSyntax == null) ? getExtension(fileFormat) : streamingSyntax.extension;
+            String path = String.join("", file, extension);
 
-        this.fileFormat = Formats.ProvFormat.valueOf(format.toUpperCase());
-        this.fileExtension = getExtension(this.fileFormat);
+            String otherFormat = formatsByPath.putIfAbsent(path, format.toUpperCase());
+            if (otherFormat != null) {
+                throw new YWToolUsageException("Provenance output formats '" + otherFormat + "' and '" +
+                        format.toUpperCase() + "' would both be written to " + path);
+            }
+            this.outputs.add(new Output(format.toUpperCase(), path, fileFormat, streamingSyntax));
+        }
         this.blocks = blocks;
-        this.file = file;
         this.provFactory = InteropFramework.getDefaultFactory();
         this.namespacePrefix = prefix;
+        this.namespaceUri = namespace;
 
 
         this.namespace = new Namespace();
@@ -74,17 +110,20 @@ class ExtractProvenance {
         }
     }
 
-    private String escapeForQName(String input) {
-        // escaped because replaceAll takes regex
-        String[] forbiddenChars = new String[]{"=", "'", "\\.", "\\(", "\\)", ",", "_", ":", ";", "\\[", "\\]", "/",
-                "\\\\", "\\?", "@", "~", "&", "\\+", "\\*", "#", "\\$", "\\^", "!", "<", ">", "%"};
-        String returnValue = input;
-
-        for (String forbiddenChar : forbiddenChars) {
-            returnValue = returnValue.replaceAll(forbiddenChar, "_");
+    /**
+     * Replace the characters that may not appear in the local part of a qualified name with '_': all but
+     * letters, digits, underscores, and hyphens not leading the name. Both the PROV document and the streamed
+     * text formats name elements this way, so an element has the same ID in every format written.
+     */
+    static String escapeForQName(String input) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < input.length(); ++i) {
+            char c = input.charAt(i);
+            boolean allowed = Character.isLetterOrDigit(c) || c == '_' || (c == '-' && i > 0);
+            if (!allowed && escaped == null) escaped = new StringBuilder(input.length()).append(input, 0, i);
+            if (escaped != null) escaped.append(allowed ? c : '_');
         }
-
-        return returnValue;
+        return (escaped == null) ? input : escaped.toString();
     }
 
     private QualifiedName qualifiedName(String name) {
@@ -147,6 +186,10 @@ class ExtractProvenance {
         if (!(activity instanceof Activity))
             return;
 
+        addDescriptionLabel(logLabel(annotation), ((Activity) activity).getLabel());
+    }
+
+    private String logLabel(Annotation annotation) {
         String logMessage = annotation.value();
         Qualification annQual = (Qualification) annotation;
         String logEntity = annQual.primaryAnnotation.value();
@@ -158,7 +201,7 @@ class ExtractProvenance {
                 logEntity = annAlias.alias();
         }
 
-        addDescriptionLabel(String.format("log_%s: %s", logEntity, logMessage), ((Activity) activity).getLabel());
+        return String.format("log_%s: %s", logEntity, logMessage);
     }
 
     /**
@@ -270,14 +313,144 @@ class ExtractProvenance {
             currentLabels.add(descLabel);
     }
 
-    void saveFile() {
-        InteropFramework interopFx = new InteropFramework();
-        Document provenance = this.createDocument();
+    /**
+     * Write the provenance information of all blocks to the given writer as it is produced. The statements
+     * are those of {@link #createDocument()}, except that repeated statements about the same entity or activity
+     * add their labels rather than replacing earlier ones.
+     */
+    private void writeStatements(StreamingProvWriter writer) throws IOException {
+        for (AnnotationBlock block : this.blocks) {
+            for (AnnotationLine line : block.getLines()) {
+                for (Annotation annotation : line.getAnnotations()) {
+                    StatementOrBundle prov = annotation.getProvenanceInfo(provFactory, this::qualifiedName);
+                    if (prov == null && !(annotation instanceof Log))
+                        continue;
+
+                    if (prov instanceof Entity) {
+                        Entity entity = (Entity) prov;
+                        String id = entity.getId().getLocalPart();
+                        if (!writer.entity(id, labelValues(entity.getLabel()), typeValues(entity.getType())))
+                            writer.entity(id, descriptionLabel(annotation), Collections.emptyList());
+                    } else if (prov instanceof Activity) {
+                        Activity activity = (Activity) prov;
+                        String id = activity.getId().getLocalPart();
+                        if (!writer.activity(id, labelValues(activity.getLabel())))
+                            writer.activity(id, descriptionLabel(annotation));
+                    } else if (prov instanceof AlternateOf) {
+                        AlternateOf alternate = (AlternateOf) prov;
+                        writer.alternateOf(alternate.getAlternate1().getLocalPart(), alternate.getAlternate2().getLocalPart());
+                    }
+
+                    if (prov instanceof Entity) {
+                        String entityId = ((Entity) prov).getId().getLocalPart();
+                        String activityId = qualifiedName(block.getBegin().value()).getLocalPart();
+
+                        if (annotation instanceof Out)
+                            writer.wasGeneratedBy(qualifiedName(entityId, activityId, "GEN").getLocalPart(), entityId, activityId);
+
+                        if (annotation instanceof In)
+                            writer.used(qualifiedName(entityId, activityId, "USE").getLocalPart(), activityId, entityId,
+                                    Collections.emptyList());
+
+                        if (annotation instanceof Call)
+                            writer.used(qualifiedName(entityId, activityId, "CALL").getLocalPart(), activityId, entityId,
+                                    Collections.singletonList("call"));
+                    }
+
+                    if (annotation instanceof Log) {
+                        String activityId = qualifiedName(block.getBegin().value()).getLocalPart();
+                        if (writer.isActivity(activityId))
+                            writer.activity(activityId, Collections.singletonList(logLabel(annotation)));
+                    }
+                }
+            }
+        }
+    }
+
+    private List<String> labelValues(List<LangString> labels) {
+        List<String> values = new ArrayList<>();
+        if (labels != null)
+            labels.forEach(label -> values.add(label.getValue()));
+        return values;
+    }
+
+    private List<String> typeValues(List<org.openprovenance.prov.model.Type> types) {
+        List<String> values = new ArrayList<>();
+        if (types != null)
+            types.forEach(type -> values.add(String.valueOf(type.getValue())));
+        return values;
+    }
+
+    private List<String> descriptionLabel(Annotation annotation) {
+        String description = annotation.descriptionClean();
+        return description == null ? Collections.emptyList() : Collections.singletonList(description);
+    }
+
+    /**
+     * Write the provenance information to the file of every requested format. The PROV document is built once
+     * if any format needs it, and the formats are written concurrently on a pool of worker threads.
+     *
+     * @return A message for each format that could not be written, in the order the formats were requested.
+     */
+    List<String> saveFiles() throws InterruptedException {
+        Document provenance = null;
+        for (Output output : this.outputs) {
+            if (output.streamingSyntax == null) {
+                provenance = this.createDocument();
+                break;
+            }
+        }
+
+        List<String> errors = new ArrayList<>();
+        if (this.outputs.size() == 1) {
+            saveFile(this.outputs.get(0), provenance, errors);
+            return errors;
+        }
+
+        final Document document = provenance;
+        ExecutorService writers = Executors.newFixedThreadPool(
+                Math.min(this.outputs.size(), Runtime.getRuntime().availableProcessors()));
         try {
-            interopFx.writeDocument(String.join("", this.file, this.fileExtension), this.fileFormat, provenance);
-        } catch (InteropException ex) {
-            System.err.println(String.format("Error while persisting provenance document:\n  %s", ex.getMessage()));
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (Output output : this.outputs) {
+                results.add(writers.submit(() -> {
+                    List<String> outputErrors = new ArrayList<>();
+                    saveFile(output, document, outputErrors);
+                    return outputErrors;
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    errors.addAll(results.get(i).get());
+                } catch (ExecutionException ex) {
+                    errors.add(errorMessage(this.outputs.get(i), ex.getCause()));
+                }
+            }
+        } finally {
+            writers.shutdownNow();
         }
+
+        return errors;
+    }
+
+    private void saveFile(Output output, Document provenance, List<String> errors) {
+        try {
+            if (output.streamingSyntax != null) {
+                try (StreamingProvWriter writer = new StreamingProvWriter(
+                        Files.newBufferedWriter(Paths.get(output.path), StandardCharsets.UTF_8),
+                        output.streamingSyntax, this.namespacePrefix, this.namespaceUri)) {
+                    writeStatements(writer);
+                }
+            } else {
+                new InteropFramework().writeDocument(output.path, output.fileFormat, provenance);
+            }
+        } catch (IOException | RuntimeException ex) {
+            errors.add(errorMessage(output, ex));
+        }
+    }
+
+    private String errorMessage(Output output, Throwable cause) {
+        return String.format("Could not write provenance in %s format to %s: %s", output.format, output.path, cause.getMessage());
     }
 
 }
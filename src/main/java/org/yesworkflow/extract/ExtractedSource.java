@@ -0,0 +1,97 @@
+package org.yesworkflow.extract;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.yesworkflow.db.RowInserter;
+
+/** Class holding the source lines and comments lexed from one source file
+ *  by a {@link CommentMatcher} that is not writing to the YesWorkflow database.
+ *  Lets sources be lexed concurrently while keeping the database inserts,
+ *  and so the IDs assigned to rows, in source order.
+ */
+public class ExtractedSource implements SourceSink {
+
+    private final List<String> lineTexts = new ArrayList<String>();
+    private final List<Long> lineOffsets = new ArrayList<Long>();
+    private final List<Integer> lineLengths = new ArrayList<Integer>();
+    private final List<Long> commentLineNumbers = new ArrayList<Long>();
+    private final List<Long> commentRanks = new ArrayList<Long>();
+    private final List<String> commentTexts = new ArrayList<String>();
+
+    @Override
+    public void sourceLine(Long lineNumber, char[] chars, int start, int end) {
+        lineTexts.add(new String(chars, start, end - start));
+        lineOffsets.add(null);
+        lineLengths.add(null);
+    }
+
+    @Override
+    public void sourceLineOffset(Long lineNumber, long byteOffset, int byteLength) {
+        lineTexts.add(null);
+        lineOffsets.add(byteOffset);
+        lineLengths.add(byteLength);
+    }
+
+    @Override
+    public void comment(Long lineNumber, Long rankInLine, String commentText) {
+        commentLineNumbers.add(lineNumber);
+        commentRanks.add(rankInLine);
+        commentTexts.add(commentText);
+    }
+
+    public int getLineCount() {
+        return lineTexts.size();
+    }
+
+    public int getCommentCount() {
+        return commentTexts.size();
+    }
+
+    /** @return The text of the line with the given index, or null if only its offset was recorded. */
+    String getLineText(int index) {
+        return lineTexts.get(index);
+    }
+
+    Long getLineOffset(int index) {
+        return lineOffsets.get(index);
+    }
+
+    Integer getLineLength(int index) {
+        return lineLengths.get(index);
+    }
+
+    Long getCommentLineNumber(int index) {
+        return commentLineNumbers.get(index);
+    }
+
+    Long getCommentRank(int index) {
+        return commentRanks.get(index);
+    }
+
+    String getCommentText(int index) {
+        return commentTexts.get(index);
+    }
+
+    /** Inserts the source lines and comments held by this instance into the
+     *  YesWorkflow database in the order in which they were found.
+     * @param inserter The RowInserter used to write to the YW store.
+     * @param sourceId Unique ID of the source file the lines and comments were read from.
+     * @throws SQLException If an error occurs inserting rows into the YW database.
+     */
+    public void insertInto(RowInserter inserter, Long sourceId) throws SQLException {
+        for (int i = 0; i < lineTexts.size(); ++i) {
+            String lineText = lineTexts.get(i);
+            if (lineText != null) {
+                inserter.insertSourceLine(sourceId, Long.valueOf(i + 1), lineText);
+            } else {
+                inserter.insertSourceLineOffset(sourceId, Long.valueOf(i + 1), lineOffsets.get(i), lineLengths.get(i));
+            }
+        }
+        
+        for (int i = 0; i < commentTexts.size(); ++i) {
+            inserter.insertComment(sourceId, commentLineNumbers.get(i), commentRanks.get(i), commentTexts.get(i));
+        }
+    }
+}
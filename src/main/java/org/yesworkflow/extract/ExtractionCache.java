@@ -0,0 +1,263 @@
+package org.yesworkflow.extract;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.impl.DSL;
+import org.yesworkflow.LanguageModel;
+import org.yesworkflow.db.YesWorkflowDB;
+
+/** Class for reusing the source lines and comments lexed from source files in
+ *  earlier runs of YesWorkflow.  Results are kept in a SQLite file, one entry per
+ *  source path, together with the size, modification time and SHA-256 hash of the
+ *  file contents, and a key identifying the comment delimiters, character encoding
+ *  and source line storage mode the file was lexed with.
+ *
+ *  <p>A file whose size and modification time match its entry is reused without
+ *  being read.  Otherwise the file is read once and hashed; if the hash matches,
+ *  the entry is reused and its modification time updated, else the contents are
+ *  lexed and the entry replaced.  Cached sources are inserted into the YesWorkflow
+ *  database exactly as freshly lexed ones are, so the rows derived from them,
+ *  annotations included, receive the same IDs either way.  That a file was skipped
+ *  by the lexer, e.g. by the {@link MarkupPrefilter}, is cached as well.</p>
+ *
+ *  <p>Files may be looked up from several threads; lexing and hashing run
+ *  concurrently, while access to the cache file is serialized.</p>
+ */
+public class ExtractionCache implements AutoCloseable {
+
+    /** Lexes the contents of a source file, returning null if the file is to be skipped. */
+    interface Lexer {
+        ExtractedSource lex(byte[] contents) throws IOException;
+    }
+
+    /** Version of the cache tables; caches written with another version are discarded. */
+    private static final int SCHEMA_VERSION = 1;
+
+    /** Line count recorded for sources skipped by the lexer. */
+    private static final int SKIPPED_LINE_COUNT = -1;
+
+    private static final String DROP_TABLES_SCRIPT =
+        "DROP TABLE IF EXISTS cached_comment;" +
+        "DROP TABLE IF EXISTS cached_source;";
+
+    private static final String CREATE_TABLES_SCRIPT =
+        "CREATE TABLE IF NOT EXISTS cached_source (" +
+        "    path         TEXT      NOT NULL   PRIMARY KEY," +
+        "    lexer        TEXT      NOT NULL," +
+        "    size         INTEGER   NOT NULL," +
+        "    modified     INTEGER   NOT NULL," +
+        "    hash         TEXT      NOT NULL," +
+        "    line_count   INTEGER   NOT NULL," +
+        "    line_texts   TEXT      NULL," +
+        "    line_offsets TEXT      NULL" +
+        ");" +
+        "CREATE TABLE IF NOT EXISTS cached_comment (" +
+        "    path         TEXT      NOT NULL   REFERENCES cached_source(path)," +
+        "    rank         INTEGER   NOT NULL," +
+        "    line_number  INTEGER   NOT NULL," +
+        "    rank_in_line INTEGER   NOT NULL," +
+        "    comment_text TEXT      NOT NULL," +
+        "    PRIMARY KEY (path, rank)" +
+        ");";
+
+    private final YesWorkflowDB cacheDB;
+    private final DSLContext jooq;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    /** Opens the extraction cache stored in the given file, creating the file if needed.
+     * @param cacheFilePath Path of the SQLite file holding the cache.
+     * @throws Exception If the cache file cannot be opened or created.
+     */
+    public ExtractionCache(Path cacheFilePath) throws Exception {
+        Path absolutePath = cacheFilePath.toAbsolutePath();
+        this.cacheDB = YesWorkflowDB.openFileDB(absolutePath);
+        this.jooq = cacheDB.jooq();
+        Integer version = jooq.fetchOne("PRAGMA user_version").getValue(0, Integer.class);
+        if (version != SCHEMA_VERSION) {
+            cacheDB.executeSqlScript(DROP_TABLES_SCRIPT);
+            cacheDB.executeSqlScript("PRAGMA user_version = " + SCHEMA_VERSION);
+        }
+        cacheDB.executeSqlScript(CREATE_TABLES_SCRIPT);
+    }
+
+    /** Returns a key identifying how sources are lexed with the given language
+     *  model, character encoding and source line storage mode.  Entries cached
+     *  under a different key are not reused. */
+    static String lexerKey(LanguageModel languageModel, Charset encoding, SourceLineStorage sourceLineStorage) {
+        StringBuilder key = new StringBuilder();
+        key.append(languageModel.getLanguage()).append('|')
+           .append(encoding.name()).append('|')
+           .append(sourceLineStorage).append('|')
+           .append(languageModel.getSingleCommentDelimiters()).append('|')
+           .append(new TreeMap<String,String>(languageModel.getPairedCommentDelimiters()));
+        return key.toString();
+    }
+
+    /** Returns the source lines and comments of a source file, from the cache if the
+     *  file is unchanged since it was cached, and otherwise by lexing its contents
+     *  and caching the result.
+     * @param sourcePath Path of the source file.
+     * @param lexerKey Key identifying how the lexer reads the file, from {@link #lexerKey lexerKey()}.
+     * @param lexer Lexer applied to the file contents if they are not cached.
+     * @return The source lines and comments of the file, or null if the lexer skipped it.
+     * @throws IOException If an error occurs reading or lexing the file.
+     * @throws SQLException If an error occurs accessing the cache file.
+     */
+    ExtractedSource extract(Path sourcePath, String lexerKey, Lexer lexer) throws IOException, SQLException {
+
+        String path = sourcePath.toString();
+        long size = Files.size(sourcePath);
+        long modified = Files.getLastModifiedTime(sourcePath).toMillis();
+
+        Record entry = lookup(path, lexerKey);
+        if (entry != null && size == entry.getValue("size", Long.class)
+                          && modified == entry.getValue("modified", Long.class)) {
+            return cached(path, entry);
+        }
+
+        byte[] contents = Files.readAllBytes(sourcePath);
+        String hash = sha256(contents);
+        if (entry != null && contents.length == entry.getValue("size", Long.class)
+                          && hash.equals(entry.getValue("hash", String.class))) {
+            updateModified(path, modified);
+            return cached(path, entry);
+        }
+
+        ExtractedSource extractedSource = lexer.lex(contents);
+        store(path, lexerKey, contents.length, modified, hash, extractedSource);
+        return extractedSource;
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        cacheDB.close();
+    }
+
+    private synchronized Record lookup(String path, String lexerKey) {
+        return jooq.fetchOne("SELECT size, modified, hash, line_count, line_texts, line_offsets FROM cached_source " +
+                             "WHERE path = ? AND lexer = ?", path, lexerKey);
+    }
+
+    private synchronized void updateModified(String path, long modified) {
+        jooq.execute("UPDATE cached_source SET modified = ? WHERE path = ?", modified, path);
+    }
+
+    private synchronized ExtractedSource cached(String path, Record entry) throws SQLException {
+
+        int lineCount = entry.getValue("line_count", Integer.class);
+        if (lineCount == SKIPPED_LINE_COUNT) {
+            hitCount++;
+            return null;
+        }
+
+        ExtractedSource extractedSource = new ExtractedSource();
+        String lineOffsets = entry.getValue("line_offsets", String.class);
+        if (lineOffsets != null) {
+            String[] offsetsAndLengths = lineOffsets.split(" ");
+            for (int i = 1; i <= lineCount; ++i) {
+                extractedSource.sourceLineOffset(Long.valueOf(i), Long.parseLong(offsetsAndLengths[2 * i - 2]),
+                                                 Integer.parseInt(offsetsAndLengths[2 * i - 1]));
+            }
+        } else {
+            char[] lineTexts = entry.getValue("line_texts", String.class).toCharArray();
+            int start = 0;
+            for (int i = 1; i <= lineCount; ++i) {
+                int end = start;
+                while (end < lineTexts.length && lineTexts[end] != '\n') end++;
+                extractedSource.sourceLine(Long.valueOf(i), lineTexts, start, end);
+                start = end + 1;
+            }
+        }
+
+        Result<Record> comments = jooq.fetch("SELECT line_number, rank_in_line, comment_text FROM cached_comment " +
+                                             "WHERE path = ? ORDER BY rank", path);
+        for (Record comment : comments) {
+            extractedSource.comment(comment.getValue("line_number", Long.class),
+                                    comment.getValue("rank_in_line", Long.class),
+                                    comment.getValue("comment_text", String.class));
+        }
+
+        hitCount++;
+        return extractedSource;
+    }
+
+    /** Replaces the cache entry for a source path.  Source lines never contain line
+     *  terminators, so they are stored as a single text joined with line feeds.  Lines
+     *  recorded by offset are stored as a single list of offsets and lengths instead.
+     *  A skipped source is stored without lines or comments. */
+    private synchronized void store(String path, String lexerKey, long size, long modified, String hash,
+                                    ExtractedSource extractedSource) {
+
+        int lineCount = (extractedSource != null) ? extractedSource.getLineCount() : SKIPPED_LINE_COUNT;
+        boolean byOffset = lineCount > 0 && extractedSource.getLineText(0) == null;
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < lineCount; ++i) {
+            if (byOffset) {
+                if (i > 0) lines.append(' ');
+                lines.append(extractedSource.getLineOffset(i)).append(' ').append(extractedSource.getLineLength(i));
+            } else {
+                if (i > 0) lines.append('\n');
+                lines.append(extractedSource.getLineText(i));
+            }
+        }
+
+        int commentCount = (extractedSource != null) ? extractedSource.getCommentCount() : 0;
+        List<Object[]> comments = new ArrayList<Object[]>(commentCount);
+        for (int i = 0; i < commentCount; ++i) {
+            comments.add(new Object[] { path, i, extractedSource.getCommentLineNumber(i),
+                                        extractedSource.getCommentRank(i), extractedSource.getCommentText(i) });
+        }
+
+        jooq.transaction(configuration -> {
+            DSLContext tx = DSL.using(configuration);
+            tx.execute("DELETE FROM cached_comment WHERE path = ?", path);
+            tx.execute("DELETE FROM cached_source WHERE path = ?", path);
+            tx.execute("INSERT INTO cached_source (path, lexer, size, modified, hash, line_count, line_texts, line_offsets) " +
+                       "VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                       path, lexerKey, size, modified, hash, lineCount,
+                       byOffset ? null : lines.toString(), byOffset ? lines.toString() : null);
+            if (!comments.isEmpty()) {
+                tx.batch("INSERT INTO cached_comment (path, rank, line_number, rank_in_line, comment_text) " +
+                         "VALUES (?, ?, ?, ?, ?)", comments.toArray(new Object[comments.size()][])).execute();
+            }
+        });
+
+        missCount++;
+    }
+
+    private static String sha256(byte[] contents) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest(contents)) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -1,8 +1,9 @@
 package org.yesworkflow.extract;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 import java.util.StringTokenizer;
 
 import org.yesworkflow.YWKeywords;
@@ -11,45 +12,202 @@ import org.yesworkflow.YWKeywords.Tag;
 /** Simple class for searching a list of comment lines for those
  *  containing YW keywords.  Optionally trims from each line
  *  characters preceding the first YW keyword.
+ *
+ *  <p>The keywords are compiled into a case-insensitive trie (prefix tree) when
+ *  the instance is constructed.  Text is matched against the trie one character
+ *  at a time, so the cost of a search grows with the length of the text searched
+ *  and not with the number of keywords.  Searches do not allocate and instances
+ *  may be shared between threads.</p>
  */
 public class KeywordMatcher {
-    
-    /** storage for the collection of YW keywords to match lines against */
-    private Set<String> keywords = new HashSet<String>();
-    
+
+    /** number of characters with a dense transition table in each trie node */
+    private static final int ASCII_SIZE = 128;
+
+    /** trie node at which every match starts */
+    private static final int ROOT = 0;
+
+    /** dense transitions on ASCII characters, indexed by node * ASCII_SIZE + character,
+     *  holding the next node or -1 if the character leads out of the trie */
+    private final int[] asciiTransitions;
+
+    /** sorted non-ASCII characters leading out of each node, and the nodes they lead to */
+    private final char[][] otherCharacters;
+    private final int[][] otherTransitions;
+
+    /** length of the keyword ending at each node, or 0 if no keyword ends there */
+    private final int[] keywordLength;
+
+    /** position in the constructor's keyword collection of the keyword ending at
+     *  each node, or -1 if no keyword ends there */
+    private final int[] keywordIndex;
+
     /** Constructs an instance configured to match comment lines against the
      *  provided collection of keywords.
      *  @param keywords The YW keywords against which comment lines are matched.
      */
     public KeywordMatcher(Collection<String> keywords) {
-        this.keywords.addAll(keywords);
+
+        // build the trie with growable per-node edge lists
+        List<StringBuilder> edgeCharacters = new ArrayList<StringBuilder>();
+        List<List<Integer>> edgeTargets = new ArrayList<List<Integer>>();
+        List<Integer> lengths = new ArrayList<Integer>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        edgeCharacters.add(new StringBuilder());
+        edgeTargets.add(new ArrayList<Integer>());
+        lengths.add(0);
+        indexes.add(-1);
+
+        int index = -1;
+        for (String keyword : keywords) {
+            ++index;
+            if (keyword.isEmpty()) continue;
+            int node = ROOT;
+            for (int i = 0; i < keyword.length(); ++i) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                int edge = edgeCharacters.get(node).indexOf(String.valueOf(c));
+                if (edge == -1) {
+                    edgeCharacters.get(node).append(c);
+                    edgeTargets.get(node).add(lengths.size());
+                    edgeCharacters.add(new StringBuilder());
+                    edgeTargets.add(new ArrayList<Integer>());
+                    lengths.add(0);
+                    indexes.add(-1);
+                    node = lengths.size() - 1;
+                } else {
+                    node = edgeTargets.get(node).get(edge);
+                }
+            }
+            lengths.set(node, keyword.length());
+            indexes.set(node, index);
+        }
+
+        // compile the trie into flat transition tables
+        int nodeCount = lengths.size();
+        asciiTransitions = new int[nodeCount * ASCII_SIZE];
+        Arrays.fill(asciiTransitions, -1);
+        otherCharacters = new char[nodeCount][];
+        otherTransitions = new int[nodeCount][];
+        keywordLength = new int[nodeCount];
+        keywordIndex = new int[nodeCount];
+
+        for (int node = 0; node < nodeCount; ++node) {
+            keywordLength[node] = lengths.get(node);
+            keywordIndex[node] = indexes.get(node);
+            String characters = edgeCharacters.get(node).toString();
+            StringBuilder others = new StringBuilder();
+            for (int edge = 0; edge < characters.length(); ++edge) {
+                char c = characters.charAt(edge);
+                if (c < ASCII_SIZE) {
+                    asciiTransitions[node * ASCII_SIZE + c] = edgeTargets.get(node).get(edge);
+                } else {
+                    others.append(c);
+                }
+            }
+            otherCharacters[node] = others.toString().toCharArray();
+            Arrays.sort(otherCharacters[node]);
+            otherTransitions[node] = new int[otherCharacters[node].length];
+            for (int i = 0; i < otherCharacters[node].length; ++i) {
+                int edge = characters.indexOf(otherCharacters[node][i]);
+                otherTransitions[node][i] = edgeTargets.get(node).get(edge);
+            }
+        }
     }
-    
+
     public static enum MatchExtent {
         NO_MATCH,
         PREFIX_MATCH,
         FULL_MATCH
     }
-    
+
+    /** Returns the node reached from the given node on the given character
+     *  (compared case-insensitively), or -1 if the character leads out of the trie. */
+    private int next(int node, char c) {
+        if (c < ASCII_SIZE) {
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            return asciiTransitions[node * ASCII_SIZE + c];
+        }
+        int i = Arrays.binarySearch(otherCharacters[node], Character.toLowerCase(c));
+        return (i < 0) ? -1 : otherTransitions[node][i];
+    }
+
     public MatchExtent matchesKeyword(String s) {
-        
-        String sl = s.toLowerCase();
-        
-        // look for a match with single-line comment start delimiter
-        for (String keyword : keywords) {
-            if (keyword.startsWith(sl)) {
-                return (s.length() == keyword.length()) ? MatchExtent.FULL_MATCH : MatchExtent.PREFIX_MATCH;
+
+        int node = ROOT;
+        for (int i = 0; i < s.length(); ++i) {
+            node = next(node, s.charAt(i));
+            if (node == -1) return MatchExtent.NO_MATCH;
+        }
+
+        if (s.length() == 0 || keywordLength[node] == 0) {
+            return MatchExtent.PREFIX_MATCH;
+        } else {
+            return MatchExtent.FULL_MATCH;
+        }
+    }
+
+    /** Scans text for the start of the next YW keyword, reading each character once.
+     *  Characters are matched against the keywords from the start of the scan and
+     *  from the character following each failed partial match, and a keyword is
+     *  recognized as soon as all of its characters have been read.  A scan resumed
+     *  just past the end of a keyword thus continues exactly where it left off.
+     *  @param text The text to scan.
+     *  @param from The offset in text at which to start scanning.
+     *  @return The offset of the start of the next keyword, or -1 if no keyword is found.
+     */
+    public int nextKeywordStart(CharSequence text, int from) {
+        int node = ROOT;
+        int matchStart = from;
+        for (int i = from; i < text.length(); ++i) {
+            node = next(node, text.charAt(i));
+            if (node == -1) {
+                node = ROOT;
+                matchStart = i + 1;
+            } else if (keywordLength[node] > 0) {
+                return matchStart;
             }
         }
-        return MatchExtent.NO_MATCH;
+        return -1;
+    }
+
+    /** Returns the length of the keyword found by {@link #nextKeywordStart(CharSequence, int)
+     *  nextKeywordStart()} at the given offset.
+     *  @param text The text containing the keyword.
+     *  @param start The offset of the start of the keyword.
+     *  @return The length of the keyword starting at the offset, or 0 if none does.
+     */
+    public int keywordLengthAt(CharSequence text, int start) {
+        int node = ROOT;
+        for (int i = start; i < text.length(); ++i) {
+            node = next(node, text.charAt(i));
+            if (node == -1) return 0;
+            if (keywordLength[node] > 0) return keywordLength[node];
+        }
+        return 0;
+    }
+
+    /** Identifies the keyword spelled out exactly by a region of text.
+     *  @param text The text containing the region.
+     *  @param start The offset of the start of the region.
+     *  @param end The offset just past the end of the region.
+     *  @return The position of the matching keyword in the collection of keywords
+     *          provided to the constructor, or -1 if the region is not a keyword.
+     */
+    public int keywordIndex(CharSequence text, int start, int end) {
+        int node = ROOT;
+        for (int i = start; i < end; ++i) {
+            node = next(node, text.charAt(i));
+            if (node == -1) return -1;
+        }
+        return keywordIndex[node];
     }
-    
+
     /** Searches a comment line for YW keywords.  Returns the line if
      *  a keyword is found and null otherwise.  Trims characters
      *  preceding the first keyword in the return value if requested.
      * @param line The comment line to search for YW keywords.
      * @param trim Characters preceding first keyword are trimmed in the return value if true.
-     * @return The (optionally trimmed) comment line if it contains a YW keyword, or null otherwise. 
+     * @return The (optionally trimmed) comment line if it contains a YW keyword, or null otherwise.
      */
     public String match(String line, boolean trim) {
         int start = findKeyword(line);
@@ -59,30 +217,20 @@ public class KeywordMatcher {
             return null;
         }
     }
-    
+
     /** Finds the first occurrence of a YW keyword in a comment line.
      *  Returns the index of the start of the keyword or -1 if no keyword is found.
-     *  
-     *  <p><i>TODO: If the performance of this method proves unsatisfactory, replace it
-     *  with an implementation that uses a trie (prefix tree) to represent the set of
-     *  keywords.</i></p>
-     *  
+     *
      *  @param line The comment line to search for YW keywords.
-     *  @return The start index of the first keyword found, or -1 if no keyword is found. 
+     *  @return The start index of the first keyword found, or -1 if no keyword is found.
      */
     public int findKeyword(String line) {
-        String lineLowerCase = line.toLowerCase();
-        int firstKeywordStart = -1;
-        for (String keyword : keywords) {
-            int start = lineLowerCase.indexOf(keyword);
-            if (start == -1) continue;
-            if (firstKeywordStart == -1 || start < firstKeywordStart) {
-                firstKeywordStart = start;
-            }
+        for (int start = 0; start < line.length(); ++start) {
+            if (keywordLengthAt(line, start) > 0) return start;
         }
-        return firstKeywordStart;
+        return -1;
     }
-    
+
     public static Tag extractInitialKeyword(String s, YWKeywords keywords) {
         String firstToken = new StringTokenizer(s).nextToken();
         return keywords.getTag(firstToken);
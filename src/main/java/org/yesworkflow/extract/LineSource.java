@@ -0,0 +1,24 @@
+package org.yesworkflow.extract;
+
+import java.io.IOException;
+
+/** Source of the lines of a source file, each exposed as a slice of a character
+ *  array that is valid only until the next call to {@link #nextLine()}.  Sources
+ *  that track where each line is stored in the underlying file also report the
+ *  byte offset and byte length of the line, excluding its terminator. */
+interface LineSource {
+    boolean nextLine() throws IOException;
+    char[] lineChars();
+    int lineStart();
+    int lineEnd();
+
+    /** @return The byte offset of the current line in the file, or -1 if not tracked. */
+    default long lineByteOffset() {
+        return -1;
+    }
+
+    /** @return The length in bytes of the current line, or -1 if not tracked. */
+    default int lineByteLength() {
+        return -1;
+    }
+}
@@ -0,0 +1,181 @@
+package org.yesworkflow.extract;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** Class for deciding from the raw bytes of a source file whether the file can
+ *  contain YW annotations, so that files that cannot are skipped without being
+ *  decoded or lexed.  A file passes if its bytes contain any keyword, compared
+ *  case-insensitively as {@link KeywordMatcher} does, anywhere in the file.  The test
+ *  ignores comment delimiters and so passes every file containing annotations,
+ *  and some that do not.
+ *
+ *  <p>The bytes are scanned eight at a time for the first byte of any keyword using
+ *  bitwise arithmetic on longs, and only words holding such a byte are examined
+ *  one byte at a time.  For the standard keywords this means a search for '@'.</p>
+ *
+ *  <p>The test relies on each keyword character being encoded as its single ASCII
+ *  byte.  For character encodings where this is not so, such as UTF-16, and for
+ *  keywords beginning with a character other characters fold to, every file passes.
+ *  Instances may be shared between threads.</p>
+ */
+class MarkupPrefilter {
+
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /** false if every file must pass */
+    private final boolean enabled;
+
+    /** the distinct first bytes of the keywords in upper and lower case */
+    private final byte[] firstBytes;
+
+    /** each first byte repeated in all eight bytes of a long */
+    private final long[] firstBytePatterns;
+
+    /** the keywords in lower case, as ASCII bytes */
+    private final byte[][] keywords;
+
+    /** Constructs an instance for the given keywords and character encoding.
+     * @param keywords The YW keywords to search for.
+     * @param encoding The character encoding of the files to be tested.
+     */
+    MarkupPrefilter(Collection<String> keywords, Charset encoding) {
+
+        List<byte[]> keywordBytes = new ArrayList<byte[]>();
+        StringBuilder first = new StringBuilder();
+        boolean usable = !keywords.isEmpty();
+
+        for (String keyword : keywords) {
+            if (keyword.isEmpty() || !isFilterable(keyword, encoding)) {
+                usable = false;
+                break;
+            }
+            byte[] bytes = new byte[keyword.length()];
+            for (int i = 0; i < bytes.length; ++i) {
+                bytes[i] = (byte) Character.toLowerCase(keyword.charAt(i));
+            }
+            keywordBytes.add(bytes);
+            char c = keyword.charAt(0);
+            for (char caseOfC : new char[] { Character.toLowerCase(c), Character.toUpperCase(c) }) {
+                if (first.indexOf(String.valueOf(caseOfC)) < 0) first.append(caseOfC);
+            }
+        }
+
+        this.enabled = usable;
+        this.keywords = keywordBytes.toArray(new byte[keywordBytes.size()][]);
+        this.firstBytes = new byte[usable ? first.length() : 0];
+        this.firstBytePatterns = new long[firstBytes.length];
+        for (int i = 0; i < firstBytes.length; ++i) {
+            firstBytes[i] = (byte) first.charAt(i);
+            firstBytePatterns[i] = (firstBytes[i] & 0xFFL) * ONES;
+        }
+    }
+
+    /** @return true if files may be skipped by this prefilter, false if every file passes. */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Tests the contents of a source file.
+     * @param contents The bytes of the file.
+     * @return true if the file may contain YW annotations, false if it cannot.
+     */
+    boolean mayContainMarkup(byte[] contents) {
+
+        if (!enabled) return true;
+
+        int i = 0;
+        int wordEnd = contents.length - Long.BYTES;
+        for (; i <= wordEnd; i += Long.BYTES) {
+            long word = (long) LONG_VIEW.get(contents, i);
+            if (holdsFirstByte(word)) {
+                for (int j = i; j < i + Long.BYTES; ++j) {
+                    if (keywordStartsAt(contents, j)) return true;
+                }
+            }
+        }
+
+        for (; i < contents.length; ++i) {
+            if (keywordStartsAt(contents, i)) return true;
+        }
+
+        return false;
+    }
+
+    /** Returns true if any byte of the word may equal the first byte of a keyword.
+     *  The high bit of a byte of (x - ONES) & ~x is set if the byte of x is zero, and
+     *  a set bit can otherwise only follow a zero byte, so a word with a match is
+     *  never missed. */
+    private boolean holdsFirstByte(long word) {
+        for (long pattern : firstBytePatterns) {
+            long x = word ^ pattern;
+            if (((x - ONES) & ~x & HIGH_BITS) != 0) return true;
+        }
+        return false;
+    }
+
+    private boolean keywordStartsAt(byte[] contents, int start) {
+
+        if (!isFirstByte(contents[start])) return false;
+
+        for (byte[] keyword : keywords) {
+            if (start + keyword.length > contents.length) continue;
+            int k = 1;
+            while (k < keyword.length && matches(contents[start + k], keyword[k])) {
+                if (contents[start + k] < 0) return true;
+                k++;
+            }
+            if (k == keyword.length) return true;
+        }
+
+        return false;
+    }
+
+    private boolean isFirstByte(byte b) {
+        for (byte firstByte : firstBytes) {
+            if (b == firstByte) return true;
+        }
+        return false;
+    }
+
+    /** Compares a byte of the file with a lower-case keyword character.  A non-ASCII
+     *  byte may begin a character folding to the keyword character, such as the Kelvin
+     *  sign to 'k', and is therefore taken to match any letter.  Since the character
+     *  may span several bytes, the rest of the keyword is then not compared. */
+    private static boolean matches(byte b, byte keywordCharacter) {
+        if (b < 0) return Character.isLetter(keywordCharacter);
+        return Character.toLowerCase((char) b) == keywordCharacter;
+    }
+
+    /** Returns true if each character of the keyword is encoded as its ASCII byte in
+     *  both upper and lower case, and no non-ASCII character folds to its first
+     *  character, so that the keyword can be found in the raw bytes of a file. */
+    private static boolean isFilterable(String keyword, Charset encoding) {
+
+        for (int i = 0; i < keyword.length(); ++i) {
+            char c = keyword.charAt(i);
+            if (c >= 0x80) return false;
+            for (char caseOfC : new char[] { Character.toLowerCase(c), Character.toUpperCase(c) }) {
+                if (caseOfC >= 0x80) return false;
+                byte[] encoded = String.valueOf(caseOfC).getBytes(encoding);
+                if (encoded.length != 1 || encoded[0] != caseOfC) return false;
+            }
+        }
+
+        char first = Character.toLowerCase(keyword.charAt(0));
+        for (char c = 0x80; c < Character.MAX_VALUE; ++c) {
+            if (Character.toLowerCase(c) == first) return false;
+        }
+
+        return true;
+    }
+}
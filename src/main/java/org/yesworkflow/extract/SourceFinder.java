@@ -0,0 +1,379 @@
+package org.yesworkflow.extract;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.yesworkflow.LanguageModel;
+import org.yesworkflow.exceptions.YWToolUsageException;
+
+/** Class for expanding the entries of the <code>extract.sources</code> setting into
+ *  the source files to extract.  Each entry may be
+ *  <ul>
+ *  <li>a directory, which is searched recursively for files with an extension
+ *      recognized by {@link LanguageModel#languageForFileName(String)},</li>
+ *  <li>a glob pattern in the syntax of {@link java.nio.file.FileSystem#getPathMatcher(String)},
+ *      e.g. <code>src/**&#47;*.py</code>, matching files of any extension, or</li>
+ *  <li>the path of a file, which is passed on as given.</li>
+ *  </ul>
+ *
+ *  <p>Files and directories matching a pattern in the ignore file are skipped.  The ignore
+ *  file holds one glob pattern per line; blank lines and lines starting with '#' are
+ *  ignored.  A pattern without a '/' is matched against the name of each file and
+ *  directory, other patterns against the path relative to the directory being searched.
+ *  A pattern ending in '/' matches directories only.  Symbolic links to directories
+ *  are not followed.</p>
+ *
+ *  <p>Directories are listed on the walker threads, if any, while the files found are
+ *  handed on in a fixed order: entries in the order they were given, and the files under
+ *  each directory in depth-first order of their sorted names.  Sources thus receive the
+ *  same IDs however many threads walk the file system.  Each source file is passed to a
+ *  {@link FileHandler} on the calling thread up to a given number of files ahead of the
+ *  file being handed to the {@link FoundHandler}, so extraction of the next files can run
+ *  while earlier ones are handed on, but the results waiting to be handed on are bounded
+ *  however far the walk has run ahead.</p>
+ */
+class SourceFinder {
+
+    /** Called on the thread running {@link SourceFinder#find} for each source file, in order,
+     *  before the results of the files preceding it have all been handed on. */
+    interface FileHandler<T> {
+        Future<T> found(String path) throws Exception;
+    }
+
+    /** Called on the thread running {@link SourceFinder#find} for each source file, in order. */
+    interface FoundHandler<T> {
+        void found(String path, Future<T> result) throws Exception;
+    }
+
+    private final ExecutorService walkers;
+    private final int filesAhead;
+    private final List<PathMatcher> ignoredNames = new ArrayList<PathMatcher>();
+    private final List<PathMatcher> ignoredPaths = new ArrayList<PathMatcher>();
+    private final List<PathMatcher> ignoredDirectoryNames = new ArrayList<PathMatcher>();
+    private final List<PathMatcher> ignoredDirectoryPaths = new ArrayList<PathMatcher>();
+
+    /** Constructs a SourceFinder passing each file to the file handler only when it is handed on.
+     * @param walkers Threads on which to list directories, or null to list them on the calling thread.
+     */
+    SourceFinder(ExecutorService walkers) {
+        this(walkers, 1);
+    }
+
+    /** Constructs a SourceFinder.
+     * @param walkers Threads on which to list directories, or null to list them on the calling thread.
+     * @param filesAhead The number of files passed to the file handler and not yet handed on, at most.
+     */
+    SourceFinder(ExecutorService walkers, int filesAhead) {
+        if (filesAhead < 1) throw new IllegalArgumentException("SourceFinder must pass at least one file ahead.");
+        this.walkers = walkers;
+        this.filesAhead = filesAhead;
+    }
+
+    /** Reads the patterns of files and directories to skip from an ignore file.
+     * @param ignoreFile Path of the ignore file.
+     * @return This SourceFinder.
+     * @throws YWToolUsageException If the ignore file cannot be read or holds an invalid pattern.
+     */
+    SourceFinder ignoreFile(String ignoreFile) throws YWToolUsageException {
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(ignoreFile));
+        } catch (IOException | InvalidPathException e) {
+            throw new YWToolUsageException("Ignore file not found: " + ignoreFile);
+        }
+
+        for (String line : lines) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) continue;
+            boolean directoriesOnly = pattern.endsWith("/");
+            if (directoriesOnly) pattern = pattern.substring(0, pattern.length() - 1);
+            boolean matchPath = pattern.contains("/");
+            if (matchPath && pattern.startsWith("/")) pattern = pattern.substring(1);
+            PathMatcher matcher;
+            try {
+                matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            } catch (IllegalArgumentException e) {
+                throw new YWToolUsageException("Invalid pattern in ignore file " + ignoreFile + ": " + line);
+            }
+            if (directoriesOnly) {
+                (matchPath ? ignoredDirectoryPaths : ignoredDirectoryNames).add(matcher);
+            } else {
+                (matchPath ? ignoredPaths : ignoredNames).add(matcher);
+            }
+        }
+
+        return this;
+    }
+
+    /** Expands source entries into the list of source files they denote, in order. */
+    List<String> findPaths(List<String> sources) throws Exception {
+        List<String> paths = new ArrayList<String>();
+        find(sources, path -> CompletableFuture.completedFuture(null), (path, result) -> paths.add(path));
+        return paths;
+    }
+
+    /** Expands source entries into source files, passing each file to fileHandler and
+     *  then to foundHandler, in order, with the result of fileHandler.
+     * @param sources The source entries: files, directories and glob patterns.
+     * @param fileHandler Handler called for each file on the calling thread, in order, ahead of foundHandler.
+     * @param foundHandler Handler called for each file on the calling thread, in order.
+     * @throws YWToolUsageException If a glob pattern is invalid or its leading directories do not exist.
+     * @throws Exception If an error occurs listing a directory or in either handler.
+     */
+    <T> void find(List<String> sources, FileHandler<T> fileHandler, FoundHandler<T> foundHandler) throws Exception {
+
+        // start walking every directory and glob before waiting for any of them
+        List<Object> roots = new ArrayList<Object>(sources.size());
+        for (String source : sources) {
+            Path directory = directoryToSearch(source);
+            if (isGlob(source)) {
+                Path base = globBase(source);
+                PathMatcher matcher = globMatcher(source);
+                if (!Files.isDirectory(base.toString().isEmpty() ? Paths.get(".") : base)) {
+                    throw new YWToolUsageException("Directory of glob pattern in extract.sources not found: " + source);
+                }
+                roots.add(walk(new Walk(base, matcher, globDepth(source, base))));
+            } else if (directory != null) {
+                roots.add(walk(new Walk(directory, null, Integer.MAX_VALUE)));
+            } else {
+                roots.add(source);
+            }
+        }
+
+        // keep at most filesAhead files passed to fileHandler and not yet handed on
+        FileCursor files = new FileCursor(roots);
+        Deque<FoundFile<T>> window = new ArrayDeque<FoundFile<T>>(filesAhead);
+        while (true) {
+            for (String path; window.size() < filesAhead && (path = files.next()) != null; ) {
+                window.add(new FoundFile<T>(path, fileHandler.found(path)));
+            }
+            FoundFile<T> file = window.poll();
+            if (file == null) break;
+            foundHandler.found(file.path, file.result);
+        }
+    }
+
+    /** Returns the directories searched for files matching the source entries that exist.
+     * @param sources The source entries: files, directories and glob patterns.
+     * @return Each directory searched, mapped to the depth of the subdirectories searched
+     *         below it, Integer.MAX_VALUE if they are searched at any depth.
+     */
+    static Map<Path,Integer> searchedDirectories(List<String> sources) {
+        Map<Path,Integer> directories = new LinkedHashMap<Path,Integer>();
+        for (String source : sources) {
+            Path directory = directoryToSearch(source);
+            if (isGlob(source)) {
+                Path base = globBase(source);
+                int depth = globDepth(source, base);
+                if (Files.isDirectory(base)) {
+                    directories.merge(base, (depth == Integer.MAX_VALUE) ? depth : depth - 1, Math::max);
+                }
+            } else if (directory != null) {
+                directories.put(directory, Integer.MAX_VALUE);
+            }
+        }
+        return directories;
+    }
+
+    private static boolean isGlob(String source) {
+        for (int i = 0; i < source.length(); ++i) {
+            switch (source.charAt(i)) {
+                case '*': case '?': case '[': case '{':
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path directoryToSearch(String source) {
+        try {
+            Path path = Paths.get(source);
+            return Files.isDirectory(path) ? path : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /** Returns the directory holding every match of a glob: the leading
+     *  segments of the pattern that contain no wildcards. */
+    private static Path globBase(String glob) {
+        int end = 0;
+        for (int i = 0; i < glob.length(); ++i) {
+            char c = glob.charAt(i);
+            if (c == '/') end = i;
+            if (c == '*' || c == '?' || c == '[' || c == '{') break;
+        }
+        return end == 0 ? (glob.startsWith("/") ? Paths.get("/") : Paths.get("")) : Paths.get(glob.substring(0, end));
+    }
+
+    /** Returns the depth below the base directory of the files a glob can match,
+     *  or Integer.MAX_VALUE if the glob can match files at any depth. */
+    private static int globDepth(String glob, Path base) {
+        if (glob.contains("**")) return Integer.MAX_VALUE;
+        String baseString = base.toString();
+        int depth = 1;
+        for (int i = baseString.isEmpty() ? 0 : baseString.length() + 1; i < glob.length(); ++i) {
+            if (glob.charAt(i) == '/') depth++;
+        }
+        return depth;
+    }
+
+    private static PathMatcher globMatcher(String glob) throws YWToolUsageException {
+        try {
+            return FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        } catch (IllegalArgumentException e) {
+            throw new YWToolUsageException("Invalid glob pattern in extract.sources: " + glob);
+        }
+    }
+
+    /** Lists a directory on a walker thread, or on the calling thread if there are none. */
+    private Future<List<Object>> walk(Walk walk) throws Exception {
+        if (walkers == null) return CompletableFuture.completedFuture(walk.call());
+        return walkers.submit(walk);
+    }
+
+    private static List<Object> await(Future<List<Object>> listing) throws Exception {
+        try {
+            return listing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while searching for source files", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private boolean isIgnored(Path path, Path relativePath, boolean isDirectory) {
+        Path name = path.getFileName();
+        if (name != null && matchesAny(ignoredNames, name)) return true;
+        if (matchesAny(ignoredPaths, relativePath)) return true;
+        if (isDirectory) {
+            if (name != null && matchesAny(ignoredDirectoryNames, name)) return true;
+            if (matchesAny(ignoredDirectoryPaths, relativePath)) return true;
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) return true;
+        }
+        return false;
+    }
+
+    /** Source file passed to the file handler, with the result of the file handler for it. */
+    private static class FoundFile<T> {
+        final String path;
+        final Future<T> result;
+        FoundFile(String path, Future<T> result) {
+            this.path = path;
+            this.result = result;
+        }
+    }
+
+    /** Position in the files found, in the order they are handed on.  Directory listings
+     *  are waited for as they are reached. */
+    private static class FileCursor {
+
+        private final Deque<Iterator<Object>> entries = new ArrayDeque<Iterator<Object>>();
+
+        FileCursor(List<Object> roots) {
+            entries.push(roots.iterator());
+        }
+
+        /** @return The path of the next file, or null if there are no more. */
+        @SuppressWarnings("unchecked")
+        String next() throws Exception {
+            while (!entries.isEmpty()) {
+                Iterator<Object> listing = entries.peek();
+                if (!listing.hasNext()) {
+                    entries.pop();
+                    continue;
+                }
+                Object entry = listing.next();
+                if (entry instanceof String) return (String) entry;
+                entries.push(await((Future<List<Object>>) entry).iterator());
+            }
+            return null;
+        }
+    }
+
+    /** Task listing one directory of a walk.  Returns the entries of the directory in
+     *  order of their names: the path of each source file, and the future listing of
+     *  each subdirectory. */
+    private class Walk implements Callable<List<Object>> {
+
+        private final Path root;
+        private final Path directory;
+        private final int depth;
+        private final PathMatcher glob;
+        private final int maxDepth;
+
+        Walk(Path root, PathMatcher glob, int maxDepth) {
+            this(root, root, 0, glob, maxDepth);
+        }
+
+        private Walk(Path root, Path directory, int depth, PathMatcher glob, int maxDepth) {
+            this.root = root;
+            this.directory = directory;
+            this.depth = depth;
+            this.glob = glob;
+            this.maxDepth = maxDepth;
+        }
+
+        @Override
+        public List<Object> call() throws Exception {
+
+            List<Path> children = new ArrayList<Path>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                    directory.toString().isEmpty() ? Paths.get(".") : directory)) {
+                for (Path child : stream) {
+                    children.add(directory.resolve(child.getFileName()));
+                }
+            }
+            Collections.sort(children);
+
+            List<Object> entries = new ArrayList<Object>(children.size());
+            for (Path child : children) {
+                Path relativePath = root.relativize(child);
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    if (depth + 1 < maxDepth && !isIgnored(child, relativePath, true)) {
+                        entries.add(walk(new Walk(root, child, depth + 1, glob, maxDepth)));
+                    }
+                } else if (Files.isRegularFile(child) && !isIgnored(child, relativePath, false) && isSource(child)) {
+                    entries.add(child.toString());
+                }
+            }
+
+            return entries;
+        }
+
+        private boolean isSource(Path file) {
+            if (glob != null) return glob.matches(file);
+            return LanguageModel.hasRecognizedExtension(file.getFileName().toString());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.yesworkflow.extract;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+
+import org.yesworkflow.db.YWStore;
+
+/** Class for retrieving the text of the source lines recorded in a YesWorkflow
+ *  store.  Lines stored with {@link SourceLineStorage#OFFSETS} are read from
+ *  the source file on demand, so the file must not have changed since it was
+ *  extracted.
+ */
+public class SourceLineFetcher {
+
+    private final YWStore ywdb;
+    private final Charset encoding;
+
+    /** Constructs a SourceLineFetcher for the given YesWorkflow store.
+     * @param ywdb The YesWorkflow store.
+     * @param encoding The character encoding the source files were extracted with.
+     */
+    public SourceLineFetcher(YWStore ywdb, Charset encoding) {
+        this.ywdb = ywdb;
+        this.encoding = encoding;
+    }
+
+    /** Returns the text of a source line.
+     * @param sourceId Unique ID of the source file.
+     * @param lineNumber Number of the line in the source file.
+     * @return The text of the line without its terminator, or null if the line was not recorded.
+     * @throws SQLException If an error occurs querying the YW store.
+     * @throws IOException If an error occurs reading the source file.
+     */
+    public String getLineText(Long sourceId, Long lineNumber) throws SQLException, IOException {
+
+        YWStore.SourceLine line = ywdb.getSourceLine(sourceId, lineNumber);
+
+        if (line == null) return null;
+        if (line.text != null) return line.text;
+        if (line.offset == null || line.path == null) return null;
+
+        return readLineText(line.path, line.offset, line.length.intValue());
+    }
+
+    private String readLineText(String path, long lineOffset, int lineLength) throws IOException {
+
+        ByteBuffer bytes = ByteBuffer.allocate(lineLength);
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, lineOffset + bytes.position()) == -1) {
+                    throw new IOException("Source file " + path + " is shorter than when it was extracted");
+                }
+            }
+        }
+        bytes.flip();
+
+        return encoding.newDecoder()
+                       .onMalformedInput(CodingErrorAction.REPLACE)
+                       .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                       .decode(bytes)
+                       .toString();
+    }
+}
@@ -0,0 +1,27 @@
+package org.yesworkflow.extract;
+
+import org.yesworkflow.exceptions.YWToolUsageException;
+
+/** How the lines of each source file are recorded in the source_line table.
+ *  NONE records no lines, OFFSETS records the byte offset and length of each
+ *  line so its text can be read back from the file on demand, and FULL records
+ *  the text of every line. */
+public enum SourceLineStorage {
+    NONE,
+    OFFSETS,
+    FULL;
+
+    public static SourceLineStorage toSourceLineStorage(Object storage) throws YWToolUsageException {
+
+        if (storage instanceof SourceLineStorage) return (SourceLineStorage)storage;
+
+        if (storage instanceof String) {
+            String storageString = ((String)storage).trim();
+            if (storageString.equalsIgnoreCase("NONE"))    return SourceLineStorage.NONE;
+            if (storageString.equalsIgnoreCase("OFFSETS")) return SourceLineStorage.OFFSETS;
+            if (storageString.equalsIgnoreCase("FULL"))    return SourceLineStorage.FULL;
+        }
+
+        throw new YWToolUsageException("Value of extract.sourcelines must be none, offsets or full: " + storage);
+    }
+}
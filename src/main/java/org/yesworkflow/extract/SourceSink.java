@@ -0,0 +1,13 @@
+package org.yesworkflow.extract;
+
+import java.sql.SQLException;
+
+/** Receiver of the source lines and comments found by a {@link CommentMatcher}.
+ *  Source lines are passed either as slices of a character array that the sink must
+ *  copy if it keeps them, or as the byte offset and length of the line in the source
+ *  file, depending on the {@link SourceLineStorage} used by the matcher. */
+interface SourceSink {
+    void sourceLine(Long lineNumber, char[] chars, int start, int end) throws SQLException;
+    void sourceLineOffset(Long lineNumber, long byteOffset, int byteLength) throws SQLException;
+    void comment(Long lineNumber, Long rankInLine, String commentText) throws SQLException;
+}
@@ -0,0 +1,418 @@
+package org.yesworkflow.extract;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/** Class for writing PROV statements in a text serialization as they are produced,
+ *  rather than collecting them in a PROV document first, so that the memory used
+ *  does not grow with the number of statements written.  Supports PROV-N and the
+ *  PROV-O mapping of the statements to RDF in Turtle, TriG and N-Triples.
+ *
+ *  <p>Each ID is declared by the first statement naming it.  Repeated entity and
+ *  activity statements for the same ID write only the labels and types not yet
+ *  written for it, as further statements about the ID; repeated relations and
+ *  statements giving an ID already declared as something else are skipped.  To
+ *  decide this the writer remembers each ID, label and type written, indexed by a
+ *  64-bit hash and compared in full where hashes are equal.</p>
+ *
+ *  <p>All IDs are local names in the single namespace given to the constructor,
+ *  escaped as by {@link ExtractProvenance#escapeForQName(String)} so that they match
+ *  the IDs in the formats written from a PROV document.  Instances are not thread-safe.</p>
+ */
+class StreamingProvWriter implements Closeable {
+
+    /** Text serializations supported, with the file extension of each. */
+    enum Syntax {
+
+        PROVN(".pn"),
+        TURTLE(".ttl"),
+        TRIG(".trig"),
+        NTRIPLES(".nt");
+
+        final String extension;
+
+        Syntax(String extension) {
+            this.extension = extension;
+        }
+
+        /** @return The syntax with the given name in any case, or null if the format is not streamed. */
+        static Syntax forFormat(String format) {
+            for (Syntax syntax : values()) {
+                if (syntax.name().equalsIgnoreCase(format)) return syntax;
+            }
+            return null;
+        }
+    }
+
+    private static final String PROV = "http://www.w3.org/ns/prov#";
+    private static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+    private static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+
+    private static final char DECLARED = 'd';
+    private static final char ENTITY = 'e';
+    private static final char ACTIVITY = 'a';
+    private static final char LABEL = 'l';
+    private static final char TYPE = 't';
+    private static final char ALTERNATE = 'o';
+
+    private final Writer out;
+    private final Syntax syntax;
+    private final String prefix;
+    private final String namespace;
+    private final FactSet written = new FactSet();
+    private final StringBuilder line = new StringBuilder();
+
+    /** Constructs a writer and writes the start of the document.
+     * @param out The writer to write the statements to.  It is closed with this instance.
+     * @param syntax The serialization to write.
+     * @param prefix The prefix of the namespace of all IDs.
+     * @param namespace The URI of the namespace of all IDs.
+     * @throws IOException If an error occurs writing.
+     */
+    StreamingProvWriter(Writer out, Syntax syntax, String prefix, String namespace) throws IOException {
+
+        this.out = out;
+        this.syntax = syntax;
+        this.prefix = prefix;
+        this.namespace = namespace;
+
+        switch (syntax) {
+            case PROVN:
+                out.write("document\n");
+                out.write("  prefix " + prefix + " <" + namespace + ">\n");
+                break;
+            case TURTLE:
+            case TRIG:
+                out.write("@prefix prov: <" + PROV + "> .\n");
+                out.write("@prefix rdfs: <" + RDFS + "> .\n");
+                out.write("@prefix xsd: <" + XSD + "> .\n");
+                out.write("@prefix " + prefix + ": <" + namespace + "> .\n\n");
+                break;
+            case NTRIPLES:
+                break;
+        }
+    }
+
+    /** Writes an entity, or the labels and types not yet written for it.
+     * @return true if the statement declared the entity.
+     */
+    boolean entity(String id, List<String> labels, List<String> types) throws IOException {
+        return element(ENTITY, id, labels, types);
+    }
+
+    /** Writes an activity, or the labels not yet written for it.
+     * @return true if the statement declared the activity.
+     */
+    boolean activity(String id, List<String> labels) throws IOException {
+        return element(ACTIVITY, id, labels, Collections.<String>emptyList());
+    }
+
+    /** @return true if an activity with the given ID has been written. */
+    boolean isActivity(String id) {
+        return written.contains(ACTIVITY, id, null);
+    }
+
+    /** Writes that an activity used an entity, unless a statement with the ID was written already. */
+    void used(String id, String activity, String entity, List<String> types) throws IOException {
+
+        if (!written.add(DECLARED, id, null)) return;
+
+        if (syntax == Syntax.PROVN) {
+            startStatement("used");
+            name(id).append("; ");
+            name(activity).append(", ");
+            name(entity).append(", -");
+            attributes(Collections.<String>emptyList(), types);
+            endStatement();
+        } else {
+            triple(activity, PROV, "used", entity);
+            triple(activity, PROV, "qualifiedUsage", id);
+            typeTriple(id, "Usage");
+            triple(id, PROV, "entity", entity);
+            for (String type : types) stringTriple(id, PROV, "type", type, true);
+        }
+    }
+
+    /** Writes that an entity was generated by an activity, unless a statement with the ID was written already. */
+    void wasGeneratedBy(String id, String entity, String activity) throws IOException {
+
+        if (!written.add(DECLARED, id, null)) return;
+
+        if (syntax == Syntax.PROVN) {
+            startStatement("wasGeneratedBy");
+            name(id).append("; ");
+            name(entity).append(", ");
+            name(activity).append(", -");
+            endStatement();
+        } else {
+            triple(entity, PROV, "wasGeneratedBy", activity);
+            triple(entity, PROV, "qualifiedGeneration", id);
+            typeTriple(id, "Generation");
+            triple(id, PROV, "activity", activity);
+        }
+    }
+
+    /** Writes that two entities are alternates, unless the same statement was written already. */
+    void alternateOf(String alternate1, String alternate2) throws IOException {
+
+        if (!written.add(ALTERNATE, alternate1, alternate2)) return;
+
+        if (syntax == Syntax.PROVN) {
+            startStatement("alternateOf");
+            name(alternate1).append(", ");
+            name(alternate2);
+            endStatement();
+        } else {
+            triple(alternate1, PROV, "alternateOf", alternate2);
+        }
+    }
+
+    /** Writes the end of the document and closes the underlying writer. */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (syntax == Syntax.PROVN) out.write("endDocument\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private boolean element(char kind, String id, List<String> labels, List<String> types) throws IOException {
+
+        boolean declaring = written.add(DECLARED, id, null);
+        if (declaring) {
+            written.add(kind, id, null);
+        } else if (!written.contains(kind, id, null)) {
+            return false;
+        }
+
+        List<String> newLabels = unwritten(LABEL, id, labels);
+        List<String> newTypes = unwritten(TYPE, id, types);
+        if (!declaring && newLabels.isEmpty() && newTypes.isEmpty()) return false;
+
+        String element = (kind == ENTITY) ? "entity" : "activity";
+        if (syntax == Syntax.PROVN) {
+            startStatement(element);
+            name(id);
+            if (kind == ACTIVITY && !newLabels.isEmpty()) line.append(", -, -");
+            attributes(newLabels, newTypes);
+            endStatement();
+        } else {
+            if (declaring) typeTriple(id, (kind == ENTITY) ? "Entity" : "Activity");
+            for (String label : newLabels) stringTriple(id, RDFS, "label", label, false);
+            for (String type : newTypes) stringTriple(id, PROV, "type", type, true);
+        }
+
+        return declaring;
+    }
+
+    /** Returns the values not yet written for the ID and records them as written. */
+    private List<String> unwritten(char attribute, String id, List<String> values) {
+        List<String> unwritten = Collections.emptyList();
+        for (String value : values) {
+            if (value != null && written.add(attribute, id, value)) {
+                if (unwritten.isEmpty()) unwritten = new ArrayList<String>(values.size());
+                unwritten.add(value);
+            }
+        }
+        return unwritten;
+    }
+
+    private void attributes(List<String> labels, List<String> types) {
+        if (labels.isEmpty() && types.isEmpty()) return;
+        line.append(", [");
+        String separator = "";
+        for (String label : labels) {
+            line.append(separator).append("prov:label=");
+            quoted(label);
+            separator = ", ";
+        }
+        for (String type : types) {
+            line.append(separator).append("prov:type=");
+            quoted(type);
+            line.append(" %% xsd:string");
+            separator = ", ";
+        }
+        line.append(']');
+    }
+
+    private void startStatement(String statement) {
+        line.setLength(0);
+        line.append("  ").append(statement).append('(');
+    }
+
+    private void endStatement() throws IOException {
+        line.append(")\n");
+        out.append(line);
+    }
+
+    private void typeTriple(String subject, String provClass) throws IOException {
+        line.setLength(0);
+        name(subject).append(' ');
+        if (syntax == Syntax.NTRIPLES) line.append('<').append(RDF).append("type> ");
+        else line.append("a ");
+        term(PROV, provClass);
+        out.append(line.append(" .\n"));
+    }
+
+    private void triple(String subject, String predicateNamespace, String predicate, String object) throws IOException {
+        line.setLength(0);
+        name(subject).append(' ');
+        term(predicateNamespace, predicate);
+        line.append(' ');
+        name(object);
+        out.append(line.append(" .\n"));
+    }
+
+    private void stringTriple(String subject, String predicateNamespace, String predicate,
+                              String value, boolean typed) throws IOException {
+        line.setLength(0);
+        name(subject).append(' ');
+        term(predicateNamespace, predicate);
+        line.append(' ');
+        quoted(value);
+        if (typed) {
+            line.append("^^");
+            term(XSD, "string");
+        }
+        out.append(line.append(" .\n"));
+    }
+
+    /** Appends a term from one of the standard vocabularies. */
+    private void term(String vocabulary, String localName) {
+        if (syntax == Syntax.NTRIPLES) {
+            line.append('<').append(vocabulary).append(localName).append('>');
+        } else {
+            String vocabularyPrefix = vocabulary.equals(PROV) ? "prov" : vocabulary.equals(RDFS) ? "rdfs" : "xsd";
+            line.append(vocabularyPrefix).append(':').append(localName);
+        }
+    }
+
+    /** Appends the qualified name or IRI for a local name in the namespace of the IDs. */
+    private StringBuilder name(String localName) {
+        if (syntax == Syntax.NTRIPLES) {
+            line.append('<').append(namespace).append(ExtractProvenance.escapeForQName(localName)).append('>');
+        } else {
+            line.append(prefix).append(':').append(ExtractProvenance.escapeForQName(localName));
+        }
+        return line;
+    }
+
+    /** Appends a string literal, escaped as in Turtle, N-Triples and PROV-N alike. */
+    private void quoted(String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':  line.append("\\\""); break;
+                case '\\': line.append("\\\\"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                case '\t': line.append("\\t"); break;
+                default:   line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /** Returns the 64-bit FNV-1a hash of a kind of fact about an ID and an optional value. */
+    private static long hash(char kind, String id, String value) {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ kind) * 0x100000001b3L;
+        for (int i = 0; i < id.length(); ++i) {
+            hash = (hash ^ id.charAt(i)) * 0x100000001b3L;
+        }
+        if (value != null) {
+            hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+            for (int i = 0; i < value.length(); ++i) {
+                hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /** Set of facts about IDs, each a kind, an ID and an optional value, in open-addressing
+     *  arrays indexed by the hash of the fact.  Facts with equal hashes are told apart by
+     *  comparing their kinds, IDs and values.
+     */
+    static final class FactSet {
+
+        private long[] hashes = new long[64];
+        private char[] kinds = new char[64];
+        private String[] ids = new String[64];
+        private String[] values = new String[64];
+        private int size;
+
+        boolean add(char kind, String id, String value) {
+            return add(hash(kind, id, value), kind, id, value);
+        }
+
+        boolean contains(char kind, String id, String value) {
+            return contains(hash(kind, id, value), kind, id, value);
+        }
+
+        /** Adds a fact under a hash computed by the caller. */
+        boolean add(long hash, char kind, String id, String value) {
+            if (2 * (size + 1) > ids.length) grow();
+            int slot = find(hash, kind, id, value);
+            if (ids[slot] != null) return false;
+            hashes[slot] = hash;
+            kinds[slot] = kind;
+            ids[slot] = id;
+            values[slot] = value;
+            ++size;
+            return true;
+        }
+
+        boolean contains(long hash, char kind, String id, String value) {
+            return ids[find(hash, kind, id, value)] != null;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /** @return The slot holding the fact, or the empty slot where it belongs. */
+        private int find(long hash, char kind, String id, String value) {
+            int mask = ids.length - 1;
+            int slot = spread(hash) & mask;
+            while (ids[slot] != null) {
+                if (hashes[slot] == hash && kinds[slot] == kind && ids[slot].equals(id) && Objects.equals(values[slot], value)) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldHashes = hashes;
+            char[] oldKinds = kinds;
+            String[] oldIds = ids;
+            String[] oldValues = values;
+            hashes = new long[oldIds.length * 2];
+            kinds = new char[oldIds.length * 2];
+            ids = new String[oldIds.length * 2];
+            values = new String[oldIds.length * 2];
+            for (int i = 0; i < oldIds.length; ++i) {
+                if (oldIds[i] == null) continue;
+                int slot = find(oldHashes[i], oldKinds[i], oldIds[i], oldValues[i]);
+                hashes[slot] = oldHashes[i];
+                kinds[slot] = oldKinds[i];
+                ids[slot] = oldIds[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int spread(long value) {
+            long mixed = value * 0x9E3779B97F4A7C15L;
+            return (int) (mixed >>> 32);
+        }
+    }
+}
@@ -2,15 +2,16 @@ package org.yesworkflow.graph;
 
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.yesworkflow.config.YWConfiguration;
 import org.yesworkflow.data.UriTemplate;
 import org.yesworkflow.exceptions.YWToolUsageException;
 import org.yesworkflow.model.Channel;
 import org.yesworkflow.model.Model;
+import org.yesworkflow.model.ModelIndex;
 import org.yesworkflow.model.Port;
 import org.yesworkflow.model.Program;
 
@@ -49,6 +50,7 @@ public class DotGrapher implements Grapher  {
     public static Integer DEFAULT_PORT_PERIPHERIES = 1;
     
     private Program topWorkflow = null;
+    private ModelIndex index = null;
     private Program workflow = null;
     private GraphView graphView = DEFAULT_GRAPH_VIEW;    
     private CommentVisibility commentView = DEFAULT_COMMENT_VISIBILITY;
@@ -87,7 +89,7 @@ public class DotGrapher implements Grapher  {
     private String graphText = null;
     private String outputDotFile = null;
     private PrintStream stdoutStream = null;
-    private List<String> channelBindings = new LinkedList<String>();        
+    private Set<String> channelBindings = new HashSet<String>();
     private DotBuilder dot = null;
     
     @SuppressWarnings("unused")
@@ -103,6 +105,7 @@ public class DotGrapher implements Grapher  {
         if (model == null) throw new IllegalArgumentException("Null model passed to DotGrapher.");
         if (model.workflow == null) throw new IllegalArgumentException("Model with null workflow passed to DotGrapher.");
         this.topWorkflow = model.workflow;
+        this.index = model.index();
         return this;
     }
 
@@ -110,6 +113,7 @@ public class DotGrapher implements Grapher  {
     public DotGrapher workflow(Program workflow) {
         if (workflow == null) throw new IllegalArgumentException("Null workflow passed to DotGrapher.");
         this.topWorkflow = workflow;
+        this.index = null;
         return this;
     }
     
@@ -175,7 +179,8 @@ public class DotGrapher implements Grapher  {
     public DotGrapher graph() throws Exception {
         
         if (topWorkflow == null) throw new YWToolUsageException("Workflow not identified to DotGrapher.");
-        workflow = (subworkflowName == null) ? topWorkflow : topWorkflow.getSubprogram(subworkflowName);
+        if (index == null) index = new ModelIndex(topWorkflow);
+        workflow = (subworkflowName == null) ? topWorkflow : index.program(subworkflowName);
         if (workflow == null) throw new YWToolUsageException("Subworkflow named " + subworkflowName + " not found.");
         
         switch(graphView) {        
@@ -298,9 +303,9 @@ public class DotGrapher implements Grapher  {
             if (! (p.isWorkflow())) {
                 drawProgramNode(p.beginAnnotation.value(), p.beginAnnotation.description());;
                 if (paramVisibility != ParamVisibility.HIDE) {
-                    channelBindings.addAll(p.outerBindings());
+                    channelBindings.addAll(index.outerBindings(p));
                 } else {
-                    channelBindings.addAll(p.outerDataBindings());
+                    channelBindings.addAll(index.outerDataBindings(p));
                 }
             }
         }
@@ -324,9 +329,9 @@ public class DotGrapher implements Grapher  {
             if (p.isWorkflow()) {
                 drawProgramNode(p.beginAnnotation.value(), p.beginAnnotation.description());
                 if (paramVisibility == ParamVisibility.SHOW) {
-                    channelBindings.addAll(p.outerBindings());
+                    channelBindings.addAll(index.outerBindings(p));
                 } else {
-                    channelBindings.addAll(p.outerDataBindings());
+                    channelBindings.addAll(index.outerDataBindings(p));
                 }
             }
         }
@@ -365,7 +370,7 @@ public class DotGrapher implements Grapher  {
                 }
                 
                 dot.comment("Nodes representing parameter and non-parameter data channels in workflow");
-                for (Channel c : workflow.innerChannels()) drawChannelNode(c);
+                for (Channel c : index.innerChannels(workflow)) drawChannelNode(c);
                 
                 break;
                 
@@ -377,7 +382,7 @@ public class DotGrapher implements Grapher  {
                 }
                 
                 dot.comment("Nodes for non-parameter data channels in workflow");
-                for (Channel c : workflow.innerDataChannels()) drawChannelNode(c);
+                for (Channel c : index.innerDataChannels(workflow)) drawChannelNode(c);
                 
                 if (elementStyleView == ElementStyleView.ON) {
                     dot.comment("Style for nodes representing parameter channels in workflow")
@@ -386,7 +391,7 @@ public class DotGrapher implements Grapher  {
                 }
                 
                 dot.comment("Nodes representing parameter channels in workflow");
-                for (Channel c : workflow.innerParamChannels()) drawChannelNode(c);
+                for (Channel c : index.innerParamChannels(workflow)) drawChannelNode(c);
 
                 break;
                 
@@ -398,7 +403,7 @@ public class DotGrapher implements Grapher  {
                 }
                 
                 dot.comment("Nodes representing non-parameter data channels in workflow");
-                for (Channel c : workflow.innerDataChannels()) drawChannelNode(c);
+                for (Channel c : index.innerDataChannels(workflow)) drawChannelNode(c);
                 
                 break;
         }
@@ -511,7 +516,7 @@ public class DotGrapher implements Grapher  {
         dot.comment("Edges from channels to output ports");
         for (Port p : workflow.outPorts) {
             String binding = p.flowAnnotation.binding();
-            if (workflow.hasChannelForBinding(binding)) {
+            if (index.hasChannelForBinding(workflow, binding)) {
                 dot.edge(binding, binding + "_output_port");
             }
         }
@@ -584,8 +589,9 @@ public class DotGrapher implements Grapher  {
             // skip this channel if it's a parameter and parameters are hidden
             if (c.isParam && paramVisibility == ParamVisibility.HIDE) continue;
             
-            // draw edge from input port to sink program if source is not a program
-            if (c.sourceProgram == null) {
+            // draw edge from input port to sink program if source is a workflow input port,
+            // unless the sink is a nested function, which is not drawn in this view
+            if (c.sinkProgram != null && isPortOf(c.sourcePort, workflow.inPorts)) {
                 if (portLayout != PortLayout.HIDE) {
                     dot.edge(c.sinkPort.flowAnnotation.binding() + "_input_port",
                              c.sinkProgram.beginAnnotation.value(),
@@ -612,8 +618,9 @@ public class DotGrapher implements Grapher  {
             // skip this channel if it's a parameter and parameters are hidden
             if (c.isParam && paramVisibility == ParamVisibility.HIDE) continue;
 
-            // draw edge from source program to output port if sink is not a program
-            if (c.sinkProgram == null) {
+            // draw edge from source program to output port if sink is a workflow output port,
+            // unless the source is a nested function, which is not drawn in this view
+            if (c.sourceProgram != null && isPortOf(c.sinkPort, workflow.outPorts)) {
                 if (portLayout != PortLayout.HIDE) {
                     dot.edge(c.sourceProgram.beginAnnotation.value(),
                          c.sourcePort.flowAnnotation.binding() + "_output_port",
@@ -623,6 +630,13 @@ public class DotGrapher implements Grapher  {
         }
     }
     
+    private static boolean isPortOf(Port port, Port[] ports) {
+        for (Port p : ports) {
+            if (p == port) return true;
+        }
+        return false;
+    }
+
     private void drawUnlabeledEdgesBetweenProgramsAndChannels() {
         
         if (workflow.channels.length == 0) return;
@@ -0,0 +1,150 @@
+package org.yesworkflow.lineage;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import org.yesworkflow.config.YWConfiguration;
+import org.yesworkflow.exceptions.YWToolUsageException;
+import org.yesworkflow.model.Model;
+
+/** Class answering the lineage query selected by the <code>lineage.query</code>
+ *  setting with a {@link LineageGraph} compiled from the model.  The qualified names
+ *  of the program blocks and data found are written one per line, those upstream or
+ *  downstream of the node named by <code>lineage.node</code> in the order of the
+ *  graph's nodes, and those on a path to the node named by <code>lineage.target</code>
+ *  in the order they are passed.
+ */
+public class DefaultLineageTracer implements LineageTracer {
+
+    public static LineageQuery DEFAULT_LINEAGE_QUERY = LineageQuery.UPSTREAM;
+
+    private PrintStream stdoutStream = null;
+    private PrintStream stderrStream = null;
+    private Model model = null;
+    private LineageGraph graph = null;
+    private LineageQuery query = DEFAULT_LINEAGE_QUERY;
+    private String nodeName = null;
+    private String targetName = null;
+    private String outputFile = null;
+    private List<String> lineage = null;
+
+    public DefaultLineageTracer(PrintStream stdoutStream, PrintStream stderrStream) {
+        this.stdoutStream = stdoutStream;
+        this.stderrStream = stderrStream;
+    }
+
+    @Override
+    public DefaultLineageTracer model(Model model) {
+        if (model == null) throw new IllegalArgumentException("Null model passed to DefaultLineageTracer.");
+        this.model = model;
+        this.graph = null;
+        this.lineage = null;
+        return this;
+    }
+
+    @Override
+    public DefaultLineageTracer configure(Map<String,Object> config) throws Exception {
+        if (config != null) {
+            for (Map.Entry<String, Object> entry : config.entrySet()) {
+                configure(entry.getKey(), entry.getValue());
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public DefaultLineageTracer configure(String key, Object value) throws Exception {
+        if (key.equalsIgnoreCase("query")) {
+            query = LineageQuery.toLineageQuery(value);
+        } else if (key.equalsIgnoreCase("node")) {
+            nodeName = (String)value;
+        } else if (key.equalsIgnoreCase("target")) {
+            targetName = (String)value;
+        } else if (key.equalsIgnoreCase("file")) {
+            outputFile = (String)value;
+        }
+        lineage = null;
+        return this;
+    }
+
+    /** @return The lineage graph of the model, compiled when first needed. */
+    public LineageGraph getGraph() {
+        if (model == null) throw new IllegalStateException("Model not identified to DefaultLineageTracer.");
+        if (graph == null) {
+            graph = LineageGraph.compile(model);
+        }
+        return graph;
+    }
+
+    @Override
+    public DefaultLineageTracer trace() throws Exception {
+        List<String> names = getLineage();
+        if (query == LineageQuery.PATH && names.isEmpty()) {
+            stderrStream.println("No path from " + nodeName + " to " + targetName + ".");
+        }
+        writeLinesToFileOrStdout(outputFile, names);
+        return this;
+    }
+
+    @Override
+    public List<String> getLineage() throws Exception {
+
+        if (lineage != null) return lineage;
+
+        if (model == null) throw new YWToolUsageException("Model not identified to DefaultLineageTracer.");
+        int node = lookUpNode("lineage.node", nodeName);
+
+        lineage = new ArrayList<String>();
+        switch(query) {
+            case UPSTREAM:
+                addNames(getGraph().upstream(node));
+                break;
+            case DOWNSTREAM:
+                addNames(getGraph().downstream(node));
+                break;
+            case PATH:
+                int[] path = getGraph().shortestPath(node, lookUpNode("lineage.target", targetName));
+                if (path != null) {
+                    for (int pathNode : path) {
+                        lineage.add(graph.name(pathNode));
+                    }
+                }
+                break;
+        }
+        return lineage;
+    }
+
+    private int lookUpNode(String setting, String name) throws YWToolUsageException {
+        int node = (name == null) ? -1 : getGraph().node(name.trim());
+        if (node == -1) {
+            throw new YWToolUsageException("Value of " + setting +
+                                           " must be the qualified name of a program block or data: " + name);
+        }
+        if (graph.isAmbiguous(name.trim())) {
+            throw new YWToolUsageException("Value of " + setting +
+                                           " must name only one program block or data: " + name);
+        }
+        return node;
+    }
+
+    private void addNames(BitSet nodes) {
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            lineage.add(graph.name(node));
+        }
+    }
+
+    private void writeLinesToFileOrStdout(String path, List<String> lines) throws IOException {
+        PrintStream stream = (path == null || path.equals(YWConfiguration.EMPTY_VALUE) || path.equals("-")) ?
+                             this.stdoutStream : new PrintStream(path);
+        for (String line : lines) {
+            stream.println(line);
+        }
+        if (stream != this.stdoutStream) {
+            stream.close();
+        }
+    }
+}
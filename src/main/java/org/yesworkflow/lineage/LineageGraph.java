@@ -0,0 +1,441 @@
+package org.yesworkflow.lineage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.yesworkflow.model.Channel;
+import org.yesworkflow.model.Data;
+import org.yesworkflow.model.Function;
+import org.yesworkflow.model.Model;
+import org.yesworkflow.model.Port;
+import org.yesworkflow.model.Program;
+
+/** Class answering prospective lineage questions about a workflow model without
+ *  leaving the JVM.  The program blocks and data of a {@link Model} are compiled
+ *  once into numbered nodes, and the flow of data between them into edges stored
+ *  as int arrays in compressed sparse row form, once in each direction.  Queries
+ *  then walk these arrays breadth first and take time proportional to the part of
+ *  the graph they reach.  The queues and marks of the searches are kept per thread
+ *  and reused across queries, so that a query neither allocates nor clears arrays
+ *  the size of the graph, and closures are returned as {@link BitSet}s.
+ *
+ *  <p>Data flow into a program block through each of its in ports and out of it
+ *  through each of its out and return ports.  The data on either side of a channel
+ *  crossing the boundary of a workflow belong to different scopes, and an edge
+ *  leads from the data on the source port to the data on the sink port.  Both a
+ *  workflow and the program blocks nested in it thus lie on the paths between
+ *  the data flowing into and out of the workflow.</p>
+ *
+ *  <p>Nodes are identified by qualified names: program blocks by their names,
+ *  data in the scope of a program block by the name of the block followed by the
+ *  name of the data in brackets, and data outside any program block by their
+ *  names.  Where nodes share a name, as a workflow and data of the same name outside
+ *  it do, {@link #node(String)} finds the first of them and {@link #isAmbiguous(String)}
+ *  reports the clash.  A compiled graph is immutable and may be queried from several
+ *  threads.</p>
+ */
+public class LineageGraph {
+
+    private final String[] names;
+    private final boolean[] isProgram;
+    private final Map<String,Integer> nodeForName;
+    private final Set<String> ambiguousNames;
+    private final int[] downstreamOffsets;
+    private final int[] downstreamNodes;
+    private final int[] upstreamOffsets;
+    private final int[] upstreamNodes;
+    private final ThreadLocal<Search> searches;
+
+    private LineageGraph(String[] names, boolean[] isProgram, Map<String,Integer> nodeForName,
+                         Set<String> ambiguousNames, int[] edgeSources, int[] edgeTargets, int edgeCount) {
+        this.names = names;
+        this.isProgram = isProgram;
+        this.nodeForName = nodeForName;
+        this.ambiguousNames = ambiguousNames;
+        this.downstreamOffsets = new int[names.length + 1];
+        this.downstreamNodes = new int[edgeCount];
+        this.upstreamOffsets = new int[names.length + 1];
+        this.upstreamNodes = new int[edgeCount];
+        fillRows(edgeSources, edgeTargets, edgeCount, downstreamOffsets, downstreamNodes);
+        fillRows(edgeTargets, edgeSources, edgeCount, upstreamOffsets, upstreamNodes);
+        this.searches = ThreadLocal.withInitial(() -> new Search(names.length));
+    }
+
+    /** Compiles the program blocks, data, ports and channels of a model into a lineage graph.
+     * @param model The model to compile.
+     * @return The lineage graph of the model.
+     */
+    public static LineageGraph compile(Model model) {
+        if (model == null) throw new IllegalArgumentException("Null model passed to LineageGraph.");
+        return new Compiler().compile(model);
+    }
+
+    /** @return The number of program blocks and data in the graph. */
+    public int nodeCount() {
+        return names.length;
+    }
+
+    /** @return The number of data flows between the nodes of the graph. */
+    public int edgeCount() {
+        return downstreamNodes.length;
+    }
+
+    /** Looks up the node for a program block or data.
+     * @param qualifiedName The qualified name of the program block or data.
+     * @return The node, the first of them if several have the name, or -1 if the graph
+     *         has no node with the name.
+     */
+    public int node(String qualifiedName) {
+        Integer node = nodeForName.get(qualifiedName);
+        return (node == null) ? -1 : node;
+    }
+
+    /** @return True if more than one node has the given qualified name. */
+    public boolean isAmbiguous(String qualifiedName) {
+        return ambiguousNames.contains(qualifiedName);
+    }
+
+    public String name(int node) {
+        return names[node];
+    }
+
+    public boolean isProgram(int node) {
+        return isProgram[node];
+    }
+
+    /** Finds the nodes a node can affect.
+     * @param node The node data flow from.
+     * @return The nodes reachable from the node along one or more edges.
+     */
+    public BitSet downstream(int node) {
+        return closure(node, downstreamOffsets, downstreamNodes);
+    }
+
+    /** Finds the nodes that can affect a node.
+     * @param node The node data flow to.
+     * @return The nodes from which the node is reachable along one or more edges.
+     */
+    public BitSet upstream(int node) {
+        return closure(node, upstreamOffsets, upstreamNodes);
+    }
+
+    /** Determines whether one node can affect another.
+     * @param source The node data flow from.
+     * @param target The node data flow to.
+     * @return True if the target is reachable from the source along one or more edges.
+     */
+    public boolean reaches(int source, int target) {
+        return shortestPath(source, target) != null;
+    }
+
+    /** Finds a path with the fewest edges between two nodes.  The path is searched for
+     *  from both ends at once, downstream from the source and upstream from the target,
+     *  each time extending the search whose last level was smaller.
+     * @param source The node the path starts at.
+     * @param target The node the path ends at.
+     * @return The nodes on the path from the source to the target, both included, or
+     *         null if the target is not reachable from the source along one or more edges.
+     */
+    public int[] shortestPath(int source, int target) {
+
+        checkNode(source);
+        checkNode(target);
+
+        Search search = searches.get().begin();
+        if (source == target) return shortestCycle(search, source);
+
+        Frontier forward = search.forward.start(source, search.generation);
+        Frontier backward = search.backward.start(target, search.generation);
+        int shortestLength = Integer.MAX_VALUE;
+        int meetingNode = -1;
+
+        while (!forward.isExhausted() && !backward.isExhausted()) {
+
+            boolean isForward = forward.levelSize() <= backward.levelSize();
+            Frontier frontier = isForward ? forward : backward;
+            Frontier other = isForward ? backward : forward;
+            int[] offsets = isForward ? downstreamOffsets : upstreamOffsets;
+            int[] nodes = isForward ? downstreamNodes : upstreamNodes;
+
+            for (int levelEnd = frontier.tail; frontier.head < levelEnd; ) {
+                int node = frontier.queue[frontier.head++];
+                for (int i = offsets[node], end = offsets[node + 1]; i < end; ++i) {
+                    int next = nodes[i];
+                    if (frontier.reached(next, search.generation)) continue;
+                    frontier.reach(next, node, search.generation);
+                    if (other.reached(next, search.generation)) {
+                        int length = frontier.distance[next] + other.distance[next];
+                        if (length < shortestLength) {
+                            shortestLength = length;
+                            meetingNode = next;
+                        }
+                    }
+                }
+            }
+            frontier.depth++;
+
+            // paths not yet found are longer than the levels searched from both ends
+            if (shortestLength <= forward.depth + backward.depth + 1) break;
+        }
+
+        if (meetingNode == -1) return null;
+
+        int[] path = new int[shortestLength + 1];
+        int node = meetingNode;
+        for (int i = forward.distance[meetingNode]; i >= 0; --i) {
+            path[i] = node;
+            node = forward.link[node];
+        }
+        node = meetingNode;
+        for (int i = forward.distance[meetingNode]; i < path.length; ++i) {
+            path[i] = node;
+            node = backward.link[node];
+        }
+        return path;
+    }
+
+    /** Searches downstream from a node for the shortest path leading back to it. */
+    private int[] shortestCycle(Search search, int node) {
+
+        Frontier forward = search.forward.start(node, search.generation);
+        // the start is left unreached so that the search can arrive at it again
+        forward.mark[node] = 0;
+
+        while (!forward.isExhausted()) {
+            int current = forward.queue[forward.head++];
+            for (int i = downstreamOffsets[current], end = downstreamOffsets[current + 1]; i < end; ++i) {
+                int next = downstreamNodes[i];
+                if (next == node) {
+                    int length = forward.distance[current] + 1;
+                    int[] path = new int[length + 1];
+                    path[length] = node;
+                    for (int j = length - 1, pathNode = current; j > 0; --j) {
+                        path[j] = pathNode;
+                        pathNode = forward.link[pathNode];
+                    }
+                    path[0] = node;
+                    return path;
+                }
+                if (forward.reached(next, search.generation)) continue;
+                forward.reach(next, current, search.generation);
+            }
+        }
+        return null;
+    }
+
+    private BitSet closure(int node, int[] offsets, int[] nodes) {
+
+        checkNode(node);
+
+        Search search = searches.get().begin();
+        Frontier frontier = search.forward.start(node, search.generation);
+        // the start is left unreached so that it is in the closure only if on a cycle
+        frontier.mark[node] = 0;
+        BitSet closure = new BitSet();
+
+        while (!frontier.isExhausted()) {
+            int current = frontier.queue[frontier.head++];
+            for (int i = offsets[current], end = offsets[current + 1]; i < end; ++i) {
+                int next = nodes[i];
+                if (frontier.reached(next, search.generation)) continue;
+                frontier.reach(next, current, search.generation);
+                closure.set(next);
+            }
+        }
+        return closure;
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= names.length) {
+            throw new IllegalArgumentException("No node " + node + " in lineage graph with " + names.length + " nodes.");
+        }
+    }
+
+    private static void fillRows(int[] from, int[] to, int edgeCount, int[] offsets, int[] nodes) {
+        for (int i = 0; i < edgeCount; ++i) {
+            offsets[from[i] + 1]++;
+        }
+        for (int node = 0; node < offsets.length - 1; ++node) {
+            offsets[node + 1] += offsets[node];
+        }
+        int[] next = new int[offsets.length - 1];
+        System.arraycopy(offsets, 0, next, 0, next.length);
+        for (int i = 0; i < edgeCount; ++i) {
+            nodes[next[from[i]]++] = to[i];
+        }
+    }
+
+    /** Arrays used by the searches of one thread, allocated once at the size of the graph.
+     *  A node counts as reached in a search only if it was marked with the generation of
+     *  that search, so the arrays need not be cleared between searches. */
+    private static class Search {
+
+        final Frontier forward;
+        final Frontier backward;
+        int generation = 0;
+
+        Search(int nodeCount) {
+            forward = new Frontier(nodeCount);
+            backward = new Frontier(nodeCount);
+        }
+
+        Search begin() {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(forward.mark, 0);
+                Arrays.fill(backward.mark, 0);
+                generation = 1;
+            }
+            return this;
+        }
+    }
+
+    /** Queue of a breadth-first search from one end of a path, with the distance of each
+     *  node reached from that end and the node it was reached from. */
+    private static class Frontier {
+
+        final int[] queue;
+        final int[] mark;
+        final int[] distance;
+        final int[] link;
+        int head;
+        int tail;
+        int depth;
+
+        Frontier(int nodeCount) {
+            queue = new int[nodeCount + 1];
+            mark = new int[nodeCount];
+            distance = new int[nodeCount];
+            link = new int[nodeCount];
+        }
+
+        Frontier start(int node, int generation) {
+            head = 0;
+            tail = 0;
+            depth = 0;
+            queue[tail++] = node;
+            mark[node] = generation;
+            distance[node] = 0;
+            link[node] = -1;
+            return this;
+        }
+
+        boolean isExhausted() {
+            return head == tail;
+        }
+
+        int levelSize() {
+            return tail - head;
+        }
+
+        boolean reached(int node, int generation) {
+            return mark[node] == generation;
+        }
+
+        void reach(int node, int from, int generation) {
+            mark[node] = generation;
+            distance[node] = distance[from] + 1;
+            link[node] = from;
+            queue[tail++] = node;
+        }
+    }
+
+    /** Numbers the program blocks and data of a model and collects the edges between them. */
+    private static class Compiler {
+
+        private final List<String> names = new ArrayList<String>();
+        private final List<Boolean> programFlags = new ArrayList<Boolean>();
+        private final Map<String,Integer> nodeForName = new HashMap<String,Integer>();
+        private final Set<String> ambiguousNames = new HashSet<String>();
+        private final Map<Object,Integer> nodeForElement = new IdentityHashMap<Object,Integer>();
+        private final List<Program> programs = new ArrayList<Program>();
+        private int[] edgeSources = new int[16];
+        private int[] edgeTargets = new int[16];
+        private int edgeCount = 0;
+
+        LineageGraph compile(Model model) {
+
+            for (Data data : model.data) {
+                addNode(data, data.name, false);
+            }
+            addProgramNodes(model.workflow);
+            for (Function function : model.functions) {
+                addProgramNodes(function);
+            }
+
+            for (Program program : programs) {
+                int programNode = nodeForElement.get(program);
+                for (Port port : program.inPorts) {
+                    addEdge(dataNode(port.data), programNode);
+                }
+                for (Port port : program.outPorts) {
+                    addEdge(programNode, dataNode(port.data));
+                }
+                if (program instanceof Function) {
+                    for (Port port : ((Function)program).returnPorts) {
+                        addEdge(programNode, dataNode(port.data));
+                    }
+                }
+                for (Channel channel : program.channels) {
+                    int sourceNode = dataNode(channel.sourcePort.data);
+                    int sinkNode = dataNode(channel.sinkPort.data);
+                    if (sourceNode != sinkNode) addEdge(sourceNode, sinkNode);
+                }
+            }
+
+            boolean[] isProgram = new boolean[programFlags.size()];
+            for (int node = 0; node < isProgram.length; ++node) {
+                isProgram[node] = programFlags.get(node);
+            }
+
+            return new LineageGraph(names.toArray(new String[names.size()]), isProgram, nodeForName,
+                                    ambiguousNames, edgeSources, edgeTargets, edgeCount);
+        }
+
+        private void addProgramNodes(Program program) {
+            programs.add(program);
+            addNode(program, program.name, true);
+            for (Data data : program.data) {
+                addNode(data, program.name + "[" + data.name + "]", false);
+            }
+            for (Program child : program.programs) {
+                addProgramNodes(child);
+            }
+            for (Program function : program.functions) {
+                addProgramNodes(function);
+            }
+        }
+
+        private int addNode(Object element, String name, boolean isProgram) {
+            Integer node = nodeForElement.get(element);
+            if (node != null) return node;
+            node = names.size();
+            names.add(name);
+            programFlags.add(isProgram);
+            nodeForElement.put(element, node);
+            if (nodeForName.putIfAbsent(name, node) != null) ambiguousNames.add(name);
+            return node;
+        }
+
+        /** Data not in the scope of any program block or the model are named by themselves. */
+        private int dataNode(Data data) {
+            return addNode(data, data.name, false);
+        }
+
+        private void addEdge(int source, int target) {
+            if (edgeCount == edgeSources.length) {
+                edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+                edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+            }
+            edgeSources[edgeCount] = source;
+            edgeTargets[edgeCount] = target;
+            edgeCount++;
+        }
+    }
+}
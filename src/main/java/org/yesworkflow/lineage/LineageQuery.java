@@ -0,0 +1,22 @@
+package org.yesworkflow.lineage;
+
+public enum LineageQuery {
+
+    UPSTREAM,
+    DOWNSTREAM,
+    PATH;
+
+    public static LineageQuery toLineageQuery(Object lq) throws Exception {
+
+        if (lq instanceof LineageQuery) return (LineageQuery)lq;
+
+        if (lq instanceof String) {
+            String lqstring = (String)lq;
+            if (lqstring.equalsIgnoreCase("upstream")) return LineageQuery.UPSTREAM;
+            if (lqstring.equalsIgnoreCase("downstream")) return LineageQuery.DOWNSTREAM;
+            if (lqstring.equalsIgnoreCase("path")) return LineageQuery.PATH;
+        }
+
+        throw new Exception("Unrecognized LineageQuery: " + lq);
+    }
+}
@@ -0,0 +1,16 @@
+package org.yesworkflow.lineage;
+
+import java.util.List;
+import java.util.Map;
+
+import org.yesworkflow.YWStage;
+import org.yesworkflow.config.Configurable;
+import org.yesworkflow.model.Model;
+
+public interface LineageTracer extends YWStage, Configurable {
+    LineageTracer configure(String key, Object value) throws Exception;
+    LineageTracer configure(Map<String, Object> config) throws Exception;
+    LineageTracer model(Model model);
+    LineageTracer trace() throws Exception;
+    List<String> getLineage() throws Exception;
+}
@@ -12,14 +12,8 @@ public class Channel {
 	public final Port sinkPort;
     public final boolean isParam;
     
-    private static Integer nextChannelId = 1;
-    
-    public static void resetIds() {
-        nextChannelId = 1;
-    }
-    
-	public Channel(Data data, Program sourceProgram, Port sourcePort, Program sinkProgram, Port sinkPort) {
-	    this.id = nextChannelId++;
+	public Channel(IdAllocator ids, Data data, Program sourceProgram, Port sourcePort, Program sinkProgram, Port sinkPort) {
+	    this.id = ids.nextChannelId();
 	    this.data = data;
 	    this.sourceProgram = sourceProgram;
 		this.sourcePort = sourcePort;
@@ -14,9 +14,8 @@ import org.yesworkflow.annotations.In;
 import org.yesworkflow.annotations.Out;
 import org.yesworkflow.annotations.Return;
 import org.yesworkflow.config.YWConfiguration;
-import org.yesworkflow.data.LogEntryTemplate;
-import org.yesworkflow.data.UriTemplate;
-import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.db.ModelInserter;
+import org.yesworkflow.db.YWStore;
 import org.yesworkflow.exceptions.YWMarkupException;
 import org.yesworkflow.query.QueryEngine;
 
@@ -24,7 +23,7 @@ public class DefaultModeler implements Modeler {
 
     static private QueryEngine DEFAULT_QUERY_ENGINE = QueryEngine.SWIPL;
 
-    private YesWorkflowDB ywdb;
+    private YWStore ywdb;
     private List<Annotation> annotations;
     private Model model;
     private String topWorkflowName = null;
@@ -34,18 +33,14 @@ public class DefaultModeler implements Modeler {
     private Map<String, String> modelFacts = null;
     private QueryEngine queryEngine = DEFAULT_QUERY_ENGINE;    
     
-    public DefaultModeler(YesWorkflowDB ywdb) throws Exception {
+    public DefaultModeler(YWStore ywdb) throws Exception {
         this(ywdb, System.out, System.err);
     }
 
-    public DefaultModeler(YesWorkflowDB ywdb, PrintStream stdoutStream, PrintStream stderrStream) {
+    public DefaultModeler(YWStore ywdb, PrintStream stdoutStream, PrintStream stderrStream) {
         this.ywdb = ywdb;
         this.stdoutStream = stdoutStream;
         this.stderrStream = stderrStream;
-        Port.resetIds();
-        Channel.resetIds();
-        UriTemplate.resetIds();
-        LogEntryTemplate.resetIds();
     }
     
     @Override
@@ -78,7 +73,10 @@ public class DefaultModeler implements Modeler {
 
     @Override
     public Modeler model() throws Exception {	
-    	buildModel();
+        try (ModelInserter inserter = ywdb.modelInserter()) {
+            buildModel(new IdAllocator(inserter));
+            new ModelWriter(model).write(inserter);
+        }
     	if (factsFile != null) {
     	    writeTextsToFilesOrStdout(factsFile, getFacts());
     	}
@@ -126,9 +124,10 @@ public class DefaultModeler implements Modeler {
         }
     }
 
-    private void buildModel() throws Exception {
+    /** Builds the model in memory, numbering its parts with IDs from the given allocator. */
+    private void buildModel(IdAllocator ids) throws Exception {
 
-        WorkflowBuilder superBuilder = new WorkflowBuilder(ywdb, this.stdoutStream, this.stderrStream);
+        WorkflowBuilder superBuilder = new WorkflowBuilder(ids, this.stdoutStream, this.stderrStream);
         
         WorkflowBuilder workflowBuilder = null;
         WorkflowBuilder topWorkflowBuilder = null;
@@ -148,7 +147,7 @@ public class DefaultModeler implements Modeler {
                     parentName = parentBuilder.getName();
                 }
 
-                workflowBuilder = new WorkflowBuilder(ywdb, parentName, 
+                workflowBuilder = new WorkflowBuilder(ids, parentName, 
                                       (parentBuilder == null) ? superBuilder : parentBuilder, 
                                       this.stdoutStream, this.stderrStream);
                 
@@ -197,9 +196,8 @@ public class DefaultModeler implements Modeler {
                     workflowBuilder = parentWorkflowBuilders.pop();
                 }
                 
-                if (!parentWorkflowBuilders.isEmpty()) {
-                    parentBuilder = parentWorkflowBuilders.peek();
-                }
+                // blocks following the end of an outermost block have no parent
+                parentBuilder = parentWorkflowBuilders.isEmpty() ? null : parentWorkflowBuilders.peek();
             }
         }
         
@@ -221,7 +219,7 @@ public class DefaultModeler implements Modeler {
             if (functions.size() == 0) throw new Exception("No program or functions found in script.");
         }
         
-        Workflow workflow = Workflow.createFromProgram(ywdb, topProgram);
+        Workflow workflow = Workflow.createFromProgram(ids, topProgram);
         model = new Model(workflow, functions, superBuilder.getData());
     }
 }
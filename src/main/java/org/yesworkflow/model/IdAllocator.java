@@ -0,0 +1,61 @@
+package org.yesworkflow.model;
+
+import org.yesworkflow.db.ModelInserter;
+
+/** Class allocating the IDs of the program blocks, data, ports, channels, and URI
+ *  template variables of a single model.  Each modeling session owns its own
+ *  allocator and passes it to the objects it creates, so that models built
+ *  concurrently in one JVM are numbered independently of each other.  The IDs of
+ *  program blocks, data, ports and channels continue from the first free IDs of
+ *  the store the model is written to, and so start at 1 for an empty store, while
+ *  URI template variables are always numbered from 1.  An allocator is not itself
+ *  thread-safe and must not be shared between concurrent sessions.
+ */
+public class IdAllocator {
+
+    private long nextProgramBlockId;
+    private long nextDataId;
+    private int nextPortId;
+    private int nextChannelId;
+    private long nextUriVariableId = 1L;
+
+    /** Creates an allocator numbering every kind of ID from 1. */
+    public IdAllocator() {
+        this(1L, 1L, 1, 1);
+    }
+
+    /** Creates an allocator continuing the numbering of the tables written by an inserter.
+     * @param inserter The inserter the model is to be written with.
+     */
+    public IdAllocator(ModelInserter inserter) {
+        this(inserter.firstProgramBlockId(), inserter.firstDataId(),
+             (int)inserter.firstPortId(), (int)inserter.firstChannelId());
+    }
+
+    private IdAllocator(long firstProgramBlockId, long firstDataId, int firstPortId, int firstChannelId) {
+        this.nextProgramBlockId = firstProgramBlockId;
+        this.nextDataId = firstDataId;
+        this.nextPortId = firstPortId;
+        this.nextChannelId = firstChannelId;
+    }
+
+    public Long nextProgramBlockId() {
+        return nextProgramBlockId++;
+    }
+
+    public Long nextDataId() {
+        return nextDataId++;
+    }
+
+    public Integer nextPortId() {
+        return nextPortId++;
+    }
+
+    public Integer nextChannelId() {
+        return nextChannelId++;
+    }
+
+    public Long nextUriVariableId() {
+        return nextUriVariableId++;
+    }
+}
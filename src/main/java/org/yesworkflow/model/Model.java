@@ -10,6 +10,7 @@ public class Model {
     public final Workflow workflow;
     public final Function[] functions;
     public final Data[] data;
+    private volatile ModelIndex index = null;
 
     public Model(Workflow workflow, Function[] functions, Data[] data) {
         
@@ -41,6 +42,20 @@ public class Model {
 	    this(workflow, EMPTY_FUNCTION_ARRAY, EMPTY_DATA_ARRAY);
     }
 	
+    /** @return The index of the model, built when first requested. */
+    public ModelIndex index() {
+        ModelIndex modelIndex = index;
+        if (modelIndex == null) {
+            synchronized (this) {
+                modelIndex = index;
+                if (modelIndex == null) {
+                    index = modelIndex = new ModelIndex(this);
+                }
+            }
+        }
+        return modelIndex;
+    }
+
 	@Override
 	public String toString() {
 	    return "Model(program=" + workflow.beginAnnotation.value() + ")";
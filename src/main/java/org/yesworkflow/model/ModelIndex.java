@@ -0,0 +1,216 @@
+package org.yesworkflow.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.yesworkflow.annotations.In;
+import org.yesworkflow.annotations.Param;
+
+/** Class indexing the program blocks, ports, data and channels of a model by qualified
+ *  name, and holding the partitions of the channels and port bindings of each program
+ *  block that {@link Program} otherwise computes anew on every call.  The index is
+ *  built in one walk of the model and is immutable afterwards, so that it may be
+ *  shared by the threads using the model; {@link Model#index()} builds it once per
+ *  model.
+ *
+ *  <p>Names are qualified as in {@link ModelWriter}.  Program blocks are named by
+ *  their names, ports by the name of their program block followed by <code>&lt;-</code>
+ *  or <code>-&gt;</code> and the name of the port, and data in the scope of a program
+ *  block by the name of the block followed by the name of the data in brackets.
+ *  Data outside any program block are named by their names.  Channels are looked up
+ *  by the qualified name of the data they carry.  Where names clash, the element
+ *  met first in a depth-first walk of the model is indexed, as is the program block
+ *  that {@link Program#getSubprogram(String)} would find.</p>
+ */
+public class ModelIndex {
+
+    private final Map<String,Program> programs = new HashMap<String,Program>();
+    private final Map<String,Port> ports = new HashMap<String,Port>();
+    private final Map<String,Data> data = new HashMap<String,Data>();
+    private final Map<String,List<Channel>> channels = new HashMap<String,List<Channel>>();
+    private final Map<Data,String> dataNames = new IdentityHashMap<Data,String>();
+    private final Map<Program,ProgramEntry> entries = new IdentityHashMap<Program,ProgramEntry>();
+
+    /** Indexes the workflow, functions and data of a model.
+     * @param model The model to index.
+     */
+    public ModelIndex(Model model) {
+        if (model == null) throw new IllegalArgumentException("Null model passed to ModelIndex constructor.");
+        for (Data d : model.data) {
+            addData(d, d.name);
+        }
+        addProgramRecursively(model.workflow);
+        for (Function function : model.functions) {
+            addProgramRecursively(function);
+        }
+        freezeChannelLists();
+    }
+
+    /** Indexes a program block and the program blocks nested in it.
+     * @param program The outermost program block to index.
+     */
+    public ModelIndex(Program program) {
+        if (program == null) throw new IllegalArgumentException("Null program passed to ModelIndex constructor.");
+        addProgramRecursively(program);
+        freezeChannelLists();
+    }
+
+    public Program program(String qualifiedName) {
+        return programs.get(qualifiedName);
+    }
+
+    public Port port(String qualifiedName) {
+        return ports.get(qualifiedName);
+    }
+
+    public Data data(String qualifiedName) {
+        return data.get(qualifiedName);
+    }
+
+    /** @return The channels carrying the data with the given qualified name, empty if there are none. */
+    public List<Channel> channels(String qualifiedDataName) {
+        List<Channel> dataChannels = channels.get(qualifiedDataName);
+        return (dataChannels == null) ? Collections.<Channel>emptyList() : dataChannels;
+    }
+
+    public List<Channel> innerChannels(Program program) {
+        return entry(program).innerChannels;
+    }
+
+    public List<Channel> innerDataChannels(Program program) {
+        return entry(program).innerDataChannels;
+    }
+
+    public List<Channel> innerParamChannels(Program program) {
+        return entry(program).innerParamChannels;
+    }
+
+    public List<String> outerBindings(Program program) {
+        return entry(program).outerBindings;
+    }
+
+    public List<String> outerDataBindings(Program program) {
+        return entry(program).outerDataBindings;
+    }
+
+    public List<String> outerParamBindings(Program program) {
+        return entry(program).outerParamBindings;
+    }
+
+    public boolean hasChannelForBinding(Program program, String binding) {
+        return entry(program).channelSourceBindings.contains(binding);
+    }
+
+    private ProgramEntry entry(Program program) {
+        ProgramEntry entry = entries.get(program);
+        if (entry == null) throw new IllegalArgumentException("Program " + program + " not in ModelIndex.");
+        return entry;
+    }
+
+    private void addProgramRecursively(Program program) {
+
+        if (entries.containsKey(program)) return;
+        entries.put(program, new ProgramEntry(program));
+        programs.putIfAbsent(program.name, program);
+
+        for (Data d : program.data) {
+            addData(d, program.name + "[" + d.name + "]");
+        }
+
+        addPorts(program, program.inPorts);
+        addPorts(program, program.outPorts);
+        if (program instanceof Function) {
+            addPorts(program, ((Function)program).returnPorts);
+        }
+
+        for (Channel channel : program.channels) {
+            String dataName = dataNames.get(channel.data);
+            if (dataName == null) dataName = channel.data.name;
+            List<Channel> dataChannels = channels.get(dataName);
+            if (dataChannels == null) {
+                dataChannels = new ArrayList<Channel>();
+                channels.put(dataName, dataChannels);
+            }
+            dataChannels.add(channel);
+        }
+
+        for (Program child : program.programs) {
+            addProgramRecursively(child);
+        }
+        for (Program function : program.functions) {
+            addProgramRecursively(function);
+        }
+    }
+
+    private void addData(Data d, String qualifiedName) {
+        dataNames.putIfAbsent(d, qualifiedName);
+        data.putIfAbsent(qualifiedName, d);
+    }
+
+    private void addPorts(Program program, Port[] programPorts) {
+        for (Port port : programPorts) {
+            String infix = (port.flowAnnotation instanceof In) ? "<-" : "->";
+            ports.putIfAbsent(program.name + infix + port.flowAnnotation.value(), port);
+        }
+    }
+
+    private void freezeChannelLists() {
+        for (Map.Entry<String,List<Channel>> entry : channels.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+    }
+
+    /** Channel partitions and port bindings of one program block. */
+    private static class ProgramEntry {
+
+        final List<Channel> innerChannels;
+        final List<Channel> innerDataChannels;
+        final List<Channel> innerParamChannels;
+        final List<String> outerBindings;
+        final List<String> outerDataBindings;
+        final List<String> outerParamBindings;
+        final Set<String> channelSourceBindings = new HashSet<String>();
+
+        ProgramEntry(Program program) {
+
+            List<Channel> dataChannels = new ArrayList<Channel>();
+            List<Channel> paramChannels = new ArrayList<Channel>();
+            for (Channel channel : program.channels) {
+                (channel.isParam ? paramChannels : dataChannels).add(channel);
+                channelSourceBindings.add(channel.sourcePort.flowAnnotation.binding());
+            }
+
+            List<String> bindings = new ArrayList<String>();
+            List<String> dataBindings = new ArrayList<String>();
+            List<String> paramBindings = new ArrayList<String>();
+            for (Port port : program.inPorts) {
+                String binding = port.flowAnnotation.binding();
+                bindings.add(binding);
+                (port.flowAnnotation instanceof Param ? paramBindings : dataBindings).add(binding);
+            }
+            for (Port port : program.outPorts) {
+                String binding = port.flowAnnotation.binding();
+                bindings.add(binding);
+                dataBindings.add(binding);
+            }
+
+            innerChannels = immutable(new ArrayList<Channel>(Arrays.asList(program.channels)));
+            innerDataChannels = immutable(dataChannels);
+            innerParamChannels = immutable(paramChannels);
+            outerBindings = immutable(bindings);
+            outerDataBindings = immutable(dataBindings);
+            outerParamBindings = immutable(paramBindings);
+        }
+
+        private static <T> List<T> immutable(List<T> list) {
+            return list.isEmpty() ? Collections.<T>emptyList() : Collections.unmodifiableList(list);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.yesworkflow.model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.yesworkflow.annotations.In;
+import org.yesworkflow.annotations.Out;
+import org.yesworkflow.db.ModelInserter;
+
+/** Class writing the program blocks, data, ports and channels of a model to a YW
+ *  store.  The model is walked once to collect the rows, which are then passed to
+ *  a {@link ModelInserter} table by table, each table in order of ID.  Names are
+ *  qualified as in {@link ModelFacts}.
+ */
+public class ModelWriter {
+
+    private final Model model;
+    private final List<ProgramRow> programRows = new ArrayList<ProgramRow>();
+    private final List<DataRow> dataRows = new ArrayList<DataRow>();
+    private final List<PortRow> portRows = new ArrayList<PortRow>();
+    private final List<Channel> channels = new ArrayList<Channel>();
+
+    public ModelWriter(Model model) {
+        if (model == null) throw new IllegalArgumentException("Null model argument passed to ModelWriter constructor.");
+        this.model = model;
+    }
+
+    public ModelWriter write(ModelInserter inserter) throws SQLException {
+
+        for (Data data : model.data) {
+            dataRows.add(new DataRow(data, null, data.name));
+        }
+
+        collectRowsRecursively(model.workflow, null, null);
+        for (Function function : model.functions) {
+            collectRowsRecursively(function, null, null);
+        }
+
+        programRows.sort(Comparator.comparing((ProgramRow row) -> row.program.id));
+        for (ProgramRow row : programRows) {
+            Program program = row.program;
+            inserter.insertProgramBlock(program.id, row.parentId, program.beginAnnotation.id, program.endAnnotation.id,
+                                        program.beginAnnotation.value(), row.qualifiedName,
+                                        isWorkflow(program), program instanceof Function);
+        }
+
+        dataRows.sort(Comparator.comparing((DataRow row) -> row.data.id));
+        for (DataRow row : dataRows) {
+            inserter.insertData(row.data.id, row.programId, row.data.name, row.qualifiedName);
+        }
+
+        portRows.sort(Comparator.comparing((PortRow row) -> row.port.id));
+        for (PortRow row : portRows) {
+            Port port = row.port;
+            inserter.insertPort(port.id, port.flowAnnotation.id, row.programId, port.data.id,
+                                port.flowAnnotation.value(), row.qualifiedName, port.flowAnnotation.alias(),
+                                (port.uriTemplate == null) ? null : port.uriTemplate.toString(),
+                                port.flowAnnotation instanceof In, port.flowAnnotation instanceof Out);
+        }
+
+        channels.sort(Comparator.comparing((Channel channel) -> channel.id));
+        for (Channel channel : channels) {
+            inserter.insertChannel(channel.id, channel.sourcePort.id, channel.sinkPort.id, channel.data.id,
+                                   channel.sourceProgram == null, channel.sinkProgram == null);
+        }
+
+        return this;
+    }
+
+    private void collectRowsRecursively(Program program, String parentName, Long parentId) {
+
+        String qualifiedProgramName = qualifiedName(parentName, ".", program.beginAnnotation.value());
+        programRows.add(new ProgramRow(program, parentId, qualifiedProgramName));
+
+        for (Data data : program.data) {
+            dataRows.add(new DataRow(data, program.id, qualifiedProgramName + "[" + data.name + "]"));
+        }
+
+        collectPortRows(program.inPorts, program.id, qualifiedProgramName);
+        collectPortRows(program.outPorts, program.id, qualifiedProgramName);
+        if (program instanceof Function) {
+            collectPortRows(((Function)program).returnPorts, program.id, qualifiedProgramName);
+        }
+
+        for (Channel channel : program.channels) {
+            channels.add(channel);
+        }
+
+        for (Program childProgram : program.programs) {
+            collectRowsRecursively(childProgram, qualifiedProgramName, program.id);
+        }
+
+        for (Program childFunction : program.functions) {
+            collectRowsRecursively(childFunction, qualifiedProgramName, program.id);
+        }
+    }
+
+    /** A program block other than a function is flagged as a workflow if it has channels,
+     *  as is a top-level program without subprograms that {@link Workflow#createFromProgram}
+     *  wrapped around a copy of itself. */
+    private boolean isWorkflow(Program program) {
+        if (program instanceof Function) return false;
+        if (program.channels.length > 0) return true;
+        return program.programs.length == 1 && program.programs[0].beginAnnotation == program.beginAnnotation;
+    }
+
+    private void collectPortRows(Port[] ports, Long programId, String programName) {
+        for (Port port : ports) {
+            String infix = (port.flowAnnotation instanceof In) ? "<-" : "->";
+            portRows.add(new PortRow(port, programId, programName + infix + port.flowAnnotation.value()));
+        }
+    }
+
+    private String qualifiedName(String parentName, String infix, String name) {
+        return (parentName == null) ? name : parentName + infix + name;
+    }
+
+    private static class ProgramRow {
+        final Program program;
+        final Long parentId;
+        final String qualifiedName;
+        ProgramRow(Program program, Long parentId, String qualifiedName) {
+            this.program = program;
+            this.parentId = parentId;
+            this.qualifiedName = qualifiedName;
+        }
+    }
+
+    private static class DataRow {
+        final Data data;
+        final Long programId;
+        final String qualifiedName;
+        DataRow(Data data, Long programId, String qualifiedName) {
+            this.data = data;
+            this.programId = programId;
+            this.qualifiedName = qualifiedName;
+        }
+    }
+
+    private static class PortRow {
+        final Port port;
+        final Long programId;
+        final String qualifiedName;
+        PortRow(Port port, Long programId, String qualifiedName) {
+            this.port = port;
+            this.programId = programId;
+            this.qualifiedName = qualifiedName;
+        }
+    }
+}
@@ -13,21 +13,15 @@ public class Port {
 	public final UriTemplate uriTemplate;
 	public final Data data;
 	
-    private static Integer nextPortId;
-    
-    public static void resetIds() {
-        nextPortId = 1;
-    }
-
-	public Port(Data data, Flow flowAnnotation, Begin beginAnnotation) {
+	public Port(IdAllocator ids, Data data, Flow flowAnnotation, Begin beginAnnotation) {
 	    
-	    this.id = nextPortId++;
+	    this.id = ids.nextPortId();
 	    this.data = data;
 		this.flowAnnotation = flowAnnotation;
 		this.beginAnnotation = beginAnnotation;
 		
 		UriAnnotation uriAnnotation = this.flowAnnotation.uriAnnotation();
-		this.uriTemplate = (uriAnnotation != null) ? new UriTemplate(uriAnnotation.value()) : null;
+		this.uriTemplate = (uriAnnotation != null) ? new UriTemplate(uriAnnotation.value(), ids::nextUriVariableId) : null;
 	}
 	
 	@Override
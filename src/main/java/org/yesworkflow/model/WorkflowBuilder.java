@@ -1,14 +1,12 @@
 package org.yesworkflow.model;
 
 import java.io.PrintStream;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.yesworkflow.annotations.Begin;
 import org.yesworkflow.annotations.End;
@@ -16,7 +14,6 @@ import org.yesworkflow.annotations.Flow;
 import org.yesworkflow.annotations.In;
 import org.yesworkflow.annotations.Out;
 import org.yesworkflow.annotations.Return;
-import org.yesworkflow.db.YesWorkflowDB;
 
 public class WorkflowBuilder {
 		
@@ -26,15 +23,15 @@ public class WorkflowBuilder {
         private String name;
         private Begin beginAnnotation;
         private End endAnnotation;
-        private List<Port> workflowInPorts = new LinkedList<Port>();
-        private List<Port> workflowOutPorts = new LinkedList<Port>();
-        private List<Port> workflowReturnPorts = new LinkedList<Port>();
+        private List<Port> workflowInPorts = new ArrayList<Port>();
+        private List<Port> workflowOutPorts = new ArrayList<Port>();
+        private List<Port> workflowReturnPorts = new ArrayList<Port>();
 
-        private YesWorkflowDB ywdb;
-		private List<Program> nestedPrograms = new LinkedList<Program>();
-        private List<Channel> nestedChannels = new LinkedList<Channel>();
-        private List<Function> nestedFunctions = new LinkedList<Function>();
-        private List<Data> nestedData = new LinkedList<Data>();
+        private final IdAllocator ids;
+		private List<Program> nestedPrograms = new ArrayList<Program>();
+        private List<Channel> nestedChannels = new ArrayList<Channel>();
+        private List<Function> nestedFunctions = new ArrayList<Function>();
+        private List<Data> nestedData = new ArrayList<Data>();
 		private Map<String,List<Port>> nestedProgramInPorts = new LinkedHashMap<String,List<Port>>();
 		private Map<String,Port> nestedProgramOutPorts = new  LinkedHashMap<String,Port>();
         private Map<String,Port> nestedProgramReturnPorts = new  LinkedHashMap<String,Port>();
@@ -48,18 +45,17 @@ public class WorkflowBuilder {
         @SuppressWarnings("unused")
         private PrintStream stderrStream = null;
 
-        public WorkflowBuilder(YesWorkflowDB ywdb, PrintStream stdoutStream, PrintStream stderrStream) throws SQLException {
-            this(ywdb, null, null, stdoutStream, stderrStream);
+        public WorkflowBuilder(IdAllocator ids, PrintStream stdoutStream, PrintStream stderrStream) {
+            this(ids, null, null, stdoutStream, stderrStream);
         }
 
-        public WorkflowBuilder(YesWorkflowDB ywdb, String parentName, WorkflowBuilder parentBuilder, PrintStream stdoutStream, PrintStream stderrStream) throws SQLException {
-            this.ywdb = ywdb;
+        public WorkflowBuilder(IdAllocator ids, String parentName, WorkflowBuilder parentBuilder, PrintStream stdoutStream, PrintStream stderrStream) {
+            this.ids = ids;
             this.parentName = parentName;
             this.parentBuilder = parentBuilder;
             this.stdoutStream = stdoutStream;
             this.stderrStream = stderrStream;
-            this.programId = (parentBuilder == null) ? null :
-                          ywdb.insertDefaultProgramBlock(parentBuilder.programId);
+            this.programId = (parentBuilder == null) ? null : ids.nextProgramBlockId();
         }
         
 		public WorkflowBuilder begin(Begin annotation) {
@@ -114,25 +110,22 @@ public class WorkflowBuilder {
             parentBuilder.nestedOutPort(outPort);
         }
 
-        public void returnPort(Return returnAnnotation) throws SQLException {
+        public void returnPort(Return returnAnnotation) {
             Port returnPort = addPort(returnAnnotation);
             workflowReturnPorts.add(returnPort);
             nestedInPort(returnPort);
         }
         
-        private Port addPort(Flow portAnnotation) throws SQLException {
+        private Port addPort(Flow portAnnotation) {
             Data data = parentBuilder.addNestedData(portAnnotation.binding());
-//            Long portId = ywdb.insertPort();
-            Port port = new Port(data, portAnnotation, beginAnnotation);
+            Port port = new Port(ids, data, portAnnotation, beginAnnotation);
             return port;
         }
 
-        private Data addNestedData(String name) throws SQLException {
+        private Data addNestedData(String name) {
             Data data = dataForBinding.get(name);
             if (data == null) {
-                String qualifiedName = (programId == null) ? name : this.name + "[" + name + "]";
-                Long dataId = ywdb.insertData(name, qualifiedName, programId);
-                data = new Data(dataId, name);
+                data = new Data(ids.nextDataId(), name);
                 nestedData.add(data);
                 dataForBinding.put(name, data);
             }
@@ -148,7 +141,7 @@ public class WorkflowBuilder {
 		private void addNestedInport(String binding, Port inPort) {
 			List<Port> ports = this.nestedProgramInPorts.get(binding);
 			if (ports == null) {
-				ports = new LinkedList<Port>();
+				ports = new ArrayList<Port>(2);
 				this.nestedProgramInPorts.put(binding, ports);
 			}
 			ports.add(inPort);
@@ -202,8 +195,6 @@ public class WorkflowBuilder {
 		
 		public Function buildFunction() throws Exception {
             buildChannels();
-            ywdb.updateProgramBlock(programId, beginAnnotation.id, 
-                    endAnnotation.id, beginAnnotation.value(), name, false, true);
 		    return new Function(
 		            programId,
 		            name,
@@ -220,8 +211,6 @@ public class WorkflowBuilder {
         }
 		
         private Program buildProgram() throws Exception {
-            ywdb.updateProgramBlock(programId, beginAnnotation.id, 
-                    endAnnotation.id, beginAnnotation.value(), name, false, false);
             return new Program(
                     programId,
                     name,
@@ -236,8 +225,6 @@ public class WorkflowBuilder {
         }
 	            
         private Workflow buildWorkflow() throws Exception {
-            ywdb.updateProgramBlock(programId, beginAnnotation.id, 
-                    endAnnotation.id, beginAnnotation.value(), name, true, false);
 			return new Workflow(
                     programId,
 			        name,
@@ -252,34 +239,18 @@ public class WorkflowBuilder {
 		            );
 		}
 	
+        /** Drops the nested @in ports reading data that no nested program writes.  The
+         *  in-ports of this workflow are indexed as nested out-ports, so the data they
+         *  bring in is always kept. */
         private void pruneUnusedNestedProgramInPorts() {
-
-            List<String> unmatchedInBindings = new LinkedList<String>();
-            for (Map.Entry<String, List<Port>> entry : nestedProgramInPorts.entrySet()) {
-                String binding = entry.getKey();
-                if (!workflowInPorts.contains(binding) && !nestedProgramOutPorts.containsKey(binding)) {
-                    unmatchedInBindings.add(binding);
-                }
-            }
-            for (String binding : unmatchedInBindings) {
-                nestedProgramInPorts.remove(binding);
-            }
+            nestedProgramInPorts.keySet().removeIf(binding -> !nestedProgramOutPorts.containsKey(binding));
         }
-	    
-        private void pruneUnusedNestedProgramOutPorts() {
 
-            List<String> unmatchedOutBindings = new LinkedList<String>();
-            
-            for (Entry<String, Port> entry : nestedProgramOutPorts.entrySet()) {
-                String binding = entry.getKey();
-                if (!workflowOutPorts.contains(binding) && !nestedProgramInPorts.containsKey(binding)) {
-                    unmatchedOutBindings.add(binding);
-                }
-            }
-            
-            for (String binding : unmatchedOutBindings) {
-                nestedProgramOutPorts.remove(binding);
-            }
+        /** Drops the nested @out ports writing data that no nested program reads.  The
+         *  out-ports of this workflow are indexed as nested in-ports, so the data they
+         *  send out is always kept. */
+        private void pruneUnusedNestedProgramOutPorts() {
+            nestedProgramOutPorts.keySet().removeIf(binding -> !nestedProgramInPorts.containsKey(binding));
         }
         
         private void buildInternalChannels() throws Exception {
@@ -293,7 +264,7 @@ public class WorkflowBuilder {
                 for (Port inPort : boundInPorts) {
                     String inProgramName = inPort.beginAnnotation.value();
                     Program inProgram = programForName.get(inProgramName);
-                    Channel channel = new Channel(inPort.data, outProgram, boundOutPort, inProgram, inPort);
+                    Channel channel = new Channel(ids, inPort.data, outProgram, boundOutPort, inProgram, inPort);
                     nestedChannels.add(channel);
                 }   
             }
@@ -307,7 +278,7 @@ public class WorkflowBuilder {
                     for (Port inPort : matchingInPorts) {
                         String inProgramName = inPort.beginAnnotation.value();
                         Program inProgram = programForName.get(inProgramName);
-                        Channel channel = new Channel(workflowPort.data, null, workflowPort, inProgram, inPort);
+                        Channel channel = new Channel(ids, workflowPort.data, null, workflowPort, inProgram, inPort);
                         nestedChannels.add(channel);
                     }
                 }
@@ -321,7 +292,7 @@ public class WorkflowBuilder {
                 if (matchingOutPort != null) {
                     String outProgramName = matchingOutPort.beginAnnotation.value();
                     Program outProgram = programForName.get(outProgramName);
-                    Channel channel = new Channel(matchingOutPort.data, outProgram, matchingOutPort, null, workflowPort);
+                    Channel channel = new Channel(ids, matchingOutPort.data, outProgram, matchingOutPort, null, workflowPort);
                     nestedChannels.add(channel);
                 }
             }
@@ -0,0 +1,62 @@
+package org.yesworkflow;
+
+import org.yesworkflow.extract.CommentMatcher;
+import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.db.YesWorkflowDB;
+
+public class TestDelimiterAutomaton extends YesWorkflowTestCase {
+
+    public void testStandardAutomaton_SharedByModelsOfSameLanguage() {
+        assertSame(new LanguageModel(Language.PYTHON).getDelimiterAutomaton(),
+                   new LanguageModel(Language.PYTHON).getDelimiterAutomaton());
+        assertSame(new LanguageModel(Language.SAS).getDelimiterAutomaton(),
+                   new LanguageModel("script.sas").getDelimiterAutomaton());
+        assertNotSame(new LanguageModel(Language.PYTHON).getDelimiterAutomaton(),
+                      new LanguageModel(Language.BASH).getDelimiterAutomaton());
+    }
+
+    public void testAutomaton_RecompiledWhenDelimitersChange() {
+        LanguageModel lm = new LanguageModel(Language.BASH);
+        DelimiterAutomaton standard = lm.getDelimiterAutomaton();
+        lm.delimiterPair("<!--", "-->");
+        DelimiterAutomaton custom = lm.getDelimiterAutomaton();
+        assertNotSame(standard, custom);
+        assertSame(custom, lm.getDelimiterAutomaton());
+        assertSame(standard, new LanguageModel(Language.BASH).getDelimiterAutomaton());
+    }
+
+    public void testAutomaton_CharacterClasses() {
+        DelimiterAutomaton automaton = new LanguageModel(Language.MATLAB).getDelimiterAutomaton();
+        assertEquals(automaton.characterClass('x'), automaton.characterClass('ü'));
+        assertEquals(automaton.characterClass('x'), automaton.characterClass('#'));
+        assertTrue(automaton.characterClass('%') != automaton.characterClass('x'));
+        assertTrue(automaton.characterClass('{') != automaton.characterClass('}'));
+    }
+
+    public void testAutomaton_ActionsForSingleLineComment() {
+        DelimiterAutomaton automaton = new LanguageModel(Language.BASH).getDelimiterAutomaton();
+        int state = automaton.initialState(false);
+        int transition = automaton.transition(state, 'x');
+        assertEquals(DelimiterAutomaton.NO_CHARACTERS, automaton.action(transition));
+        transition = automaton.transition(automaton.next(transition), '#');
+        assertEquals(DelimiterAutomaton.NO_CHARACTERS, automaton.action(transition));
+        transition = automaton.transition(automaton.next(transition), 'a');
+        assertEquals(1, automaton.action(transition));
+        transition = automaton.transition(automaton.next(transition), '\n');
+        assertEquals(DelimiterAutomaton.END_OF_COMMENT, automaton.action(transition));
+    }
+
+    public void testCommentMatcher_CustomDelimitersAddedAfterFirstUse() throws Exception {
+        YesWorkflowDB ywdb = YesWorkflowDB.createInMemoryDB();
+        LanguageModel lm = new LanguageModel(Language.BASH);
+        CommentMatcher matcher = new CommentMatcher(ywdb, lm);
+        matcher.extractComments("x = 1  # first" + EOL);
+        lm.delimiterPair("<!--", "-->");
+        matcher.extractComments("y = 2  <!-- second --> # third" + EOL);
+        assertEquals("first"   + EOL +
+                     "second"  + EOL +
+                     "third"   + EOL,
+                     DefaultExtractor.commentsAsString(ywdb));
+        ywdb.close();
+    }
+}
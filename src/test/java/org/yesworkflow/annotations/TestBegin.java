@@ -33,4 +33,22 @@ public class TestBegin extends YesWorkflowTestCase {
         assertNotNull(caught);
         assertEquals("No argument provided to @begin keyword on line 1", caught.getMessage());
     }
+
+    public void testBeginComment_PreTokenized() throws Exception {
+        Begin begin = new Begin(1L, 1L, 1L, "@BEGIN main", "@BEGIN", "main");
+        assertEquals("main", begin.value);
+        assertEquals("@BEGIN", begin.keyword);
+        try {
+            new Begin(1L, 1L, 1L, "@end main", "@end", "main");
+            fail("Expected YWMarkupException");
+        } catch (YWMarkupException e) {
+            assertEquals("Wrong keyword for @begin annotation: @end", e.getMessage());
+        }
+        try {
+            new Begin(1L, 1L, 3L, "@begin", "@begin", null);
+            fail("Expected YWMarkupException");
+        } catch (YWMarkupException e) {
+            assertEquals("No argument provided to @begin keyword on line 3", e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,156 @@
+package org.yesworkflow.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.yesworkflow.Language;
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.exceptions.YWToolUsageException;
+import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.model.DefaultModeler;
+import org.yesworkflow.model.Model;
+import org.yesworkflow.model.Program;
+import org.yesworkflow.recon.DefaultReconstructor;
+import org.yesworkflow.recon.Run;
+
+public class TestWorkloadGenerator extends YesWorkflowTestCase {
+
+    private Path testDirectory;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        testDirectory = getTestDirectory("TestWorkloadGenerator");
+    }
+
+    private Model model(Path source, Language language) throws Exception {
+        YesWorkflowDB ywdb = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor extractor = new DefaultExtractor(ywdb, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", source.toString());
+        if (language == Language.GENERIC) extractor.configure("comment", "#");
+        List<Annotation> annotations = extractor.extract().getAnnotations();
+        return new DefaultModeler(ywdb, super.stdoutStream, super.stderrStream)
+                   .annotations(annotations)
+                   .model()
+                   .getModel();
+    }
+
+    public void testScript_Default() throws Exception {
+        String script = new WorkloadGenerator().configure("blocks", 2).script(Language.PYTHON);
+        assertEquals(
+            "# @begin workload @desc Synthetic workflow of 2 program blocks" + EOL +
+            "# @in input_1"                                                  + EOL +
+            "# @out data_2_1"                                                + EOL +
+            "    # @begin step_1"                                            + EOL +
+            "    # @in input_1"                                              + EOL +
+            "    # @out data_1_1"                                            + EOL +
+            "        data_1_1 = step_1(input_1)"                             + EOL +
+            "    # @end step_1"                                              + EOL +
+            "    # @begin step_2"                                            + EOL +
+            "    # @in data_1_1"                                             + EOL +
+            "    # @out data_2_1"                                            + EOL +
+            "        data_2_1 = step_2(data_1_1)"                            + EOL +
+            "    # @end step_2"                                              + EOL +
+            "# @end workload"                                                + EOL,
+            script.replace("\n", EOL));
+    }
+
+    public void testScript_NestingUrisAndLogs() throws Exception {
+        String script = new WorkloadGenerator().configure("blocks", 2)
+                                               .configure("depth", 2)
+                                               .configure("uritemplate", "file:run/<block>/out_<port>_{sample}.csv")
+                                               .configure("logtemplate", "<block> wrote sample {sample}")
+                                               .script(Language.SAS);
+        assertEquals(
+            "/* @begin workload @desc Synthetic workflow of 2 program blocks */"                         + EOL +
+            "/* @in input_1 */"                                                                          + EOL +
+            "/* @out data_1_1 */"                                                                        + EOL +
+            "/* @out run_log */"                                                                         + EOL +
+            "    /* @begin step_1 */"                                                                    + EOL +
+            "    /* @in input_1 */"                                                                      + EOL +
+            "    /* @out data_1_1 */"                                                                    + EOL +
+            "    /* @out run_log */"                                                                     + EOL +
+            "        /* @begin step_2 */"                                                                + EOL +
+            "        /* @in input_1 */"                                                                  + EOL +
+            "        /* @out data_1_1 @uri file:run/step_2/out_0_{sample}.csv */"                        + EOL +
+            "        /* @out run_log @uri file:run/run_log.txt @log step_2 wrote sample {sample} */"     + EOL +
+            "            data_1_1 = step_2(input_1);"                                                    + EOL +
+            "        /* @end step_2 */"                                                                  + EOL +
+            "    /* @end step_1 */"                                                                      + EOL +
+            "/* @end workload */"                                                                        + EOL,
+            script.replace("\n", EOL));
+    }
+
+    public void testWriteSources_EveryLanguageExtractsAndModels() throws Exception {
+        WorkloadGenerator generator = new WorkloadGenerator().configure("language", "all")
+                                                             .configure("blocks", 30)
+                                                             .configure("depth", 3)
+                                                             .configure("fanin", 2)
+                                                             .configure("fanout", 3);
+        List<Path> sources = generator.writeSources(testDirectory.resolve("sources"));
+        assertEquals(Language.values().length, sources.size());
+        for (int i = 0; i < sources.size(); ++i) {
+            Model model = model(sources.get(i), Language.values()[i]);
+            assertEquals("workload", model.workflow.beginAnnotation.value());
+            assertEquals(10, model.workflow.programs.length);
+            for (Program stack : model.workflow.programs) {
+                assertEquals(1, stack.programs.length);
+                assertEquals(1, stack.programs[0].programs.length);
+                assertEquals(2, stack.programs[0].programs[0].inPorts.length);
+                assertEquals(3, stack.programs[0].programs[0].outPorts.length);
+            }
+        }
+    }
+
+    public void testScript_SameSeedSameScript() throws Exception {
+        WorkloadGenerator generator = new WorkloadGenerator().configure("blocks", 50).configure("fanin", 3);
+        String script = generator.script(Language.R);
+        assertEquals(script, new WorkloadGenerator().configure("blocks", 50).configure("fanin", 3).script(Language.R));
+        assertFalse(script.equals(generator.configure("seed", 2).script(Language.R)));
+    }
+
+    public void testWriteRun_ReconFindsGeneratedFiles() throws Exception {
+        Path runDirectory = testDirectory.resolve("run");
+        WorkloadGenerator generator = new WorkloadGenerator().configure("blocks", 4)
+                                                             .configure("fanout", 2)
+                                                             .configure("samples", 3)
+                                                             .configure("uritemplate", "file:run/<block>/out_<port>_{sample}.csv")
+                                                             .configure("logtemplate", "<block> wrote sample {sample}");
+        Path source = generator.writeSources(runDirectory).get(0);
+        assertEquals(4 * 2 * 3 + 1, generator.writeRun(runDirectory));
+        assertTrue(Files.exists(runDirectory.resolve("run/step_3/out_1_2.csv")));
+        assertEquals(4 * 3, Files.readAllLines(runDirectory.resolve("run/run_log.txt")).size());
+
+        Map<String, String> facts = new DefaultReconstructor(super.stdoutStream, super.stderrStream)
+                                        .run(new Run(model(source, Language.PYTHON), runDirectory))
+                                        .getFacts();
+        assertTrue(facts.get("resource").contains("run/step_3/out_1_2.csv"));
+        assertTrue(facts.get("uri_variable_value").contains("'2'"));
+    }
+
+    public void testConfigure_InvalidSettings() throws Exception {
+        WorkloadGenerator generator = new WorkloadGenerator();
+        try {
+            generator.configure("blocks", 0);
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Value of blocks must be at least 1: 0", e.getMessage());
+        }
+        try {
+            generator.configure("language", "cobol");
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Unrecognized language: cobol", e.getMessage());
+        }
+        try {
+            generator.configure("size", 10);
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Unrecognized workload setting: size", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.yesworkflow.cli;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.yesworkflow.YesWorkflowTestCase;
+
+public class TestSourceWatcher extends YesWorkflowTestCase {
+
+    private Path directory;
+    private SourceWatcher watcher;
+    private ExecutorService executor;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        directory = getTestDirectory("TestSourceWatcher").toAbsolutePath();
+        for (String path : new String[] {"sub/created/script.py", "sub/created", "sub/deep/script.py", "sub/script.py"}) {
+            Files.deleteIfExists(directory.resolve(path));
+        }
+        Files.createDirectories(directory.resolve("sub/deep"));
+        watcher = new SourceWatcher(20);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        watcher.close();
+        executor.shutdownNow();
+    }
+
+    public void testWatchTree_WatchesExistingSubdirectories() throws Exception {
+        watcher.watchTree(directory, Integer.MAX_VALUE);
+        Path script = directory.resolve("sub/deep/script.py");
+        Files.write(script, Arrays.asList("# @begin script", "# @end script"));
+        assertTrue(awaitChange(script));
+    }
+
+    public void testWatchTree_WatchesCreatedSubdirectories() throws Exception {
+        watcher.watchTree(directory, Integer.MAX_VALUE);
+        Path created = directory.resolve("sub/created");
+        Files.createDirectory(created);
+        assertTrue(awaitChange(created));
+        Path script = created.resolve("script.py");
+        Files.write(script, Arrays.asList("# @begin script", "# @end script"));
+        assertTrue(awaitChange(script));
+    }
+
+    public void testWatchTree_DepthLimitsSubdirectoriesWatched() throws Exception {
+        watcher.watchTree(directory, 1);
+        Files.write(directory.resolve("sub/deep/script.py"), Arrays.asList("# @begin script", "# @end script"));
+        Path script = directory.resolve("sub/script.py");
+        Files.write(script, Arrays.asList("# @begin script", "# @end script"));
+        Set<Path> changes = awaitChanges(script);
+        assertTrue(changes.contains(script));
+        assertFalse(changes.contains(directory.resolve("sub/deep/script.py")));
+    }
+
+    /** Waits until a change of the path is reported. */
+    private boolean awaitChange(Path path) throws Exception {
+        return awaitChanges(path).contains(path);
+    }
+
+    /** Collects the changes reported until one of the path is, for up to 30 seconds. */
+    private Set<Path> awaitChanges(Path path) throws Exception {
+        Set<Path> changes = new HashSet<Path>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!changes.contains(path) && System.nanoTime() < deadline) {
+            changes.addAll(executor.submit(() -> watcher.awaitChanges())
+                                   .get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+        }
+        return changes;
+    }
+}
@@ -4,9 +4,20 @@ package org.yesworkflow.cli;
  * package as of 18Dec2014.
  */
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 
 import org.yesworkflow.Language;
 import org.yesworkflow.VersionInfo;
@@ -460,6 +471,188 @@ public class TestYesWorkflowCLI extends YesWorkflowTestCase {
          );
     }
 
+    public void testYesWorkflowCLI_Lineage_ExamplePy_Path() throws Exception {
+
+        String[] args = {"lineage", "src/main/resources/example.py",
+                         "-c", "lineage.query=path",
+                         "-c", "lineage.node=main[input_mask_file]",
+                         "-c", "lineage.target=main.simple_diagnose"};
+        ExitCode returnValue = new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream).runForArgs(args);
+
+        assertEquals(ExitCode.SUCCESS, returnValue);
+        assertEquals(
+            "main[input_mask_file]"             + EOL +
+            "main.fetch_mask"                   + EOL +
+            "main[land_water_mask]"             + EOL +
+            "main.standardize_with_mask"        + EOL +
+            "main[standardized_NEE_data]"       + EOL +
+            "main.simple_diagnose"              + EOL,
+            stdoutBuffer.toString());
+    }
+
+    public void testYesWorkflowCLI_DatabaseCreatedWhenNeeded() throws Exception {
+        String[] args = {"graph", "src/main/resources/example.py"};
+        new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream).runForArgs(args);
+        String expectedGraph = stdoutBuffer.toString();
+        ByteArrayOutputStream graph = new ByteArrayOutputStream();
+        try (YesWorkflowCLI cli = new YesWorkflowCLI(new PrintStream(graph), stderrStream)) {
+            assertEquals(ExitCode.SUCCESS, cli.runForArgs(new String[] {"noop"}));
+            assertEquals(ExitCode.SUCCESS, cli.runForArgs(args));
+        }
+        assertEquals(expectedGraph, graph.toString());
+    }
+
+    public void testYesWorkflowCLI_MemoryStore_GraphMatchesDatabase() throws Exception {
+        new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream)
+            .runForArgs(new String[] {"graph", "src/main/resources/example.py"});
+        String expectedGraph = stdoutBuffer.toString();
+        ByteArrayOutputStream graph = new ByteArrayOutputStream();
+        try (YesWorkflowCLI cli = new YesWorkflowCLI(new PrintStream(graph), stderrStream)) {
+            assertEquals(ExitCode.SUCCESS, cli.runForArgs(
+                    new String[] {"graph", "src/main/resources/example.py", "-c", "db.store=memory"}));
+        }
+        assertEquals(expectedGraph, graph.toString());
+    }
+
+    public void testYesWorkflowCLI_InvalidStore() throws Exception {
+        try (YesWorkflowCLI cli = new YesWorkflowCLI(stdoutStream, stderrStream)) {
+            cli.runForArgs(new String[] {"extract", "src/main/resources/example.py", "-c", "db.store=disk"});
+        }
+        assertEquals(
+            ""                                                                          + EOL +
+            "ERROR: Value of db.store must be h2, sqlite or memory: disk"               + EOL +
+            ""                                                                          + EOL +
+            "Use the -h option to display help for the YW command-line interface."      + EOL,
+            stderrBuffer.toString());
+    }
+
+    public void testYesWorkflowCLI_Watch_RebuildsGraphWhenSourceChanges() throws Exception {
+
+        Path directory = getTestDirectory("TestYesWorkflowCLI_Watch");
+        Path script = directory.resolve("script.py");
+        Path otherScript = directory.resolve("other.py");
+        Path dotFile = directory.resolve("script.gv");
+        Files.write(script, Arrays.asList("# @begin first", "# @in x", "# @out y", "# @end first"));
+        Files.write(otherScript, Arrays.asList("# @begin helper", "# @end helper"));
+        Files.deleteIfExists(dotFile);
+
+        String[] args = {"watch", script.toString(), otherScript.toString(),
+                               "-c", "graph.dotfile=" + dotFile,
+                               "-c", "watch.limit=1"};
+        SignalledSourceWatcher sourceWatcher = new SignalledSourceWatcher();
+        final ExitCode[] exitCode = new ExitCode[1];
+        Thread watcher = startWatch(args, sourceWatcher, exitCode);
+
+        sourceWatcher.awaitRebuild();
+        assertTrue(readTextFile(dotFile.toString()).contains("first"));
+
+        Files.write(script, Arrays.asList("# @begin second", "# @in x", "# @out y", "# @end second"));
+        sourceWatcher.signal(script);
+        watcher.join();
+
+        assertEquals(ExitCode.SUCCESS, exitCode[0]);
+        assertTrue(readTextFile(dotFile.toString()).contains("second"));
+        String[] messages = stderrBuffer.toString().split(EOL);
+        assertTrue(messages[0].startsWith("Rebuilt graph from 2 source files (2 lexed) in "));
+        assertEquals("Watching 2 source files for changes.", messages[1]);
+        assertTrue(messages[2].startsWith("Rebuilt graph from 2 source files (1 lexed) in "));
+    }
+
+    public void testYesWorkflowCLI_Watch_ErrorsInRebuildDoNotEndWatch() throws Exception {
+
+        Path directory = getTestDirectory("TestYesWorkflowCLI_Watch_Errors");
+        Path script = directory.resolve("script.py");
+        Path dotFile = directory.resolve("script.gv");
+        Files.write(script, Arrays.asList("# @begin first", "# @in x", "# @out y", "# @end first"));
+        Files.deleteIfExists(dotFile);
+
+        String[] args = {"watch", script.toString(),
+                               "-c", "graph.dotfile=" + dotFile,
+                               "-c", "watch.limit=3"};
+        SignalledSourceWatcher sourceWatcher = new SignalledSourceWatcher();
+        final ExitCode[] exitCode = new ExitCode[1];
+        Thread watcher = startWatch(args, sourceWatcher, exitCode);
+
+        sourceWatcher.awaitRebuild();
+        assertTrue(readTextFile(dotFile.toString()).contains("first"));
+
+        Files.write(script, Arrays.asList("# @as x", "# @begin first", "# @end first"));
+        sourceWatcher.signal(script);
+        sourceWatcher.awaitRebuild();
+
+        Files.write(script, Arrays.asList("# @beginx first", "# @end first"));
+        sourceWatcher.signal(script);
+        sourceWatcher.awaitRebuild();
+
+        Files.write(script, Arrays.asList("# @begin second", "# @in x", "# @out y", "# @end second"));
+        sourceWatcher.signal(script);
+        watcher.join();
+
+        assertEquals(ExitCode.SUCCESS, exitCode[0]);
+        assertTrue(readTextFile(dotFile.toString()).contains("second"));
+        String[] messages = stderrBuffer.toString().split(EOL);
+        assertEquals(7, messages.length);
+        assertTrue(messages[0].startsWith("Rebuilt graph from 1 source files (1 lexed) in "));
+        assertEquals("Watching 1 source files for changes.", messages[1]);
+        assertEquals("ERROR: Qualification annotation found before primary annotation.", messages[2]);
+        assertEquals("******************* YESWORKFLOW MARKUP ERRORS **************************", messages[3]);
+        assertEquals("Unrecognized keyword @beginx on line 1", messages[4]);
+        assertEquals("------------------------------------------------------------------------", messages[5]);
+        assertTrue(messages[6].startsWith("Rebuilt graph from 1 source files (1 lexed) in "));
+    }
+
+    public void testYesWorkflowCLI_Watch_InvalidDebounce() throws Exception {
+        new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream)
+            .runForArgs(new String[] {"watch", "src/main/resources/example.py", "-c", "watch.debounce=soon"});
+        assertEquals(
+            ""                                                                          + EOL +
+            "ERROR: Value of watch.debounce must be a non-negative integer: soon"        + EOL +
+            ""                                                                          + EOL +
+            "Use the -h option to display help for the YW command-line interface."      + EOL,
+            stderrBuffer.toString());
+    }
+
+    private Thread startWatch(String[] args, SourceWatcher sourceWatcher, ExitCode[] exitCode) {
+        Thread watcher = new Thread(() -> {
+            try {
+                exitCode[0] = new YesWorkflowCLI(this.ywdb, stdoutStream, stderrStream)
+                                  .sourceWatcher(sourceWatcher)
+                                  .runForArgs(args);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        watcher.start();
+        return watcher;
+    }
+
+    /** SourceWatcher reporting the changes signalled by a test instead of those of the file system. */
+    private static class SignalledSourceWatcher extends SourceWatcher {
+
+        private final BlockingQueue<Set<Path>> changes = new LinkedBlockingQueue<Set<Path>>();
+        private final Semaphore rebuilds = new Semaphore(0);
+
+        SignalledSourceWatcher() throws IOException {
+            super(0);
+        }
+
+        /** Reports a change of the file to the watch. */
+        void signal(Path file) {
+            changes.add(Collections.singleton(file.toAbsolutePath().normalize()));
+        }
+
+        /** Waits until the watch has rebuilt the graph and waits for changes. */
+        void awaitRebuild() throws InterruptedException {
+            rebuilds.acquire();
+        }
+
+        @Override
+        Set<Path> awaitChanges() throws InterruptedException {
+            rebuilds.release();
+            return changes.take();
+        }
+    }
+
     private static class MockExtractor implements Extractor {
 
         public boolean extracted = false;
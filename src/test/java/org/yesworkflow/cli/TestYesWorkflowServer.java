@@ -0,0 +1,219 @@
+package org.yesworkflow.cli;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.db.YesWorkflowDB;
+
+public class TestYesWorkflowServer extends YesWorkflowTestCase {
+
+    private YesWorkflowServer server;
+    private YesWorkflowClient client;
+    private Path currentDirectory;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        server = new YesWorkflowServer(0, 4, null).start();
+        client = new YesWorkflowClient(server.getPort());
+        currentDirectory = Paths.get("").toAbsolutePath();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        server.stop(10000);
+    }
+
+    public void testRun_OutputMatchesCLI() throws Exception {
+
+        String[] args = {"graph", "src/main/resources/example.py", "-c", "graph.view=combined"};
+        new YesWorkflowCLI(YesWorkflowDB.createInMemoryDB(), stdoutStream, stderrStream).runForArgs(args);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(ExitCode.SUCCESS.value(), client.run(currentDirectory, args, out, err));
+        assertEquals(stdoutBuffer.toString(), out.toString());
+        assertEquals(stderrBuffer.toString(), err.toString());
+    }
+
+    public void testRun_UsageErrorReportedWithExitCode() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(ExitCode.CLI_USAGE_ERROR.value(), client.run(currentDirectory, new String[] {"draw"}, out, err));
+        assertEquals("", out.toString());
+        assertEquals(
+            ""                                                                          + EOL +
+            "ERROR: Unrecognized YW command: draw"                                      + EOL +
+            ""                                                                          + EOL +
+            "Use the -h option to display help for the YW command-line interface."      + EOL,
+            err.toString());
+    }
+
+    public void testRun_PathsResolvedAgainstClientWorkingDirectory() throws Exception {
+
+        Path directory = getTestDirectory("TestYesWorkflowServer_Paths");
+        Files.write(directory.resolve("script.py"), Arrays.asList("# @begin script", "# @in x", "# @out y", "# @end script"));
+        Files.write(directory.resolve("yw.properties"), Arrays.asList("graph.dotfile = script.gv"));
+        Files.deleteIfExists(directory.resolve("script.gv"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(ExitCode.SUCCESS.value(), client.run(directory, new String[] {"graph", "script.py"}, out, err));
+        assertEquals("", err.toString());
+        assertTrue(readTextFile(directory.resolve("script.gv").toString()).contains("script"));
+
+        assertEquals(ExitCode.CLI_USAGE_ERROR.value(), client.run(directory, new String[] {"extract", "-"}, out, err));
+        assertTrue(err.toString().contains("ERROR: Sources cannot be read from standard input when run by a YesWorkflow server"));
+    }
+
+    public void testRun_RequestWithoutSourcesRejected() throws Exception {
+
+        Path directory = getTestDirectory("TestYesWorkflowServer_NoSources");
+        Files.deleteIfExists(directory.resolve("yw.properties"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(ExitCode.CLI_USAGE_ERROR.value(), client.run(directory, new String[] {"graph"}, out, err));
+        assertEquals("", out.toString());
+        assertEquals(
+            ""                                                                          + EOL +
+            "ERROR: Sources must be given when run by a YesWorkflow server"             + EOL +
+            ""                                                                          + EOL +
+            "Use the -h option to display help for the YW command-line interface."      + EOL,
+            err.toString());
+
+        err.reset();
+        assertEquals(ExitCode.CLI_USAGE_ERROR.value(),
+                     client.run(directory, new String[] {"extract", "-c", "extract.sources="}, out, err));
+        assertTrue(err.toString().contains("ERROR: Sources must be given when run by a YesWorkflow server"));
+    }
+
+    public void testRun_ServeRequestRejected() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        String[] args = {"serve", "-c", "serve.port=0", "-c", "serve.outputdir=/"};
+        assertEquals(ExitCode.CLI_USAGE_ERROR.value(), client.run(currentDirectory, args, out, err));
+        assertEquals("", out.toString());
+        assertEquals(
+            ""                                                                          + EOL +
+            "ERROR: Command serve cannot be run by a YesWorkflow server"                + EOL +
+            ""                                                                          + EOL +
+            "Use the -h option to display help for the YW command-line interface."      + EOL,
+            err.toString());
+    }
+
+    public void testRun_WatchRequestRejected() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        String[] args = {"watch", "src/main/resources/example.py"};
+        assertEquals(ExitCode.CLI_USAGE_ERROR.value(), client.run(currentDirectory, args, out, err));
+        assertEquals("", out.toString());
+        assertTrue(err.toString().contains("ERROR: Command watch cannot be run by a YesWorkflow server"));
+    }
+
+    public void testRun_OutputFileOutsideOutputDirectoryRejected() throws Exception {
+
+        Path outside = Files.createTempDirectory("yw-server-output").resolve("script.gv");
+        String[] args = {"graph", "src/main/resources/example.py", "-c", "graph.dotfile=" + outside};
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(ExitCode.CLI_USAGE_ERROR.value(), client.run(currentDirectory, args, out, err));
+        assertTrue(err.toString().contains("ERROR: Value of graph.dotfile must be a path in the server output directory " +
+                                           currentDirectory + ": " + outside));
+        assertFalse(Files.exists(outside));
+
+        err.reset();
+        args = new String[] {"graph", "src/main/resources/example.py", "-c", "graph.dotfile=../script.gv"};
+        assertEquals(ExitCode.CLI_USAGE_ERROR.value(), client.run(currentDirectory, args, out, err));
+        assertTrue(err.toString().contains("ERROR: Value of graph.dotfile must be a path in the server output directory"));
+    }
+
+    public void testRun_OutputFileThroughLinkOutOfOutputDirectoryRejected() throws Exception {
+
+        Path directory = getTestDirectory("TestYesWorkflowServer_OutputLink");
+        Path outside = Files.createTempDirectory("yw-server-output");
+        Path link = directory.resolve("link");
+        Files.deleteIfExists(link);
+        Files.createSymbolicLink(link, outside);
+        String[] args = {"graph", "src/main/resources/example.py", "-c", "graph.dotfile=" + link.resolve("new/script.gv")};
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(ExitCode.CLI_USAGE_ERROR.value(), client.run(currentDirectory, args, out, err));
+        assertTrue(err.toString().contains("ERROR: Value of graph.dotfile must be a path in the server output directory"));
+        assertFalse(Files.exists(outside.resolve("new")));
+
+        err.reset();
+        args = new String[] {"graph", "src/main/resources/example.py", "-c", "graph.dotfile=" + directory.resolve("script.gv")};
+        assertEquals(ExitCode.SUCCESS.value(), client.run(currentDirectory, args, out, err));
+        assertEquals("", err.toString());
+    }
+
+    public void testRun_RequestsFromWebPagesRefused() throws Exception {
+        assertEquals("HTTP/1.1 403 Forbidden", statusLine("Host: 127.0.0.1:" + server.getPort(), "Origin: http://example.com"));
+        assertEquals("HTTP/1.1 403 Forbidden", statusLine("Host: example.com:" + server.getPort()));
+        assertEquals("HTTP/1.1 403 Forbidden", statusLine());
+        assertEquals("HTTP/1.1 400 Bad Request", statusLine("Host: 127.0.0.1:" + server.getPort()));
+        assertEquals("HTTP/1.1 400 Bad Request", statusLine("Host: localhost:" + server.getPort()));
+    }
+
+    /** Sends a POST with an empty body and the given headers, and returns the status line of the response. */
+    private String statusLine(String... headers) throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            StringBuilder request = new StringBuilder("POST " + YesWorkflowServer.RUN_PATH + " HTTP/1.1\r\n");
+            for (String header : headers) {
+                request.append(header).append("\r\n");
+            }
+            request.append("Content-Length: 0\r\nConnection: close\r\n\r\n");
+            socket.getOutputStream().write(request.toString().getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+            return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+        }
+    }
+
+    public void testRun_ConcurrentRequests() throws Exception {
+
+        final String[] args = {"graph", "src/main/resources/example.py"};
+        new YesWorkflowCLI(YesWorkflowDB.createInMemoryDB(), stdoutStream, stderrStream).runForArgs(args);
+        String expected = stdoutBuffer.toString();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 16; ++i) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        int exitCode = client.run(currentDirectory, args, out, new ByteArrayOutputStream());
+                        return exitCode + ":" + out.toString();
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                assertEquals("0:" + expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.yesworkflow.db;
+
+import java.sql.SQLException;
+
+import static org.yesworkflow.db.Column.*;
+
+import org.yesworkflow.YesWorkflowTestCase;
+
+@SuppressWarnings("unchecked")
+public class TestBatchInserter extends YesWorkflowTestCase {
+
+    private YesWorkflowDB rowByRowDB;
+    private YesWorkflowDB batchedDB;
+
+    @Override
+    public void tearDown() throws SQLException {
+        if (rowByRowDB != null) rowByRowDB.close();
+        if (batchedDB != null) batchedDB.close();
+    }
+
+    private void insertRowByRow(YesWorkflowDB ywdb, int lineCount) throws SQLException {
+        Long sourceId = ywdb.insertSource("path1");
+        for (long line = 1; line <= lineCount; ++line) {
+            ywdb.insertSourceLine(sourceId, line, "# @in x" + line);
+            Long commentId = ywdb.insertComment(sourceId, line, 1L, "@in x" + line);
+            ywdb.insertAnnotation(null, commentId, 1L, "IN", "@in", "x" + line, null);
+            ywdb.insertAnnotation(line, commentId, 2L, "AS", "@as", "y" + line, "description");
+        }
+    }
+
+    private void insertBatched(YesWorkflowDB ywdb, int lineCount, int batchSize) throws SQLException {
+        Long sourceId = ywdb.insertSource("path1");
+        try (BatchInserter inserter = new BatchInserter(ywdb, batchSize)) {
+            for (long line = 1; line <= lineCount; ++line) {
+                inserter.insertSourceLine(sourceId, line, "# @in x" + line);
+                Long commentId = inserter.insertComment(sourceId, line, 1L, "@in x" + line);
+                inserter.insertAnnotation(null, commentId, 1L, "IN", "@in", "x" + line, null);
+                inserter.insertAnnotation(line, commentId, 2L, "AS", "@as", "y" + line, "description");
+            }
+        }
+    }
+
+    private String dumpTables(YesWorkflowDB ywdb) {
+        return ywdb.jooq().select().from(Table.SOURCE_LINE).orderBy(ID).fetch().toString() +
+               ywdb.jooq().select().from(Table.COMMENT).orderBy(ID).fetch().toString() +
+               ywdb.jooq().select().from(Table.ANNOTATION).orderBy(ID).fetch().toString();
+    }
+
+    public void testBatchedInsert_MatchesRowByRow_H2() throws Exception {
+        rowByRowDB = YesWorkflowH2DB.createInMemoryDB();
+        batchedDB = YesWorkflowH2DB.createInMemoryDB();
+        insertRowByRow(rowByRowDB, 25);
+        insertBatched(batchedDB, 25, 7);
+        assertEquals(dumpTables(rowByRowDB), dumpTables(batchedDB));
+    }
+
+    public void testBatchedInsert_MatchesRowByRow_SQLite() throws Exception {
+        rowByRowDB = YesWorkflowSQLiteDB.createInMemoryDB();
+        batchedDB = YesWorkflowSQLiteDB.createInMemoryDB();
+        insertRowByRow(rowByRowDB, 25);
+        insertBatched(batchedDB, 25, 7);
+        assertEquals(dumpTables(rowByRowDB), dumpTables(batchedDB));
+    }
+
+    public void testBatchedInsert_ReturnsSequentialIds() throws Exception {
+        batchedDB = YesWorkflowDB.createInMemoryDB();
+        Long sourceId = batchedDB.insertSource("path1");
+        try (BatchInserter inserter = new BatchInserter(batchedDB, 2)) {
+            assertEquals(1L, (long)inserter.insertComment(sourceId, 1L, 1L, "one"));
+            assertEquals(2L, (long)inserter.insertComment(sourceId, 2L, 1L, "two"));
+            assertEquals(3L, (long)inserter.insertComment(sourceId, 3L, 1L, "three"));
+            assertEquals(2, batchedDB.getRowCount(Table.COMMENT));
+        }
+        assertEquals(3, batchedDB.getRowCount(Table.COMMENT));
+    }
+
+    public void testBatchedInsert_ContinuesAfterRowByRowInserts() throws Exception {
+        batchedDB = YesWorkflowDB.createInMemoryDB();
+        Long sourceId = batchedDB.insertSource("path1");
+        assertEquals(1L, (long)batchedDB.insertComment(sourceId, 1L, 1L, "one"));
+        try (BatchInserter inserter = new BatchInserter(batchedDB, 10)) {
+            assertEquals(2L, (long)inserter.insertComment(sourceId, 2L, 1L, "two"));
+            inserter.flush();
+            assertEquals(3L, (long)inserter.insertComment(sourceId, 3L, 1L, "three"));
+        }
+        assertEquals(4L, (long)batchedDB.insertComment(sourceId, 4L, 1L, "four"));
+    }
+
+    public void testBatchSize_Zero() throws Exception {
+        batchedDB = YesWorkflowDB.createInMemoryDB();
+        try {
+            new BatchInserter(batchedDB, 0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Batch size must be at least 1: 0", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.yesworkflow.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.extract.SourceLineFetcher;
+
+public class TestYWMemoryStore extends YesWorkflowTestCase {
+
+    private static final List<String> SOURCES = Arrays.asList(
+            "src/main/resources/example.py",
+            "examples/simulate_data_collection/simulate_data_collection.py",
+            "incoming/DroughtTimeScale_Markup.m"
+    );
+
+    private YWStore databaseStore;
+    private YWStore memoryStore;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        databaseStore = YesWorkflowDB.createInMemoryDB();
+        memoryStore = new YWMemoryStore();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        databaseStore.close();
+        memoryStore.close();
+    }
+
+    private DefaultExtractor extract(YWStore store, String sourceLines, int parallelism) throws Exception {
+        DefaultExtractor extractor = new DefaultExtractor(store, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", SOURCES)
+                 .configure("sourcelines", sourceLines)
+                 .configure("parallelism", parallelism)
+                 .extract();
+        return extractor;
+    }
+
+    private String dumpExtraction(YWStore store, DefaultExtractor extractor) throws Exception {
+        return store.getSourcePaths().toString() +
+               DefaultExtractor.commentsAsString(store) +
+               extractor.getAnnotations().toString() +
+               extractor.getFacts().toString();
+    }
+
+    private List<String> commentsInSourceOrder(YWStore store) throws Exception {
+        List<String> comments = new ArrayList<String>();
+        store.readCommentsInSourceOrder(7, (id, sourceId, lineNumber, rankInLine, commentText) ->
+            comments.add(id + ":" + sourceId + ":" + lineNumber + ":" + rankInLine + ":" + commentText));
+        return comments;
+    }
+
+    public void testExtract_MatchesDatabase() throws Exception {
+        DefaultExtractor databaseExtractor = extract(databaseStore, "full", 1);
+        DefaultExtractor memoryExtractor = extract(memoryStore, "full", 1);
+        assertEquals(dumpExtraction(databaseStore, databaseExtractor),
+                     dumpExtraction(memoryStore, memoryExtractor));
+        assertEquals(databaseStore.getAnnotationCount(), memoryStore.getAnnotationCount());
+        assertEquals(databaseStore.getLastAnnotationId(), memoryStore.getLastAnnotationId());
+    }
+
+    public void testExtract_MatchesSQLite() throws Exception {
+        try (YWStore sqliteStore = YesWorkflowSQLiteDB.createInMemoryDB()) {
+            DefaultExtractor sqliteExtractor = extract(sqliteStore, "full", 1);
+            DefaultExtractor memoryExtractor = extract(memoryStore, "full", 1);
+            assertEquals(dumpExtraction(sqliteStore, sqliteExtractor),
+                         dumpExtraction(memoryStore, memoryExtractor));
+        }
+    }
+
+    public void testExtract_Parallel_MatchesDatabase() throws Exception {
+        DefaultExtractor databaseExtractor = extract(databaseStore, "full", 1);
+        DefaultExtractor memoryExtractor = extract(memoryStore, "full", 4);
+        assertEquals(dumpExtraction(databaseStore, databaseExtractor),
+                     dumpExtraction(memoryStore, memoryExtractor));
+    }
+
+    public void testExtract_SourceLines_MatchDatabase() throws Exception {
+        SourceLineFetcher databaseLines = extract(databaseStore, "full", 1).getSourceLines();
+        SourceLineFetcher memoryLines = extract(memoryStore, "offsets", 1).getSourceLines();
+        for (long sourceId = 1; sourceId <= SOURCES.size(); ++sourceId) {
+            for (long lineNumber = 1; lineNumber <= 60; ++lineNumber) {
+                assertEquals(databaseLines.getLineText(sourceId, lineNumber),
+                             memoryLines.getLineText(sourceId, lineNumber));
+            }
+        }
+        assertNull(memoryLines.getLineText(SOURCES.size() + 1L, 1L));
+    }
+
+    public void testReadCommentsInSourceOrder_CommentsInsertedOutOfOrder() throws Exception {
+        for (YWStore store : Arrays.asList(databaseStore, memoryStore)) {
+            Long first = store.insertSource("first");
+            Long second = store.insertSource("second");
+            try (RowInserter inserter = store.rowInserter(3)) {
+                inserter.insertComment(second, 2L, 1L, "@out y");
+                inserter.insertComment(first, 5L, 2L, "@end b");
+                inserter.insertComment(first, 5L, 1L, "@begin b");
+                inserter.insertComment(second, 1L, 1L, "@in x");
+                inserter.insertComment(first, 1L, 1L, "@begin a");
+            }
+        }
+        assertEquals(commentsInSourceOrder(databaseStore), commentsInSourceOrder(memoryStore));
+        assertEquals(Arrays.asList("5:1:1:1:@begin a", "3:1:5:1:@begin b", "2:1:5:2:@end b",
+                                   "4:2:1:1:@in x", "1:2:2:1:@out y"),
+                     commentsInSourceOrder(memoryStore));
+    }
+
+    public void testGetSourceLine_LinesInsertedOutOfOrder() throws Exception {
+        Long first = memoryStore.insertSource("first");
+        Long second = memoryStore.insertSource(null);
+        try (RowInserter inserter = memoryStore.rowInserter(1)) {
+            inserter.insertSourceLine(second, 1L, "b1");
+            inserter.insertSourceLineOffset(first, 2L, 10L, 4L);
+            inserter.insertSourceLine(first, 1L, "a1");
+            inserter.insertSourceLine(second, 2L, null);
+        }
+        assertEquals("a1", memoryStore.getSourceLine(first, 1L).text);
+        assertNull(memoryStore.getSourceLine(first, 2L).text);
+        assertEquals(Long.valueOf(10L), memoryStore.getSourceLine(first, 2L).offset);
+        assertEquals(Long.valueOf(4L), memoryStore.getSourceLine(first, 2L).length);
+        assertEquals("first", memoryStore.getSourceLine(first, 2L).path);
+        assertEquals("b1", memoryStore.getSourceLine(second, 1L).text);
+        assertNull(memoryStore.getSourceLine(second, 1L).path);
+        assertNull(memoryStore.getSourceLine(second, 2L).text);
+        assertNull(memoryStore.getSourceLine(second, 2L).offset);
+        assertNull(memoryStore.getSourceLine(first, 3L));
+    }
+
+    public void testClear_RestartsIds() throws Exception {
+        extract(memoryStore, "full", 1);
+        memoryStore.clear();
+        assertEquals(0, memoryStore.getAnnotationCount());
+        assertNull(memoryStore.getLastAnnotationId());
+        assertEquals("", DefaultExtractor.commentsAsString(memoryStore));
+        assertEquals(Long.valueOf(1L), memoryStore.insertSource("path"));
+        try (ModelInserter inserter = memoryStore.modelInserter()) {
+            assertEquals(1L, inserter.firstProgramBlockId());
+            assertEquals(1L, inserter.firstDataId());
+        }
+    }
+}
@@ -79,16 +79,6 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
         programBlockId[2] = ywdb.insertProgramBlock(null, annotationId[3], annotationId[4], "prog2", "prog2", false, false);
     }
     
-    private void insertDefaultProgramBlocks() throws SQLException {
-        programBlockId[1] = ywdb.insertDefaultProgramBlock(null);
-        programBlockId[2] = ywdb.insertDefaultProgramBlock(null);
-    }
-
-    private void updateProgramBlocks() throws SQLException {
-         ywdb.updateProgramBlock(programBlockId[1], annotationId[1], annotationId[2], "prog1", "prog1", false, false);
-         ywdb.updateProgramBlock(programBlockId[2], annotationId[3], annotationId[4], "prog2", "prog2", false, false);
-    }
-
     public void testCreateDBTables() throws Exception {
         assertTrue(ywdb.hasTable(Table.SOURCE));
     }
@@ -99,7 +89,7 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
         insertSources();
         assertEquals(3, ywdb.getRowCount(Table.SOURCE));
         
-        Result r = ywdb.jooq.select(ID, PATH)
+        Result r = ywdb.jooq().select(ID, PATH)
                             .from(Table.SOURCE)
                             .fetch();
         
@@ -114,6 +104,15 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
             FileIO.localizeLineEndings(r.toString()));
     }
     
+    public void testClear() throws Exception {
+        insertSources();
+        insertSourceLines();
+        ywdb.clear();
+        assertEquals(0, ywdb.getRowCount(Table.SOURCE));
+        assertEquals(0, ywdb.getRowCount(Table.SOURCE_LINE));
+        assertEquals(Long.valueOf(1), ywdb.insertSource("path4"));
+    }
+
     @SuppressWarnings("rawtypes")
     public void testInsertSourceLine() throws Exception {
         
@@ -122,7 +121,7 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
         
         assertEquals(4, ywdb.getRowCount(Table.SOURCE_LINE));
         
-        Result r = ywdb.jooq.select(ID, SOURCE_ID, LINE_NUMBER, LINE_TEXT)
+        Result r = ywdb.jooq().select(ID, SOURCE_ID, LINE_NUMBER, LINE_TEXT)
                             .from(Table.SOURCE_LINE)
                             .fetch();
         
@@ -137,7 +136,7 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
             "+----+------+-----------+--------------+",
             FileIO.localizeLineEndings(r.toString()));
         
-        Result r2 = ywdb.jooq.select(SOURCE_LINE.ID, SOURCE.PATH, LINE_NUMBER, LINE_TEXT)
+        Result r2 = ywdb.jooq().select(SOURCE_LINE.ID, SOURCE.PATH, LINE_NUMBER, LINE_TEXT)
                              .from(Table.SOURCE_LINE)
                              .join(Table.SOURCE).on(SOURCE_LINE.SOURCE_ID.equal(SOURCE.ID))
                              .fetch();
@@ -162,7 +161,7 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
         
         assertEquals(4, ywdb.getRowCount(Table.COMMENT));
         
-        Result r1 = ywdb.jooq.select(ID, SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+        Result r1 = ywdb.jooq().select(ID, SOURCE_ID, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
                              .from(Table.COMMENT)
                              .fetch();
         
@@ -177,7 +176,7 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
             "+----+------+-----------+------------+------------+",
             FileIO.localizeLineEndings(r1.toString()));
 
-        Result r2 = ywdb.jooq.select(COMMENT.ID, PATH, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
+        Result r2 = ywdb.jooq().select(COMMENT.ID, PATH, LINE_NUMBER, RANK_IN_LINE, COMMENT_TEXT)
                              .from(Table.COMMENT)
                              .join(Table.SOURCE).on(SOURCE_ID.equal(SOURCE.ID))
                              .fetch();
@@ -203,7 +202,7 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
         
         assertEquals(4, ywdb.getRowCount(Table.ANNOTATION));
         
-        Result r1 = ywdb.jooq.select(ID, QUALIFIES, COMMENT_ID, RANK_IN_COMMENT, TAG, KEYWORD, VALUE, DESCRIPTION)
+        Result r1 = ywdb.jooq().select(ID, QUALIFIES, COMMENT_ID, RANK_IN_COMMENT, TAG, KEYWORD, VALUE, DESCRIPTION)
                              .from(Table.ANNOTATION)
                              .fetch();
 
@@ -218,7 +217,7 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
             "+----+---------+-------+---------------+-----+-------+-----+-----------+",
             FileIO.localizeLineEndings(r1.toString()));
     
-        Result r2 = ywdb.jooq.select(ANNOTATION.ID, QUALIFIES, SOURCE.PATH, LINE_NUMBER, 
+        Result r2 = ywdb.jooq().select(ANNOTATION.ID, QUALIFIES, SOURCE.PATH, LINE_NUMBER, 
                                      COMMENT.RANK_IN_LINE, COMMENT.COMMENT_TEXT.as(field("comment_text")), TAG, KEYWORD, 
                                      VALUE, DESCRIPTION)
                              .from(Table.ANNOTATION)
@@ -247,7 +246,7 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
         
         assertEquals(2, ywdb.getRowCount(Table.PROGRAM_BLOCK));
         
-        Result r1 = ywdb.jooq.select(ID, IN_PROGRAM_BLOCK, BEGIN_ANNOTATION_ID, END_ANNOTATION_ID, NAME,
+        Result r1 = ywdb.jooq().select(ID, IN_PROGRAM_BLOCK, BEGIN_ANNOTATION_ID, END_ANNOTATION_ID, NAME,
                                      QUALIFIED_NAME, IS_WORKFLOW, IS_FUNCTION)
                              .from(Table.PROGRAM_BLOCK)
                              .fetch();
@@ -261,54 +260,4 @@ public class TestYesWorkflowDB extends YesWorkflowTestCase {
             "+----+----------------+----------------+--------------+-----+--------------+-----------+-----------+",
             FileIO.localizeLineEndings(r1.toString()));
     }
-    
-    @SuppressWarnings("rawtypes")
-    public void testInsertDefaultProgram() throws Exception {
-        
-        insertSources();
-        insertComments();
-        insertAnnotations();
-        insertDefaultProgramBlocks();
-        
-        assertEquals(2, ywdb.getRowCount(Table.PROGRAM_BLOCK));
-        
-        Result r1 = ywdb.jooq.select(ID, IN_PROGRAM_BLOCK, BEGIN_ANNOTATION_ID, END_ANNOTATION_ID,
-                                     NAME, QUALIFIED_NAME, IS_WORKFLOW, IS_FUNCTION)
-                             .from(Table.PROGRAM_BLOCK)
-                             .fetch();
-
-        assertEquals(
-            "+----+----------------+----------------+--------------+----+--------------+-----------+-----------+"   + EOL +
-            "|id  |in_program_block|begin_annotation|end_annotation|name|qualified_name|is_workflow|is_function|"   + EOL +
-            "+----+----------------+----------------+--------------+----+--------------+-----------+-----------+"   + EOL +
-            "|1   |{null}          |{null}          |{null}        |    |              |0          |0          |"   + EOL +
-            "|2   |{null}          |{null}          |{null}        |    |              |0          |0          |"   + EOL +
-            "+----+----------------+----------------+--------------+----+--------------+-----------+-----------+",
-            FileIO.localizeLineEndings(r1.toString()));
-    }
-    
-    public void testUpdateProgram() throws Exception {
-        
-        insertSources();
-        insertComments();
-        insertAnnotations();
-        insertDefaultProgramBlocks();
-        updateProgramBlocks();
-        
-        assertEquals(2, ywdb.getRowCount(Table.PROGRAM_BLOCK));
-        
-        Result<?> r1 = ywdb.jooq.select(ID, IN_PROGRAM_BLOCK, BEGIN_ANNOTATION_ID, END_ANNOTATION_ID, 
-                                        NAME, QUALIFIED_NAME, IS_WORKFLOW, IS_FUNCTION)
-                                .from(Table.PROGRAM_BLOCK)
-                                .fetch();
-
-        assertEquals(
-            "+----+----------------+----------------+--------------+-----+--------------+-----------+-----------+"  + EOL +
-            "|id  |in_program_block|begin_annotation|end_annotation|name |qualified_name|is_workflow|is_function|"  + EOL +
-            "+----+----------------+----------------+--------------+-----+--------------+-----------+-----------+"  + EOL +
-            "|1   |{null}          |1               |2             |prog1|prog1         |0          |0          |"  + EOL +
-            "|2   |{null}          |3               |4             |prog2|prog2         |0          |0          |"  + EOL +
-            "+----+----------------+----------------+--------------+-----+--------------+-----------+-----------+",
-            FileIO.localizeLineEndings(r1.toString()));
-    }
-}
\ No newline at end of file
+}
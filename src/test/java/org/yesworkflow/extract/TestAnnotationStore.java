@@ -0,0 +1,101 @@
+package org.yesworkflow.extract;
+
+import java.util.List;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.annotations.As;
+import org.yesworkflow.annotations.Begin;
+import org.yesworkflow.annotations.Desc;
+import org.yesworkflow.annotations.End;
+import org.yesworkflow.annotations.In;
+import org.yesworkflow.annotations.Log;
+import org.yesworkflow.annotations.Out;
+import org.yesworkflow.annotations.Qualification;
+
+public class TestAnnotationStore extends YesWorkflowTestCase {
+
+    private AnnotationStore store;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        store = new AnnotationStore();
+        Begin begin = new Begin(1L, 1L, 1L, "@begin main");
+        store.add(begin);
+        store.add(new Desc(2L, 1L, 1L, "@desc  The  main block", begin));
+        In in = new In(3L, 1L, 2L, "@IN x");
+        store.add(in);
+        store.add(new As(4L, 1L, 2L, "@as x_alias", in));
+        store.add(new In(5L, 2L, 7L, "@in x"));
+        store.add(new End(6L, 2L, 9L, "@end main"));
+    }
+
+    public void testAnnotations_FieldsRecreated() throws Exception {
+        List<Annotation> annotations = store.annotations();
+        assertEquals(6, annotations.size());
+        for (int i = 0; i < annotations.size(); ++i) {
+            assertEquals(Long.valueOf(i + 1), annotations.get(i).id);
+        }
+        Annotation in = annotations.get(2);
+        assertTrue(in instanceof In);
+        assertEquals("@IN", in.keyword);
+        assertEquals("x", in.value());
+        assertEquals("@IN x", in.comment);
+        assertEquals(Long.valueOf(2), in.lineNumber);
+        assertEquals("@IN{value=x,alias=x_alias}", in.toString());
+        assertEquals(Long.valueOf(2), annotations.get(4).sourceId);
+        assertEquals("The main block", annotations.get(1).value());
+    }
+
+    public void testAnnotations_QualificationsAttachedToPrimaryAnnotation() throws Exception {
+        List<Annotation> annotations = store.annotations();
+        Qualification desc = (Qualification) annotations.get(1);
+        assertSame(annotations.get(0), desc.primaryAnnotation);
+        assertEquals("The main block", desc.primaryAnnotation.description());
+        assertSame(annotations.get(2), ((Qualification) annotations.get(3)).primaryAnnotation);
+    }
+
+    public void testAnnotations_RecreatedAnnotationsEqualThoseAdded() throws Exception {
+        Begin begin = new Begin(1L, 1L, 1L, "@begin main");
+        Annotation recreated = store.annotations().get(0);
+        store.annotations().get(5);
+        assertNotSame(recreated, store.annotations().get(0));
+        assertEquals(recreated, store.annotations().get(0));
+        assertEquals(begin, store.annotations().get(0));
+        assertEquals(begin.hashCode(), store.annotations().get(0).hashCode());
+        assertFalse(store.annotations().get(2).equals(store.annotations().get(4)));
+        assertFalse(begin.equals(new End(1L, 1L, 1L, "@end main")));
+    }
+
+    public void testPrimaryAnnotations() throws Exception {
+        List<Annotation> primaryAnnotations = store.primaryAnnotations();
+        assertEquals(4, primaryAnnotations.size());
+        assertEquals("[@begin{value=main,description=The main block}, @IN{value=x,alias=x_alias}, " +
+                     "@in{value=x}, @end{value=main}]", primaryAnnotations.toString());
+    }
+
+    public void testDistinctStringCount_StringsStoredOnce() throws Exception {
+        // 6 keywords, the values main, The main block, x and x_alias, and 6 comments
+        assertEquals(6 + 4 + 6, store.distinctStringCount());
+    }
+
+    public void testAnnotations_GroupsWithLogsRetained() throws Exception {
+        Out out = new Out(7L, 2L, 10L, "@out y");
+        store.add(out);
+        Log log = new Log(8L, 2L, 10L, "@log wrote {y}", out);
+        store.add(log);
+        assertSame(out, store.primaryAnnotations().get(4));
+        assertSame(log, store.annotations().get(7));
+        assertEquals(1, out.logAnnotations().size());
+    }
+
+    public void testAdd_QualificationOfEarlierAnnotation() throws Exception {
+        try {
+            store.add(new As(7L, 1L, 11L, "@as y", new In(3L, 1L, 2L, "@in z")));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Qualification does not follow its primary annotation: @as y", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.yesworkflow.extract;
+
+import org.yesworkflow.YWKeywords;
+import org.yesworkflow.YWKeywords.Tag;
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.annotations.Desc;
+import org.yesworkflow.annotations.In;
+
+public class TestAnnotationTokenizer extends YesWorkflowTestCase {
+
+    private AnnotationTokenizer tokenizer;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        tokenizer = new AnnotationTokenizer(new YWKeywords());
+    }
+
+    public void testTokenize_SpansMatchFindCommentsOnLine() {
+        String comment = "  @in x @AS y  @out z  @desc ";
+        assertEquals(4, tokenizer.tokenize(comment));
+        assertEquals(2, tokenizer.offset(0));
+        assertEquals(5, tokenizer.length(0));
+        assertEquals(15, tokenizer.offset(2));
+        assertEquals(6, tokenizer.length(2));
+        for (int span = 0; span < 4; ++span) {
+            assertEquals(DefaultExtractor.findCommentsOnLine(comment, new KeywordMatcher(new YWKeywords().getKeywords())).get(span),
+                         tokenizer.text(span));
+        }
+        assertEquals(0, tokenizer.tokenize("no keywords"));
+        assertEquals(0, tokenizer.spanCount());
+    }
+
+    public void testTokenize_TagsKeywordsAndValues() {
+        assertEquals(3, tokenizer.tokenize("@BEGIN main @in x @desc"));
+        assertEquals(Tag.BEGIN, tokenizer.tag(0));
+        assertEquals("@BEGIN", tokenizer.keyword(0));
+        assertEquals("main", tokenizer.value(0));
+        assertEquals(Tag.IN, tokenizer.tag(1));
+        assertSame("@in", tokenizer.keyword(1));
+        assertEquals("x", tokenizer.value(1));
+        assertEquals(Tag.DESC, tokenizer.tag(2));
+        assertNull(tokenizer.value(2));
+        assertNull(tokenizer.description(2));
+    }
+
+    public void testTokenize_KeywordFollowedByOtherCharacters() {
+        assertEquals(1, tokenizer.tokenize("@input x"));
+        assertNull(tokenizer.tag(0));
+        assertEquals("@input", tokenizer.keyword(0));
+        assertEquals(1, tokenizer.tokenize("@in x@y.com"));
+        assertEquals("x@y.com", tokenizer.value(0));
+    }
+
+    public void testDescription_TokensSeparatedBySingleSpaces() {
+        assertEquals(2, tokenizer.tokenize("@desc A  long\tdescription @desc Already single spaced"));
+        assertEquals("A", tokenizer.value(0));
+        assertEquals("A long description", tokenizer.description(0));
+        assertEquals("Already single spaced", tokenizer.description(1));
+    }
+
+    public void testDescription_MatchesAnnotationConstructors() throws Exception {
+        String comment = "@in \t x  @desc  The\f longitude \t of  the\u000Bsite ";
+        assertEquals(2, tokenizer.tokenize(comment));
+        In expectedIn = new In(1L, 1L, 1L, tokenizer.text(0));
+        Desc expectedDesc = new Desc(2L, 1L, 1L, tokenizer.text(1), expectedIn);
+        In in = new In(1L, 1L, 1L, tokenizer.text(0), tokenizer.keyword(0), tokenizer.value(0));
+        Desc desc = new Desc(2L, 1L, 1L, tokenizer.text(1), tokenizer.keyword(1), tokenizer.description(1), in);
+        assertEquals(expectedIn.keyword, in.keyword);
+        assertEquals(expectedIn.value(), in.value());
+        assertEquals(expectedIn.comment, in.comment);
+        assertEquals(expectedDesc.keyword, desc.keyword);
+        assertEquals(expectedDesc.value(), desc.value());
+        assertEquals(expectedIn.toString(), in.toString());
+    }
+}
@@ -0,0 +1,95 @@
+package org.yesworkflow.extract;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.yesworkflow.YesWorkflowTestCase;
+
+public class TestChannelLineReader extends YesWorkflowTestCase {
+
+    private static List<String> readLines(byte[] bytes, Charset charset, int blockSize) throws Exception {
+        ChannelLineReader reader = new ChannelLineReader(
+                Channels.newChannel(new ByteArrayInputStream(bytes)), charset, blockSize);
+        List<String> lines = new ArrayList<String>();
+        while (reader.nextLine()) {
+            lines.add(new String(reader.lineChars(), reader.lineStart(), reader.lineEnd() - reader.lineStart()));
+        }
+        return lines;
+    }
+
+    private static List<String> readLinesWithBufferedReader(String text) throws Exception {
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) lines.add(line);
+        return lines;
+    }
+
+    private static void assertSameLinesAsBufferedReader(String text) throws Exception {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for (int blockSize : new int[] { 1, 2, 3, 5, 16, ChannelLineReader.DEFAULT_BLOCK_SIZE }) {
+            assertEquals("block size " + blockSize, readLinesWithBufferedReader(text),
+                         readLines(bytes, StandardCharsets.UTF_8, blockSize));
+        }
+    }
+
+    public void testLineTerminators() throws Exception {
+        assertSameLinesAsBufferedReader("");
+        assertSameLinesAsBufferedReader("one line");
+        assertSameLinesAsBufferedReader("one line\n");
+        assertSameLinesAsBufferedReader("\n\n\n");
+        assertSameLinesAsBufferedReader("unix\nlines\n");
+        assertSameLinesAsBufferedReader("windows\r\nlines\r\n");
+        assertSameLinesAsBufferedReader("old mac\rlines\r");
+        assertSameLinesAsBufferedReader("mixed\r\n\r\rlines\n\r\nend");
+        assertSameLinesAsBufferedReader("\r\n\n\r");
+    }
+
+    public void testLongLinesAndMultibyteCharacters() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; ++i) text.append("# @in café_").append(i).append(" 数据 😀 ");
+        text.append("\r\n# @out résumé\r\n");
+        assertSameLinesAsBufferedReader(text.toString());
+    }
+
+    public void testExplicitCharset() throws Exception {
+        byte[] latin1 = "# @in café\n".getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals("[# @in café]", readLines(latin1, StandardCharsets.ISO_8859_1, 4).toString());
+        assertEquals("[# @in caf�]", readLines(latin1, StandardCharsets.UTF_8, 4).toString());
+    }
+
+    private static void assertByteOffsetsLocateLines(String text, Charset charset) throws Exception {
+        byte[] bytes = text.getBytes(charset);
+        for (int blockSize : new int[] { 1, 2, 3, 5, 16, ChannelLineReader.DEFAULT_BLOCK_SIZE }) {
+            ChannelLineReader reader = new ChannelLineReader(
+                    Channels.newChannel(new ByteArrayInputStream(bytes)), charset, blockSize, true);
+            while (reader.nextLine()) {
+                String line = new String(reader.lineChars(), reader.lineStart(), reader.lineEnd() - reader.lineStart());
+                assertEquals(line, new String(bytes, (int) reader.lineByteOffset(), reader.lineByteLength(), charset));
+            }
+        }
+    }
+
+    public void testByteOffsets() throws Exception {
+        String text = "# @begin café\r\n\r\n  x = '数据 😀'\r\r# @out résumé\n\n# @end café";
+        assertByteOffsetsLocateLines(text, StandardCharsets.UTF_8);
+        assertByteOffsetsLocateLines(text, StandardCharsets.UTF_16LE);
+        assertByteOffsetsLocateLines(text.replace("数据 😀", "data"), StandardCharsets.ISO_8859_1);
+        assertByteOffsetsLocateLines(text + "\r\n", StandardCharsets.UTF_8);
+    }
+
+    public void testByteOffsets_NotTrackedByDefault() throws Exception {
+        ChannelLineReader reader = new ChannelLineReader(
+                Channels.newChannel(new ByteArrayInputStream("a\nb\n".getBytes(StandardCharsets.UTF_8))),
+                StandardCharsets.UTF_8);
+        assertTrue(reader.nextLine());
+        assertEquals(-1, reader.lineByteOffset());
+        assertEquals(-1, reader.lineByteLength());
+    }
+}
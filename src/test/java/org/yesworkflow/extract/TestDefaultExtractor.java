@@ -4,6 +4,10 @@ import static org.yesworkflow.db.Column.*;
 
 import java.io.BufferedReader;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.jooq.Record;
@@ -15,10 +19,13 @@ import org.yesworkflow.annotations.Begin;
 import org.yesworkflow.annotations.End;
 import org.yesworkflow.annotations.In;
 import org.yesworkflow.annotations.Out;
+import org.yesworkflow.db.BatchInserter;
 import org.yesworkflow.db.Table;
 import org.yesworkflow.db.YesWorkflowDB;
 import org.yesworkflow.db.Column.ANNOTATION;
 import org.yesworkflow.db.Column.SOURCE;
+import org.yesworkflow.exceptions.YWMarkupException;
+import org.yesworkflow.exceptions.YWToolUsageException;
 import org.yesworkflow.extract.DefaultExtractor;
 import org.yesworkflow.util.FileIO;
 import org.yesworkflow.YesWorkflowTestCase;
@@ -57,6 +64,22 @@ public class TestDefaultExtractor extends YesWorkflowTestCase {
                           .fetch();
     }
     
+    public void testExtract_UnrecognizedKeyword() throws Exception {
+
+        String source = "# @begin main" + EOL + "# @beginx step" + EOL + "# @end main" + EOL;
+
+        BufferedReader reader = new BufferedReader(new StringReader(source));
+
+        try {
+            extractor.configure("comment", "#")
+                     .reader(reader)
+                     .extract();
+            fail("Expected YWMarkupException");
+        } catch (YWMarkupException e) {
+            assertEquals("Unrecognized keyword @beginx on line 2", e.getMessage());
+        }
+    }
+
     public void testExtract_BlankLine() throws Exception {
         
         String source = "  " + EOL;
@@ -409,4 +432,274 @@ public class TestDefaultExtractor extends YesWorkflowTestCase {
             "+-------------+------+---------+-----------+---------------+-----+-------+-----+-----------+", 
             FileIO.localizeLineEndings(annotationJoinCommentJoinSourceFile().toString()));    
     }
-}
\ No newline at end of file
+
+    private static final List<String> MULTIPLE_SOURCES = Arrays.asList(
+            "src/main/resources/example.py",
+            "examples/simulate_data_collection/simulate_data_collection.py",
+            "instances/small/inst_s.py",
+            "instances/medium/inst_m.py",
+            "instances/large/inst_l.py",
+            "incoming/DroughtTimeScale_Markup.m",
+            "incoming/LTVTP_CAR.R"
+    );
+
+    private String extractAndDumpTables(List<String> sources, int parallelism) throws Exception {
+        return extractAndDumpTables(sources, parallelism, BatchInserter.DEFAULT_BATCH_SIZE);
+    }
+
+    private String extractAndDumpTables(List<String> sources, int parallelism, int batchSize) throws Exception {
+        YesWorkflowDB db = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor multiFileExtractor = new DefaultExtractor(db, super.stdoutStream, super.stderrStream);
+        multiFileExtractor.configure("sources", sources)
+                          .configure("parallelism", parallelism)
+                          .configure("batchsize", batchSize)
+                          .extract();
+        return db.jooq().select(ID, PATH).from(Table.SOURCE).orderBy(ID).fetch().toString() +
+               db.jooq().select().from(Table.SOURCE_LINE).orderBy(ID).fetch().toString() +
+               db.jooq().select().from(Table.COMMENT).orderBy(ID).fetch().toString() +
+               db.jooq().select().from(Table.ANNOTATION).orderBy(ID).fetch().toString() +
+               multiFileExtractor.getFacts().toString();
+    }
+
+    public void testExtract_MultipleSources_ParallelMatchesSequential() throws Exception {
+        String sequential = extractAndDumpTables(MULTIPLE_SOURCES, 1);
+        assertEquals(sequential, extractAndDumpTables(MULTIPLE_SOURCES, 4));
+        assertEquals(sequential, extractAndDumpTables(MULTIPLE_SOURCES, 16));
+    }
+
+    public void testExtract_MultipleSources_BatchSizeDoesNotChangeRows() throws Exception {
+        String rowByRow = extractAndDumpTables(MULTIPLE_SOURCES, 1, 1);
+        assertEquals(rowByRow, extractAndDumpTables(MULTIPLE_SOURCES, 1, 7));
+        assertEquals(rowByRow, extractAndDumpTables(MULTIPLE_SOURCES, 1, BatchInserter.DEFAULT_BATCH_SIZE));
+        assertEquals(rowByRow, extractAndDumpTables(MULTIPLE_SOURCES, 4, 7));
+    }
+
+    public void testExtract_Parallelism_MissingSourceFile() throws Exception {
+        extractor = new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", Arrays.asList("src/main/resources/example.py", "no_such_file.py"))
+                 .configure("parallelism", "2");
+        try {
+            extractor.extract();
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Input file not found: no_such_file.py", e.getMessage());
+        }
+    }
+
+    public void testConfigure_Parallelism_NotAnInteger() throws Exception {
+        try {
+            extractor.configure("parallelism", "many");
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Value of extract.parallelism must be an integer: many", e.getMessage());
+        }
+    }
+
+    public void testConfigure_BatchSize_Zero() throws Exception {
+        try {
+            extractor.configure("batchsize", 0);
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Value of extract.batchsize must be at least 1: 0", e.getMessage());
+        }
+    }
+
+    public void testExtract_Encoding() throws Exception {
+        java.nio.file.Path sourcePath = getTestDirectory("TestDefaultExtractor").resolve("latin1.py");
+        java.nio.file.Files.write(sourcePath, 
+                "# @begin café\r\n# @out résumé\r\n# @end café\r\n".getBytes("ISO-8859-1"));
+        extractor = new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", sourcePath.toString())
+                 .configure("encoding", "ISO-8859-1")
+                 .extract();
+        assertEquals("café", extractor.getAnnotations().get(0).value());
+        assertEquals("résumé", extractor.getAnnotations().get(1).value());
+    }
+
+    public void testConfigure_Encoding_Unsupported() throws Exception {
+        try {
+            extractor.configure("encoding", "no-such-charset");
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Value of extract.encoding must be a supported character encoding: no-such-charset", e.getMessage());
+        }
+    }
+
+    public void testExtract_SourceLines_None() throws Exception {
+        YesWorkflowDB fullDB = YesWorkflowDB.createInMemoryDB();
+        new DefaultExtractor(fullDB, super.stdoutStream, super.stderrStream)
+            .configure("sources", MULTIPLE_SOURCES)
+            .extract();
+        extractor = new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", MULTIPLE_SOURCES)
+                 .configure("sourcelines", "none")
+                 .extract();
+        assertEquals(0, ywdb.getRowCount(Table.SOURCE_LINE));
+        assertEquals(fullDB.jooq().select().from(Table.COMMENT).orderBy(ID).fetch().toString(),
+                     ywdb.jooq().select().from(Table.COMMENT).orderBy(ID).fetch().toString());
+        assertEquals(fullDB.jooq().select().from(Table.ANNOTATION).orderBy(ID).fetch().toString(),
+                     ywdb.jooq().select().from(Table.ANNOTATION).orderBy(ID).fetch().toString());
+        fullDB.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testExtract_SourceLines_Offsets() throws Exception {
+        YesWorkflowDB fullDB = YesWorkflowDB.createInMemoryDB();
+        new DefaultExtractor(fullDB, super.stdoutStream, super.stderrStream)
+            .configure("sources", MULTIPLE_SOURCES)
+            .extract();
+        extractor = new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", MULTIPLE_SOURCES)
+                 .configure("sourcelines", "offsets")
+                 .extract();
+        assertEquals(0, ywdb.jooq().selectCount().from(Table.SOURCE_LINE).where(LINE_TEXT.isNotNull()).fetchOne(0));
+        SourceLineFetcher sourceLines = extractor.getSourceLines();
+        Result<Record> fullLines = fullDB.jooq().select(SOURCE_ID, LINE_NUMBER, LINE_TEXT)
+                                                .from(Table.SOURCE_LINE).orderBy(ID).fetch();
+        assertEquals(fullLines.size(), ywdb.getRowCount(Table.SOURCE_LINE));
+        for (Record line : fullLines) {
+            assertEquals(line.getValue(LINE_TEXT), sourceLines.getLineText(fullDB.getLongValue(line, SOURCE_ID),
+                                                                           fullDB.getLongValue(line, LINE_NUMBER)));
+        }
+        assertEquals(fullDB.jooq().select().from(Table.ANNOTATION).orderBy(ID).fetch().toString(),
+                     ywdb.jooq().select().from(Table.ANNOTATION).orderBy(ID).fetch().toString());
+        fullDB.close();
+    }
+
+    public void testExtract_SourceLines_OffsetsWithMixedLineEndingsAndMultibyteCharacters() throws Exception {
+        java.nio.file.Path sourcePath = getTestDirectory("TestDefaultExtractor").resolve("offsets.py");
+        java.nio.file.Files.write(sourcePath,
+                "# @begin café\r\n\r\n  x = '数据 😀'\r# @out résumé\n# @end café".getBytes("UTF-8"));
+        extractor = new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", sourcePath.toString())
+                 .configure("encoding", "UTF-8")
+                 .configure("sourcelines", "offsets")
+                 .extract();
+        SourceLineFetcher sourceLines = extractor.getSourceLines();
+        assertEquals("# @begin café", sourceLines.getLineText(1L, 1L));
+        assertEquals("",               sourceLines.getLineText(1L, 2L));
+        assertEquals("  x = '数据 😀'", sourceLines.getLineText(1L, 3L));
+        assertEquals("# @out résumé",  sourceLines.getLineText(1L, 4L));
+        assertEquals("# @end café",    sourceLines.getLineText(1L, 5L));
+        assertNull(sourceLines.getLineText(1L, 6L));
+    }
+
+    public void testExtract_SourceLines_FullIsDefault() throws Exception {
+        extractor = new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", "src/main/resources/example.py").extract();
+        assertEquals(0, ywdb.jooq().selectCount().from(Table.SOURCE_LINE).where(LINE_TEXT.isNull()).fetchOne(0));
+        assertEquals("# @BEGIN main", extractor.getSourceLines().getLineText(1L, 8L));
+    }
+
+    public void testConfigure_SourceLines_Invalid() throws Exception {
+        try {
+            extractor.configure("sourcelines", "some");
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Value of extract.sourcelines must be none, offsets or full: some", e.getMessage());
+        }
+    }
+
+    public void testConfigure_ProvenanceFormat_Empty() throws Exception {
+        try {
+            extractor.configure("provenanceformat", " , ");
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Value of extract.provenanceformat must be one or more formats:  , ", e.getMessage());
+        }
+    }
+
+    public void testExtract_ProvenanceFormats_SameFile() throws Exception {
+        String provenanceFile = getTestDirectory("TestDefaultExtractor").resolve("provenance").toString();
+        extractor = new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", "src/main/resources/example.py")
+                 .configure("provenancefile", provenanceFile)
+                 .configure("provenanceformat", "turtle,xml,RDFXML");
+        try {
+            extractor.extract();
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Provenance output formats 'XML' and 'RDFXML' would both be written to " +
+                         provenanceFile + ".xml", e.getMessage());
+        }
+    }
+
+    public void testExtract_AnnotationListenersSeePrimaryAnnotationsInOrder() throws Exception {
+        final List<Annotation> first = new java.util.ArrayList<Annotation>();
+        final List<String> second = new java.util.ArrayList<String>();
+        extractor = new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", MULTIPLE_SOURCES)
+                 .configure("batchsize", 3)
+                 .addAnnotationListener(first::add)
+                 .addAnnotationListener(annotation -> second.add(annotation.description()))
+                 .extract();
+        assertEquals(extractor.getAnnotations(), first);
+        assertEquals(extractor.getAnnotations().size(), second.size());
+        for (int i = 0; i < second.size(); ++i) {
+            assertEquals(extractor.getAnnotations().get(i).toString(), first.get(i).toString());
+            assertEquals(extractor.getAnnotations().get(i).description(), second.get(i));
+        }
+    }
+
+    public void testExtract_RetainedLexedSourcesLexedAgainOnlyWhenChanged() throws Exception {
+        Path directory = getTestDirectory("TestDefaultExtractor_RetainedLexedSources");
+        Path changed = directory.resolve("changed.py");
+        Path unchanged = directory.resolve("unchanged.py");
+        Files.write(changed, Arrays.asList("# @begin first", "# @end first"));
+        Files.write(unchanged, Arrays.asList("# @begin second", "# @end second"));
+
+        extractor = new DefaultExtractor(this.ywdb, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", Arrays.asList(changed.toString(), unchanged.toString()))
+                 .retainLexedSources(true)
+                 .extract();
+        assertEquals(2, extractor.getLexedSourceCount());
+
+        ywdb.clear();
+        extractor.extract();
+        assertEquals(0, extractor.getLexedSourceCount());
+        assertEquals(Long.valueOf(1), extractor.getAnnotations().get(0).id);
+
+        Files.write(changed, Arrays.asList("# @begin renamed", "# @end renamed"));
+        ywdb.clear();
+        extractor.forgetLexedSources(Collections.singletonList(changed)).extract();
+        assertEquals(1, extractor.getLexedSourceCount());
+        assertEquals("renamed", extractor.getAnnotations().get(0).value());
+        assertEquals("second", extractor.getAnnotations().get(2).value());
+        assertEquals(4, ywdb.getRowCount(Table.ANNOTATION));
+    }
+
+    private String extractAnnotationsWithPrefilter(List<String> sources, int parallelism) throws Exception {
+        YesWorkflowDB db = YesWorkflowDB.createInMemoryDB();
+        extractor = new DefaultExtractor(db, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", sources)
+                 .configure("parallelism", parallelism)
+                 .configure("prefilter", "on")
+                 .extract();
+        return db.jooq().select(ID, PATH).from(Table.SOURCE).orderBy(ID).fetch().toString() +
+               db.jooq().select().from(Table.ANNOTATION).orderBy(ID).fetch().toString();
+    }
+
+    public void testExtract_Prefilter_SkipsSourcesWithoutKeywords() throws Exception {
+        java.nio.file.Path sourcePath = getTestDirectory("TestDefaultExtractor").resolve("no_markup.py");
+        java.nio.file.Files.write(sourcePath, ("# a comment with an e-mail address: me@example.org" + EOL +
+                                               "x = 1  # another comment" + EOL).getBytes());
+        List<String> sources = new java.util.ArrayList<String>(MULTIPLE_SOURCES);
+        sources.add(1, sourcePath.toString());
+
+        String expected = extractAnnotationsWithPrefilter(MULTIPLE_SOURCES, 1);
+        assertEquals(expected, extractAnnotationsWithPrefilter(sources, 1));
+        assertEquals(1, extractor.getSkippedSourceCount());
+        assertEquals(expected, extractAnnotationsWithPrefilter(sources, 4));
+        assertEquals(1, extractor.getSkippedSourceCount());
+        assertTrue(super.stderrBuffer.toString().contains("Prefilter skipped 1 source files without YW keywords."));
+    }
+
+    public void testConfigure_Prefilter_Invalid() throws Exception {
+        try {
+            extractor.configure("prefilter", "sometimes");
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Value of extract.prefilter must be on or off: sometimes", e.getMessage());
+        }
+    }
+}
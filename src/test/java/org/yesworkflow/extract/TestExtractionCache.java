@@ -0,0 +1,188 @@
+package org.yesworkflow.extract;
+
+import static org.yesworkflow.db.Column.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jooq.impl.DSL;
+import org.yesworkflow.Language;
+import org.yesworkflow.LanguageModel;
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.db.Table;
+import org.yesworkflow.db.YesWorkflowDB;
+
+public class TestExtractionCache extends YesWorkflowTestCase {
+
+    private Path testDirectory;
+    private Path cacheFile;
+    private Path sourceFile;
+    private LanguageModel python = new LanguageModel(Language.PYTHON);
+    private String pythonKey = ExtractionCache.lexerKey(python, StandardCharsets.UTF_8, SourceLineStorage.FULL);
+    private int lexCount;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        testDirectory = getTestDirectory("TestExtractionCache");
+        cacheFile = testDirectory.resolve("cache.db");
+        sourceFile = testDirectory.resolve("script.py");
+        Files.deleteIfExists(cacheFile);
+        Files.write(sourceFile, ("# @begin script" + EOL + "x = 1  # @out x" + EOL + "# @end script" + EOL)
+                                .getBytes(StandardCharsets.UTF_8));
+        lexCount = 0;
+    }
+
+    private ExtractedSource extract(ExtractionCache cache, String lexerKey) throws Exception {
+        return cache.extract(sourceFile, lexerKey, contents -> {
+            lexCount++;
+            return new CommentMatcher(python).lexComments(contents, StandardCharsets.UTF_8);
+        });
+    }
+
+    private static List<String> contents(ExtractedSource source) {
+        List<String> contents = new ArrayList<String>();
+        for (int i = 0; i < source.getLineCount(); ++i) {
+            contents.add(source.getLineText(i));
+        }
+        for (int i = 0; i < source.getCommentCount(); ++i) {
+            contents.add(source.getCommentLineNumber(i) + ":" + source.getCommentRank(i) + ":" + source.getCommentText(i));
+        }
+        return contents;
+    }
+
+    public void testExtract_UnchangedFileIsNotLexedAgain() throws Exception {
+        try (ExtractionCache cache = new ExtractionCache(cacheFile)) {
+            List<String> lexed = contents(extract(cache, pythonKey));
+            assertEquals(Arrays.asList("# @begin script", "x = 1  # @out x", "# @end script",
+                                       "1:1:@begin script", "2:1:@out x", "3:1:@end script"), lexed);
+            assertEquals(lexed, contents(extract(cache, pythonKey)));
+            assertEquals(1, lexCount);
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+        }
+    }
+
+    public void testExtract_CachePersistsAcrossInstances() throws Exception {
+        List<String> lexed;
+        try (ExtractionCache cache = new ExtractionCache(cacheFile)) {
+            lexed = contents(extract(cache, pythonKey));
+        }
+        try (ExtractionCache cache = new ExtractionCache(cacheFile)) {
+            assertEquals(lexed, contents(extract(cache, pythonKey)));
+            assertEquals(1, lexCount);
+        }
+    }
+
+    public void testExtract_TouchedFileWithSameContentsIsReused() throws Exception {
+        try (ExtractionCache cache = new ExtractionCache(cacheFile)) {
+            List<String> lexed = contents(extract(cache, pythonKey));
+            Files.setLastModifiedTime(sourceFile, FileTime.fromMillis(
+                    Files.getLastModifiedTime(sourceFile).toMillis() + 60000));
+            assertEquals(lexed, contents(extract(cache, pythonKey)));
+            assertEquals(lexed, contents(extract(cache, pythonKey)));
+            assertEquals(1, lexCount);
+        }
+    }
+
+    public void testExtract_ChangedFileIsLexedAgain() throws Exception {
+        try (ExtractionCache cache = new ExtractionCache(cacheFile)) {
+            extract(cache, pythonKey);
+            Files.write(sourceFile, ("# @begin other" + EOL + "# @end other" + EOL).getBytes(StandardCharsets.UTF_8));
+            assertEquals(Arrays.asList("# @begin other", "# @end other", "1:1:@begin other", "2:1:@end other"),
+                         contents(extract(cache, pythonKey)));
+            assertEquals(2, lexCount);
+            assertEquals(Arrays.asList("# @begin other", "# @end other", "1:1:@begin other", "2:1:@end other"),
+                         contents(extract(cache, pythonKey)));
+            assertEquals(2, lexCount);
+        }
+    }
+
+    public void testExtract_DifferentLexerKeyIsLexedAgain() throws Exception {
+        try (ExtractionCache cache = new ExtractionCache(cacheFile)) {
+            extract(cache, pythonKey);
+            extract(cache, ExtractionCache.lexerKey(python, StandardCharsets.ISO_8859_1, SourceLineStorage.FULL));
+            extract(cache, ExtractionCache.lexerKey(new LanguageModel(Language.BASH), StandardCharsets.UTF_8, SourceLineStorage.FULL));
+            assertEquals(3, lexCount);
+        }
+    }
+
+    public void testExtract_EmptyFileAndEmptyLines() throws Exception {
+        try (ExtractionCache cache = new ExtractionCache(cacheFile)) {
+            Files.write(sourceFile, new byte[0]);
+            assertEquals(0, extract(cache, pythonKey).getLineCount());
+            assertEquals(0, extract(cache, pythonKey).getLineCount());
+            Files.write(sourceFile, (EOL + EOL + "# @begin x" + EOL + EOL).getBytes(StandardCharsets.UTF_8));
+            List<String> lexed = contents(extract(cache, pythonKey));
+            assertEquals(Arrays.asList("", "", "# @begin x", "", "3:1:@begin x"), lexed);
+            assertEquals(lexed, contents(extract(cache, pythonKey)));
+            assertEquals(2, lexCount);
+        }
+    }
+
+    public void testExtract_SkippedFileIsCachedAsSkipped() throws Exception {
+        try (ExtractionCache cache = new ExtractionCache(cacheFile)) {
+            ExtractionCache.Lexer skipper = contents -> {
+                lexCount++;
+                return null;
+            };
+            assertNull(cache.extract(sourceFile, pythonKey + "|prefilter", skipper));
+            assertNull(cache.extract(sourceFile, pythonKey + "|prefilter", skipper));
+            assertEquals(1, lexCount);
+            assertEquals(1, cache.getHitCount());
+            assertEquals(3, extract(cache, pythonKey).getCommentCount());
+            assertEquals(2, lexCount);
+        }
+    }
+
+    private static final List<String> MULTIPLE_SOURCES = Arrays.asList(
+            "src/main/resources/example.py",
+            "examples/simulate_data_collection/simulate_data_collection.py",
+            "instances/small/inst_s.py",
+            "incoming/DroughtTimeScale_Markup.m",
+            "incoming/LTVTP_CAR.R"
+    );
+
+    private String extractAndDumpTables(Path cache, int parallelism) throws Exception {
+        return extractAndDumpTables(cache, parallelism, SourceLineStorage.FULL);
+    }
+
+    private String extractAndDumpTables(Path cache, int parallelism, SourceLineStorage sourceLines) throws Exception {
+        YesWorkflowDB db = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor extractor = new DefaultExtractor(db, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", MULTIPLE_SOURCES)
+                 .configure("parallelism", parallelism)
+                 .configure("sourcelines", sourceLines);
+        if (cache != null) extractor.configure("cache", cache.toString());
+        extractor.extract();
+        return db.jooq().select(ID, PATH).from(Table.SOURCE).orderBy(ID).fetch().toString() +
+               db.jooq().select().from(Table.SOURCE_LINE).orderBy(ID).fetch().toString() +
+               db.jooq().select().from(Table.COMMENT).orderBy(ID).fetch().toString() +
+               db.jooq().select().from(Table.ANNOTATION).orderBy(ID).fetch().toString() +
+               extractor.getFacts().toString();
+    }
+
+    public void testDefaultExtractor_CachedExtractionMatchesUncached() throws Exception {
+        String uncached = extractAndDumpTables(null, 1);
+        assertEquals(uncached, extractAndDumpTables(cacheFile, 1));
+        assertEquals(uncached, extractAndDumpTables(cacheFile, 1));
+        assertEquals(uncached, extractAndDumpTables(cacheFile, 4));
+        YesWorkflowDB cacheDB = YesWorkflowDB.openFileDB(cacheFile);
+        assertEquals(MULTIPLE_SOURCES.size(), cacheDB.jooq().fetchCount(DSL.table("cached_source")));
+        cacheDB.close();
+    }
+
+    public void testDefaultExtractor_CachedOffsetsMatchUncached() throws Exception {
+        String full = extractAndDumpTables(cacheFile, 1, SourceLineStorage.FULL);
+        String offsets = extractAndDumpTables(null, 1, SourceLineStorage.OFFSETS);
+        assertFalse(full.equals(offsets));
+        assertEquals(offsets, extractAndDumpTables(cacheFile, 1, SourceLineStorage.OFFSETS));
+        assertEquals(offsets, extractAndDumpTables(cacheFile, 4, SourceLineStorage.OFFSETS));
+        assertEquals(full, extractAndDumpTables(cacheFile, 1, SourceLineStorage.FULL));
+    }
+}
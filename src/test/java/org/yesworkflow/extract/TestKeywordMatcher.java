@@ -0,0 +1,66 @@
+package org.yesworkflow.extract;
+
+import java.util.Arrays;
+
+import org.yesworkflow.YWKeywords;
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.extract.KeywordMatcher.MatchExtent;
+
+public class TestKeywordMatcher extends YesWorkflowTestCase {
+
+    private KeywordMatcher matcher;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        matcher = new KeywordMatcher(new YWKeywords().getKeywords());
+    }
+
+    public void testMatchesKeyword() {
+        assertEquals(MatchExtent.PREFIX_MATCH, matcher.matchesKeyword("@"));
+        assertEquals(MatchExtent.PREFIX_MATCH, matcher.matchesKeyword("@BEG"));
+        assertEquals(MatchExtent.FULL_MATCH, matcher.matchesKeyword("@begin"));
+        assertEquals(MatchExtent.FULL_MATCH, matcher.matchesKeyword("@Out"));
+        assertEquals(MatchExtent.NO_MATCH, matcher.matchesKeyword("@begins"));
+        assertEquals(MatchExtent.NO_MATCH, matcher.matchesKeyword("begin"));
+    }
+
+    public void testFindKeyword() {
+        assertEquals(-1, matcher.findKeyword("no keywords here"));
+        assertEquals(2, matcher.findKeyword("# @begin main"));
+        assertEquals(5, matcher.findKeyword("email@END.com"));
+        assertEquals(1, matcher.findKeyword("@@in x"));
+    }
+
+    public void testNextKeywordStart() {
+        String text = "@begin main @in x @OUT y";
+        assertEquals(0, matcher.nextKeywordStart(text, 0));
+        assertEquals(6, matcher.keywordLengthAt(text, 0));
+        assertEquals(12, matcher.nextKeywordStart(text, 6));
+        assertEquals(3, matcher.keywordLengthAt(text, 12));
+        assertEquals(18, matcher.nextKeywordStart(text, 15));
+        assertEquals(4, matcher.keywordLengthAt(text, 18));
+        assertEquals(-1, matcher.nextKeywordStart(text, 22));
+        assertEquals(0, matcher.keywordLengthAt(text, 1));
+    }
+
+    public void testNextKeywordStart_FailedPartialMatchNotRescanned() {
+        assertEquals(-1, matcher.nextKeywordStart("@@in x", 0));
+        assertEquals(3, matcher.nextKeywordStart("@b @in x", 0));
+    }
+
+    public void testFindCommentsOnLine() {
+        assertEquals(Arrays.asList("@in x", "@as y", "@out z"),
+                     DefaultExtractor.findCommentsOnLine("  @in x @as y  @out z ", matcher));
+        assertEquals(Arrays.asList("@in x@y.com"),
+                     DefaultExtractor.findCommentsOnLine("@in x@y.com", matcher));
+        assertTrue(DefaultExtractor.findCommentsOnLine("no keywords", matcher).isEmpty());
+    }
+
+    public void testKeywordsWithNonAsciiCharacters() {
+        KeywordMatcher m = new KeywordMatcher(Arrays.asList("@éntrée", "@in"));
+        assertEquals(MatchExtent.FULL_MATCH, m.matchesKeyword("@ÉNTRÉE"));
+        assertEquals(4, m.nextKeywordStart("see @Éntrée here", 0));
+        assertEquals(7, m.keywordLengthAt("see @Éntrée here", 4));
+    }
+}
@@ -0,0 +1,72 @@
+package org.yesworkflow.extract;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.yesworkflow.YWKeywords;
+import org.yesworkflow.YesWorkflowTestCase;
+
+public class TestMarkupPrefilter extends YesWorkflowTestCase {
+
+    private MarkupPrefilter utf8Prefilter = new MarkupPrefilter(new YWKeywords().getKeywords(), StandardCharsets.UTF_8);
+
+    private boolean mayContainMarkup(String text) {
+        return utf8Prefilter.mayContainMarkup(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void testMayContainMarkup_Keywords() throws Exception {
+        assertTrue(mayContainMarkup("# @begin script"));
+        assertTrue(mayContainMarkup("@in"));
+        assertTrue(mayContainMarkup("x = 1  # @out x"));
+        assertTrue(mayContainMarkup("/* @BEGIN script */"));
+        assertTrue(mayContainMarkup("% @Param p"));
+    }
+
+    public void testMayContainMarkup_NoKeywords() throws Exception {
+        assertFalse(mayContainMarkup(""));
+        assertFalse(mayContainMarkup("x"));
+        assertFalse(mayContainMarkup("# begin script"));
+        assertFalse(mayContainMarkup("# mail me@example.org"));
+        assertFalse(mayContainMarkup("@"));
+        assertFalse(mayContainMarkup("# trailing @e"));
+        assertFalse(mayContainMarkup("# résumé @ café, naïve"));
+    }
+
+    public void testMayContainMarkup_KeywordAtEveryOffset() throws Exception {
+        StringBuilder padding = new StringBuilder();
+        for (int offset = 0; offset < 20; ++offset) {
+            assertTrue(mayContainMarkup(padding + "@end"));
+            assertTrue(mayContainMarkup(padding + "@end" + padding));
+            assertFalse(mayContainMarkup(padding + "@en" + padding));
+            padding.append(offset % 2 == 0 ? 'x' : '@');
+        }
+    }
+
+    public void testMayContainMarkup_NonAsciiCharacterFoldingToKeywordCharacter() throws Exception {
+        assertTrue(mayContainMarkup("# @İn x"));
+        assertTrue(mayContainMarkup("# @beginİ"));
+    }
+
+    public void testMayContainMarkup_AlternateKeywords() throws Exception {
+        MarkupPrefilter prefilter = new MarkupPrefilter(Arrays.asList("@begin", "#in"), StandardCharsets.US_ASCII);
+        assertTrue(prefilter.isEnabled());
+        assertTrue(prefilter.mayContainMarkup("x #IN y".getBytes(StandardCharsets.US_ASCII)));
+        assertFalse(prefilter.mayContainMarkup("x #out y".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    public void testMayContainMarkup_EncodingNotAsciiCompatible() throws Exception {
+        MarkupPrefilter prefilter = new MarkupPrefilter(new YWKeywords().getKeywords(), StandardCharsets.UTF_16);
+        assertFalse(prefilter.isEnabled());
+        assertTrue(prefilter.mayContainMarkup("# nothing here".getBytes(StandardCharsets.UTF_16)));
+    }
+
+    public void testMayContainMarkup_LatinEncodings() throws Exception {
+        for (Charset charset : Arrays.asList(StandardCharsets.ISO_8859_1, Charset.forName("windows-1252"))) {
+            MarkupPrefilter prefilter = new MarkupPrefilter(new YWKeywords().getKeywords(), charset);
+            assertTrue(prefilter.isEnabled());
+            assertTrue(prefilter.mayContainMarkup("# @begin café".getBytes(charset)));
+            assertFalse(prefilter.mayContainMarkup("# begin café".getBytes(charset)));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.yesworkflow.extract;
+
+import static org.yesworkflow.db.Column.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.db.Table;
+import org.yesworkflow.db.YesWorkflowDB;
+import org.yesworkflow.exceptions.YWToolUsageException;
+
+public class TestSourceFinder extends YesWorkflowTestCase {
+
+    private String root;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        Path rootPath = getTestDirectory("TestSourceFinder").resolve("tree");
+        root = rootPath.toString();
+        for (String file : new String[] { "a.py", "b.txt", "z.sh", "build/e.py", "sub/c.R", "sub/deep/d.m" }) {
+            Path path = rootPath.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.write(path, ("# @begin " + file + EOL + "# @end " + file + EOL).getBytes());
+        }
+    }
+
+    private List<String> paths(String... relativePaths) {
+        List<String> paths = new ArrayList<String>();
+        for (String relativePath : relativePaths) paths.add(root + "/" + relativePath);
+        return paths;
+    }
+
+    private Path writeIgnoreFile(String... patterns) throws Exception {
+        Path ignoreFile = getTestDirectory("TestSourceFinder").resolve("ywignore");
+        Files.write(ignoreFile, Arrays.asList(patterns));
+        return ignoreFile;
+    }
+
+    public void testFindPaths_DirectoryIsSearchedForRecognizedExtensions() throws Exception {
+        assertEquals(paths("a.py", "build/e.py", "sub/c.R", "sub/deep/d.m", "z.sh"),
+                     new SourceFinder(null).findPaths(Arrays.asList(root)));
+    }
+
+    public void testFindPaths_FilesArePassedOnAsGiven() throws Exception {
+        assertEquals(Arrays.asList("no_such_file.py", root + "/b.txt", root + "/a.py"),
+                     new SourceFinder(null).findPaths(Arrays.asList("no_such_file.py", root + "/b.txt", root + "/a.py")));
+    }
+
+    public void testFindPaths_EntriesKeepTheirOrder() throws Exception {
+        assertEquals(paths("sub/c.R", "sub/deep/d.m", "a.py", "build/e.py", "sub/c.R", "sub/deep/d.m", "z.sh"),
+                     new SourceFinder(null).findPaths(Arrays.asList(root + "/sub", root)));
+    }
+
+    public void testFindPaths_Globs() throws Exception {
+        SourceFinder finder = new SourceFinder(null);
+        assertEquals(paths("a.py"), finder.findPaths(Arrays.asList(root + "/*.py")));
+        assertEquals(paths("build/e.py"), finder.findPaths(Arrays.asList(root + "/**/*.py")));
+        assertEquals(paths("a.py", "b.txt"), finder.findPaths(Arrays.asList(root + "/[ab].*")));
+        assertEquals(paths("sub/c.R"), finder.findPaths(Arrays.asList(root + "/sub/*")));
+        assertEquals(paths("sub/deep/d.m"), finder.findPaths(Arrays.asList(root + "/*/deep/*.{m,py}")));
+        assertEquals(Collections.emptyList(), finder.findPaths(Arrays.asList(root + "/*.java")));
+    }
+
+    public void testFindPaths_GlobInMissingDirectory() throws Exception {
+        try {
+            new SourceFinder(null).findPaths(Arrays.asList(root + "/*.py", root + "/missing/**/*.py"));
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Directory of glob pattern in extract.sources not found: " + root + "/missing/**/*.py",
+                         e.getMessage());
+        }
+    }
+
+    public void testSearchedDirectories() throws Exception {
+        Map<Path,Integer> expected = new LinkedHashMap<Path,Integer>();
+        expected.put(Paths.get(root), Integer.MAX_VALUE);
+        expected.put(Paths.get(root + "/sub"), 1);
+        assertEquals(expected, SourceFinder.searchedDirectories(Arrays.asList(
+                root + "/a.py", root, root + "/sub/*", root + "/sub/*/*.m", root + "/missing/*.py")));
+        assertEquals(Collections.singletonMap(Paths.get(root), 0),
+                     SourceFinder.searchedDirectories(Arrays.asList(root + "/*.py")));
+    }
+
+    public void testFindPaths_IgnoreFile() throws Exception {
+        SourceFinder finder = new SourceFinder(null).ignoreFile(
+                writeIgnoreFile("# generated files", "", "build/", "*.m", "sub/c.R").toString());
+        assertEquals(paths("a.py", "z.sh"), finder.findPaths(Arrays.asList(root)));
+        assertEquals(paths("a.py"), finder.findPaths(Arrays.asList(root + "/**.py")));
+    }
+
+    public void testIgnoreFile_Missing() throws Exception {
+        try {
+            new SourceFinder(null).ignoreFile("no_such_ignore_file");
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Ignore file not found: no_such_ignore_file", e.getMessage());
+        }
+    }
+
+    public void testFind_ParallelWalkDeliversFilesInSameOrder() throws Exception {
+        List<String> expected = new SourceFinder(null).findPaths(Arrays.asList(root, "src/main/java", "instances"));
+        ExecutorService walkers = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 10; ++i) {
+                final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+                final List<String> delivered = new ArrayList<String>();
+                new SourceFinder(walkers).find(Arrays.asList(root, "src/main/java", "instances"),
+                    path -> {
+                        handled.add(path);
+                        return CompletableFuture.completedFuture(path.length());
+                    },
+                    (path, result) -> {
+                        assertEquals(Integer.valueOf(path.length()), result.get());
+                        delivered.add(path);
+                    });
+                assertEquals(expected, delivered);
+                Collections.sort(handled);
+                List<String> sortedExpected = new ArrayList<String>(expected);
+                Collections.sort(sortedExpected);
+                assertEquals(sortedExpected, handled);
+            }
+        } finally {
+            walkers.shutdownNow();
+        }
+    }
+
+    public void testFind_FilesHandledAheadOfDeliveryBounded() throws Exception {
+        List<String> expected = new SourceFinder(null).findPaths(Arrays.asList(root, "src/main/java"));
+        ExecutorService walkers = Executors.newFixedThreadPool(4);
+        try {
+            final List<String> handled = new ArrayList<String>();
+            final List<String> delivered = new ArrayList<String>();
+            new SourceFinder(walkers, 3).find(Arrays.asList(root, "src/main/java"),
+                path -> {
+                    handled.add(path);
+                    assertTrue(handled.size() - delivered.size() <= 3);
+                    return CompletableFuture.completedFuture(path);
+                },
+                (path, result) -> delivered.add(result.get()));
+            assertEquals(expected, handled);
+            assertEquals(expected, delivered);
+        } finally {
+            walkers.shutdownNow();
+        }
+    }
+
+    private String extractAndDumpTables(List<String> sources, int parallelism) throws Exception {
+        YesWorkflowDB db = YesWorkflowDB.createInMemoryDB();
+        DefaultExtractor extractor = new DefaultExtractor(db, super.stdoutStream, super.stderrStream);
+        extractor.configure("sources", sources)
+                 .configure("parallelism", parallelism)
+                 .extract();
+        return db.jooq().select(ID, PATH).from(Table.SOURCE).orderBy(ID).fetch().toString() +
+               db.jooq().select().from(Table.COMMENT).orderBy(ID).fetch().toString() +
+               db.jooq().select().from(Table.ANNOTATION).orderBy(ID).fetch().toString();
+    }
+
+    public void testDefaultExtractor_DirectorySourcesMatchExplicitFiles() throws Exception {
+        String explicit = extractAndDumpTables(paths("a.py", "build/e.py", "sub/c.R", "sub/deep/d.m", "z.sh"), 1);
+        assertEquals(explicit, extractAndDumpTables(Arrays.asList(root), 1));
+        assertEquals(explicit, extractAndDumpTables(Arrays.asList(root), 4));
+    }
+
+    public void testDefaultExtractor_IgnoreFile() throws Exception {
+        YesWorkflowDB db = YesWorkflowDB.createInMemoryDB();
+        new DefaultExtractor(db, super.stdoutStream, super.stderrStream)
+            .configure("sources", root)
+            .configure("ignorefile", writeIgnoreFile("sub/").toString())
+            .configure("parallelism", 2)
+            .extract();
+        assertEquals(3, db.getRowCount(Table.SOURCE));
+        db.close();
+    }
+}
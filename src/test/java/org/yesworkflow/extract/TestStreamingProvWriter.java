@@ -0,0 +1,164 @@
+package org.yesworkflow.extract;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.extract.StreamingProvWriter.FactSet;
+import org.yesworkflow.extract.StreamingProvWriter.Syntax;
+
+public class TestStreamingProvWriter extends YesWorkflowTestCase {
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    private StringWriter text;
+    private StreamingProvWriter writer;
+
+    private void open(Syntax syntax) throws Exception {
+        text = new StringWriter();
+        writer = new StreamingProvWriter(text, syntax, "yw", "http://yesworkflow.org/");
+    }
+
+    private void writeStatements() throws Exception {
+        writer.activity("main", Arrays.asList("Main \"program\""));
+        writer.entity("x", NONE, NONE);
+        writer.used("x__main__USE", "main", "x", NONE);
+        writer.entity("y", Arrays.asList("output"), Arrays.asList("calledFunction"));
+        writer.wasGeneratedBy("y__main__GEN", "y", "main");
+        writer.alternateOf("z", "y");
+    }
+
+    public void testProvN() throws Exception {
+        open(Syntax.PROVN);
+        writeStatements();
+        writer.close();
+        assertEquals(
+            "document"                                                                          + "\n" +
+            "  prefix yw <http://yesworkflow.org/>"                                             + "\n" +
+            "  activity(yw:main, -, -, [prov:label=\"Main \\\"program\\\"\"])"                  + "\n" +
+            "  entity(yw:x)"                                                                    + "\n" +
+            "  used(yw:x__main__USE; yw:main, yw:x, -)"                                         + "\n" +
+            "  entity(yw:y, [prov:label=\"output\", prov:type=\"calledFunction\" %% xsd:string])" + "\n" +
+            "  wasGeneratedBy(yw:y__main__GEN; yw:y, yw:main, -)"                               + "\n" +
+            "  alternateOf(yw:z, yw:y)"                                                         + "\n" +
+            "endDocument"                                                                       + "\n",
+            text.toString());
+    }
+
+    public void testTurtle() throws Exception {
+        open(Syntax.TURTLE);
+        writeStatements();
+        writer.close();
+        assertEquals(
+            "@prefix prov: <http://www.w3.org/ns/prov#> ."                                      + "\n" +
+            "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> ."                           + "\n" +
+            "@prefix xsd: <http://www.w3.org/2001/XMLSchema#> ."                                + "\n" +
+            "@prefix yw: <http://yesworkflow.org/> ."                                           + "\n" +
+            ""                                                                                  + "\n" +
+            "yw:main a prov:Activity ."                                                         + "\n" +
+            "yw:main rdfs:label \"Main \\\"program\\\"\" ."                                     + "\n" +
+            "yw:x a prov:Entity ."                                                              + "\n" +
+            "yw:main prov:used yw:x ."                                                          + "\n" +
+            "yw:main prov:qualifiedUsage yw:x__main__USE ."                                     + "\n" +
+            "yw:x__main__USE a prov:Usage ."                                                    + "\n" +
+            "yw:x__main__USE prov:entity yw:x ."                                                + "\n" +
+            "yw:y a prov:Entity ."                                                              + "\n" +
+            "yw:y rdfs:label \"output\" ."                                                      + "\n" +
+            "yw:y prov:type \"calledFunction\"^^xsd:string ."                                   + "\n" +
+            "yw:y prov:wasGeneratedBy yw:main ."                                                + "\n" +
+            "yw:y prov:qualifiedGeneration yw:y__main__GEN ."                                   + "\n" +
+            "yw:y__main__GEN a prov:Generation ."                                               + "\n" +
+            "yw:y__main__GEN prov:activity yw:main ."                                           + "\n" +
+            "yw:z prov:alternateOf yw:y ."                                                      + "\n",
+            text.toString());
+    }
+
+    public void testNTriples_FullIrisAndEscapedLocalNames() throws Exception {
+        open(Syntax.NTRIPLES);
+        writer.entity("-raw data/é", Arrays.asList("line1\nline2"), NONE);
+        writer.close();
+        assertEquals(
+            "<http://yesworkflow.org/_raw_data_é> " +
+                "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://www.w3.org/ns/prov#Entity> ." + "\n" +
+            "<http://yesworkflow.org/_raw_data_é> " +
+                "<http://www.w3.org/2000/01/rdf-schema#label> \"line1\\nline2\" ."                       + "\n",
+            text.toString());
+    }
+
+    public void testLocalNames_EscapedAsInProvDocuments() throws Exception {
+        open(Syntax.TURTLE);
+        writer.entity("file:{name}.txt", NONE, NONE);
+        writer.entity("run-1 (a, b)", NONE, NONE);
+        writer.close();
+        assertEquals(ExtractProvenance.escapeForQName("file:{name}.txt"), "file__name__txt");
+        assertEquals(ExtractProvenance.escapeForQName("run-1 (a, b)"), "run-1__a__b_");
+        assertTrue(text.toString().endsWith(
+            "yw:file__name__txt a prov:Entity ."                                                + "\n" +
+            "yw:run-1__a__b_ a prov:Entity ."                                                   + "\n"));
+    }
+
+    public void testRepeatedStatements_WriteOnlyNewLabelsAndTypes() throws Exception {
+        open(Syntax.PROVN);
+        assertTrue(writer.entity("x", Arrays.asList("a"), NONE));
+        assertFalse(writer.entity("x", Arrays.asList("a"), NONE));
+        assertFalse(writer.entity("x", Arrays.asList("a", "b"), Arrays.asList("calledFunction")));
+        assertFalse(writer.activity("x", Arrays.asList("c")));
+        assertFalse(writer.isActivity("x"));
+        assertTrue(writer.activity("main", NONE));
+        assertTrue(writer.isActivity("main"));
+        writer.activity("main", Arrays.asList("log_x: done"));
+        writer.used("x__main__USE", "main", "x", NONE);
+        writer.used("x__main__USE", "main", "x", NONE);
+        writer.alternateOf("w", "x");
+        writer.alternateOf("w", "x");
+        writer.close();
+        assertEquals(
+            "document"                                                                          + "\n" +
+            "  prefix yw <http://yesworkflow.org/>"                                             + "\n" +
+            "  entity(yw:x, [prov:label=\"a\"])"                                                + "\n" +
+            "  entity(yw:x, [prov:label=\"b\", prov:type=\"calledFunction\" %% xsd:string])"    + "\n" +
+            "  activity(yw:main)"                                                               + "\n" +
+            "  activity(yw:main, -, -, [prov:label=\"log_x: done\"])"                           + "\n" +
+            "  used(yw:x__main__USE; yw:main, yw:x, -)"                                         + "\n" +
+            "  alternateOf(yw:w, yw:x)"                                                         + "\n" +
+            "endDocument"                                                                       + "\n",
+            text.toString());
+    }
+
+    public void testSyntaxForFormat() {
+        assertEquals(Syntax.TURTLE, Syntax.forFormat("turtle"));
+        assertEquals(Syntax.NTRIPLES, Syntax.forFormat("NTriples"));
+        assertEquals(".pn", Syntax.forFormat("PROVN").extension);
+        assertNull(Syntax.forFormat("JSON"));
+    }
+
+    public void testFactSet() {
+        FactSet set = new FactSet();
+        for (int i = 0; i < 5000; ++i) {
+            assertTrue(set.add('e', "x" + i, null));
+            assertTrue(set.add('l', "x" + i, "label" + i));
+        }
+        for (int i = 0; i < 5000; ++i) {
+            assertFalse(set.add('e', "x" + i, null));
+            assertTrue(set.contains('l', "x" + i, "label" + i));
+            assertFalse(set.contains('a', "x" + i, null));
+            assertFalse(set.contains('l', "x" + i, "label"));
+        }
+        assertEquals(10000, set.size());
+    }
+
+    public void testFactSet_EqualHashesKeepDistinctFacts() {
+        FactSet set = new FactSet();
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(set.add(42L, 't', "x", "type" + i));
+        }
+        assertTrue(set.add(42L, 'e', "x", null));
+        assertFalse(set.add(42L, 't', "x", "type7"));
+        assertTrue(set.contains(42L, 't', "x", "type99"));
+        assertFalse(set.contains(42L, 't', "y", "type7"));
+        assertFalse(set.contains(42L, 'a', "x", null));
+        assertEquals(101, set.size());
+    }
+}
@@ -55,6 +55,23 @@ public abstract class DotGrapherTestCase extends YesWorkflowTestCase {
         return grapher.toString();
     }
          
+    protected String actualGraphForSourceFile(String path) throws Exception {
+
+        List<Annotation> annotations = extractor
+                 .configure("sources", path)
+                 .extract()
+                 .getAnnotations();
+
+        Workflow workflow = (Workflow)modeler.annotations(annotations)
+                                              .model()
+                                              .getModel().workflow;
+
+        grapher.workflow(workflow)
+                .graph();
+
+        return grapher.toString();
+    }
+
     protected String expectedGraph(String name) throws IOException {
         return readTextFile(testResourceDirectory + name + ".gv");
     }     
@@ -120,4 +120,8 @@ public class TestDotGrapher_ProcessView extends DotGrapherTestCase {
          String src = "examplePyScript";
          assertEquals(expectedGraph(src), actualGraph(src));  
      }
+
+     public void test_InstMPyScript_NestedFunction() throws Exception {
+         assertEquals(expectedGraph("instMPyScript"), actualGraphForSourceFile("instances/medium/inst_m.py"));
+     }
 }
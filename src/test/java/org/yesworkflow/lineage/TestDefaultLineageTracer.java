@@ -0,0 +1,146 @@
+package org.yesworkflow.lineage;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.db.YWMemoryStore;
+import org.yesworkflow.exceptions.YWToolUsageException;
+import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.model.DefaultModeler;
+import org.yesworkflow.model.Model;
+
+public class TestDefaultLineageTracer extends YesWorkflowTestCase {
+
+    private Model model;
+    private DefaultLineageTracer tracer;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+
+        String source =
+                "# @begin script"       + EOL +
+                "# @in raw"             + EOL +
+                "# @out report"         + EOL +
+                "#   @begin clean"      + EOL +
+                "#   @in raw"           + EOL +
+                "#   @out cleaned"      + EOL +
+                "#   @end clean"        + EOL +
+                "#   @begin summarize"  + EOL +
+                "#   @in cleaned"       + EOL +
+                "#   @out report"       + EOL +
+                "#   @end summarize"    + EOL +
+                "# @end script"         + EOL;
+
+        YWMemoryStore ywdb = new YWMemoryStore();
+        List<Annotation> annotations = new DefaultExtractor(ywdb, stdoutStream, stderrStream)
+                .configure("comment", "#")
+                .reader(new BufferedReader(new StringReader(source)))
+                .extract()
+                .getAnnotations();
+        model = new DefaultModeler(ywdb, stdoutStream, stderrStream)
+                .annotations(annotations)
+                .model()
+                .getModel();
+        tracer = new DefaultLineageTracer(stdoutStream, stderrStream).model(model);
+    }
+
+    public void testTrace_DefaultQueryIsUpstream() throws Exception {
+        tracer.configure("node", "script.summarize")
+              .trace();
+        assertEquals(
+            "raw"                   + EOL +
+            "script[raw]"           + EOL +
+            "script[cleaned]"       + EOL +
+            "script.clean"          + EOL,
+            stdoutBuffer.toString());
+    }
+
+    public void testTrace_Downstream() throws Exception {
+        tracer.configure("query", "downstream")
+              .configure("node", "script[cleaned]")
+              .trace();
+        assertEquals(
+            "report"                + EOL +
+            "script[report]"        + EOL +
+            "script.summarize"      + EOL,
+            stdoutBuffer.toString());
+    }
+
+    public void testTrace_Path() throws Exception {
+        tracer.configure("query", "path")
+              .configure("node", "script[raw]")
+              .configure("target", "report")
+              .trace();
+        assertEquals(
+            "script[raw]"           + EOL +
+            "script.clean"          + EOL +
+            "script[cleaned]"       + EOL +
+            "script.summarize"      + EOL +
+            "script[report]"        + EOL +
+            "report"                + EOL,
+            stdoutBuffer.toString());
+    }
+
+    public void testTrace_NoPath() throws Exception {
+        tracer.configure("query", "path")
+              .configure("node", "report")
+              .configure("target", "raw")
+              .trace();
+        assertEquals("", stdoutBuffer.toString());
+        assertEquals("No path from report to raw." + EOL, stderrBuffer.toString());
+    }
+
+    public void testGetLineage_MissingNode() throws Exception {
+        try {
+            tracer.getLineage();
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Value of lineage.node must be the qualified name of a program block or data: null", e.getMessage());
+        }
+    }
+
+    public void testGetLineage_UnknownTarget() throws Exception {
+        tracer.configure("query", "path")
+              .configure("node", "raw")
+              .configure("target", "script.plot");
+        try {
+            tracer.getLineage();
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Value of lineage.target must be the qualified name of a program block or data: script.plot",
+                         e.getMessage());
+        }
+    }
+
+    public void testGetLineage_AmbiguousNode() throws Exception {
+        String source =
+                "# @begin raw"          + EOL +
+                "# @in raw"             + EOL +
+                "# @out report"         + EOL +
+                "# @end raw"            + EOL;
+        YWMemoryStore ywdb = new YWMemoryStore();
+        List<Annotation> annotations = new DefaultExtractor(ywdb, stdoutStream, stderrStream)
+                .configure("comment", "#")
+                .reader(new BufferedReader(new StringReader(source)))
+                .extract()
+                .getAnnotations();
+        model = new DefaultModeler(ywdb, stdoutStream, stderrStream)
+                .annotations(annotations)
+                .model()
+                .getModel();
+        tracer = new DefaultLineageTracer(stdoutStream, stderrStream).model(model)
+                .configure("node", "raw");
+        try {
+            tracer.getLineage();
+            fail("Expected YWToolUsageException");
+        } catch (YWToolUsageException e) {
+            assertEquals("Value of lineage.node must name only one program block or data: raw", e.getMessage());
+        }
+        tracer.configure("node", "report");
+        assertTrue(tracer.getLineage().contains("raw"));
+    }
+}
@@ -0,0 +1,195 @@
+package org.yesworkflow.lineage;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.BitSet;
+import java.util.List;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.db.YWMemoryStore;
+import org.yesworkflow.extract.DefaultExtractor;
+import org.yesworkflow.model.DefaultModeler;
+import org.yesworkflow.model.Model;
+
+public class TestLineageGraph extends YesWorkflowTestCase {
+
+    private static final String NESTED_WORKFLOW_SOURCE =
+            "# @begin outer"        + EOL +
+            "# @in x"               + EOL +
+            "# @out z"              + EOL +
+            "#   @begin inner"      + EOL +
+            "#   @in x"             + EOL +
+            "#   @out y"            + EOL +
+            "#     @begin a"        + EOL +
+            "#     @in x"           + EOL +
+            "#     @out y"          + EOL +
+            "#     @end a"          + EOL +
+            "#   @end inner"        + EOL +
+            "#   @begin b"          + EOL +
+            "#   @in y"             + EOL +
+            "#   @out z"            + EOL +
+            "#   @end b"            + EOL +
+            "# @end outer"          + EOL;
+
+    private LineageGraph graph;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        graph = LineageGraph.compile(model(NESTED_WORKFLOW_SOURCE));
+    }
+
+    private Model model(String source) throws Exception {
+        YWMemoryStore ywdb = new YWMemoryStore();
+        List<Annotation> annotations = new DefaultExtractor(ywdb, stdoutStream, stderrStream)
+                .configure("comment", "#")
+                .reader(new BufferedReader(new StringReader(source)))
+                .extract()
+                .getAnnotations();
+        return new DefaultModeler(ywdb, stdoutStream, stderrStream)
+                .annotations(annotations)
+                .model()
+                .getModel();
+    }
+
+    private String names(BitSet nodes) {
+        StringBuilder names = new StringBuilder();
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            names.append(graph.name(node)).append(EOL);
+        }
+        return names.toString();
+    }
+
+    private String names(int[] path) {
+        StringBuilder names = new StringBuilder();
+        for (int node : path) {
+            names.append(graph.name(node)).append(EOL);
+        }
+        return names.toString();
+    }
+
+    public void testCompile_NodesNamedByScope() {
+        assertEquals(11, graph.nodeCount());
+        assertEquals(
+            "x"                 + EOL +
+            "z"                 + EOL +
+            "outer"             + EOL +
+            "outer[x]"          + EOL +
+            "outer[y]"          + EOL +
+            "outer[z]"          + EOL +
+            "outer.inner"       + EOL +
+            "outer.inner[x]"    + EOL +
+            "outer.inner[y]"    + EOL +
+            "outer.inner.a"     + EOL +
+            "outer.b"           + EOL,
+            names(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10}));
+        assertTrue(graph.isProgram(graph.node("outer.inner")));
+        assertFalse(graph.isProgram(graph.node("outer.inner[x]")));
+        assertEquals(-1, graph.node("outer.c"));
+    }
+
+    public void testUpstream_ProgramInSubworkflow() {
+        assertEquals(
+            "x"                 + EOL +
+            "outer[x]"          + EOL +
+            "outer.inner[x]"    + EOL,
+            names(graph.upstream(graph.node("outer.inner.a"))));
+    }
+
+    public void testUpstream_WorkflowOutput() {
+        assertEquals(
+            "x"                 + EOL +
+            "outer"             + EOL +
+            "outer[x]"          + EOL +
+            "outer[y]"          + EOL +
+            "outer[z]"          + EOL +
+            "outer.inner"       + EOL +
+            "outer.inner[x]"    + EOL +
+            "outer.inner[y]"    + EOL +
+            "outer.inner.a"     + EOL +
+            "outer.b"           + EOL,
+            names(graph.upstream(graph.node("z"))));
+    }
+
+    public void testDownstream_DataInSubworkflow() {
+        assertEquals(
+            "z"                 + EOL +
+            "outer[y]"          + EOL +
+            "outer[z]"          + EOL +
+            "outer.b"           + EOL,
+            names(graph.downstream(graph.node("outer.inner[y]"))));
+    }
+
+    public void testClosures_RepeatedQueriesAgree() {
+        int x = graph.node("x");
+        int z = graph.node("z");
+        BitSet downstream = graph.downstream(x);
+        BitSet upstream = graph.upstream(z);
+        assertNotNull(graph.shortestPath(x, z));
+        assertEquals(downstream, graph.downstream(x));
+        assertEquals(upstream, graph.upstream(z));
+        assertFalse(downstream.get(x));
+        assertTrue(downstream.get(z));
+    }
+
+    public void testShortestPath_AcrossWorkflowBoundaries() {
+        assertEquals(
+            "x"                 + EOL +
+            "outer[x]"          + EOL +
+            "outer.inner"       + EOL +
+            "outer[y]"          + EOL +
+            "outer.b"           + EOL,
+            names(graph.shortestPath(graph.node("x"), graph.node("outer.b"))));
+        assertEquals(
+            "x"                 + EOL +
+            "outer"             + EOL +
+            "z"                 + EOL,
+            names(graph.shortestPath(graph.node("x"), graph.node("z"))));
+    }
+
+    public void testReaches() {
+        assertTrue(graph.reaches(graph.node("outer.inner.a"), graph.node("outer.b")));
+        assertFalse(graph.reaches(graph.node("outer.b"), graph.node("outer.inner.a")));
+        assertFalse(graph.reaches(graph.node("x"), graph.node("x")));
+        assertNull(graph.shortestPath(graph.node("z"), graph.node("x")));
+    }
+
+    public void testCompile_ProgramAndDataWithSameName() throws Exception {
+        graph = LineageGraph.compile(model(
+                "# @begin clean"        + EOL +
+                "# @in clean"           + EOL +
+                "# @out report"         + EOL +
+                "# @end clean"          + EOL));
+        assertTrue(graph.isAmbiguous("clean"));
+        assertFalse(graph.isAmbiguous("report"));
+        assertFalse(graph.isAmbiguous("outer"));
+        assertFalse(graph.isProgram(graph.node("clean")));
+    }
+
+    public void testQuery_InvalidNode() {
+        try {
+            graph.upstream(graph.nodeCount());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No node 11 in lineage graph with 11 nodes.", e.getMessage());
+        }
+    }
+
+    public void testCompile_LongChain() throws Exception {
+
+        StringBuilder source = new StringBuilder("# @begin chain" + EOL);
+        for (int step = 0; step < 1000; ++step) {
+            source.append("# @begin step" + step + " @in d" + step + " @out d" + (step + 1) + " @end step" + step + EOL);
+        }
+        source.append("# @end chain" + EOL);
+        graph = LineageGraph.compile(model(source.toString()));
+
+        int first = graph.node("chain[d0]");
+        int last = graph.node("chain[d1000]");
+        assertEquals(2001, graph.shortestPath(first, last).length);
+        assertEquals(2000, graph.upstream(last).cardinality());
+        assertEquals(2000, graph.downstream(first).cardinality());
+        assertFalse(graph.reaches(last, first));
+    }
+}
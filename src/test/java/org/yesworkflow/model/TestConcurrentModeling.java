@@ -0,0 +1,78 @@
+package org.yesworkflow.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.db.YWMemoryStore;
+import org.yesworkflow.db.YWStore;
+import org.yesworkflow.extract.DefaultExtractor;
+
+public class TestConcurrentModeling extends YesWorkflowTestCase {
+
+    private static final List<String> SOURCES = Arrays.asList(
+            "src/main/resources/example.py",
+            "examples/simulate_data_collection/simulate_data_collection.py",
+            "examples/clean_name_date/clean_name_date_yw.py"
+    );
+
+    private static final int MODEL_COUNT = 300;
+    private static final int THREAD_COUNT = 8;
+
+    private Map<String,String> buildModelFacts(String source) throws Exception {
+        try (YWStore store = new YWMemoryStore()) {
+            DefaultExtractor extractor = new DefaultExtractor(store, super.stdoutStream, super.stderrStream);
+            extractor.configure("sources", source)
+                     .extract();
+            DefaultModeler modeler = new DefaultModeler(store, super.stdoutStream, super.stderrStream);
+            modeler.annotations(extractor.getAnnotations())
+                   .model();
+            return modeler.getFacts();
+        }
+    }
+
+    public void testModel_ConcurrentBuildsMatchSequentialBuilds() throws Exception {
+
+        Map<String,Map<String,String>> expectedFacts = new HashMap<String,Map<String,String>>();
+        for (String source : SOURCES) {
+            expectedFacts.put(source, buildModelFacts(source));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            List<String> sources = new ArrayList<String>();
+            List<Future<Map<String,String>>> results = new ArrayList<Future<Map<String,String>>>();
+            for (int i = 0; i < MODEL_COUNT; ++i) {
+                final String source = SOURCES.get(i % SOURCES.size());
+                sources.add(source);
+                results.add(executor.submit(new Callable<Map<String,String>>() {
+                    public Map<String,String> call() throws Exception {
+                        return buildModelFacts(source);
+                    }
+                }));
+            }
+            for (int i = 0; i < MODEL_COUNT; ++i) {
+                assertEquals(expectedFacts.get(sources.get(i)), results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testModel_IdsStartAtOneForEachModel() throws Exception {
+        String source = SOURCES.get(1);
+        Map<String,String> first = buildModelFacts(source);
+        Map<String,String> second = buildModelFacts(source);
+        assertEquals(first, second);
+        assertTrue(first.get("port").contains("port(1, "));
+        assertTrue(first.get("channel").contains("channel(1, "));
+        assertTrue(first.get("uri_variable").contains("uri_variable(1, "));
+    }
+}
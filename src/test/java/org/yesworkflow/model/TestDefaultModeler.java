@@ -72,6 +72,23 @@ public class TestDefaultModeler extends YesWorkflowTestCase {
                           .fetch();
     }
     
+    @SuppressWarnings({ "unchecked" })
+    private Result<Record> selectPorts() {
+        
+        return ywdb.jooq().select(ID, PORT_ANNOTATION_ID, ON_PROGRAM_BLOCK, DATA_ID, NAME, QUALIFIED_NAME, 
+                                  IS_INPORT, IS_OUTPORT)
+                          .from(Table.PORT)
+                          .fetch();
+    }
+    
+    @SuppressWarnings({ "unchecked" })
+    private Result<Record> selectChannels() {
+        
+        return ywdb.jooq().select(ID, OUT_PORT_ID, IN_PORT_ID, DATA_ID, IS_INFLOW, IS_OUTFLOW)
+                          .from(Table.CHANNEL)
+                          .fetch();
+    }
+    
     public void testExtract_GetModel_OneProgram() throws Exception {
         
         String source = 
@@ -276,6 +293,74 @@ public class TestDefaultModeler extends YesWorkflowTestCase {
             FileIO.localizeLineEndings(selectData().toString()));
     }
 
+    public void testExtract_GetModel_FunctionAfterWorkflowWithSubprogram() throws Exception {
+
+        String source =
+                "# @begin script"       + EOL +
+                "# @in x"               + EOL +
+                "# @out y"              + EOL +
+                "#   @begin program"    + EOL +
+                "#   @in x"             + EOL +
+                "#   @out y"            + EOL +
+                "#   @end program"      + EOL +
+                "# @end script"         + EOL +
+                "# @begin helper"       + EOL +
+                "# @in a"               + EOL +
+                "# @out b"              + EOL +
+                "# @end helper"         + EOL;
+
+        BufferedReader reader = new BufferedReader(new StringReader(source));
+
+        List<Annotation> annotations = extractor
+                .configure("comment", "#")
+                .reader(reader)
+                .extract()
+                .getAnnotations();
+
+        Model model = modeler.annotations(annotations)
+                             .model()
+                             .getModel();
+
+        // the data of a function following the workflow are data of the model, not of the workflow
+        assertEquals(4, model.data.length);
+        assertEquals("x", model.data[0].name);
+        assertEquals("y", model.data[1].name);
+        assertEquals("a", model.data[2].name);
+        assertEquals("b", model.data[3].name);
+        assertEquals(2, model.workflow.data.length);
+        assertEquals(1, model.workflow.inPorts.length);
+        assertEquals(1, model.workflow.outPorts.length);
+
+        assertEquals(1, model.functions.length);
+        Function helper = model.functions[0];
+        assertEquals("helper", helper.name);
+        assertSame(model.data[2], helper.inPorts[0].data);
+        assertSame(model.data[3], helper.outPorts[0].data);
+
+        assertEquals(
+            "+----+----------------+----------------+--------------+-------+--------------+-----------+-----------+" + EOL +
+            "|id  |in_program_block|begin_annotation|end_annotation|name   |qualified_name|is_workflow|is_function|" + EOL +
+            "+----+----------------+----------------+--------------+-------+--------------+-----------+-----------+" + EOL +
+            "|1   |{null}          |1               |8             |script |script        |1          |0          |" + EOL +
+            "|2   |1               |4               |7             |program|script.program|0          |0          |" + EOL +
+            "|3   |{null}          |9               |12            |helper |helper        |0          |1          |" + EOL +
+            "+----+----------------+----------------+--------------+-------+--------------+-----------+-----------+",
+            FileIO.localizeLineEndings(selectPrograms().toString()));
+
+        assertEquals(
+            "+----+----------------+----+--------------+"    + EOL +
+            "|id  |in_program_block|name|qualified_name|"    + EOL +
+            "+----+----------------+----+--------------+"    + EOL +
+            "|1   |{null}          |x   |x             |"    + EOL +
+            "|2   |{null}          |y   |y             |"    + EOL +
+            "|3   |1               |x   |script[x]     |"    + EOL +
+            "|4   |1               |y   |script[y]     |"    + EOL +
+            "|5   |{null}          |a   |a             |"    + EOL +
+            "|6   |{null}          |b   |b             |"    + EOL +
+            "+----+----------------+----+--------------+",
+            FileIO.localizeLineEndings(selectData().toString()));
+    }
+
     public void testExtract_GetModel_WorkflowWithOneProgram_TwoLines() throws Exception {
         
         String source = 
@@ -810,6 +895,23 @@ public class TestDefaultModeler extends YesWorkflowTestCase {
                 "|1   |1               |channel|script[channel]|"   + EOL +
                 "+----+----------------+-------+---------------+",
                     FileIO.localizeLineEndings(selectData().toString()));
+
+        assertEquals(
+                "+----+---------------+----------------+----+-------+------------------------+---------+----------+"   + EOL +
+                "|id  |port_annotation|on_program_block|data|name   |qualified_name          |is_inport|is_outport|"   + EOL +
+                "+----+---------------+----------------+----+-------+------------------------+---------+----------+"   + EOL +
+                "|1   |3              |2               |1   |channel|script.program0->channel|0        |1         |"   + EOL +
+                "|2   |6              |3               |1   |channel|script.program1<-channel|1        |0         |"   + EOL +
+                "+----+---------------+----------------+----+-------+------------------------+---------+----------+",
+                FileIO.localizeLineEndings(selectPorts().toString()));
+
+        assertEquals(
+                "+----+--------+-------+----+---------+----------+"   + EOL +
+                "|id  |out_port|in_port|data|is_inflow|is_outflow|"   + EOL +
+                "+----+--------+-------+----+---------+----------+"   + EOL +
+                "|1   |1       |2      |1   |0        |0         |"   + EOL +
+                "+----+--------+-------+----+---------+----------+",
+                FileIO.localizeLineEndings(selectChannels().toString()));
     }
 
     public void testExtract_GetModel_TwoProgramsWithOneChannel_OutAndParam() throws Exception {
@@ -1102,6 +1204,72 @@ public class TestDefaultModeler extends YesWorkflowTestCase {
     }
    
    
+    public void testExtract_GetModel_WorkflowPortsAndUnusedNestedPorts() throws Exception {
+        
+        String source = 
+                "# @begin script"       + EOL +
+                "# @in a"               + EOL +
+                "# @in z"               + EOL +
+                "# @out d"              + EOL +
+                "#"                     + EOL +
+                "#   @begin program0"   + EOL +
+                "#   @in a"             + EOL +
+                "#   @in unread"        + EOL +
+                "#   @out b"            + EOL +
+                "#   @out dangling"     + EOL +
+                "#   @end program0"     + EOL +
+                "#"                     + EOL +
+                "#   @begin program1"   + EOL +
+                "#   @in b"             + EOL +
+                "#   @out d"            + EOL +
+                "#   @end program1"     + EOL +
+                "#"                     + EOL +
+                "# @end script"         + EOL;
+
+        BufferedReader reader = new BufferedReader(new StringReader(source));
+        
+        List<Annotation> annotations = extractor
+                .configure("comment", "#")
+                .reader(reader)
+                .extract()
+                .getAnnotations();
+
+        Workflow workflow = (Workflow)modeler.annotations(annotations)
+                                             .model()
+                                             .getModel()
+                                             .workflow;
+        
+        assertEquals(2, workflow.inPorts.length);
+        assertEquals(1, workflow.outPorts.length);
+        assertEquals(2, workflow.programs[0].inPorts.length);
+        assertEquals(2, workflow.programs[0].outPorts.length);
+
+        // unread and dangling are pruned and z is read by no nested program, so none has a channel;
+        // the workflow's own ports are indexed as nested out and in ports, so the inflow and
+        // outflow channels are built both as internal channels and on their own
+        assertEquals(5, workflow.channels.length);
+        assertEquals("script.program1[d] -> script[d]",   channel(workflow.channels[0]));
+        assertEquals("script[a] -> script.program0[a]",   channel(workflow.channels[1]));
+        assertEquals("script.program0[b] -> script.program1[b]", channel(workflow.channels[2]));
+        assertEquals("script[a] -> script.program0[a]",   channel(workflow.channels[3]));
+        assertEquals("script.program1[d] -> script[d]",   channel(workflow.channels[4]));
+        
+        assertEquals(Out.class, workflow.channels[0].sourcePort.flowAnnotation.getClass());
+        assertNull(workflow.channels[0].sinkProgram);
+        assertNull(workflow.channels[1].sourceProgram);
+        assertEquals(In.class, workflow.channels[1].sinkPort.flowAnnotation.getClass());
+    }
+
+    private static String channel(Channel channel) {
+        return port(channel.sourceProgram, channel.sourcePort) + " -> " + port(channel.sinkProgram, channel.sinkPort);
+    }
+
+    /** Names a port by its program and binding, the program being the workflow when null. */
+    private static String port(Program program, Port port) {
+        String programName = (program == null) ? "script" : program.name;
+        return programName + "[" + port.flowAnnotation.binding() + "]";
+    }
+
    public void testExtract_GetCommentLines_OneComment_Hash() throws Exception {
        
        String source = "# @begin main" + EOL;
@@ -0,0 +1,131 @@
+package org.yesworkflow.model;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+
+import org.yesworkflow.YesWorkflowTestCase;
+import org.yesworkflow.annotations.Annotation;
+import org.yesworkflow.db.YWMemoryStore;
+import org.yesworkflow.extract.DefaultExtractor;
+
+public class TestModelIndex extends YesWorkflowTestCase {
+
+    private Model model;
+    private ModelIndex index;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+
+        String source =
+                "# @begin script"           + EOL +
+                "# @param threshold"        + EOL +
+                "# @in raw"                 + EOL +
+                "# @out report"             + EOL +
+                "#   @begin clean"          + EOL +
+                "#   @param threshold"      + EOL +
+                "#   @in raw"               + EOL +
+                "#   @out cleaned"          + EOL +
+                "#     @begin filter"       + EOL +
+                "#     @param threshold"    + EOL +
+                "#     @in raw"             + EOL +
+                "#     @out cleaned"        + EOL +
+                "#     @end filter"         + EOL +
+                "#   @end clean"            + EOL +
+                "#   @begin summarize"      + EOL +
+                "#   @in cleaned"           + EOL +
+                "#   @out report"           + EOL +
+                "#   @end summarize"        + EOL +
+                "# @end script"             + EOL +
+                ""                          + EOL +
+                "# @begin plot"             + EOL +
+                "# @in report"              + EOL +
+                "# @end plot"               + EOL;
+
+        YWMemoryStore ywdb = new YWMemoryStore();
+        List<Annotation> annotations = new DefaultExtractor(ywdb, stdoutStream, stderrStream)
+                .configure("comment", "#")
+                .reader(new BufferedReader(new StringReader(source)))
+                .extract()
+                .getAnnotations();
+        model = new DefaultModeler(ywdb, stdoutStream, stderrStream)
+                .annotations(annotations)
+                .model()
+                .getModel();
+        index = model.index();
+    }
+
+    public void testIndex_BuiltOncePerModel() {
+        assertSame(index, model.index());
+    }
+
+    public void testProgram_MatchesGetSubprogram() {
+        for (String name : new String[] {"script", "script.clean", "script.clean.filter", "script.summarize"}) {
+            assertSame(model.workflow.getSubprogram(name), index.program(name));
+        }
+        assertSame(model.functions[0], index.program("plot"));
+        assertNull(index.program("script.plot"));
+    }
+
+    public void testPortAndData_LookedUpByQualifiedName() {
+        Program clean = index.program("script.clean");
+        assertSame(clean.outPorts[0], index.port("script.clean->cleaned"));
+        assertSame(clean.inPorts[1], index.port("script.clean<-raw"));
+        assertNull(index.port("script.clean->raw"));
+
+        assertEquals("cleaned", index.data("script[cleaned]").name);
+        assertEquals("raw", index.data("script.clean[raw]").name);
+        assertEquals("raw", index.data("raw").name);
+        assertNull(index.data("script.summarize[cleaned]"));
+    }
+
+    public void testChannels_ByDataName() {
+        List<Channel> channels = index.channels("script[cleaned]");
+        assertEquals(2, channels.size());
+        assertSame(index.program("script.clean"), channels.get(0).sourceProgram);
+        assertSame(index.program("script.summarize"), channels.get(0).sinkProgram);
+        assertSame(index.program("script.clean.filter"), channels.get(1).sourceProgram);
+        assertNull(channels.get(1).sinkProgram);
+        assertTrue(index.channels("script[unused]").isEmpty());
+    }
+
+    public void testChannelPartitions_MatchProgram() {
+        Program workflow = model.workflow;
+        Program clean = index.program("script.clean");
+        assertEquals(workflow.innerChannels(), index.innerChannels(workflow));
+        assertEquals(workflow.innerDataChannels(), index.innerDataChannels(workflow));
+        assertEquals(workflow.innerParamChannels(), index.innerParamChannels(workflow));
+        assertEquals(clean.innerParamChannels(), index.innerParamChannels(clean));
+        assertEquals(clean.outerBindings(), index.outerBindings(clean));
+        assertEquals(clean.outerDataBindings(), index.outerDataBindings(clean));
+        assertEquals(clean.outerParamBindings(), index.outerParamBindings(clean));
+        assertTrue(index.hasChannelForBinding(workflow, "report"));
+        assertFalse(index.hasChannelForBinding(workflow, "threshold_unused"));
+    }
+
+    public void testChannelPartitions_Immutable() {
+        try {
+            index.innerChannels(model.workflow).clear();
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            index.outerBindings(index.program("script.clean")).add("extra");
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    public void testProgramIndex_OnlyIndexesNestedPrograms() {
+        ModelIndex programIndex = new ModelIndex(index.program("script.clean"));
+        assertNotNull(programIndex.program("script.clean.filter"));
+        assertNull(programIndex.program("script.summarize"));
+        try {
+            programIndex.innerChannels(model.workflow);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Program script not in ModelIndex.", e.getMessage());
+        }
+    }
+}